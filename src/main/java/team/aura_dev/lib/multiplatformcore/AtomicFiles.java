@@ -0,0 +1,79 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes files so that readers either see the old or the new contents, never half of them.<br>
+ * The contents are written to {@code <name>.tmp} next to the file first and then moved in place. A
+ * crash or a concurrent reader therefore never sees a half written cache, index or jar.
+ *
+ * @author Yannick Schinko
+ */
+public final class AtomicFiles {
+  private AtomicFiles() {}
+
+  /**
+   * Writes a file atomically.<br>
+   * The move is atomic where the file system supports it. Elsewhere the file gets replaced in a
+   * single move, which is the best these file systems offer.
+   *
+   * @param file The file to write
+   * @param output Writes the contents to the temporary file
+   * @throws IOException if writing or moving the file fails. The temporary file is deleted then.
+   */
+  public static void write(Path file, Output output) throws IOException {
+    final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+    try {
+      output.writeTo(tempFile);
+
+      try {
+        Files.move(
+            tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Writes a UTF-8 text file atomically, one line per element.
+   *
+   * @param file The file to write
+   * @param lines The lines to write
+   * @throws IOException if writing or moving the file fails
+   * @see #write(Path, Output)
+   */
+  public static void writeLines(Path file, Iterable<String> lines) throws IOException {
+    write(
+        file,
+        tempFile -> {
+          try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+              writer.write(line);
+              writer.newLine();
+            }
+          }
+        });
+  }
+
+  /** Writes the contents of a file. */
+  @FunctionalInterface
+  public interface Output {
+    /**
+     * Writes the contents.
+     *
+     * @param tempFile The temporary file to write the contents to. Doesn't exist or gets replaced.
+     * @throws IOException if writing fails
+     */
+    void writeTo(Path tempFile) throws IOException;
+  }
+}
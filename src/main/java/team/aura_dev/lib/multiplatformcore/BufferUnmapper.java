@@ -0,0 +1,93 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases memory mappings right away instead of waiting for the garbage collector.<br>
+ * On Windows a mapped file can't be deleted or replaced, so a jar stays locked until its mapping
+ * has been collected otherwise.
+ *
+ * <p>There is no public API for this. Java 9 and newer provide {@code
+ * sun.misc.Unsafe.invokeCleaner(ByteBuffer)}, Java 8 the {@code cleaner()} of the buffer itself.
+ * Both are accessed through method handles. If neither is available, mappings are left to the
+ * garbage collector.
+ *
+ * <p><b>The buffer and all of its views must never be accessed after unmapping them!</b> That
+ * crashes the JVM.
+ *
+ * @author Yannick Schinko
+ */
+final class BufferUnmapper {
+  /** Takes the mapped buffer. {@code null} if unmapping isn't supported. */
+  private static final MethodHandle UNMAP = findUnmap();
+
+  private BufferUnmapper() {}
+
+  /**
+   * Checks if mappings can be released right away on this JVM.
+   *
+   * @return {@code true} if {@link #unmap(ByteBuffer)} actually unmaps
+   */
+  static boolean isSupported() {
+    return UNMAP != null;
+  }
+
+  /**
+   * Releases a mapping.<br>
+   * Does nothing if that isn't supported or if the buffer isn't a direct buffer.
+   *
+   * @param buffer The buffer returned by {@link java.nio.channels.FileChannel#map}. Not a view on
+   *     it.
+   * @return {@code true} if the mapping was released
+   */
+  static boolean unmap(ByteBuffer buffer) {
+    if ((UNMAP == null) || !buffer.isDirect()) return false;
+
+    try {
+      UNMAP.invokeExact(buffer);
+
+      return true;
+    } catch (Throwable e) {
+      // Left to the garbage collector
+      return false;
+    }
+  }
+
+  private static MethodHandle findUnmap() {
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    try {
+      // Java 9 and newer
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+
+      return lookup
+          .findVirtual(
+              unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(theUnsafe.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Probably Java 8
+    }
+
+    try {
+      // Java 8
+      final Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+      cleaner.setAccessible(true);
+      final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      clean.setAccessible(true);
+
+      // buffer.cleaner().clean()
+      return MethodHandles.filterReturnValue(lookup.unreflect(cleaner), lookup.unreflect(clean))
+          .asType(MethodType.methodType(void.class, ByteBuffer.class));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Not supported
+      return null;
+    }
+  }
+}
@@ -0,0 +1,422 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prepares the Classes of a {@link DependencyClassLoader} for Class Data Sharing (CDS).<br>
+ * Since Java 10 the JVM can put Classes of custom {@link ClassLoader}s into a CDS archive. When
+ * such a ClassLoader later defines a {@link Class} whose class file has the same size and CRC32 as
+ * the archived one, the JVM takes the already parsed and verified {@link Class} from the archive.
+ * Class files that don't match are simply parsed as usual, so an outdated archive is never wrong,
+ * just useless.
+ *
+ * <p>The files all live in one directory, usually the {@code libsDir}:
+ *
+ * <ul>
+ *   <li>{@value #CLASS_LIST_FILE_NAME}: The Classes defined during the last start, in the classlist
+ *       format of {@code -XX:SharedClassListFile}, including the jars they came from
+ *   <li>{@value #JARS_FILE_NAME}: The size and modification time of these jars
+ *   <li>{@value #ARCHIVE_FILE_NAME}: The archive, created by {@link #dumpArchive(Path)}
+ * </ul>
+ *
+ * <p>The archive has to be dumped by a separate JVM (see {@link #getDumpCommand(Path)}) and the
+ * server has to be started with the options of {@link #getRuntimeOptions(Path)}. If the jars
+ * changed since the class list was written, {@link #verifyArchive(Path)} deletes the archive, so it
+ * gets dumped again.
+ *
+ * @author Yannick Schinko
+ * @see ClassLoaderOptions#isClassDataSharing()
+ */
+public final class ClassDataSharing {
+  /** The name of the class list. */
+  public static final String CLASS_LIST_FILE_NAME = "cds-classes.lst";
+  /** The name of the file the jars of the class list are described in. */
+  public static final String JARS_FILE_NAME = "cds-jars.lst";
+  /** The name of the archive. */
+  public static final String ARCHIVE_FILE_NAME = "libraries.jsa";
+
+  private ClassDataSharing() {}
+
+  /**
+   * Dumps the archive for the class list in a directory.
+   *
+   * @param args The directory containing the class list
+   * @throws IOException if starting the JVM fails
+   * @throws InterruptedException if interrupted while waiting for the JVM
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length != 1) {
+      System.err.println("Usage: ClassDataSharing <directory containing the class list>");
+      System.exit(2);
+    }
+
+    final Path directory = Paths.get(args[0]);
+
+    if (!dumpArchive(directory)) {
+      System.err.println("Dumping the archive failed");
+      System.exit(1);
+    }
+
+    System.out.println(
+        "Start the server with these options: " + String.join(" ", getRuntimeOptions(directory)));
+  }
+
+  /**
+   * Checks if the running JVM can archive Classes of custom {@link ClassLoader}s.
+   *
+   * @return {@code true} on Java 10 and newer
+   */
+  public static boolean isSupported() {
+    final String version = System.getProperty("java.specification.version", "1.8");
+
+    try {
+      return !version.startsWith("1.") && (Integer.parseInt(version) >= 10);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks if the running JVM has been started with the archive in a directory and could map it.
+   * <br>
+   * Since Java 12 the JVM maps the default CDS archive of the JDK on its own, so CDS being enabled
+   * alone doesn't mean our archive is used.
+   *
+   * @param directory The directory containing the archive
+   * @return {@code true} if the archive of {@code directory} has been mapped
+   */
+  public static boolean isArchiveInUse(Path directory) {
+    try {
+      final HotSpotDiagnosticMXBean diagnostics =
+          ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+
+      return (diagnostics != null)
+          && Boolean.parseBoolean(diagnostics.getVMOption("UseSharedSpaces").getValue())
+          && isArchive(diagnostics.getVMOption("SharedArchiveFile").getValue(), directory);
+    } catch (IllegalArgumentException | LinkageError e) {
+      // Not a HotSpot JVM
+      return false;
+    }
+  }
+
+  /**
+   * Checks if the value of {@code -XX:SharedArchiveFile} names the archive in a directory.<br>
+   * Since Java 13 it can name a static and a dynamic archive, separated by {@link
+   * File#pathSeparator}.
+   *
+   * @param sharedArchiveFile The value of the option
+   * @param directory The directory containing the archive
+   * @return {@code true} if any of the named archives is the one in {@code directory}
+   */
+  static boolean isArchive(String sharedArchiveFile, Path directory) {
+    final Path archive = directory.resolve(ARCHIVE_FILE_NAME).toAbsolutePath().normalize();
+
+    for (String file : sharedArchiveFile.split(File.pathSeparator)) {
+      if (file.isEmpty()) continue;
+
+      try {
+        if (Paths.get(file).toAbsolutePath().normalize().equals(archive)) return true;
+      } catch (InvalidPathException e) {
+        // Not ours
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Writes the class list for all Classes a {@link DependencyClassLoader} defined from jars, plus
+   * the size and modification time of these jars.<br>
+   * Classes whose super class or interfaces come from a {@link ClassLoader} the JVM can't archive,
+   * like the one of the plugin, are left out.
+   *
+   * @param classLoader The {@link DependencyClassLoader}. It has to record the Classes it defines
+   *     (see {@link DependencyClassLoader#getDefinedClassNames()}).
+   * @param directory The directory to write the files to
+   * @return The amount of Classes that can be archived. If that's {@code 0}, the previous files are
+   *     kept.
+   * @throws IOException if writing the files fails
+   */
+  public static int writeClassList(DependencyClassLoader classLoader, Path directory)
+      throws IOException {
+    final ClassListWriter writer = new ClassListWriter();
+
+    for (String name : classLoader.getDefinedClassNames()) {
+      try {
+        writer.add(Class.forName(name, false, classLoader));
+      } catch (ClassNotFoundException | LinkageError e) {
+        // Defined, but can't be loaded anymore
+      }
+    }
+
+    // Nothing got loaded. Keep the previous class list.
+    if (writer.archivedClasses == 0) return 0;
+
+    Files.createDirectories(directory);
+    AtomicFiles.writeLines(directory.resolve(CLASS_LIST_FILE_NAME), writer.lines);
+
+    final List<String> jars = new ArrayList<>();
+
+    for (Path jar : writer.jars) {
+      jars.add(describe(jar) + ' ' + jar);
+    }
+
+    AtomicFiles.writeLines(directory.resolve(JARS_FILE_NAME), jars);
+
+    return writer.archivedClasses;
+  }
+
+  /**
+   * Checks if the archive in a directory has been created from the jars as they are now. Deletes
+   * the archive if it hasn't, so it doesn't get used again.<br>
+   * The JVM checks every archived {@link Class} against its class file anyway. This only makes sure
+   * an outdated archive gets noticed and dumped again.
+   *
+   * @param directory The directory containing the archive
+   * @return {@code true} if the archive exists and matches the jars
+   * @throws IOException if deleting the outdated archive fails
+   */
+  public static boolean verifyArchive(Path directory) throws IOException {
+    final Path archive = directory.resolve(ARCHIVE_FILE_NAME);
+
+    if (!Files.isRegularFile(archive)) return false;
+
+    if (jarsUnchanged(directory.resolve(JARS_FILE_NAME))) return true;
+
+    Files.deleteIfExists(archive);
+
+    return false;
+  }
+
+  /**
+   * Builds the command that dumps the archive for the class list in a directory.<br>
+   * The dumping JVM gets the classpath of the running one up to the first directory, as the JVM
+   * refuses to dump with directories on the classpath. The server has to be started with the same
+   * classpath again, or at least one that starts with the same jars.
+   *
+   * @param directory The directory containing the class list
+   * @return The command line
+   */
+  public static List<String> getDumpCommand(Path directory) {
+    return Arrays.asList(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-Xshare:dump",
+        "-XX:SharedClassListFile=" + directory.resolve(CLASS_LIST_FILE_NAME).toAbsolutePath(),
+        "-XX:SharedArchiveFile=" + directory.resolve(ARCHIVE_FILE_NAME).toAbsolutePath(),
+        "-cp",
+        String.join(File.pathSeparator, getDumpClassPath()));
+  }
+
+  /**
+   * Dumps the archive for the class list in a directory by running the command of {@link
+   * #getDumpCommand(Path)}.
+   *
+   * @param directory The directory containing the class list
+   * @return {@code true} if the archive has been dumped
+   * @throws IOException if starting the JVM fails
+   * @throws InterruptedException if interrupted while waiting for the JVM
+   */
+  public static boolean dumpArchive(Path directory) throws IOException, InterruptedException {
+    if (!isSupported() || !Files.isRegularFile(directory.resolve(CLASS_LIST_FILE_NAME))) {
+      return false;
+    }
+
+    final Process process = new ProcessBuilder(getDumpCommand(directory)).inheritIO().start();
+
+    return (process.waitFor() == 0) && Files.isRegularFile(directory.resolve(ARCHIVE_FILE_NAME));
+  }
+
+  /**
+   * Returns the JVM options to start the server with, to use the archive in a directory.<br>
+   * With {@code -Xshare:auto} the JVM starts without the archive if it doesn't fit.
+   *
+   * @param directory The directory containing the archive
+   * @return The JVM options
+   */
+  public static List<String> getRuntimeOptions(Path directory) {
+    return Arrays.asList(
+        "-Xshare:auto",
+        "-XX:SharedArchiveFile=" + directory.resolve(ARCHIVE_FILE_NAME).toAbsolutePath());
+  }
+
+  /**
+   * The jars at the start of the classpath. Their Classes can be referenced by archived Classes.
+   */
+  private static List<String> getDumpClassPath() {
+    final List<String> jars = new ArrayList<>();
+
+    for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+      if (entry.isEmpty() || !Files.isRegularFile(Paths.get(entry))) break;
+
+      jars.add(entry);
+    }
+
+    return jars;
+  }
+
+  private static boolean jarsUnchanged(Path jarsFile) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(jarsFile, StandardCharsets.UTF_8)) {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        final int second = line.indexOf(' ', line.indexOf(' ') + 1);
+
+        if ((second == -1)
+            || !line.substring(0, second).equals(describe(line.substring(second + 1))))
+          return false;
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+
+    return true;
+  }
+
+  private static String describe(Path jar) throws IOException {
+    return Files.size(jar) + " " + Files.getLastModifiedTime(jar).toMillis();
+  }
+
+  private static String describe(String jar) {
+    try {
+      return describe(Paths.get(jar));
+    } catch (IOException e) {
+      // Deleted or not readable. Can't match anything.
+      return "";
+    }
+  }
+
+  /**
+   * Builds the class list. Every {@link Class} gets an id and is listed after its super class and
+   * interfaces, which refer to it by that id.
+   */
+  private static final class ClassListWriter {
+    /** Marks a {@link Class} that can't be archived. */
+    private static final int NOT_ARCHIVABLE = -1;
+
+    private final Set<Path> dumpClassPath = new HashSet<>();
+    private final List<String> lines = new ArrayList<>();
+    private final Set<Path> jars = new LinkedHashSet<>();
+    private final Map<Class<?>, Integer> ids = new HashMap<>();
+    /** The JVM only supports one archived Class per name from custom ClassLoaders. */
+    private final Set<String> names = new LinkedHashSet<>();
+
+    private int archivedClasses = 0;
+
+    ClassListWriter() {
+      for (String jar : getDumpClassPath()) {
+        dumpClassPath.add(Paths.get(jar).toAbsolutePath().normalize());
+      }
+    }
+
+    int add(Class<?> clazz) {
+      final Integer known = ids.get(clazz);
+
+      if (known != null) return known;
+
+      final int id = isBuiltIn(clazz) ? addBuiltIn(clazz) : addCustom(clazz);
+      ids.put(clazz, id);
+
+      return id;
+    }
+
+    private int addBuiltIn(Class<?> clazz) {
+      if (!names.add(clazz.getName())) return NOT_ARCHIVABLE;
+
+      lines.add(toInternalName(clazz) + " id: " + ids.size());
+
+      return ids.size();
+    }
+
+    private int addCustom(Class<?> clazz) {
+      final Path jar =
+          (clazz.getClassLoader() instanceof DependencyClassLoader) ? getJar(clazz) : null;
+
+      if (jar == null) return NOT_ARCHIVABLE;
+
+      // Interfaces are listed with Object as their super class
+      final int superId = add(clazz.isInterface() ? Object.class : clazz.getSuperclass());
+
+      if (superId == NOT_ARCHIVABLE) return NOT_ARCHIVABLE;
+
+      final StringBuilder interfaceIds = new StringBuilder();
+
+      for (Class<?> implemented : clazz.getInterfaces()) {
+        final int interfaceId = add(implemented);
+
+        if (interfaceId == NOT_ARCHIVABLE) return NOT_ARCHIVABLE;
+
+        interfaceIds.append(' ').append(interfaceId);
+      }
+
+      if (!names.add(clazz.getName())) return NOT_ARCHIVABLE;
+
+      final int id = ids.size();
+      final StringBuilder line =
+          new StringBuilder(toInternalName(clazz))
+              .append(" id: ")
+              .append(id)
+              .append(" super: ")
+              .append(superId);
+
+      if (interfaceIds.length() > 0) {
+        line.append(" interfaces:").append(interfaceIds);
+      }
+
+      lines.add(line.append(" source: ").append(jar).toString());
+      jars.add(jar);
+      ++archivedClasses;
+
+      return id;
+    }
+
+    private boolean isBuiltIn(Class<?> clazz) {
+      final ClassLoader classLoader = clazz.getClassLoader();
+      final ClassLoader system = ClassLoader.getSystemClassLoader();
+
+      if ((classLoader == null) || (classLoader == system.getParent())) return true;
+
+      // The dumping JVM can only find it if it's in one of the jars it gets
+      return (classLoader == system) && dumpClassPath.contains(getJar(clazz));
+    }
+
+    private static Path getJar(Class<?> clazz) {
+      final CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+      final URL location = (codeSource == null) ? null : codeSource.getLocation();
+
+      if ((location == null) || !"file".equals(location.getProtocol())) return null;
+
+      try {
+        final Path path = Paths.get(location.toURI()).toAbsolutePath().normalize();
+
+        return Files.isRegularFile(path) ? path : null;
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        return null;
+      }
+    }
+
+    private static String toInternalName(Class<?> clazz) {
+      return clazz.getName().replace('.', '/');
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * Counters and latency histograms of what a {@link DependencyClassLoader} does at runtime (see
+ * {@link ClassLoaderOptions#isMetrics()}).<br>
+ * Only Classes that weren't loaded already are counted. The latency of loading a Class includes
+ * loading its super classes and interfaces, if they weren't loaded yet either.
+ *
+ * <p>The counters are {@link LongAdder}s, so threads loading Classes in parallel don't contend on
+ * them. The getters read the live values.
+ *
+ * @author Yannick Schinko
+ * @see DependencyClassLoader#getMetrics()
+ * @see DependencyClassLoader#registerMetricsMBean(String)
+ */
+public class ClassLoaderMetrics implements ClassLoaderMetricsMXBean {
+  private final Map<URL, LongAdder> classesDefinedPerJar = new ConcurrentHashMap<>();
+  private final LongAdder parentDelegations = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder excludedPackageHits = new LongAdder();
+  private final LongAdder resourceLookups = new LongAdder();
+
+  @Getter private final LatencyHistogram loadClassLatency = new LatencyHistogram();
+  @Getter private final LatencyHistogram defineClassLatency = new LatencyHistogram();
+  @Getter private final LatencyHistogram resourceLookupLatency = new LatencyHistogram();
+
+  ClassLoaderMetrics() {}
+
+  /**
+   * Returns how many Classes have been defined from our own jars.
+   *
+   * @return The amount of defined Classes
+   */
+  @Override
+  public long getClassesDefined() {
+    long classesDefined = 0;
+
+    for (LongAdder count : classesDefinedPerJar.values()) {
+      classesDefined += count.sum();
+    }
+
+    return classesDefined;
+  }
+
+  /**
+   * Returns how many Classes have been defined from each jar.
+   *
+   * @return The amount of defined Classes by the {@link URL} of the jar, sorted by the {@link URL}
+   */
+  @Override
+  public Map<String, Long> getClassesDefinedPerJar() {
+    final Map<String, Long> perJar = new TreeMap<>();
+
+    for (Map.Entry<URL, LongAdder> entry : classesDefinedPerJar.entrySet()) {
+      perJar.put(entry.getKey().toString(), entry.getValue().sum());
+    }
+
+    return Collections.unmodifiableMap(perJar);
+  }
+
+  /**
+   * Returns how often a Class has been requested from the parent {@link ClassLoader}, no matter if
+   * the parent found it.
+   *
+   * @return The amount of parent delegations
+   */
+  @Override
+  public long getParentDelegations() {
+    return parentDelegations.sum();
+  }
+
+  /**
+   * Returns how often a Class could not be found at all, so loading it threw a {@link
+   * ClassNotFoundException}.
+   *
+   * @return The amount of misses
+   */
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns how often a Class in an excluded package, or this ClassLoader itself, has been
+   * requested. Those are always requested from the parent first.
+   *
+   * @return The amount of excluded package hits
+   */
+  @Override
+  public long getExcludedPackageHits() {
+    return excludedPackageHits.sum();
+  }
+
+  /**
+   * Returns how often a resource has been looked up through {@link
+   * ClassLoader#getResource(String)}, {@link ClassLoader#getResources(String)} or {@link
+   * ClassLoader#getResourceAsStream(String)}.
+   *
+   * @return The amount of resource lookups
+   */
+  @Override
+  public long getResourceLookups() {
+    return resourceLookups.sum();
+  }
+
+  void recordLoadClass(long startNanos) {
+    loadClassLatency.record(System.nanoTime() - startNanos);
+  }
+
+  void recordDefineClass(URL url, long startNanos) {
+    defineClassLatency.record(System.nanoTime() - startNanos);
+    classesDefinedPerJar.computeIfAbsent(url, key -> new LongAdder()).increment();
+  }
+
+  void recordParentDelegation() {
+    parentDelegations.increment();
+  }
+
+  void recordMiss() {
+    misses.increment();
+  }
+
+  void recordExcludedPackageHit() {
+    excludedPackageHits.increment();
+  }
+
+  void recordResourceLookup(long startNanos) {
+    resourceLookupLatency.record(System.nanoTime() - startNanos);
+    resourceLookups.increment();
+  }
+
+  @Override
+  public String toString() {
+    return "ClassLoaderMetrics(classesDefined="
+        + getClassesDefined()
+        + ", parentDelegations="
+        + getParentDelegations()
+        + ", misses="
+        + getMisses()
+        + ", excludedPackageHits="
+        + getExcludedPackageHits()
+        + ", resourceLookups="
+        + getResourceLookups()
+        + ", loadClassLatency="
+        + loadClassLatency
+        + ", defineClassLatency="
+        + defineClassLatency
+        + ", resourceLookupLatency="
+        + resourceLookupLatency
+        + ")";
+  }
+}
@@ -0,0 +1,74 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ClassLoaderMetrics}. See there for what the values mean.
+ *
+ * @author Yannick Schinko
+ * @see DependencyClassLoader#registerMetricsMBean(String)
+ */
+public interface ClassLoaderMetricsMXBean {
+  /**
+   * Returns how many Classes have been defined from our own jars.
+   *
+   * @return The amount of defined Classes
+   */
+  long getClassesDefined();
+
+  /**
+   * Returns how many Classes have been defined from each jar.
+   *
+   * @return The amount of defined Classes by the {@link java.net.URL} of the jar
+   */
+  Map<String, Long> getClassesDefinedPerJar();
+
+  /**
+   * Returns how often a Class has been requested from the parent {@link ClassLoader}.
+   *
+   * @return The amount of parent delegations
+   */
+  long getParentDelegations();
+
+  /**
+   * Returns how often a Class could not be found at all.
+   *
+   * @return The amount of misses
+   */
+  long getMisses();
+
+  /**
+   * Returns how often a Class in an excluded package has been requested.
+   *
+   * @return The amount of excluded package hits
+   */
+  long getExcludedPackageHits();
+
+  /**
+   * Returns how often a resource has been looked up.
+   *
+   * @return The amount of resource lookups
+   */
+  long getResourceLookups();
+
+  /**
+   * Returns the durations of Class loads that weren't loaded already.
+   *
+   * @return The histogram
+   */
+  LatencyHistogram getLoadClassLatency();
+
+  /**
+   * Returns the durations of defining Classes from our own jars.
+   *
+   * @return The histogram
+   */
+  LatencyHistogram getDefineClassLatency();
+
+  /**
+   * Returns the durations of resource lookups.
+   *
+   * @return The histogram
+   */
+  LatencyHistogram getResourceLookupLatency();
+}
@@ -0,0 +1,132 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Optional features of the {@link DependencyClassLoader}.<br>
+ * Everything is turned off by default, which makes the {@link DependencyClassLoader} behave like
+ * with {@link #DEFAULT}.
+ *
+ * <p>Example code:
+ *
+ * <pre>{@code
+ * final ClassLoaderOptions options = ClassLoaderOptions.builder().memoryMapped(true).build();
+ * final DependencyClassLoader classLoader =
+ *     new DependencyClassLoader(parent, options, "my.plugin.api", "my.plugin.bootstrap");
+ * }</pre>
+ *
+ * @author Yannick Schinko
+ */
+@SuppressFBWarnings(
+    value = {"JLM_JSR166_UTILCONCURRENT_MONITORENTER", "RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE"},
+    justification = "Code is generated by lombok which means I don't have any influence on it.")
+@Value
+@Builder(toBuilder = true)
+public class ClassLoaderOptions {
+  /** The options used when none are specified. */
+  public static final ClassLoaderOptions DEFAULT = builder().build();
+
+  /**
+   * Memory maps the jar files and defines Classes straight from the mapped memory instead of
+   * reading them through {@link java.util.jar.JarFile}s.<br>
+   * Classes that are stored uncompressed are defined without copying them at all. Compressed ones
+   * are inflated into pooled buffers. Signed jars, ZIP64 jars and jars larger than 2 GiB are always
+   * read through {@link java.util.jar.JarFile}s.
+   */
+  @Builder.Default private final boolean memoryMapped = false;
+
+  /**
+   * Keeps the indexes of the jar files in a file (see {@link
+   * DependencyClassLoader#loadPersistentIndex(java.nio.file.Path)}), so unchanged jars don't have
+   * to be scanned again on the next start.<br>
+   * Jars indexed this way are only opened once a Class is actually loaded from them. An index is
+   * only reused if the path, size, modification time and end of central directory record of its jar
+   * are unchanged. Otherwise the jar is simply indexed again.
+   */
+  @Builder.Default private final boolean persistentIndex = false;
+
+  /**
+   * Records the Classes defined during startup and reads them ahead of time in the background on
+   * the next start (see {@link DependencyClassLoader#startClassPrefetch(java.nio.file.Path)}).
+   */
+  @Builder.Default private final boolean prefetch = false;
+
+  /** The maximum amount of bytes of prefetched class files that are kept in memory at once. */
+  @Builder.Default private final long prefetchMemoryLimit = 16L << 20;
+
+  /** The amount of background threads that prefetch class files. */
+  @Builder.Default
+  private final int prefetchThreads =
+      Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+  /**
+   * Only scans the central directory of the jar files when they are added and opens them once a
+   * Class is actually loaded from them.<br>
+   * Always the case with {@link #isPersistentIndex()}.
+   */
+  @Builder.Default private final boolean lazyOpening = false;
+
+  /**
+   * Closes jar files that haven't been used for this many milliseconds. They are reopened
+   * transparently when they are needed again. {@code 0} keeps them open.<br>
+   * Only applies to jars opened lazily (see {@link #isLazyOpening()}).
+   */
+  @Builder.Default private final long idleJarTimeout = 0;
+
+  /**
+   * Remembers the names of all Classes the {@link DependencyClassLoader} defines (see {@link
+   * DependencyClassLoader#getDefinedClassNames()}). Used to prepare the next generation of a
+   * reloadable plugin.
+   */
+  @Builder.Default private final boolean recordDefinedClasses = false;
+
+  /**
+   * Shares the downloaded libraries with other plugins that request exactly the same dependencies
+   * (see {@link SharedLibraries}), instead of loading a copy of them for every plugin.<br>
+   * Used by {@link team.aura_dev.lib.multiplatformcore.download.DependencyDownloader}.
+   */
+  @Builder.Default private final boolean sharedLibraries = false;
+
+  /**
+   * Gives every downloaded artifact its own {@link DependencyClassLoader}, that only sees the
+   * artifact itself and its declared (transitive) dependencies, instead of putting all artifacts
+   * into one flat classpath.<br>
+   * This allows different artifacts to depend on conflicting versions of the same library. Used by
+   * {@link team.aura_dev.lib.multiplatformcore.download.DependencyDownloader}. Libraries shared
+   * with other plugins (see {@link #isSharedLibraries()}) always use a flat classpath.
+   */
+  @Builder.Default private final boolean artifactLoaderGraph = false;
+
+  /**
+   * Remembers which of the jars contains a resource, including resources that none of them contain.
+   * Repeated lookups of the same resource then don't have to look into the jars again. <br>
+   * The cache is cleared whenever a new {@link java.net.URL} is added.
+   */
+  @Builder.Default private final boolean resourceCache = false;
+
+  /**
+   * Writes the Classes defined during startup into a class list for Class Data Sharing (see {@link
+   * DependencyClassLoader#startClassDataSharing(java.nio.file.Path)}), so they can be put into a
+   * CDS archive and don't have to be parsed and verified again on the next start.<br>
+   * Requires Java 10 or newer. Ignored on older versions.
+   */
+  @Builder.Default private final boolean classDataSharing = false;
+
+  /**
+   * Records the signers of signed jars once all their entries have been verified (see {@link
+   * DependencyClassLoader#loadSignatureCache(java.nio.file.Path)}). Jars with the same SHA-1 hash
+   * are opened without verifying every entry again on the next start. The recorded signers are
+   * still part of the {@link java.security.CodeSource} of their Classes.
+   */
+  @Builder.Default private final boolean signatureCache = false;
+
+  /**
+   * Counts what the ClassLoader does and measures how long it takes (see {@link
+   * DependencyClassLoader#getMetrics()}). The metrics can be registered as a JMX MBean with {@link
+   * DependencyClassLoader#registerMetricsMBean(String)}.<br>
+   * Disabled, this costs nothing beyond a {@code null} check per lookup.
+   */
+  @Builder.Default private final boolean metrics = false;
+}
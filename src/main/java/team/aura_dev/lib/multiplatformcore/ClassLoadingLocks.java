@@ -0,0 +1,79 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per {@link Class} name locks for a parallel capable {@link ClassLoader}.
+ *
+ * <p>Contrary to {@link ClassLoader#getClassLoadingLock(String)} the locks are {@link
+ * ReentrantLock}s, so threads waiting for them don't pin their carrier thread like they would with
+ * a monitor. They are also removed again once no thread holds or waits for them, so the amount of
+ * locks is bounded by the amount of concurrent loads and not by the amount of loaded Classes.
+ *
+ * <p>Locks are deliberately not striped. Defining a {@link Class} loads its super classes while the
+ * lock is held, so two unrelated names sharing a stripe could deadlock each other. With one lock
+ * per name that can't happen, as the class hierarchy is free of cycles.
+ *
+ * @author Yannick Schinko
+ */
+class ClassLoadingLocks {
+  private final Map<String, NameLock> locks = new ConcurrentHashMap<>();
+
+  /**
+   * Acquires the lock for the given name, blocking until it is available.<br>
+   * Every call must be followed by exactly one call to {@link #release(NameLock)}.
+   *
+   * @param name The name of the {@link Class} to lock
+   * @return The acquired lock
+   */
+  NameLock acquire(String name) {
+    final NameLock lock =
+        locks.compute(
+            name,
+            (key, existing) -> {
+              final NameLock result = (existing == null) ? new NameLock(key) : existing;
+              ++result.users;
+
+              return result;
+            });
+
+    lock.lock();
+
+    return lock;
+  }
+
+  /**
+   * Releases a lock obtained by {@link #acquire(String)}.
+   *
+   * @param lock The lock to release
+   */
+  void release(NameLock lock) {
+    lock.unlock();
+
+    locks.computeIfPresent(lock.name, (key, existing) -> (--existing.users == 0) ? null : existing);
+  }
+
+  /**
+   * The amount of locks currently held or waited for.
+   *
+   * @return the amount of locks in use
+   */
+  int size() {
+    return locks.size();
+  }
+
+  /** A lock for a single {@link Class} name. */
+  static final class NameLock extends ReentrantLock {
+    private static final long serialVersionUID = -2836582406911634839L;
+
+    private final String name;
+    // Guarded by the map's compute methods
+    private int users = 0;
+
+    private NameLock(String name) {
+      this.name = name;
+    }
+  }
+}
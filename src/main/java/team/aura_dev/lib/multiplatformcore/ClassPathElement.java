@@ -0,0 +1,407 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSigner;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Manifest;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A single {@link URL} of a {@link DependencyClassLoader} that we can read from directly.<br>
+ * Knows all packages it contains, which allows the {@link DependencyClassLoader} to route lookups
+ * straight to the elements that actually contain a package.
+ *
+ * @author Yannick Schinko
+ */
+@RequiredArgsConstructor
+abstract class ClassPathElement implements Closeable {
+  private static final String URL_PATH_SAFE_CHARACTERS = "/-_.!~*'()$&+,;=:@";
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  /** The {@link URL} this element was added with. Used as the location of the code source. */
+  @Getter protected final URL url;
+
+  /**
+   * Opens a {@link ClassPathElement} for the given {@link URL} if it points to a local jar file or
+   * directory.
+   *
+   * @param url The {@link URL} to open. Both {@code file:} and {@code jar:file:...!/} {@link URL}s
+   *     are supported.
+   * @param options The options of the {@link DependencyClassLoader}. Determine how jars are read.
+   * @param pool The pool to inflate entries of memory mapped jars with
+   * @param persistentIndex The persisted jar indexes to reuse or {@code null} to always index jars
+   *     right away
+   * @param signatureCache The cache of verified signed jars or {@code null} to always verify them
+   * @return The opened and indexed element or {@code null} if the {@link URL} can't be read
+   *     directly (like remote {@link URL}s or files that don't exist yet)
+   */
+  static ClassPathElement open(
+      URL url,
+      ClassLoaderOptions options,
+      DecompressionPool pool,
+      PersistentIndex persistentIndex,
+      SignatureCache signatureCache) {
+    final Path path = toLocalPath(url);
+
+    if (path == null) return null;
+
+    try {
+      if (Files.isDirectory(path)) {
+        return new DirectoryClassPathElement(url, path);
+      } else if (Files.isRegularFile(path)) {
+        if ((persistentIndex != null) || options.isLazyOpening()) {
+          final JarIndex index = readIndex(path, persistentIndex);
+
+          // The jar only gets opened once it's actually needed
+          if (index != null) {
+            return new LazyJarClassPathElement(url, path, index, options, pool, signatureCache);
+          }
+        }
+
+        if (options.isMemoryMapped()) {
+          final ClassPathElement mapped = MappedJarClassPathElement.open(url, path, pool);
+
+          // Some jars can't be mapped. Those are read normally.
+          if (mapped != null) return mapped;
+        }
+
+        return new JarClassPathElement(url, path, signatureCache);
+      }
+    } catch (IOException e) {
+      // Not readable, so we can't index it
+    }
+
+    return null;
+  }
+
+  private static JarIndex readIndex(Path path, PersistentIndex persistentIndex) {
+    try {
+      if (Files.size(path) > Integer.MAX_VALUE) return null;
+
+      return (persistentIndex == null) ? JarIndex.read(path) : persistentIndex.getIndex(path);
+    } catch (IOException e) {
+      // Let JarFile have a go at it
+      return null;
+    }
+  }
+
+  /**
+   * Converts a {@link URL} to the local {@link Path} it is pointing to.
+   *
+   * @param url The {@link URL} to convert
+   * @return The local {@link Path} or {@code null} if the {@link URL} doesn't point to a local file
+   */
+  static Path toLocalPath(URL url) {
+    String urlString = url.toExternalForm();
+
+    if (urlString.startsWith("jar:")) {
+      if (!urlString.endsWith("!/")) return null;
+
+      urlString = urlString.substring("jar:".length(), urlString.length() - "!/".length());
+    }
+
+    if (!urlString.startsWith("file:")) return null;
+
+    try {
+      return Paths.get(new URL(urlString).toURI());
+    } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Converts a {@link Class} name into its package name.
+   *
+   * @param className The binary name of the {@link Class}
+   * @return The package name or an empty string for the default package
+   */
+  static String getPackageName(String className) {
+    final int lastDot = className.lastIndexOf('.');
+
+    return (lastDot == -1) ? "" : className.substring(0, lastDot);
+  }
+
+  /**
+   * All packages that contain at least one file in this element.
+   *
+   * @return The names of the packages in dotted notation. The default package is represented by an
+   *     empty string.
+   */
+  abstract Set<String> getPackageNames();
+
+  /**
+   * Reads a {@link Class} file from this element.
+   *
+   * @param path The path of the entry, like {@code "foo/bar/Baz.class"}
+   * @return The read class file or {@code null} if this element doesn't contain the entry
+   * @throws IOException when reading the entry fails
+   */
+  abstract ClassFile readClassFile(String path) throws IOException;
+
+  /**
+   * Checks if this element contains a file, without reading it.
+   *
+   * @param path The path of the entry, like {@code "foo/bar/baz.properties"}
+   * @return {@code true} if the entry exists
+   */
+  abstract boolean hasEntry(String path);
+
+  /**
+   * Returns the uncompressed size of a file in this element, without reading it.
+   *
+   * @param path The path of the entry, like {@code "foo/bar/baz.properties"}
+   * @return The size in bytes or {@code -1} if the entry doesn't exist or its size is unknown
+   */
+  abstract long getEntrySize(String path);
+
+  /**
+   * Opens a stream over a file in this element, without reading it into memory first. Meant for
+   * files too large to be read with {@link #readClassFile(String)}.
+   *
+   * @param path The path of the entry, like {@code "foo/bar/baz.dat"}
+   * @return The stream or {@code null} if this element doesn't contain the entry
+   * @throws IOException when opening the entry fails
+   */
+  abstract InputStream openEntryStream(String path) throws IOException;
+
+  /**
+   * Lists the paths of all files in this element. Directories are not listed.
+   *
+   * @return The paths of the entries, like {@code "foo/bar/Baz.class"}
+   * @throws IOException if the entries can't be listed
+   */
+  abstract Collection<String> getEntryNames() throws IOException;
+
+  /**
+   * Lists the service files in {@code META-INF/services} of this element (see {@link
+   * ServiceFiles}).
+   *
+   * @return The paths of the service files, like {@code "META-INF/services/java.sql.Driver"}
+   * @throws IOException if the entries can't be listed
+   */
+  Collection<String> getServiceFileNames() throws IOException {
+    if (!getPackageNames().contains(ServiceFiles.SERVICES_PACKAGE)) return Collections.emptyList();
+
+    final List<String> serviceFileNames = new ArrayList<>();
+
+    for (String path : getEntryNames()) {
+      if (ServiceFiles.isServiceFile(path)) {
+        serviceFileNames.add(path);
+      }
+    }
+
+    return serviceFileNames;
+  }
+
+  /**
+   * Creates the {@link URL} of an entry of this element, in the same form as {@link
+   * java.net.URLClassLoader} would return it.
+   *
+   * @param path The path of the entry. Must exist in this element.
+   * @return The {@link URL} of the entry
+   * @throws MalformedURLException if the {@link URL} can't be created
+   */
+  URL getResourceURL(String path) throws MalformedURLException {
+    return new URL("jar:" + url.toExternalForm() + "!/" + encodePath(path));
+  }
+
+  /**
+   * The {@link Manifest} of this element.
+   *
+   * @return The {@link Manifest} or {@code null} if there is none
+   */
+  abstract Manifest getManifest();
+
+  /**
+   * Checks if this element currently holds an open jar file or mapping.
+   *
+   * @return {@code true} if a jar is open. Always {@code false} for directories.
+   */
+  boolean isOpen() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // Nothing to close by default
+  }
+
+  protected static byte[] readFully(InputStream in, int sizeHint) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream((sizeHint > 0) ? sizeHint : 4096);
+    final byte[] buffer = new byte[8192];
+    int read;
+
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Adds the package of a jar entry or file to the set of package names.
+   *
+   * @param packageNames The set to add the package name to
+   * @param path The path of the entry relative to the root, separated by {@code '/'}
+   */
+  protected static void addPackageName(Set<String> packageNames, String path) {
+    packageNames.add(getResourcePackageName(path));
+  }
+
+  /**
+   * Converts the path of a jar entry or file into the name of the package it is in.
+   *
+   * @param path The path of the entry relative to the root, separated by {@code '/'}
+   * @return The package name or an empty string for the root
+   */
+  static String getResourcePackageName(String path) {
+    final int lastSlash = path.lastIndexOf('/');
+
+    return (lastSlash == -1) ? "" : path.substring(0, lastSlash).replace('/', '.');
+  }
+
+  /** Percent encodes everything but the characters that are safe in a {@link URL} path. */
+  private static String encodePath(String path) {
+    final StringBuilder encoded = new StringBuilder(path.length());
+
+    for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+      final char c = (char) (b & 0xFF);
+
+      if (((c >= 'a') && (c <= 'z'))
+          || ((c >= 'A') && (c <= 'Z'))
+          || ((c >= '0') && (c <= '9'))
+          || (URL_PATH_SAFE_CHARACTERS.indexOf(c) != -1)) {
+        encoded.append(c);
+      } else {
+        encoded.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+      }
+    }
+
+    return encoded.toString();
+  }
+
+  /**
+   * The contents of a class file and the signers of its entry.<br>
+   * The buffer might be borrowed from a {@link DecompressionPool} or be a view on a memory mapped
+   * jar, so {@link #release()} must be called exactly once after the Class has been defined.
+   */
+  @SuppressFBWarnings(
+      value = {"EI_EXPOSE_REP", "EI_EXPOSE_REP2"},
+      justification = "Internal value class. Copying the class bytes would defeat its purpose.")
+  @RequiredArgsConstructor
+  @Getter
+  static final class ClassFile {
+    private final ByteBuffer buffer;
+    private final CodeSigner[] codeSigners;
+    private final DecompressionPool pool;
+    /** Runs on {@link #release()}. {@code null} if nothing has to be done. */
+    private final Runnable releaseAction;
+
+    ClassFile(byte[] bytes, CodeSigner[] codeSigners) {
+      this(ByteBuffer.wrap(bytes), codeSigners, null, null);
+    }
+
+    ClassFile(ByteBuffer buffer, CodeSigner[] codeSigners, DecompressionPool pool) {
+      this(buffer, codeSigners, pool, null);
+    }
+
+    /** Returns the buffer to its pool, if it came from one, and runs the release action. */
+    void release() {
+      if (pool != null) {
+        pool.releaseBuffer(buffer);
+      }
+
+      if (releaseAction != null) {
+        releaseAction.run();
+      }
+    }
+
+    /**
+     * Reads the contents as a stream, without copying them. The buffer is released when the stream
+     * gets closed.
+     *
+     * @return A stream over the contents
+     */
+    InputStream openStream() {
+      return new ClassFileInputStream(this);
+    }
+  }
+
+  /** An {@link InputStream} over the buffer of a {@link ClassFile}. */
+  private static final class ClassFileInputStream extends InputStream {
+    private final ClassFile classFile;
+    private final ByteBuffer buffer;
+    private boolean closed = false;
+
+    ClassFileInputStream(ClassFile classFile) {
+      this.classFile = classFile;
+      this.buffer = classFile.getBuffer().duplicate();
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+      ensureOpen();
+
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+      ensureOpen();
+
+      if (length == 0) return 0;
+      if (!buffer.hasRemaining()) return -1;
+
+      final int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+
+      return read;
+    }
+
+    @Override
+    public synchronized long skip(long n) throws IOException {
+      ensureOpen();
+
+      final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+
+      return skipped;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+      ensureOpen();
+
+      return buffer.remaining();
+    }
+
+    @Override
+    public synchronized void close() {
+      if (closed) return;
+
+      closed = true;
+      classFile.release();
+    }
+
+    private void ensureOpen() throws IOException {
+      if (closed) throw new IOException("Stream closed");
+    }
+  }
+}
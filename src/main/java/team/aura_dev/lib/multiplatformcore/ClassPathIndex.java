@@ -0,0 +1,362 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps package names to the {@link ClassPathElement}s that contain them.<br>
+ * The index gets extended every time a {@link URL} is added to the {@link DependencyClassLoader}.
+ * Lookups are lock free. Modifications are synchronized.
+ *
+ * <p>The service files in {@code META-INF/services} are indexed by their full path as well, so
+ * {@link java.util.ServiceLoader} lookups don't have to check every element containing that
+ * directory.
+ *
+ * <p>If {@link ClassLoaderOptions#getIdleJarTimeout()} is set, lazily opened jars that haven't been
+ * used for that long are closed periodically by a single daemon thread shared by all indexes.
+ *
+ * @author Yannick Schinko
+ */
+class ClassPathIndex {
+  private static final ClassPathElement[] NO_ELEMENTS = new ClassPathElement[0];
+
+  private final ClassLoaderOptions options;
+  private final DecompressionPool decompressionPool =
+      new DecompressionPool(Runtime.getRuntime().availableProcessors() * 2);
+  private final PersistentIndex persistentIndex;
+  private final SignatureCache signatureCache;
+  private Path signatureCacheFile;
+
+  private final Map<String, ClassPathElement[]> packageIndex = new ConcurrentHashMap<>();
+  /** Maps the path of every service file to the elements containing it. */
+  private final Map<String, ClassPathElement[]> serviceIndex = new ConcurrentHashMap<>();
+
+  private volatile boolean hasUnindexedServices = false;
+
+  private final List<ClassPathElement> elements = new ArrayList<>();
+  private final Set<String> knownURLs = new HashSet<>();
+  private volatile boolean hasUnindexedURLs = false;
+  private final ScheduledFuture<?> idleCheck;
+
+  /**
+   * Creates an empty index.
+   *
+   * @param options The options that determine how the added {@link URL}s are read
+   */
+  ClassPathIndex(ClassLoaderOptions options) {
+    this.options = options;
+    this.persistentIndex = options.isPersistentIndex() ? new PersistentIndex() : null;
+    this.signatureCache = options.isSignatureCache() ? new SignatureCache() : null;
+    this.idleCheck =
+        (options.getIdleJarTimeout() > 0)
+            ? IdleJarCloser.schedule(this, options.getIdleJarTimeout())
+            : null;
+  }
+
+  /**
+   * Loads a persisted index file, so that unchanged jars added afterwards don't have to be indexed
+   * again.<br>
+   * Does nothing if {@link ClassLoaderOptions#isPersistentIndex()} is disabled.
+   *
+   * @param file The index file
+   * @return {@code true} if the file could be loaded
+   */
+  boolean loadPersistentIndex(Path file) {
+    return (persistentIndex != null) && persistentIndex.load(file);
+  }
+
+  /**
+   * Saves the indexes of all added jars, if any of them changed.<br>
+   * Does nothing if {@link ClassLoaderOptions#isPersistentIndex()} is disabled.
+   *
+   * @param file The index file
+   * @throws IOException if writing the file fails
+   */
+  void savePersistentIndex(Path file) throws IOException {
+    if (persistentIndex != null) {
+      persistentIndex.save(file);
+    }
+  }
+
+  /**
+   * Loads the recorded signers of previously verified signed jars and remembers the file for {@link
+   * #saveSignatureCache()}.<br>
+   * Does nothing if {@link ClassLoaderOptions#isSignatureCache()} is disabled.
+   *
+   * @param file The signature cache file
+   * @return {@code true} if the file could be loaded
+   */
+  synchronized boolean loadSignatureCache(Path file) {
+    if (signatureCache == null) return false;
+
+    signatureCacheFile = file;
+
+    return signatureCache.load(file);
+  }
+
+  /**
+   * Saves the signers of all opened signed jars, if any of them had to be verified.<br>
+   * Does nothing if {@link ClassLoaderOptions#isSignatureCache()} is disabled or no file has been
+   * loaded.
+   *
+   * @throws IOException if writing the file fails
+   */
+  synchronized void saveSignatureCache() throws IOException {
+    if ((signatureCache == null) || (signatureCacheFile == null)) return;
+
+    signatureCache.save(signatureCacheFile);
+  }
+
+  /**
+   * Adds a {@link URL} to the index.<br>
+   * Adding the same {@link URL} twice has no effect, just like with {@link
+   * java.net.URLClassLoader}.
+   *
+   * @param url The {@link URL} to add
+   */
+  synchronized void add(URL url) {
+    if (!knownURLs.add(url.toExternalForm())) return;
+
+    final ClassPathElement element =
+        ClassPathElement.open(url, options, decompressionPool, persistentIndex, signatureCache);
+
+    if (element == null) {
+      // We can't look into this URL, so every lookup has to fall back to a full search
+      hasUnindexedURLs = true;
+
+      return;
+    }
+
+    elements.add(element);
+
+    for (String packageName : element.getPackageNames()) {
+      final ClassPathElement[] owners = packageIndex.getOrDefault(packageName, NO_ELEMENTS);
+      final ClassPathElement[] newOwners = Arrays.copyOf(owners, owners.length + 1);
+
+      newOwners[owners.length] = element;
+      packageIndex.put(packageName, newOwners);
+    }
+
+    indexServiceFiles(element);
+  }
+
+  private void indexServiceFiles(ClassPathElement element) {
+    final Collection<String> serviceFileNames;
+
+    try {
+      serviceFileNames = element.getServiceFileNames();
+    } catch (IOException e) {
+      // Service files have to be looked up through the package index then
+      hasUnindexedServices = true;
+
+      return;
+    }
+
+    for (String serviceFileName : serviceFileNames) {
+      final ClassPathElement[] owners = serviceIndex.getOrDefault(serviceFileName, NO_ELEMENTS);
+      final ClassPathElement[] newOwners = Arrays.copyOf(owners, owners.length + 1);
+
+      newOwners[owners.length] = element;
+      serviceIndex.put(serviceFileName, newOwners);
+    }
+  }
+
+  /**
+   * Returns all indexed elements.
+   *
+   * @return A copy of the elements, in the order they were added
+   */
+  synchronized List<ClassPathElement> getElements() {
+    return new ArrayList<>(elements);
+  }
+
+  /**
+   * Returns all elements containing the package, in the order they were added.
+   *
+   * @param packageName The name of the package
+   * @return The elements containing the package. Empty if none do.
+   */
+  ClassPathElement[] getOwners(String packageName) {
+    return packageIndex.getOrDefault(packageName, NO_ELEMENTS);
+  }
+
+  /**
+   * Returns all elements containing a service file (see {@link ServiceFiles}), in the order they
+   * were added. Unlike {@link #getOwners(String)} no element has to be checked for the file.
+   *
+   * @param path The path of the service file, like {@code "META-INF/services/java.sql.Driver"}
+   * @return The elements containing the service file. Empty if none do. {@code null} if the service
+   *     files of some elements couldn't be listed, so they have to be checked one by one.
+   */
+  ClassPathElement[] getServiceFileOwners(String path) {
+    return hasUnindexedServices ? null : serviceIndex.getOrDefault(path, NO_ELEMENTS);
+  }
+
+  /**
+   * Checks if a {@link URL} was added that could not be indexed. In that case a miss in the index
+   * doesn't mean that the {@link Class} doesn't exist.
+   *
+   * @return {@code true} if at least one {@link URL} could not be indexed
+   */
+  boolean hasUnindexedURLs() {
+    return hasUnindexedURLs;
+  }
+
+  /**
+   * Counts the jars that are currently open.
+   *
+   * @return The amount of open jar files and mappings
+   */
+  synchronized int getOpenJarCount() {
+    int count = 0;
+
+    for (ClassPathElement element : elements) {
+      if (element.isOpen()) {
+        ++count;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Counts how often jars have been opened in total, including reopening lazily opened jars after
+   * they were closed for being idle.
+   *
+   * @return The amount of times jars have been opened
+   */
+  synchronized int getTotalJarOpenCount() {
+    int count = 0;
+
+    for (ClassPathElement element : elements) {
+      if (element instanceof LazyJarClassPathElement) {
+        count += ((LazyJarClassPathElement) element).getOpenCount();
+      } else if (element.isOpen()) {
+        ++count;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Closes all lazily opened jars that haven't been used for {@link
+   * ClassLoaderOptions#getIdleJarTimeout()} milliseconds.
+   *
+   * @return The amount of closed jars
+   */
+  int closeIdleJars() {
+    final List<ClassPathElement> currentElements;
+
+    synchronized (this) {
+      currentElements = new ArrayList<>(elements);
+    }
+
+    final long now = System.nanoTime();
+    final long idleNanos = TimeUnit.MILLISECONDS.toNanos(options.getIdleJarTimeout());
+    int closed = 0;
+
+    for (ClassPathElement element : currentElements) {
+      if (!(element instanceof LazyJarClassPathElement)) continue;
+
+      try {
+        if (((LazyJarClassPathElement) element).closeIfIdle(now, idleNanos)) {
+          ++closed;
+        }
+      } catch (IOException e) {
+        // Nothing we can do about it. It'll be reopened if needed.
+      }
+    }
+
+    return closed;
+  }
+
+  /**
+   * Closes all indexed elements and forgets them, so later lookups find nothing instead of the
+   * closed elements.
+   *
+   * @throws IOException if closing any element fails. All elements are attempted to be closed
+   *     regardless.
+   */
+  synchronized void close() throws IOException {
+    if (idleCheck != null) {
+      idleCheck.cancel(false);
+    }
+
+    IOException exception = null;
+
+    for (ClassPathElement element : elements) {
+      try {
+        element.close();
+      } catch (IOException e) {
+        if (exception == null) {
+          exception = e;
+        } else {
+          exception.addSuppressed(e);
+        }
+      }
+    }
+
+    elements.clear();
+    packageIndex.clear();
+    serviceIndex.clear();
+    hasUnindexedServices = false;
+    decompressionPool.close();
+
+    if (exception != null) throw exception;
+  }
+
+  /**
+   * Periodically calls {@link #closeIdleJars()}.<br>
+   * Only holds a weak reference to the index, so an index that never got closed can still be
+   * garbage collected.
+   */
+  private static final class IdleJarCloser implements Runnable {
+    private static final ScheduledExecutorService EXECUTOR =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "DependencyClassLoader-IdleJarCloser");
+              thread.setDaemon(true);
+
+              return thread;
+            });
+
+    private final WeakReference<ClassPathIndex> index;
+
+    private IdleJarCloser(ClassPathIndex index) {
+      this.index = new WeakReference<>(index);
+    }
+
+    static ScheduledFuture<?> schedule(ClassPathIndex index, long idleJarTimeout) {
+      // Checking twice per timeout keeps jars open at most 1.5 times as long as configured
+      final long period = Math.max(1, idleJarTimeout / 2);
+
+      return EXECUTOR.scheduleWithFixedDelay(
+          new IdleJarCloser(index), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+      final ClassPathIndex currentIndex = index.get();
+
+      // Throwing cancels all further runs
+      if (currentIndex == null) throw new IllegalStateException("Index has been collected");
+
+      currentIndex.closeIdleJars();
+    }
+  }
+}
@@ -0,0 +1,360 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Records which Classes a {@link DependencyClassLoader} defines during startup and reads them ahead
+ * of time on the next start.<br>
+ * The recording is a plain text file with one binary Class name per line, in the order the Classes
+ * were defined. On the next start a few background threads walk through it and read the class files
+ * into memory, so the thread that actually loads the Classes only has to define them.
+ *
+ * <p>The prefetched class files never take up more than the configured amount of memory. Once the
+ * limit is reached the background threads wait until Classes have been taken.
+ *
+ * <p>Recordings don't have to match the current jars. Names that can't be found anymore are
+ * skipped. If most of the recorded names are missing the recording is considered outdated and
+ * prefetching stops early. Each start records a new list, so the recording heals itself.
+ *
+ * @author Yannick Schinko
+ */
+class ClassPrefetcher {
+  /** The maximum amount of Class names that get recorded. */
+  static final int MAX_RECORDED_CLASSES = 1 << 16;
+
+  /** Misses before a recording can be considered outdated. */
+  private static final int MIN_MISSES_FOR_OUTDATED = 64;
+
+  /** Marks a name that has been requested, so a late prefetch doesn't keep its bytes around. */
+  private static final Object CLAIMED = new Object();
+
+  private final ClassPathIndex classPathIndex;
+  private final Path recordingFile;
+  private final long memoryLimit;
+
+  private final Set<String> recording = Collections.synchronizedSet(new LinkedHashSet<>());
+  private final Map<String, Object> prefetched = new ConcurrentHashMap<>();
+  /** The names of the previous recording. Only those are ever put into {@link #prefetched}. */
+  private volatile Set<String> prefetchedNames = Collections.emptySet();
+
+  private final AtomicLong usedMemory = new AtomicLong();
+  private final AtomicInteger cursor = new AtomicInteger();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder found = new LongAdder();
+  private final Object memoryLock = new Object();
+  private volatile boolean finished = false;
+  private ExecutorService executor;
+
+  /**
+   * Creates a prefetcher that doesn't do anything yet.
+   *
+   * @param classPathIndex The index to read the class files from
+   * @param recordingFile The file the recording is read from and saved to
+   * @param memoryLimit The maximum amount of bytes of prefetched class files kept in memory
+   */
+  ClassPrefetcher(ClassPathIndex classPathIndex, Path recordingFile, long memoryLimit) {
+    this.classPathIndex = classPathIndex;
+    this.recordingFile = recordingFile;
+    this.memoryLimit = memoryLimit;
+  }
+
+  /**
+   * Reads the previous recording and starts prefetching its Classes in the background.<br>
+   * A missing or unreadable recording just means nothing gets prefetched.
+   *
+   * @param threads The amount of background threads to use
+   */
+  synchronized void start(int threads) {
+    if (finished || (executor != null)) return;
+
+    final List<String> names = readRecording();
+
+    if (names.isEmpty()) return;
+
+    prefetchedNames = new HashSet<>(names);
+
+    final AtomicInteger threadCount = new AtomicInteger();
+
+    executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              final Thread thread =
+                  new Thread(
+                      runnable, "DependencyClassLoader-Prefetch-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+
+              return thread;
+            });
+
+    for (int i = 0; i < threads; ++i) {
+      executor.execute(() -> prefetch(names));
+    }
+
+    executor.shutdown();
+  }
+
+  /**
+   * Records that a Class has been defined.
+   *
+   * @param name The binary name of the {@link Class}
+   */
+  void record(String name) {
+    if (finished || (recording.size() >= MAX_RECORDED_CLASSES)) return;
+
+    recording.add(name);
+  }
+
+  /**
+   * Takes the prefetched class file of a {@link Class}.<br>
+   * Each class file can only be taken once. Afterwards it won't be prefetched again. Names that
+   * aren't part of the previous recording are ignored, so they aren't remembered either.
+   *
+   * @param name The binary name of the {@link Class}
+   * @return The prefetched class file or {@code null} if it hasn't been prefetched (yet)
+   */
+  Prefetched take(String name) {
+    if (finished || !prefetchedNames.contains(name)) return null;
+
+    final Object previous = prefetched.put(name, CLAIMED);
+
+    if (!(previous instanceof Prefetched)) return null;
+
+    final Prefetched result = (Prefetched) previous;
+
+    freeMemory(result.getSize());
+    hits.increment();
+
+    return result;
+  }
+
+  /**
+   * Returns how many Classes were defined from prefetched class files.
+   *
+   * @return The amount of hits
+   */
+  long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Waits until the background threads have gone through the whole recording.
+   *
+   * @param timeout The maximum time to wait
+   * @param unit The unit of {@code timeout}
+   * @return {@code true} if prefetching is done or never started
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean awaitPrefetch(long timeout, TimeUnit unit) throws InterruptedException {
+    final ExecutorService currentExecutor;
+
+    synchronized (this) {
+      currentExecutor = executor;
+    }
+
+    return (currentExecutor == null) || currentExecutor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Stops prefetching, drops all class files that haven't been taken and saves the recording.<br>
+   * Calling this more than once has no effect.
+   *
+   * @throws IOException if saving the recording fails
+   */
+  synchronized void finish() throws IOException {
+    if (finished) return;
+
+    finished = true;
+
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+
+    synchronized (memoryLock) {
+      memoryLock.notifyAll();
+    }
+
+    // Whoever removes a class file releases it
+    for (String name : prefetched.keySet()) {
+      final Object value = prefetched.remove(name);
+
+      if (value instanceof Prefetched) {
+        ((Prefetched) value).classFile.release();
+      }
+    }
+
+    prefetchedNames = Collections.emptySet();
+    usedMemory.set(0);
+
+    saveRecording();
+  }
+
+  private void prefetch(List<String> names) {
+    int index;
+
+    while (!finished && ((index = cursor.getAndIncrement()) < names.size())) {
+      final String name = names.get(index);
+
+      // Already requested by the ClassLoader
+      if (prefetched.containsKey(name)) continue;
+
+      final Prefetched classFile;
+
+      try {
+        classFile = read(name);
+      } catch (IOException | RuntimeException e) {
+        // Will be read again when it's actually needed, which reports the error properly
+        continue;
+      }
+
+      if (classFile == null) {
+        misses.increment();
+
+        if (isOutdated()) return;
+
+        continue;
+      }
+
+      found.increment();
+
+      if (!reserveMemory(classFile.getSize())) return;
+
+      if (prefetched.putIfAbsent(name, classFile) != null) {
+        // Requested while we were reading it
+        freeMemory(classFile.getSize());
+        classFile.classFile.release();
+      } else if (finished && prefetched.remove(name, classFile)) {
+        // Finished while we were reading it. Don't keep it around.
+        classFile.classFile.release();
+      }
+    }
+  }
+
+  private Prefetched read(String name) throws IOException {
+    final String packageName = ClassPathElement.getPackageName(name);
+    final String path = name.replace('.', '/').concat(".class");
+
+    for (ClassPathElement element : classPathIndex.getOwners(packageName)) {
+      final ClassPathElement.ClassFile classFile = element.readClassFile(path);
+
+      if (classFile == null) continue;
+
+      // Views on mapped jars only have to be released once they are taken or dropped
+      if (classFile.getPool() == null) return new Prefetched(element, classFile);
+
+      // Pooled buffers must be returned right away
+      try {
+        final ByteBuffer buffer = classFile.getBuffer();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+
+        return new Prefetched(
+            element, new ClassPathElement.ClassFile(bytes, classFile.getCodeSigners()));
+      } finally {
+        classFile.release();
+      }
+    }
+
+    return null;
+  }
+
+  private boolean isOutdated() {
+    final long missCount = misses.sum();
+
+    return (missCount >= MIN_MISSES_FOR_OUTDATED) && (missCount > found.sum());
+  }
+
+  private boolean reserveMemory(int size) {
+    synchronized (memoryLock) {
+      // A single class file larger than the limit is allowed when nothing else is prefetched
+      while (!finished && (usedMemory.get() > 0) && (usedMemory.get() + size > memoryLimit)) {
+        try {
+          memoryLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+
+          return false;
+        }
+      }
+
+      if (finished) return false;
+
+      usedMemory.addAndGet(size);
+
+      return true;
+    }
+  }
+
+  private void freeMemory(int size) {
+    synchronized (memoryLock) {
+      usedMemory.addAndGet(-size);
+      memoryLock.notifyAll();
+    }
+  }
+
+  private List<String> readRecording() {
+    final List<String> names = new ArrayList<>();
+
+    try (BufferedReader reader = Files.newBufferedReader(recordingFile, StandardCharsets.UTF_8)) {
+      String line;
+
+      while (((line = reader.readLine()) != null) && (names.size() < MAX_RECORDED_CLASSES)) {
+        if (!line.isEmpty()) {
+          names.add(line);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // First start
+    } catch (IOException e) {
+      // Unreadable. Whatever we got so far is still worth prefetching
+    }
+
+    return names;
+  }
+
+  private void saveRecording() throws IOException {
+    final List<String> names;
+
+    synchronized (recording) {
+      // Nothing got loaded. Keep the previous recording.
+      if (recording.isEmpty()) return;
+
+      names = new ArrayList<>(recording);
+    }
+
+    AtomicFiles.writeLines(recordingFile, names);
+  }
+
+  /** A class file that has been read ahead of time and the element it has been read from. */
+  @RequiredArgsConstructor
+  static final class Prefetched {
+    final ClassPathElement element;
+    final ClassPathElement.ClassFile classFile;
+
+    int getSize() {
+      return classFile.getBuffer().remaining();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * A bounded pool of heap {@link ByteBuffer}s and {@link Inflater}s for inflating compressed jar
+ * entries.<br>
+ * Reusing them avoids allocating a fresh {@code byte[]} and native {@link Inflater} memory for
+ * every single Class that gets loaded.
+ *
+ * @author Yannick Schinko
+ */
+class DecompressionPool {
+  /** Buffers larger than this are not kept after being released. */
+  static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+
+  private static final int MIN_BUFFER_SIZE = 1 << 13;
+
+  private final int maxPooled;
+  private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooledBuffers = new AtomicInteger();
+  private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooledInflaters = new AtomicInteger();
+
+  /**
+   * Creates a new pool.
+   *
+   * @param maxPooled The maximum amount of buffers and of {@link Inflater}s that are kept
+   */
+  DecompressionPool(int maxPooled) {
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * Takes a buffer from the pool or allocates a new one.
+   *
+   * @param size The minimum capacity of the buffer
+   * @return A cleared heap buffer whose limit is set to {@code size}
+   */
+  ByteBuffer acquireBuffer(int size) {
+    // Only the head is checked. Searching the whole queue would cost more than allocating.
+    final ByteBuffer pooled = buffers.poll();
+
+    if (pooled != null) {
+      pooledBuffers.decrementAndGet();
+
+      if (pooled.capacity() >= size) {
+        pooled.clear().limit(size);
+
+        return pooled;
+      }
+    }
+
+    final ByteBuffer buffer = ByteBuffer.allocate(Math.max(MIN_BUFFER_SIZE, roundUp(size)));
+    buffer.limit(size);
+
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool.
+   *
+   * @param buffer The buffer obtained from {@link #acquireBuffer(int)}
+   */
+  void releaseBuffer(ByteBuffer buffer) {
+    if ((buffer.capacity() > MAX_POOLED_BUFFER_SIZE)
+        || (pooledBuffers.incrementAndGet() > maxPooled)) {
+      pooledBuffers.decrementAndGet();
+
+      return;
+    }
+
+    buffers.offer(buffer);
+  }
+
+  /**
+   * Takes an {@link Inflater} for raw deflate data from the pool or creates a new one.
+   *
+   * @return A reset {@link Inflater}
+   */
+  Inflater acquireInflater() {
+    final Inflater inflater = inflaters.poll();
+
+    if (inflater == null) return new Inflater(true);
+
+    pooledInflaters.decrementAndGet();
+
+    return inflater;
+  }
+
+  /**
+   * Returns an {@link Inflater} to the pool.
+   *
+   * @param inflater The {@link Inflater} obtained from {@link #acquireInflater()}
+   */
+  void releaseInflater(Inflater inflater) {
+    if (pooledInflaters.incrementAndGet() > maxPooled) {
+      pooledInflaters.decrementAndGet();
+      inflater.end();
+
+      return;
+    }
+
+    inflater.reset();
+    inflaters.offer(inflater);
+  }
+
+  /** Frees the native memory of all pooled {@link Inflater}s and drops all buffers. */
+  void close() {
+    Inflater inflater;
+
+    while ((inflater = inflaters.poll()) != null) {
+      pooledInflaters.decrementAndGet();
+      inflater.end();
+    }
+
+    buffers.clear();
+    pooledBuffers.set(0);
+  }
+
+  private static int roundUp(int size) {
+    if (size > (1 << 30)) return size;
+
+    final int highestBit = Integer.highestOneBit(size);
+
+    return (highestBit == size) ? size : (highestBit << 1);
+  }
+}
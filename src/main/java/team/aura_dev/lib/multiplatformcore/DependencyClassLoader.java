@@ -1,10 +1,37 @@
 package team.aura_dev.lib.multiplatformcore;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 
 /**
  * A custom {@link ClassLoader} implementation that allows adding {@link URL}s during runtime.
@@ -17,12 +44,113 @@ import java.util.stream.Collectors;
  * ClassLoader). Very useful to ensure versions of libraries are exactly the ones added and no
  * conflicts with other plugins that add the same libraries to their jars.
  *
+ * <p>Every local jar file or directory added to this ClassLoader gets indexed by the packages it
+ * contains. Loading a {@link Class} then only looks into the jars that actually contain its package
+ * and Classes from packages that none of the jars contain are passed to the parent ClassLoader
+ * right away.
+ *
+ * <p>Names that could not be found in any of the jars are remembered in a bounded cache, so
+ * repeated lookups of the same name don't have to look into the jars again. The cache is cleared
+ * whenever a new {@link URL} is added.
+ *
+ * <p>Classes in packages the platform provides (see {@link Platform} and {@link
+ * #addParentFirstPackages(Collection)}) are requested from the parent ClassLoader first, without
+ * looking into any of the jars. Only if the parent doesn't have them, the jars are searched.
+ *
+ * <p>Resources are looked up child first as well, through the same index. So a {@code
+ * reference.conf} or logging configuration in our jars wins over the one of the server. {@link
+ * #getResourceAsStream(String)} reads them directly from the jar, without going through {@link
+ * URL}s. Resources in parent first and excluded packages are still requested from the parent first.
+ *
+ * <p>The service files in {@code META-INF/services} of our jars are indexed when the jars are
+ * added, so {@link java.util.ServiceLoader} lookups cost the same no matter how many jars we have.
+ * {@link #getServiceProviderNames(String)} and {@link #getServiceProviders(Class)} additionally
+ * cache the parsed provider names until a new {@link URL} or delegate is added.
+ *
+ * <p>Optionally the Classes defined during startup can be recorded and read ahead of time by
+ * background threads on the next start. See {@link #startClassPrefetch(Path)}. Or they can be put
+ * into a Class Data Sharing archive. See {@link #startClassDataSharing(Path)}.
+ *
+ * <p>What the ClassLoader does can be measured with {@link ClassLoaderOptions#isMetrics()}. See
+ * {@link #getMetrics()} and {@link #registerMetricsMBean(String)}. Slow Class loads are recorded as
+ * Java Flight Recorder events, see {@link FlightRecorderEvents#SLOW_CLASS_LOAD}. Fast loads only
+ * cost two {@link System#nanoTime()} calls for that.
+ *
+ * <p>This ClassLoader is parallel capable. Loading a Class only locks its name, so threads loading
+ * different Classes never wait for each other.
+ *
+ * <p>Once all {@link URL}s have been added, the ClassLoader can be sealed with {@link #seal()}.
+ * Lookups of Classes and resources are then answered by immutable tables, without locking.
+ *
  * @author Yannick Schinko
  */
 public class DependencyClassLoader extends URLClassLoader {
+  /** The maximum amount of missed names that are remembered before the cache gets cleared. */
+  protected static final int NEGATIVE_LOOKUP_CACHE_SIZE = 4096;
+
+  /**
+   * {@link ClassLoaderOptions} is part of our public signature, so code loaded by us must see the
+   * same Class as we do. Matches the options and their builder.
+   */
+  private static final String OPTIONS_CLASS_PREFIX = ClassLoaderOptions.class.getName();
+
+  private static final Delegate[] NO_DELEGATES = new Delegate[0];
+  /** Marks a resource none of our {@link URL}s contain in {@link #resourceLocations}. */
+  private static final Object NO_RESOURCE = new Object();
+  /**
+   * The largest resource {@link #getResourceAsStream(String)} reads into memory at once. Larger
+   * ones are streamed from their {@link ClassPathElement}.
+   */
+  static final long MAX_BUFFERED_RESOURCE_SIZE = 64 * 1024;
+  /** The JMX domain of the metrics MBeans. The package of this class, even when relocated. */
+  private static final String METRICS_MBEAN_DOMAIN =
+      DependencyClassLoader.class
+          .getName()
+          .substring(0, DependencyClassLoader.class.getName().lastIndexOf('.'));
+
+  static {
+    ClassLoader.registerAsParallelCapable();
+  }
+
   protected final ClassLoader parent;
   protected final String ownClassName;
   public final List<String> excludedPackageNames;
+  final PackagePrefixMatcher excludedPackageMatcher;
+  @Getter protected final ClassLoaderOptions options;
+  final ClassPathIndex classPathIndex;
+  final NegativeLookupCache negativeLookupCache =
+      new NegativeLookupCache(NEGATIVE_LOOKUP_CACHE_SIZE);
+  final ClassLoadingLocks classLoadingLocks = new ClassLoadingLocks();
+  private final Set<String> parentFirstPackageNames = new LinkedHashSet<>();
+  private volatile PackagePrefixMatcher parentFirstPackageMatcher;
+  private final LongAdder shortCircuitedLookups = new LongAdder();
+  private volatile ClassPrefetcher classPrefetcher;
+  private volatile Path classDataSharingDirectory;
+  private final DependencyClassLoader dependencyLayer;
+  private final Queue<String> definedClassNames;
+  private final List<Delegate> delegates = new CopyOnWriteArrayList<>();
+  private final Map<String, Delegate[]> delegatesByPackage = new ConcurrentHashMap<>();
+  private final List<Delegate> unindexedDelegates = new CopyOnWriteArrayList<>();
+  /**
+   * The {@link ClassPathElement} that contains a resource or {@link #NO_RESOURCE}. {@code null} if
+   * {@link ClassLoaderOptions#isResourceCache()} is disabled.
+   */
+  private final Map<String, Object> resourceLocations;
+  /** The provider names of every service that has been looked up so far. */
+  private final Map<String, List<String>> serviceProviderNames = new ConcurrentHashMap<>();
+
+  private volatile boolean sealed = false;
+  /**
+   * The tables built by {@link #seal()}. {@code null} if not sealed or if not all {@link URL}s
+   * could be indexed.
+   */
+  private volatile SealedIndex sealedIndex;
+  /** {@code null} if {@link ClassLoaderOptions#isMetrics()} is disabled. */
+  private final ClassLoaderMetrics metrics;
+  /** The name the metrics are registered with as a JMX MBean or {@code null}. */
+  private ObjectName metricsMBeanName;
+  /** The name of the plugin this ClassLoader belongs to or {@code null}. */
+  private volatile String pluginName;
 
   /**
    * Constructor that automatically detects the parent {@link ClassLoader} by using its own {@link
@@ -81,44 +209,557 @@ public class DependencyClassLoader extends URLClassLoader {
    *     classes.
    */
   public DependencyClassLoader(ClassLoader parent, String... excludedPackageNames) {
+    this(parent, ClassLoaderOptions.DEFAULT, excludedPackageNames);
+  }
+
+  /**
+   * Constructor that allows you to specify the parent {@link ClassLoader} and the {@link
+   * ClassLoaderOptions} you want to use.
+   *
+   * @param parent parent {@link ClassLoader} to be used if a {@link Class} cannot be found in the
+   *     own {@link URL}s.
+   * @param options The optional features to enable
+   * @param excludedPackageNames A list of packages we wish to not load with this {@link
+   *     ClassLoader}.<br>
+   *     Use this for classes that need to accessed externally (like the api) or the bootstrap
+   *     classes.
+   */
+  public DependencyClassLoader(
+      ClassLoader parent, ClassLoaderOptions options, String... excludedPackageNames) {
     // Start off with adding its own jar URL
-    super(getOwnJarURL(), parent);
+    this(getOwnJarURL(), parent, null, options, excludedPackageNames);
+  }
+
+  private DependencyClassLoader(
+      URL[] urls,
+      ClassLoader parent,
+      DependencyClassLoader dependencyLayer,
+      ClassLoaderOptions options,
+      String... excludedPackageNames) {
+    super(urls, parent);
 
+    this.dependencyLayer = dependencyLayer;
+    this.options = options;
+    this.classPathIndex = new ClassPathIndex(options);
+    this.definedClassNames =
+        (options.isRecordDefinedClasses() || options.isClassDataSharing())
+            ? new ConcurrentLinkedQueue<>()
+            : null;
+    this.resourceLocations = options.isResourceCache() ? new ConcurrentHashMap<>() : null;
+    this.metrics = options.isMetrics() ? new ClassLoaderMetrics() : null;
     this.ownClassName = DependencyClassLoader.class.getName();
     this.parent = parent;
     this.excludedPackageNames =
-        Arrays.stream(excludedPackageNames)
-            .map(exclPackage -> exclPackage + ".")
-            .collect(Collectors.toList());
+        Collections.unmodifiableList(
+            Arrays.stream(excludedPackageNames)
+                .map(exclPackage -> exclPackage + ".")
+                .collect(Collectors.toList()));
+    this.excludedPackageMatcher = new PackagePrefixMatcher(this.excludedPackageNames);
+
+    addParentFirstPackages(Platform.JAVA.getPackageNames());
+
+    for (URL url : getURLs()) {
+      classPathIndex.add(url);
+    }
+  }
+
+  /**
+   * Creates a ClassLoader meant to hold the libraries of a plugin, separate from the plugin's own
+   * code (see {@link #createPluginLayer(DependencyClassLoader, ClassLoaderOptions, String...)}).
+   * <br>
+   * Contrary to the constructors, its own jar is not added to it. The libraries and their Classes
+   * stay loaded while the plugin layer on top of it gets replaced on reloads.
+   *
+   * @param parent parent {@link ClassLoader} to be used if a {@link Class} cannot be found in the
+   *     own {@link URL}s.
+   * @param options The optional features to enable
+   * @param excludedPackageNames A list of packages we wish to not load with this {@link
+   *     ClassLoader}. Should be the same as the ones of the plugin layer.
+   * @return The new dependency layer
+   */
+  public static DependencyClassLoader createDependencyLayer(
+      ClassLoader parent, ClassLoaderOptions options, String... excludedPackageNames) {
+    return new DependencyClassLoader(new URL[0], parent, null, options, excludedPackageNames);
+  }
+
+  /**
+   * Creates a ClassLoader for the code of a plugin on top of a dependency layer created with {@link
+   * #createDependencyLayer(ClassLoader, ClassLoaderOptions, String...)}.<br>
+   * Its own jar gets added to it, just like with the constructors. Everything it can't find itself
+   * is loaded through the dependency layer. {@link #getDependencyLayer()} returns the dependency
+   * layer, so libraries downloaded through it end up there.
+   *
+   * @param dependencyLayer The dependency layer, which becomes the parent of the new ClassLoader
+   * @param options The optional features to enable
+   * @param excludedPackageNames A list of packages we wish to not load with this {@link
+   *     ClassLoader}.
+   * @return The new plugin layer
+   */
+  public static DependencyClassLoader createPluginLayer(
+      DependencyClassLoader dependencyLayer,
+      ClassLoaderOptions options,
+      String... excludedPackageNames) {
+    return new DependencyClassLoader(
+        getOwnJarURL(), dependencyLayer, dependencyLayer, options, excludedPackageNames);
+  }
+
+  /**
+   * Returns the ClassLoader libraries should be added to.
+   *
+   * @return The dependency layer if this ClassLoader has been created with {@link
+   *     #createPluginLayer(DependencyClassLoader, ClassLoaderOptions, String...)}, else this
+   *     ClassLoader itself
+   */
+  public DependencyClassLoader getDependencyLayer() {
+    return (dependencyLayer == null) ? this : dependencyLayer;
+  }
+
+  /**
+   * Adds a {@link ClassLoader} obtained from {@link SharedLibraries#acquire(String,
+   * java.util.function.Supplier)}.<br>
+   * Classes that aren't in our own {@link URL}s are looked up in it before asking the parent. It is
+   * released again when this ClassLoader gets closed.
+   *
+   * @param key The key the {@link ClassLoader} was acquired with
+   * @param classLoader The shared {@link ClassLoader}
+   * @see #addDelegate(URLClassLoader, boolean)
+   */
+  public void addSharedLibrary(String key, URLClassLoader classLoader) {
+    addDelegate(classLoader, () -> SharedLibraries.release(key));
+  }
+
+  /**
+   * Adds a {@link ClassLoader} that is asked for Classes that aren't in our own {@link URL}s,
+   * before asking the parent.<br>
+   * It is only asked for Classes from packages that its own {@link URL}s contain. So a lookup never
+   * goes through delegates that can't have the {@link Class}. Delegates are asked in the order they
+   * were added. A {@link DependencyClassLoader} delegate only searches its own {@link URL}s, so add
+   * the delegates of a delegate here too if they should be visible.
+   *
+   * @param classLoader The {@link ClassLoader} to delegate to
+   * @param owned If {@code true} it gets closed together with this ClassLoader
+   */
+  public void addDelegate(URLClassLoader classLoader, boolean owned) {
+    addDelegate(classLoader, owned ? classLoader : null);
+  }
+
+  private synchronized void addDelegate(URLClassLoader classLoader, Closeable onClose) {
+    final Set<String> packageNames = scanPackageNames(classLoader);
+    final Delegate delegate = new Delegate(classLoader, onClose);
+
+    delegates.add(delegate);
+
+    if (packageNames == null) {
+      // Can't tell what's in there, so it has to be asked for everything
+      unindexedDelegates.add(delegate);
+    } else {
+      for (String packageName : packageNames) {
+        final Delegate[] current = delegatesByPackage.getOrDefault(packageName, NO_DELEGATES);
+        final Delegate[] updated = Arrays.copyOf(current, current.length + 1);
+
+        updated[current.length] = delegate;
+        delegatesByPackage.put(packageName, updated);
+      }
+    }
+
+    // Names we couldn't find before might be in there
+    negativeLookupCache.invalidate();
+    serviceProviderNames.clear();
+  }
+
+  /**
+   * Returns the names of all Classes this ClassLoader defined so far, in the order they were
+   * defined.<br>
+   * Only recorded if {@link ClassLoaderOptions#isRecordDefinedClasses()} or {@link
+   * ClassLoaderOptions#isClassDataSharing()} is enabled.
+   *
+   * @return The binary names of the defined Classes. Empty if they aren't recorded.
+   */
+  public List<String> getDefinedClassNames() {
+    return (definedClassNames == null)
+        ? Collections.emptyList()
+        : Collections.unmodifiableList(new ArrayList<>(definedClassNames));
   }
 
+  /**
+   * Adds a {@link URL} to this ClassLoader.<br>
+   * {@code jar:file:...!/} {@link URL}s are converted to plain {@code file:} {@link URL}s. That way
+   * the jar is opened by this ClassLoader itself and closed with {@link #close()}, instead of being
+   * opened through the JVM wide cache of {@link java.net.JarURLConnection}, which keeps it open
+   * forever.
+   *
+   * @param url The {@link URL} to add
+   * @throws IllegalStateException if this ClassLoader has been sealed
+   */
   @Override
-  public void addURL(URL url) {
-    super.addURL(url);
+  public synchronized void addURL(URL url) {
+    if (sealed) throw new IllegalStateException("The ClassLoader has been sealed");
+
+    final URL fileURL = toFileURL(url);
+
+    super.addURL(fileURL);
+    classPathIndex.add(fileURL);
+    // The new URL might contain Classes we previously couldn't find
+    negativeLookupCache.invalidate();
+
+    if (resourceLocations != null) {
+      resourceLocations.clear();
+    }
+
+    serviceProviderNames.clear();
+  }
+
+  /**
+   * Seals this ClassLoader, so no more {@link URL}s can be added.<br>
+   * The names of all Classes and resources in our {@link URL}s get listed once and put into
+   * immutable perfect hash tables (see {@link PerfectHashMap}). From then on finding out if and
+   * where we have a Class or resource takes a single lookup, without locking or allocating. Names
+   * we don't have are passed on to the delegates and the parent without taking the lock of the name
+   * at all.
+   *
+   * <p>Costs the memory of the tables. If a {@link URL} couldn't be indexed or listing the entries
+   * of a jar fails, lookups keep going through the package index. Sealing twice has no effect.
+   */
+  public synchronized void seal() {
+    if (sealed) return;
+
+    sealed = true;
+
+    if (classPathIndex.hasUnindexedURLs()) return;
+
+    try {
+      sealedIndex = new SealedIndex(classPathIndex.getElements());
+    } catch (IOException e) {
+      // Lookups still work through the package index
+    }
+  }
+
+  /**
+   * Checks if {@link #seal()} has been called.
+   *
+   * @return {@code true} if no more {@link URL}s can be added
+   */
+  public boolean isSealed() {
+    return sealed;
+  }
+
+  /**
+   * Adds packages whose Classes should be requested from the parent {@link ClassLoader} first,
+   * without looking into our own jars.<br>
+   * Useful for the packages the platform provides. The packages of {@link Platform#JAVA} are always
+   * added.
+   *
+   * <p>If the parent can't find a Class from one of these packages, our jars are still searched.
+   *
+   * @param packageNames The names of the packages to add (without a trailing {@code '.'}).
+   *     Subpackages are included automatically.
+   * @see Platform
+   */
+  public synchronized void addParentFirstPackages(Collection<String> packageNames) {
+    for (String packageName : packageNames) {
+      parentFirstPackageNames.add(packageName + ".");
+    }
+
+    // Rebuilt as a whole, so lookups never see a partially updated matcher
+    parentFirstPackageMatcher = new PackagePrefixMatcher(parentFirstPackageNames);
+  }
+
+  /**
+   * Returns all packages that are requested from the parent {@link ClassLoader} first.
+   *
+   * @return The package prefixes, each ending with a {@code '.'}
+   * @see #addParentFirstPackages(Collection)
+   */
+  public synchronized List<String> getParentFirstPackageNames() {
+    return Collections.unmodifiableList(new ArrayList<>(parentFirstPackageNames));
+  }
+
+  /**
+   * Returns how many lookups were answered by the parent {@link ClassLoader} because their package
+   * was added through {@link #addParentFirstPackages(Collection)}, without looking into any of our
+   * jars.
+   *
+   * @return The amount of short-circuited lookups
+   */
+  public long getShortCircuitedLookups() {
+    return shortCircuitedLookups.sum();
+  }
+
+  /**
+   * Returns the name of the plugin this ClassLoader belongs to.
+   *
+   * @return The name of the plugin or {@code null} if it hasn't been set
+   * @see #setPluginName(String)
+   */
+  public String getPluginName() {
+    return pluginName;
+  }
+
+  /**
+   * Sets the name of the plugin this ClassLoader belongs to. It is added to the {@link
+   * FlightRecorderEvents} of the ClassLoader, so the events of different plugins can be told apart.
+   * The {@link team.aura_dev.lib.multiplatformcore.bootstrap.MultiProjectBootstrapper} sets it to
+   * the package name of the plugin.
+   *
+   * @param pluginName The name of the plugin
+   */
+  public void setPluginName(String pluginName) {
+    this.pluginName = pluginName;
+  }
+
+  /**
+   * Returns the counters and latency histograms of this ClassLoader.
+   *
+   * @return The metrics or {@code null} unless {@link ClassLoaderOptions#isMetrics()} is enabled
+   */
+  public ClassLoaderMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Registers the metrics of this ClassLoader as a JMX MBean in the platform {@link MBeanServer},
+   * with the {@link ObjectName} {@code <package of this class>:type=DependencyClassLoader,name=
+   * <name>}. It is unregistered again when the ClassLoader is closed. Registering it again with a
+   * different name unregisters the previous one.
+   *
+   * <p>Does nothing unless {@link ClassLoaderOptions#isMetrics()} is enabled.
+   *
+   * @param name The name to tell the ClassLoaders apart, like the name of the plugin and the layer
+   * @return The {@link ObjectName} the MBean has been registered with or {@code null} if metrics
+   *     are disabled
+   * @throws JMException if the MBean could not be registered, for example because another one with
+   *     the same name is already registered
+   */
+  public synchronized ObjectName registerMetricsMBean(String name) throws JMException {
+    if (metrics == null) return null;
+
+    final ObjectName objectName =
+        new ObjectName(
+            METRICS_MBEAN_DOMAIN + ":type=DependencyClassLoader,name=" + ObjectName.quote(name));
+
+    if (objectName.equals(metricsMBeanName)) return objectName;
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.registerMBean(metrics, objectName);
+    unregisterMetricsMBean();
+    metricsMBeanName = objectName;
+
+    return objectName;
+  }
+
+  /**
+   * Unregisters the metrics MBean registered with {@link #registerMetricsMBean(String)}. Does
+   * nothing if it isn't registered.
+   *
+   * @throws JMException if the MBean could not be unregistered
+   */
+  public synchronized void unregisterMetricsMBean() throws JMException {
+    if (metricsMBeanName == null) return;
+
+    final ObjectName objectName = metricsMBeanName;
+    metricsMBeanName = null;
+
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+  }
+
+  /**
+   * Loads a file with the indexes of previously added jars.<br>
+   * Jars added afterwards that are unchanged since the file was saved don't have to be scanned and
+   * are only opened once a Class is loaded from them. Must be called before adding the jars.
+   *
+   * <p>Does nothing unless {@link ClassLoaderOptions#isPersistentIndex()} is enabled. A missing or
+   * corrupt file is ignored.
+   *
+   * @param file The index file
+   * @return {@code true} if the file could be loaded
+   * @see #savePersistentIndex(Path)
+   */
+  public boolean loadPersistentIndex(Path file) {
+    return classPathIndex.loadPersistentIndex(file);
+  }
+
+  /**
+   * Saves the indexes of all jars added to this ClassLoader, so they can be loaded with {@link
+   * #loadPersistentIndex(Path)} on the next start.<br>
+   * The file is only written if any of the jars had to be indexed again.
+   *
+   * <p>Does nothing unless {@link ClassLoaderOptions#isPersistentIndex()} is enabled.
+   *
+   * @param file The index file
+   * @throws IOException if writing the file fails
+   */
+  public void savePersistentIndex(Path file) throws IOException {
+    classPathIndex.savePersistentIndex(file);
+  }
+
+  /**
+   * Loads the signers of signed jars that have been verified completely during previous runs and
+   * saves them to the same file again once this ClassLoader gets closed (see {@link
+   * #saveSignatureCache()}).<br>
+   * Signed jars added afterwards whose SHA-1 hash matches a recorded one are opened without
+   * verifying every entry again. Their Classes still get the recorded signers in their {@link
+   * java.security.CodeSource}. Must be called before adding the jars.
+   *
+   * <p>Does nothing unless {@link ClassLoaderOptions#isSignatureCache()} is enabled. A missing or
+   * corrupt file is ignored.
+   *
+   * @param file The file the signers are persisted in
+   * @return {@code true} if the file could be loaded
+   */
+  public boolean loadSignatureCache(Path file) {
+    return classPathIndex.loadSignatureCache(file);
+  }
+
+  /**
+   * Saves the signers of the signed jars opened so far to the file passed to {@link
+   * #loadSignatureCache(Path)}, if any of them had to be verified. Happens automatically when this
+   * ClassLoader gets closed.
+   *
+   * @throws IOException if writing the file fails
+   */
+  public void saveSignatureCache() throws IOException {
+    classPathIndex.saveSignatureCache();
+  }
+
+  /**
+   * Returns how many of the jars added to this ClassLoader are currently open.<br>
+   * With {@link ClassLoaderOptions#isLazyOpening()} jars only count once a Class has been loaded
+   * from them and stop counting once they have been closed for being idle.
+   *
+   * @return The amount of open jar files and mappings
+   */
+  public int getOpenJarCount() {
+    return classPathIndex.getOpenJarCount();
+  }
+
+  /**
+   * Returns how often jars have been opened in total, including reopening lazily opened jars after
+   * they were closed for being idle.
+   *
+   * @return The amount of times jars have been opened
+   */
+  public int getTotalJarOpenCount() {
+    return classPathIndex.getTotalJarOpenCount();
+  }
+
+  /**
+   * Starts prefetching the Classes recorded during the last start and recording the Classes defined
+   * from now on.<br>
+   * The class files are read by background threads in the order they were defined last time, so
+   * most of them are already in memory once they are needed. Should be called right after all
+   * {@link URL}s have been added. Call {@link #finishClassPrefetch()} once the plugin is fully
+   * enabled to save the new recording.
+   *
+   * <p>Does nothing unless {@link ClassLoaderOptions#isPrefetch()} is enabled. A missing or
+   * outdated recording is fine.
+   *
+   * @param recordingFile The file the recording is read from and saved to
+   */
+  public synchronized void startClassPrefetch(Path recordingFile) {
+    if (!options.isPrefetch() || (classPrefetcher != null)) return;
+
+    final ClassPrefetcher prefetcher =
+        new ClassPrefetcher(classPathIndex, recordingFile, options.getPrefetchMemoryLimit());
+    prefetcher.start(options.getPrefetchThreads());
+
+    classPrefetcher = prefetcher;
+  }
+
+  /**
+   * Stops prefetching and saves the Classes defined since {@link #startClassPrefetch(Path)} was
+   * called. Prefetched class files that weren't needed are dropped.<br>
+   * Also happens when this ClassLoader gets closed.
+   *
+   * @throws IOException if saving the recording fails
+   */
+  public void finishClassPrefetch() throws IOException {
+    final ClassPrefetcher prefetcher = classPrefetcher;
+
+    if (prefetcher != null) {
+      prefetcher.finish();
+    }
+  }
+
+  /**
+   * Returns how many Classes were defined from class files that were prefetched by {@link
+   * #startClassPrefetch(Path)}.
+   *
+   * @return The amount of prefetched Classes that were used
+   */
+  public long getPrefetchHits() {
+    final ClassPrefetcher prefetcher = classPrefetcher;
+
+    return (prefetcher == null) ? 0 : prefetcher.getHits();
+  }
+
+  /**
+   * Prepares Class Data Sharing (see {@link ClassDataSharing}) with the files in a directory.<br>
+   * Deletes the archive if the jars changed since it was created. Call {@link
+   * #finishClassDataSharing()} once the plugin is fully enabled to write the class list for the
+   * next archive.
+   *
+   * <p>The JVM uses the archive on its own, if the server has been started with it. Classes whose
+   * class files don't match the archived ones are parsed as usual.
+   *
+   * <p>Does nothing unless {@link ClassLoaderOptions#isClassDataSharing()} is enabled and the JVM
+   * supports it.
+   *
+   * @param directory The directory containing the class list and the archive
+   * @return {@code true} if the JVM uses an archive that matches the jars
+   */
+  public synchronized boolean startClassDataSharing(Path directory) {
+    if (!options.isClassDataSharing() || !ClassDataSharing.isSupported()) return false;
+
+    classDataSharingDirectory = directory;
+
+    try {
+      return ClassDataSharing.verifyArchive(directory)
+          && ClassDataSharing.isArchiveInUse(directory);
+    } catch (IOException e) {
+      // The JVM still checks every archived Class itself
+      return false;
+    }
+  }
+
+  /**
+   * Writes the class list for the next archive into the directory passed to {@link
+   * #startClassDataSharing(Path)}. Also happens when this ClassLoader gets closed.<br>
+   * Does nothing if that hasn't been called or if the class list has already been written, so
+   * Classes loaded after startup don't end up in the archive.
+   *
+   * @throws IOException if writing the class list fails
+   */
+  public synchronized void finishClassDataSharing() throws IOException {
+    final Path directory = classDataSharingDirectory;
+
+    if (directory != null) {
+      classDataSharingDirectory = null;
+      ClassDataSharing.writeClassList(this, directory);
+    }
   }
 
   @Override
   protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
     // Is the Class loaded already?
+    // Checking this before locking keeps the most common case lock free
     Class<?> loadedClass = findLoadedClass(name);
 
-    // Load class through our own ClassLoader if it hasn't been excluded
-    if ((loadedClass == null)
-        && !(name.equals(ownClassName)
-            || this.excludedPackageNames.stream().anyMatch(name::startsWith))) {
-      try {
-        // Find the Class from given jar URLs
-        loadedClass = findClass(name);
-      } catch (ClassNotFoundException e) {
-        // Ignore
-      }
-    }
-
-    // The Class hasn't been found yet.
-    // Let's try finding it in our parent ClassLoader.
-    // This will throw ClassNotFoundException in case of failure.
     if (loadedClass == null) {
-      loadedClass = super.loadClass(name, resolve);
+      final long start = System.nanoTime();
+
+      loadedClass = (metrics == null) ? loadNewClass(name) : loadNewClassMeasured(name);
+
+      final long duration = System.nanoTime() - start;
+
+      // Only slow loads are worth asking the Flight Recorder about
+      if (duration >= FlightRecorderEvents.SLOW_CLASS_LOAD_THRESHOLD_NANOS) {
+        FlightRecorderEvents.SLOW_CLASS_LOAD
+            .begin()
+            .set("pluginName", pluginName)
+            .set("className", name)
+            .set("loadDuration", duration)
+            .commit();
+      }
     }
 
     // Marked to resolve
@@ -129,9 +770,820 @@ public class DependencyClassLoader extends URLClassLoader {
     return loadedClass;
   }
 
-  private static URL[] getOwnJarURL() {
-    return new URL[] {
-      DependencyClassLoader.class.getProtectionDomain().getCodeSource().getLocation()
-    };
+  private Class<?> loadNewClass(String name) throws ClassNotFoundException {
+    final SealedIndex tables = sealedIndex;
+
+    // We can't define it, so there's nothing to lock
+    if ((tables != null) && (tables.getClassElement(name) == null)) return loadForeignClass(name);
+
+    final ClassLoadingLocks.NameLock lock = classLoadingLocks.acquire(name);
+
+    try {
+      return loadClassLocked(name);
+    } finally {
+      classLoadingLocks.release(lock);
+    }
+  }
+
+  private Class<?> loadNewClassMeasured(String name) throws ClassNotFoundException {
+    final long start = System.nanoTime();
+
+    try {
+      return loadNewClass(name);
+    } catch (ClassNotFoundException e) {
+      metrics.recordMiss();
+
+      throw e;
+    } finally {
+      metrics.recordLoadClass(start);
+    }
+  }
+
+  /**
+   * Does the actual loading while the lock for the name is held.<br>
+   * Visits every source exactly once: Our own {@link URL}s first and the parent {@link ClassLoader}
+   * second. For names that must come from the parent the order is reversed. Contrary to {@link
+   * ClassLoader#loadClass(String, boolean)} our {@link URL}s are never searched a second time after
+   * the parent missed.
+   *
+   * @param name The binary name of the {@link Class}
+   * @return The loaded {@link Class}
+   * @throws ClassNotFoundException if neither we nor the parent could find the {@link Class}. Only
+   *     a single exception gets created for that.
+   */
+  private Class<?> loadClassLocked(String name) throws ClassNotFoundException {
+    // Another thread might have loaded the Class while we were waiting for the lock
+    Class<?> loadedClass = findLoadedClass(name);
+
+    if (loadedClass != null) return loadedClass;
+
+    // Classes that the platform provides are always taken from the parent
+    final boolean platformClass = parentFirstPackageMatcher.matches(name);
+
+    // Classes that need to be shared with the outside are loaded by the parent
+    if (platformClass || isExcluded(name)) {
+      if (!platformClass && (metrics != null)) {
+        metrics.recordExcludedPackageHit();
+      }
+
+      try {
+        loadedClass = loadClassFromParent(name);
+
+        if (platformClass) {
+          shortCircuitedLookups.increment();
+        }
+
+        return loadedClass;
+      } catch (ClassNotFoundException e) {
+        // The parent doesn't know it, so we're still allowed to load it ourselves
+        loadedClass = findOwnClassOrNull(name);
+
+        if (loadedClass == null) throw e;
+
+        return loadedClass;
+      }
+    }
+
+    // Find the Class from given jar URLs
+    loadedClass = findOwnClassOrNull(name);
+
+    if (loadedClass != null) return loadedClass;
+
+    // Then from the delegates, like libraries shared with other plugins
+    loadedClass = findDelegatedClassOrNull(name);
+
+    if (loadedClass != null) return loadedClass;
+
+    // The Class hasn't been found yet.
+    // Let's try finding it in our parent ClassLoader.
+    // This will throw ClassNotFoundException in case of failure.
+    return loadClassFromParent(name);
+  }
+
+  /**
+   * Loads a {@link Class} that none of our {@link URL}s contain, once sealed. Visits the same
+   * sources as {@link #loadClassLocked(String)} would.
+   */
+  private Class<?> loadForeignClass(String name) throws ClassNotFoundException {
+    final boolean platformClass = parentFirstPackageMatcher.matches(name);
+
+    if (platformClass || isExcluded(name)) {
+      if (!platformClass && (metrics != null)) {
+        metrics.recordExcludedPackageHit();
+      }
+
+      final Class<?> loadedClass = loadClassFromParent(name);
+
+      if (platformClass) {
+        shortCircuitedLookups.increment();
+      }
+
+      return loadedClass;
+    }
+
+    final Class<?> loadedClass = findDelegatedClassOrNull(name);
+
+    return (loadedClass == null) ? loadClassFromParent(name) : loadedClass;
+  }
+
+  private Class<?> findDelegatedClassOrNull(String name) {
+    if (delegates.isEmpty()) return null;
+
+    // Asking only the ones that contain the package avoids a ClassNotFoundException per delegate
+    for (Delegate delegate :
+        delegatesByPackage.getOrDefault(ClassPathElement.getPackageName(name), NO_DELEGATES)) {
+      final Class<?> loadedClass = delegate.loadClassOrNull(name);
+
+      if (loadedClass != null) return loadedClass;
+    }
+
+    for (Delegate delegate : unindexedDelegates) {
+      final Class<?> loadedClass = delegate.loadClassOrNull(name);
+
+      if (loadedClass != null) return loadedClass;
+    }
+
+    return null;
+  }
+
+  private boolean isExcluded(String name) {
+    return name.equals(ownClassName)
+        || name.startsWith(OPTIONS_CLASS_PREFIX)
+        || excludedPackageMatcher.matches(name);
+  }
+
+  private Class<?> loadClassFromParent(String name) throws ClassNotFoundException {
+    if (metrics != null) {
+      metrics.recordParentDelegation();
+    }
+
+    if (parent == null) {
+      // Bootstrap ClassLoader
+      return Class.forName(name, false, null);
+    }
+
+    return parent.loadClass(name);
+  }
+
+  private Class<?> findOwnClassOrNull(String name) {
+    try {
+      return findOwnClass(name);
+    } catch (ClassNotFoundException e) {
+      // The Class exists but couldn't be read. Let the parent have a go at it
+      return null;
+    }
+  }
+
+  /**
+   * Loads a {@link Class} only from the {@link URL}s of this ClassLoader, without asking its
+   * delegates or the parent. Used when this ClassLoader is a delegate of another one, which asks
+   * the other delegates itself. This also keeps cycles between delegates from recursing endlessly.
+   */
+  private Class<?> loadOwnClassOrNull(String name) {
+    final Class<?> loadedClass = findLoadedClass(name);
+
+    if (loadedClass != null) return loadedClass;
+
+    final SealedIndex tables = sealedIndex;
+
+    if ((tables != null) && (tables.getClassElement(name) == null)) return null;
+
+    final ClassLoadingLocks.NameLock lock = classLoadingLocks.acquire(name);
+
+    try {
+      final Class<?> lockedClass = findLoadedClass(name);
+
+      return (lockedClass == null) ? findOwnClassOrNull(name) : lockedClass;
+    } finally {
+      classLoadingLocks.release(lock);
+    }
+  }
+
+  @Override
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    final Class<?> foundClass = findOwnClass(name);
+
+    if (foundClass == null) throw new ClassNotFoundException(name);
+
+    return foundClass;
+  }
+
+  /**
+   * Finds a {@link Class} in the {@link URL}s of this ClassLoader.<br>
+   * Contrary to {@link #findClass(String)} a miss is signaled by returning {@code null} instead of
+   * throwing an exception. Misses are remembered until the next {@link URL} gets added.
+   *
+   * @param name The binary name of the {@link Class}
+   * @return The {@link Class} or {@code null} if none of the {@link URL}s contain it
+   * @throws ClassNotFoundException if the {@link Class} exists but could not be read
+   */
+  protected Class<?> findOwnClass(String name) throws ClassNotFoundException {
+    if (negativeLookupCache.contains(name)) return null;
+
+    // Needs to be obtained before looking at the index
+    final long stamp = negativeLookupCache.getGeneration();
+    final String packageName = ClassPathElement.getPackageName(name);
+    final ClassPrefetcher prefetcher = classPrefetcher;
+
+    if (prefetcher != null) {
+      final ClassPrefetcher.Prefetched prefetched = prefetcher.take(name);
+
+      if (prefetched != null) {
+        return defineClass(name, packageName, prefetched.element, prefetched.classFile);
+      }
+    }
+
+    final String path = name.replace('.', '/').concat(".class");
+    final SealedIndex tables = sealedIndex;
+
+    if (tables != null) {
+      final ClassPathElement element = tables.getClassElement(name);
+
+      if (element == null) return null;
+
+      try {
+        final ClassPathElement.ClassFile classFile = element.readClassFile(path);
+
+        return (classFile == null) ? null : defineClass(name, packageName, element, classFile);
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+
+    final ClassPathElement[] owners = classPathIndex.getOwners(packageName);
+
+    // Only look into the elements that actually contain the package
+    for (ClassPathElement element : owners) {
+      final ClassPathElement.ClassFile classFile;
+
+      try {
+        classFile = element.readClassFile(path);
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+
+      if (classFile != null) {
+        return defineClass(name, packageName, element, classFile);
+      }
+    }
+
+    if (classPathIndex.hasUnindexedURLs()) {
+      // We can only be sure the Class doesn't exist if we could index all URLs
+      try {
+        return super.findClass(name);
+      } catch (ClassNotFoundException e) {
+        // Not found either
+      }
+    } else if (owners.length == 0) {
+      // The index alone already answers this, no need to fill the cache with it
+      return null;
+    }
+
+    negativeLookupCache.add(name, stamp);
+
+    return null;
+  }
+
+  /**
+   * Finds a resource child first: Our own {@link URL}s first, then the delegates and the parent
+   * last. Resources in parent first or excluded packages are requested from the parent first.
+   *
+   * @param name The name of the resource, like {@code "foo/bar/baz.properties"}
+   * @return The {@link URL} of the resource or {@code null} if it can't be found
+   */
+  @Override
+  public URL getResource(String name) {
+    if (metrics == null) return getResourceChildFirst(name);
+
+    final long start = System.nanoTime();
+
+    try {
+      return getResourceChildFirst(name);
+    } finally {
+      metrics.recordResourceLookup(start);
+    }
+  }
+
+  private URL getResourceChildFirst(String name) {
+    if (isParentFirstResource(name)) return super.getResource(name);
+
+    URL url = findResource(name);
+
+    if (url != null) return url;
+
+    for (Delegate delegate : getDelegates(ClassPathElement.getResourcePackageName(name))) {
+      url = delegate.getResource(name);
+
+      if (url != null) return url;
+    }
+
+    // Without a parent, the default implementation asks the bootstrap ClassLoader
+    return (parent == null) ? super.getResource(name) : parent.getResource(name);
+  }
+
+  /**
+   * Finds all resources with the name. Unlike {@link ClassLoader#getResources(String)}, ours are
+   * listed first, then the ones of the delegates and those of the parent last.
+   *
+   * @param name The name of the resource, like {@code "META-INF/services/foo.Bar"}
+   * @return The {@link URL}s of all resources with the name
+   * @throws IOException if reading the resources fails
+   */
+  @Override
+  public Enumeration<URL> getResources(String name) throws IOException {
+    if (metrics == null) return getResourcesChildFirst(name);
+
+    final long start = System.nanoTime();
+
+    try {
+      return getResourcesChildFirst(name);
+    } finally {
+      metrics.recordResourceLookup(start);
+    }
+  }
+
+  private Enumeration<URL> getResourcesChildFirst(String name) throws IOException {
+    if (isParentFirstResource(name)) return super.getResources(name);
+
+    final List<URL> urls = Collections.list(findResources(name));
+
+    for (Delegate delegate : getDelegates(ClassPathElement.getResourcePackageName(name))) {
+      urls.addAll(Collections.list(delegate.getResources(name)));
+    }
+
+    if (parent != null) {
+      urls.addAll(Collections.list(parent.getResources(name)));
+    }
+
+    return Collections.enumeration(urls);
+  }
+
+  /**
+   * Opens a resource, looked up like {@link #getResource(String)}.<br>
+   * Small resources in our own jars are read directly, without creating a {@link URL} and {@link
+   * java.net.URLConnection} for them. Resources larger than {@link #MAX_BUFFERED_RESOURCE_SIZE} or
+   * of unknown size are streamed through their {@link URL} instead, so they never end up on the
+   * heap as a whole.
+   *
+   * @param name The name of the resource
+   * @return A stream of the resource or {@code null} if it can't be found
+   */
+  @Override
+  public InputStream getResourceAsStream(String name) {
+    if (!isParentFirstResource(name) && isIndexedResourceName(name)) {
+      final long start = (metrics == null) ? 0L : System.nanoTime();
+      final ClassPathElement element = findResourceElement(name);
+
+      if (element != null) {
+        try {
+          final InputStream in = openResourceStream(element, name);
+
+          if (in != null) {
+            if (metrics != null) {
+              metrics.recordResourceLookup(start);
+            }
+
+            return in;
+          }
+        } catch (IOException e) {
+          // Let the URL based lookup have a go at it
+        }
+      }
+    }
+
+    // Goes through getResource(String), which records the lookup
+    return super.getResourceAsStream(name);
+  }
+
+  /** Reads small resources into memory at once and streams larger ones from the element. */
+  private static InputStream openResourceStream(ClassPathElement element, String name)
+      throws IOException {
+    final long size = element.getEntrySize(name);
+
+    if ((size >= 0L) && (size <= MAX_BUFFERED_RESOURCE_SIZE)) {
+      final ClassPathElement.ClassFile file = element.readClassFile(name);
+
+      return (file == null) ? null : file.openStream();
+    }
+
+    return element.openEntryStream(name);
+  }
+
+  /**
+   * Finds a resource in the {@link URL}s of this ClassLoader only. Uses the index just like {@link
+   * #findOwnClass(String)}.
+   *
+   * @param name The name of the resource
+   * @return The {@link URL} of the resource or {@code null} if none of our {@link URL}s contain it
+   */
+  @Override
+  public URL findResource(String name) {
+    if (!isIndexedResourceName(name)) return super.findResource(name);
+
+    final ClassPathElement element = findResourceElement(name);
+
+    if (element != null) {
+      try {
+        return element.getResourceURL(name);
+      } catch (MalformedURLException e) {
+        return super.findResource(name);
+      }
+    }
+
+    // We can only be sure the resource doesn't exist if we could index all URLs
+    return classPathIndex.hasUnindexedURLs() ? super.findResource(name) : null;
+  }
+
+  /**
+   * Finds all resources with the name in the {@link URL}s of this ClassLoader only, in the order
+   * the {@link URL}s were added.
+   *
+   * @param name The name of the resource
+   * @return The {@link URL}s of the resources
+   * @throws IOException if reading the resources fails
+   */
+  @Override
+  public Enumeration<URL> findResources(String name) throws IOException {
+    if (!isIndexedResourceName(name) || classPathIndex.hasUnindexedURLs()) {
+      return super.findResources(name);
+    }
+
+    final List<URL> urls = new ArrayList<>();
+    final ClassPathElement[] serviceFileOwners =
+        ServiceFiles.isServiceFile(name) ? classPathIndex.getServiceFileOwners(name) : null;
+
+    if (serviceFileOwners != null) {
+      // All of them contain the file, no need to check
+      for (ClassPathElement element : serviceFileOwners) {
+        urls.add(element.getResourceURL(name));
+      }
+
+      return Collections.enumeration(urls);
+    }
+
+    for (ClassPathElement element :
+        classPathIndex.getOwners(ClassPathElement.getResourcePackageName(name))) {
+      if (element.hasEntry(name)) {
+        urls.add(element.getResourceURL(name));
+      }
+    }
+
+    return Collections.enumeration(urls);
+  }
+
+  /**
+   * Returns the names of the providers of a service, in the same order {@link
+   * java.util.ServiceLoader} would find them through {@link #getResources(String)}. Duplicates are
+   * only listed once.<br>
+   * The service files of our own jars are read directly, using the index of service files. The
+   * result is cached until a new {@link URL} or delegate is added.
+   *
+   * @param serviceName The binary name of the service, like {@code "java.sql.Driver"}
+   * @return The binary names of the providers. Empty if there are none.
+   * @throws ServiceConfigurationError if a service file can't be read or contains an invalid name
+   */
+  public List<String> getServiceProviderNames(String serviceName) {
+    final List<String> cached = serviceProviderNames.get(serviceName);
+
+    if (cached != null) return cached;
+
+    // Needs to be obtained before looking at the index
+    final long stamp = negativeLookupCache.getGeneration();
+    final List<String> providerNames;
+
+    try {
+      providerNames = readServiceProviderNames(serviceName);
+    } catch (IOException e) {
+      throw new ServiceConfigurationError(serviceName + ": Error reading configuration file", e);
+    }
+
+    serviceProviderNames.put(serviceName, providerNames);
+
+    // A URL was added in the meantime, so the result might be outdated already
+    if (negativeLookupCache.getGeneration() != stamp) {
+      serviceProviderNames.remove(serviceName);
+    }
+
+    return providerNames;
+  }
+
+  /**
+   * Returns the providers of a service, like {@link java.util.ServiceLoader} would find them, but
+   * without instantiating them.<br>
+   * The providers are loaded through this ClassLoader, but not initialized.
+   *
+   * @param <S> The type of the service
+   * @param service The service
+   * @return The provider Classes, in the order of {@link #getServiceProviderNames(String)}
+   * @throws ServiceConfigurationError if a provider can't be found or doesn't implement the service
+   */
+  public <S> List<Class<? extends S>> getServiceProviders(Class<S> service) {
+    final String serviceName = service.getName();
+    final List<Class<? extends S>> providers = new ArrayList<>();
+
+    for (String providerName : getServiceProviderNames(serviceName)) {
+      final Class<?> provider;
+
+      try {
+        provider = Class.forName(providerName, false, this);
+      } catch (ClassNotFoundException e) {
+        throw new ServiceConfigurationError(
+            serviceName + ": Provider " + providerName + " not found", e);
+      }
+
+      if (!service.isAssignableFrom(provider)) {
+        throw new ServiceConfigurationError(
+            serviceName + ": Provider " + providerName + " not a subtype");
+      }
+
+      providers.add(provider.asSubclass(service));
+    }
+
+    return providers;
+  }
+
+  private List<String> readServiceProviderNames(String serviceName) throws IOException {
+    final String path = ServiceFiles.SERVICES_DIR + serviceName;
+    final Set<String> providerNames = new LinkedHashSet<>();
+    final ClassPathElement[] owners =
+        (isParentFirstResource(path) || classPathIndex.hasUnindexedURLs())
+            ? null
+            : classPathIndex.getServiceFileOwners(path);
+
+    if (owners == null) {
+      readServiceFiles(serviceName, getResources(path), providerNames);
+    } else {
+      for (ClassPathElement element : owners) {
+        final ClassPathElement.ClassFile file = element.readClassFile(path);
+
+        if (file != null) {
+          ServiceFiles.read(serviceName, element.getUrl(), file.openStream(), providerNames);
+        }
+      }
+
+      for (Delegate delegate : getDelegates(ClassPathElement.getResourcePackageName(path))) {
+        readServiceFiles(serviceName, delegate.getResources(path), providerNames);
+      }
+
+      if (parent != null) {
+        readServiceFiles(serviceName, parent.getResources(path), providerNames);
+      }
+    }
+
+    return Collections.unmodifiableList(new ArrayList<>(providerNames));
+  }
+
+  private static void readServiceFiles(
+      String serviceName, Enumeration<URL> urls, Set<String> providerNames) throws IOException {
+    while (urls.hasMoreElements()) {
+      final URL url = urls.nextElement();
+      final URLConnection connection = url.openConnection();
+
+      // Otherwise the jar stays open in the JVM wide cache
+      connection.setUseCaches(false);
+      ServiceFiles.read(serviceName, url, connection.getInputStream(), providerNames);
+    }
+  }
+
+  private ClassPathElement findResourceElement(String name) {
+    final SealedIndex tables = sealedIndex;
+
+    if (tables != null) return tables.getResourceElement(name);
+
+    if (resourceLocations != null) {
+      final Object cached = resourceLocations.get(name);
+
+      if (cached != null) return (cached == NO_RESOURCE) ? null : (ClassPathElement) cached;
+    }
+
+    // Needs to be obtained before looking at the index
+    final long stamp = negativeLookupCache.getGeneration();
+    ClassPathElement found = null;
+
+    for (ClassPathElement element :
+        classPathIndex.getOwners(ClassPathElement.getResourcePackageName(name))) {
+      if (element.hasEntry(name)) {
+        found = element;
+
+        break;
+      }
+    }
+
+    if (resourceLocations != null) {
+      resourceLocations.put(name, (found == null) ? NO_RESOURCE : found);
+
+      // A URL was added in the meantime, so the result might be outdated already
+      if (negativeLookupCache.getGeneration() != stamp) {
+        resourceLocations.remove(name);
+      }
+    }
+
+    return found;
+  }
+
+  private Iterable<Delegate> getDelegates(String packageName) {
+    if (delegates.isEmpty()) return Collections.emptyList();
+
+    final List<Delegate> candidates =
+        new ArrayList<>(Arrays.asList(delegatesByPackage.getOrDefault(packageName, NO_DELEGATES)));
+    candidates.addAll(unindexedDelegates);
+
+    return candidates;
+  }
+
+  private boolean isParentFirstResource(String name) {
+    return parentFirstPackageMatcher.matchesPath(name) || excludedPackageMatcher.matchesPath(name);
+  }
+
+  /**
+   * Checks if a resource name can be looked up through the index. Everything else is left to {@link
+   * URLClassLoader}.
+   */
+  private static boolean isIndexedResourceName(String name) {
+    return !name.isEmpty()
+        && !name.startsWith("/")
+        && !name.endsWith("/")
+        && !name.contains("..")
+        && (name.indexOf('\\') == -1);
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeDelegates();
+
+    try {
+      finishClassPrefetch();
+    } catch (IOException e) {
+      // Only the recording is lost. Closing is more important.
+    }
+
+    try {
+      finishClassDataSharing();
+    } catch (IOException e) {
+      // The previous class list stays
+    }
+
+    try {
+      saveSignatureCache();
+    } catch (IOException e) {
+      // The jars verified in this run get verified again next time
+    }
+
+    try {
+      unregisterMetricsMBean();
+    } catch (JMException e) {
+      // Only the MBean stays around
+    }
+
+    try {
+      classPathIndex.close();
+    } finally {
+      serviceProviderNames.clear();
+      super.close();
+    }
+  }
+
+  private Class<?> defineClass(
+      String name,
+      String packageName,
+      ClassPathElement element,
+      ClassPathElement.ClassFile classFile) {
+    final URL url = element.getUrl();
+
+    if (!packageName.isEmpty()) {
+      definePackageIfMissing(packageName, element, url);
+    }
+
+    final CodeSource codeSource = new CodeSource(url, classFile.getCodeSigners());
+    final long start = (metrics == null) ? 0L : System.nanoTime();
+    final Class<?> definedClass;
+
+    try {
+      definedClass = defineClass(name, classFile.getBuffer(), codeSource);
+    } finally {
+      classFile.release();
+    }
+
+    if (metrics != null) {
+      metrics.recordDefineClass(url, start);
+    }
+
+    final ClassPrefetcher prefetcher = classPrefetcher;
+
+    if (prefetcher != null) {
+      prefetcher.record(name);
+    }
+
+    if (definedClassNames != null) {
+      definedClassNames.add(name);
+    }
+
+    return definedClass;
+  }
+
+  @SuppressWarnings("deprecation")
+  private void definePackageIfMissing(String packageName, ClassPathElement element, URL url) {
+    if (getPackage(packageName) != null) return;
+
+    try {
+      if (element.getManifest() == null) {
+        definePackage(packageName, null, null, null, null, null, null, null);
+      } else {
+        definePackage(packageName, element.getManifest(), url);
+      }
+    } catch (IllegalArgumentException e) {
+      // Another thread defined the package in the meantime
+      if (getPackage(packageName) == null) throw e;
+    }
+  }
+
+  private synchronized void closeDelegates() {
+    for (Delegate delegate : delegates) {
+      if (delegate.onClose == null) continue;
+
+      try {
+        delegate.onClose.close();
+      } catch (IOException e) {
+        // Only leaves some files open
+      }
+    }
+
+    delegates.clear();
+    delegatesByPackage.clear();
+    unindexedDelegates.clear();
+  }
+
+  private static Set<String> scanPackageNames(URLClassLoader classLoader) {
+    final Set<String> packageNames = new HashSet<>();
+
+    for (URL url : classLoader.getURLs()) {
+      final ClassPathElement element =
+          ClassPathElement.open(url, ClassLoaderOptions.DEFAULT, null, null, null);
+
+      // Can't tell what's in there, so it has to be asked for everything
+      if (element == null) return null;
+
+      packageNames.addAll(element.getPackageNames());
+
+      try {
+        element.close();
+      } catch (IOException e) {
+        // Only read from it
+      }
+    }
+
+    return packageNames;
+  }
+
+  private static URL toFileURL(URL url) {
+    if (!"jar".equals(url.getProtocol())) return url;
+
+    final Path path = ClassPathElement.toLocalPath(url);
+
+    if (path == null) return url;
+
+    try {
+      return path.toUri().toURL();
+    } catch (MalformedURLException e) {
+      return url;
+    }
+  }
+
+  private static URL[] getOwnJarURL() {
+    return new URL[] {
+      DependencyClassLoader.class.getProtectionDomain().getCodeSource().getLocation()
+    };
+  }
+
+  @RequiredArgsConstructor
+  private static final class Delegate {
+    private final ClassLoader classLoader;
+    /** What to do when this ClassLoader gets closed. {@code null} for nothing. */
+    private final Closeable onClose;
+
+    URL getResource(String name) {
+      // Just like with Classes, a DependencyClassLoader only looks into its own URLs
+      return (classLoader instanceof DependencyClassLoader)
+          ? ((DependencyClassLoader) classLoader).findResource(name)
+          : classLoader.getResource(name);
+    }
+
+    Enumeration<URL> getResources(String name) throws IOException {
+      return (classLoader instanceof DependencyClassLoader)
+          ? ((DependencyClassLoader) classLoader).findResources(name)
+          : classLoader.getResources(name);
+    }
+
+    Class<?> loadClassOrNull(String name) {
+      if (classLoader instanceof DependencyClassLoader) {
+        return ((DependencyClassLoader) classLoader).loadOwnClassOrNull(name);
+      }
+
+      try {
+        return classLoader.loadClass(name);
+      } catch (ClassNotFoundException e) {
+        return null;
+      }
+    }
   }
 }
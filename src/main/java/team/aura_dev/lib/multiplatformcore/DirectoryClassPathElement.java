@@ -0,0 +1,139 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/**
+ * A {@link ClassPathElement} backed by a directory.<br>
+ * The directory is walked for package names once, when it is added. Files added to new packages
+ * afterwards are not picked up.
+ *
+ * @author Yannick Schinko
+ */
+class DirectoryClassPathElement extends ClassPathElement {
+  private final Path root;
+  @Getter private final Set<String> packageNames;
+
+  DirectoryClassPathElement(URL url, Path root) throws IOException {
+    super(url);
+
+    this.root = root.normalize();
+    this.packageNames = Collections.unmodifiableSet(scanPackageNames(root));
+  }
+
+  @Override
+  ClassFile readClassFile(String path) throws IOException {
+    final Path file = resolve(path);
+
+    if ((file == null) || !Files.isRegularFile(file)) return null;
+
+    try (InputStream in = Files.newInputStream(file)) {
+      return new ClassFile(readFully(in, (int) Files.size(file)), null);
+    }
+  }
+
+  @Override
+  boolean hasEntry(String path) {
+    final Path file = resolve(path);
+
+    return (file != null) && Files.isRegularFile(file);
+  }
+
+  @Override
+  long getEntrySize(String path) {
+    final Path file = resolve(path);
+
+    if ((file == null) || !Files.isRegularFile(file)) return -1L;
+
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      return -1L;
+    }
+  }
+
+  @Override
+  InputStream openEntryStream(String path) throws IOException {
+    final Path file = resolve(path);
+
+    if ((file == null) || !Files.isRegularFile(file)) return null;
+
+    return Files.newInputStream(file);
+  }
+
+  @Override
+  Collection<String> getEntryNames() throws IOException {
+    try (Stream<Path> files = Files.walk(root)) {
+      return files
+          .filter(Files::isRegularFile)
+          .map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /** Only lists the services directory instead of walking the whole directory. */
+  @Override
+  Collection<String> getServiceFileNames() throws IOException {
+    final Path servicesDir = root.resolve(ServiceFiles.SERVICES_DIR);
+
+    if (!Files.isDirectory(servicesDir)) return Collections.emptyList();
+
+    try (Stream<Path> files = Files.list(servicesDir)) {
+      return files
+          .filter(Files::isRegularFile)
+          .map(file -> ServiceFiles.SERVICES_DIR + file.getFileName())
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Override
+  URL getResourceURL(String path) throws MalformedURLException {
+    return resolve(path).toUri().toURL();
+  }
+
+  @Override
+  Manifest getManifest() {
+    // Just like URLClassLoader we don't use manifests of directories
+    return null;
+  }
+
+  /** Resolves a path against the root. Returns {@code null} for paths that leave the root. */
+  private Path resolve(String path) {
+    final Path file;
+
+    try {
+      file = root.resolve(path).normalize();
+    } catch (InvalidPathException e) {
+      return null;
+    }
+
+    return file.startsWith(root) ? file : null;
+  }
+
+  private static Set<String> scanPackageNames(Path root) throws IOException {
+    try (Stream<Path> files = Files.walk(root)) {
+      return files
+          .filter(Files::isRegularFile)
+          .map(file -> root.relativize(file).getParent())
+          .map(
+              dir ->
+                  (dir == null)
+                      ? ""
+                      : dir.toString().replace(dir.getFileSystem().getSeparator(), "."))
+          .collect(Collectors.toSet());
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+/**
+ * Computes and remembers the SHA-1 hashes of files, mostly jars.<br>
+ * Several caches are keyed by the hash of a jar, like the {@link SignatureCache} and the cache of
+ * transformed jars. This way a jar gets hashed at most once per start, no matter how many of them
+ * ask for it. A jar whose hash is already known, like the one {@link
+ * team.aura_dev.lib.multiplatformcore.dependency.RuntimeDependency} pins and the download has been
+ * checked against, isn't hashed at all (see {@link #putSha1(Path, String)}).
+ *
+ * <p>A remembered hash is only used as long as the size and modification time of the file stay the
+ * same. Where the file system has one, the change time has to stay the same as well. Unlike the
+ * modification time it can't be set back, so a file rewritten with its old modification time gets
+ * hashed again.
+ *
+ * @author Yannick Schinko
+ */
+public final class FileHashes {
+  private static final Map<Path, Hash> HASHES = new ConcurrentHashMap<>();
+
+  private FileHashes() {}
+
+  /**
+   * Returns the SHA-1 hash of a file, hashing it only if it isn't known yet.
+   *
+   * @param file The file to hash
+   * @return The hash in lower case hex notation
+   * @throws IOException if the file can't be read
+   */
+  public static String sha1(Path file) throws IOException {
+    final Path key = file.toAbsolutePath().normalize();
+    final Stamp stamp = Stamp.of(key);
+    final Hash known = HASHES.get(key);
+
+    if ((known != null) && known.stamp.equals(stamp)) return known.sha1;
+
+    final String sha1 = toHex(digest(key));
+
+    HASHES.put(key, new Hash(stamp, sha1));
+
+    return sha1;
+  }
+
+  /**
+   * Remembers the known SHA-1 hash of a file, so {@link #sha1(Path)} doesn't have to compute it.
+   * <br>
+   * Only pass hashes the file has actually been checked against.
+   *
+   * @param file The file
+   * @param sha1 Its hash in hex notation
+   * @throws IOException if the size or modification time of the file can't be read
+   */
+  public static void putSha1(Path file, String sha1) throws IOException {
+    final Path key = file.toAbsolutePath().normalize();
+
+    HASHES.put(key, new Hash(Stamp.of(key), sha1.toLowerCase(Locale.ROOT)));
+  }
+
+  /**
+   * Creates a SHA-1 {@link MessageDigest}.
+   *
+   * @return The new digest
+   */
+  public static MessageDigest newSha1Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Every JVM has to support SHA-1", e);
+    }
+  }
+
+  /**
+   * Converts bytes to lower case hex notation.
+   *
+   * @param bytes The bytes to convert
+   * @return Two hex digits per byte
+   */
+  public static String toHex(byte[] bytes) {
+    final StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+
+    return hex.toString();
+  }
+
+  private static byte[] digest(Path file) throws IOException {
+    final MessageDigest digest = newSha1Digest();
+    final byte[] buffer = new byte[1 << 16];
+
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+
+    return digest.digest();
+  }
+
+  @RequiredArgsConstructor
+  private static final class Hash {
+    private final Stamp stamp;
+    private final String sha1;
+  }
+
+  /** The attributes of a file that change whenever its contents change. */
+  @Value
+  private static class Stamp {
+    private final long size;
+    private final FileTime lastModified;
+    /** {@code null} if the file system has no change time. */
+    private final Object changeTime;
+
+    static Stamp of(Path file) throws IOException {
+      final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+      return new Stamp(attributes.size(), attributes.lastModifiedTime(), getChangeTime(file));
+    }
+
+    private static Object getChangeTime(Path file) {
+      try {
+        return Files.getAttribute(file, "unix:ctime");
+      } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,518 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custom Java Flight Recorder events for the phases of a plugin's startup: Bootstrapping the
+ * plugin, loading SLF4J, downloading and verifying artifacts and slow Class loads. Together they
+ * show how much of a server's startup was spent in this library in a standard JFR recording. The
+ * events are in the category {@code "MultiPlatformCore"} and named after the package of this class.
+ *
+ * <p>The Flight Recorder API ({@code jdk.jfr}) exists since Java 11 and Java 8u262. As this library
+ * targets Java 8 the event types are created at runtime through {@code jdk.jfr.EventFactory} and
+ * accessed through method handles. On JVMs without it, every event is a no-op.
+ *
+ * <p>Creating the event types initializes large parts of the Flight Recorder, which takes a few
+ * hundred milliseconds. So they are only created once the Flight Recorder has been initialized, for
+ * example by {@code -XX:StartFlightRecording} or by starting a recording later on. Until then,
+ * {@link Type#begin()} only checks if that happened.
+ *
+ * <p>{@link Type#begin()} asks the Flight Recorder if the type is enabled every time. That is
+ * cheap, but not free, so hot paths only begin an event once it's worth recording. A Class load,
+ * for example, is only reported once it took longer than {@link #SLOW_CLASS_LOAD_THRESHOLD_NANOS}.
+ * No listener is registered with the Flight Recorder, so nothing of this library stays reachable
+ * from it.
+ *
+ * <p>Usage:
+ *
+ * <pre><code>
+ * final FlightRecorderEvents.Event event = FlightRecorderEvents.PLUGIN_INITIALIZATION.begin();
+ *
+ * // Do the work
+ *
+ * event.set("pluginName", pluginName).commit();
+ * </code></pre>
+ *
+ * @author Yannick Schinko
+ */
+public final class FlightRecorderEvents {
+  private static final String NAME_PREFIX =
+      FlightRecorderEvents.class
+          .getName()
+          .substring(0, FlightRecorderEvents.class.getName().lastIndexOf('.') + 1);
+  private static final String CATEGORY = "MultiPlatformCore";
+  private static final String DATA_AMOUNT_BYTES = "BYTES";
+  private static final String TIMESPAN_NANOSECONDS = "NANOSECONDS";
+
+  /** How long a Class load has to take to be reported as a {@link #SLOW_CLASS_LOAD}. */
+  public static final long SLOW_CLASS_LOAD_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  // Method handles for the jdk.jfr API. All null if it doesn't exist.
+  private static final MethodHandle IS_INITIALIZED;
+  private static final MethodHandle NEW_EVENT;
+  private static final MethodHandle IS_ENABLED;
+  private static final MethodHandle BEGIN;
+  private static final MethodHandle SET;
+  private static final MethodHandle SHOULD_COMMIT;
+  private static final MethodHandle COMMIT;
+
+  static {
+    MethodHandle isInitialized = null;
+    MethodHandle newEvent = null;
+    MethodHandle isEnabled = null;
+    MethodHandle begin = null;
+    MethodHandle set = null;
+    MethodHandle shouldCommit = null;
+    MethodHandle commit = null;
+
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      final Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+      final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+      final Class<?> eventType = Class.forName("jdk.jfr.EventType");
+      final Class<?> event = Class.forName("jdk.jfr.Event");
+      final MethodType objectToVoid = MethodType.methodType(void.class, Object.class);
+      final MethodType objectToBoolean = MethodType.methodType(boolean.class, Object.class);
+
+      isInitialized =
+          lookup.findStatic(flightRecorder, "isInitialized", MethodType.methodType(boolean.class));
+      newEvent =
+          lookup
+              .findVirtual(eventFactory, "newEvent", MethodType.methodType(event))
+              .asType(MethodType.methodType(Object.class, Object.class));
+      isEnabled =
+          lookup
+              .findVirtual(eventType, "isEnabled", MethodType.methodType(boolean.class))
+              .asType(objectToBoolean);
+      begin =
+          lookup
+              .findVirtual(event, "begin", MethodType.methodType(void.class))
+              .asType(objectToVoid);
+      set =
+          lookup
+              .findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+              .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+      shouldCommit =
+          lookup
+              .findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class))
+              .asType(objectToBoolean);
+      commit =
+          lookup
+              .findVirtual(event, "commit", MethodType.methodType(void.class))
+              .asType(objectToVoid);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      // No Flight Recorder. Probably Java 8 before update 262 or a JVM without the jdk.jfr module.
+      isInitialized = null;
+    }
+
+    IS_INITIALIZED = isInitialized;
+    NEW_EVENT = newEvent;
+    IS_ENABLED = isEnabled;
+    BEGIN = begin;
+    SET = set;
+    SHOULD_COMMIT = shouldCommit;
+    COMMIT = commit;
+  }
+
+  /** A plugin class being bootstrapped by {@code MultiProjectBootstrapper.initializePlugin}. */
+  public static final Type PLUGIN_INITIALIZATION =
+      new Type(
+          "PluginInitialization",
+          "Plugin Initialization",
+          "Bootstrapping of a plugin class, including loading it and calling its constructor",
+          "Bootstrap",
+          null,
+          Field.string("pluginName", "Plugin Name"),
+          Field.string("pluginClass", "Plugin Class"),
+          Field.of(boolean.class, "success", "Success"));
+
+  /** The check for SLF4J by {@code MultiProjectSLF4JBootstrapper.checkAndLoadSLF4J}. */
+  public static final Type SLF4J_CHECK =
+      new Type(
+          "SLF4JCheck",
+          "SLF4J Check",
+          "Checking if SLF4J is present and extracting and loading it if it isn't",
+          "Bootstrap",
+          null,
+          Field.string("pluginName", "Plugin Name"),
+          Field.string("slf4jVersion", "SLF4J Version"),
+          Field.string("binding", "Binding"),
+          Field.of(boolean.class, "loaded", "Loaded"));
+
+  /**
+   * The download of an artifact and its transitive dependencies by the {@code
+   * DependencyDownloader}. Starts when the downloads are started and ends once the artifact and its
+   * dependencies are available.
+   */
+  public static final Type ARTIFACT_DOWNLOAD =
+      new Type(
+          "ArtifactDownload",
+          "Artifact Download",
+          "Downloading an artifact and its transitive dependencies, unless they are present already",
+          "Download",
+          null,
+          Field.string("pluginName", "Plugin Name"),
+          Field.string("coordinates", "Coordinates"),
+          Field.of(int.class, "artifacts", "Artifacts"),
+          Field.bytes("bytes", "Size"),
+          Field.of(boolean.class, "success", "Success"));
+
+  /**
+   * The check of the signatures of a signed jar that is added to a {@link DependencyClassLoader}
+   * with {@link ClassLoaderOptions#isSignatureCache()}. Either every entry gets verified, or the
+   * signers recorded for a jar with the same hash are reused (see {@link SignatureCache}).<br>
+   * Without the signature cache {@link java.util.jar.JarFile} verifies every entry as it's read,
+   * which isn't recorded.
+   */
+  public static final Type ARTIFACT_VERIFICATION =
+      new Type(
+          "ArtifactVerification",
+          "Artifact Verification",
+          "Verifying the signatures of a signed jar or reusing an earlier verification of it",
+          "Download",
+          null,
+          Field.string("jar", "Jar"),
+          Field.of(boolean.class, "cached", "Cached"),
+          Field.of(boolean.class, "verified", "Verified"));
+
+  /**
+   * A call of {@link DependencyClassLoader#loadClass(String)} for a {@link Class} that wasn't
+   * loaded yet and that took longer than {@link #SLOW_CLASS_LOAD_THRESHOLD_NANOS}.<br>
+   * The event is only begun once the load is done, so its own duration is close to zero. How long
+   * the load took is in the field {@code loadDuration}.
+   */
+  public static final Type SLOW_CLASS_LOAD =
+      new Type(
+          "SlowClassLoad",
+          "Slow Class Load",
+          "Loading a Class that took longer than 10 ms. Includes loading its super classes.",
+          "Class Loading",
+          null,
+          Field.string("pluginName", "Plugin Name"),
+          Field.string("className", "Class Name"),
+          Field.nanos("loadDuration", "Load Duration"));
+
+  private static final List<Type> TYPES =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              PLUGIN_INITIALIZATION,
+              SLF4J_CHECK,
+              ARTIFACT_DOWNLOAD,
+              ARTIFACT_VERIFICATION,
+              SLOW_CLASS_LOAD));
+
+  /** Set once all event types have been registered. */
+  private static volatile boolean registered = false;
+
+  private FlightRecorderEvents() {}
+
+  /**
+   * Checks if the running JVM has the Flight Recorder API.
+   *
+   * @return {@code true} if the events can be recorded
+   */
+  public static boolean isSupported() {
+    return IS_INITIALIZED != null;
+  }
+
+  /**
+   * Returns all event types of this library.
+   *
+   * @return The event types
+   */
+  public static List<Type> getTypes() {
+    return TYPES;
+  }
+
+  /**
+   * Registers the event types if the Flight Recorder has been initialized in the meantime.
+   *
+   * @return {@code true} if the event types are registered
+   */
+  private static boolean registerTypes() {
+    if (registered) return true;
+    if (!isSupported()) return false;
+
+    try {
+      if (!(boolean) IS_INITIALIZED.invokeExact()) return false;
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+
+    synchronized (FlightRecorderEvents.class) {
+      if (!registered) {
+        for (Type type : TYPES) {
+          type.register();
+        }
+
+        registered = true;
+      }
+    }
+
+    return true;
+  }
+
+  /** Rethrows unchecked exceptions as they are. Method handles declare to throw anything. */
+  private static RuntimeException rethrow(Throwable e) {
+    if (e instanceof RuntimeException) return (RuntimeException) e;
+    if (e instanceof Error) throw (Error) e;
+
+    return new IllegalStateException("Calling the Flight Recorder failed", e);
+  }
+
+  /**
+   * A type of event. Start an event with {@link #begin()}.
+   *
+   * @author Yannick Schinko
+   */
+  public static final class Type {
+    private final String name;
+    private final String label;
+    private final String description;
+    private final String category;
+    private final String threshold;
+    private final List<Field> fields;
+
+    /** The {@code jdk.jfr.EventFactory} once registered. */
+    private volatile Object factory;
+    /** The {@code jdk.jfr.EventType} once registered. */
+    private volatile Object eventType;
+
+    private Type(
+        String name,
+        String label,
+        String description,
+        String category,
+        String threshold,
+        Field... fields) {
+      this.name = NAME_PREFIX + name;
+      this.label = label;
+      this.description = description;
+      this.category = category;
+      this.threshold = threshold;
+      this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * Returns the name of the event type, as it shows up in recordings.
+     *
+     * @return The name, like {@code "team.aura_dev.lib.multiplatformcore.SlowClassLoad"}
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Checks if events of this type are being recorded right now.
+     *
+     * @return {@code true} if a running recording has this event type enabled
+     */
+    public boolean isEnabled() {
+      if (!registerTypes()) return false;
+
+      try {
+        return (boolean) IS_ENABLED.invokeExact(eventType);
+      } catch (Throwable e) {
+        throw rethrow(e);
+      }
+    }
+
+    /**
+     * Starts an event and its timing.
+     *
+     * @return The started event. An event that does nothing if this event type isn't enabled.
+     */
+    public Event begin() {
+      if (!isEnabled()) return Event.NONE;
+
+      try {
+        final Object event = (Object) NEW_EVENT.invokeExact(factory);
+        BEGIN.invokeExact(event);
+
+        return new Event(this, event);
+      } catch (Throwable e) {
+        throw rethrow(e);
+      }
+    }
+
+    private void register() {
+      try {
+        final List<Object> annotations = new ArrayList<>();
+        annotations.add(annotation("Name", name));
+        annotations.add(annotation("Label", label));
+        annotations.add(annotation("Description", description));
+        annotations.add(annotation("Category", new String[] {CATEGORY, category}));
+
+        if (threshold != null) {
+          annotations.add(annotation("Threshold", threshold));
+        }
+
+        final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        final Constructor<?> valueDescriptorConstructor =
+            valueDescriptor.getConstructor(Class.class, String.class, List.class);
+        final List<Object> descriptors = new ArrayList<>();
+
+        for (Field field : fields) {
+          final List<Object> fieldAnnotations = new ArrayList<>();
+          fieldAnnotations.add(annotation("Label", field.label));
+
+          if (field.unitAnnotation != null) {
+            fieldAnnotations.add(annotation(field.unitAnnotation, field.unit));
+          }
+
+          descriptors.add(
+              valueDescriptorConstructor.newInstance(field.type, field.name, fieldAnnotations));
+        }
+
+        final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+        final Object createdFactory =
+            eventFactory
+                .getMethod("create", List.class, List.class)
+                .invoke(null, annotations, descriptors);
+
+        eventType = eventFactory.getMethod("getEventType").invoke(createdFactory);
+        factory = createdFactory;
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Registering the event type " + name + " failed", e);
+      }
+    }
+
+    private int indexOf(String fieldName) {
+      for (int i = 0; i < fields.size(); ++i) {
+        if (fields.get(i).name.equals(fieldName)) return i;
+      }
+
+      throw new IllegalArgumentException("The event type " + name + " has no field " + fieldName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object annotation(String annotationName, Object value)
+        throws ReflectiveOperationException {
+      final Class<? extends Annotation> annotationType =
+          (Class<? extends Annotation>) Class.forName("jdk.jfr." + annotationName);
+
+      return Class.forName("jdk.jfr.AnnotationElement")
+          .getConstructor(Class.class, Object.class)
+          .newInstance(annotationType, value);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /**
+   * A started event. Set its fields and {@link #commit()} it once the work is done. Events that
+   * aren't committed are simply dropped.<br>
+   * Not thread safe.
+   *
+   * @author Yannick Schinko
+   */
+  public static final class Event {
+    /** The event that does nothing. */
+    static final Event NONE = new Event(null, null);
+
+    private final Type type;
+    /** The {@code jdk.jfr.Event} or {@code null} if nothing is being recorded. */
+    private final Object event;
+
+    private Event(Type type, Object event) {
+      this.type = type;
+      this.event = event;
+    }
+
+    /**
+     * Sets a field of the event.
+     *
+     * @param fieldName The name of the field
+     * @param value The value. Must be of the type of the field, boxed for primitive types.
+     * @return This event
+     * @throws IllegalArgumentException if the event type has no field with that name
+     */
+    public Event set(String fieldName, Object value) {
+      if (event != null) {
+        try {
+          SET.invokeExact(event, type.indexOf(fieldName), value);
+        } catch (Throwable e) {
+          throw rethrow(e);
+        }
+      }
+
+      return this;
+    }
+
+    /**
+     * Checks if the event would be recorded if committed now. Use this to skip computing expensive
+     * field values.
+     *
+     * @return {@code true} if the event is enabled and took longer than its threshold
+     */
+    public boolean shouldCommit() {
+      if (event == null) return false;
+
+      try {
+        return (boolean) SHOULD_COMMIT.invokeExact(event);
+      } catch (Throwable e) {
+        throw rethrow(e);
+      }
+    }
+
+    /**
+     * Ends the timing of the event and records it, if it took longer than the threshold of its
+     * type.
+     */
+    public void commit() {
+      if (event == null) return;
+
+      try {
+        COMMIT.invokeExact(event);
+      } catch (Throwable e) {
+        throw rethrow(e);
+      }
+    }
+  }
+
+  private static final class Field {
+    private final Class<?> type;
+    private final String name;
+    private final String label;
+    /** The {@code jdk.jfr} annotation of the unit, like {@code "DataAmount"}, or {@code null}. */
+    private final String unitAnnotation;
+
+    private final String unit;
+
+    private Field(Class<?> type, String name, String label, String unitAnnotation, String unit) {
+      this.type = type;
+      this.name = name;
+      this.label = label;
+      this.unitAnnotation = unitAnnotation;
+      this.unit = unit;
+    }
+
+    static Field of(Class<?> type, String name, String label) {
+      return new Field(type, name, label, null, null);
+    }
+
+    static Field string(String name, String label) {
+      return of(String.class, name, label);
+    }
+
+    static Field bytes(String name, String label) {
+      return new Field(long.class, name, label, "DataAmount", DATA_AMOUNT_BYTES);
+    }
+
+    static Field nanos(String name, String label) {
+      return new Field(long.class, name, label, "Timespan", TIMESPAN_NANOSECONDS);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import lombok.Getter;
+
+/**
+ * A {@link ClassPathElement} backed by a jar file.<br>
+ * The jar gets opened and its central directory is scanned for package names once, when it is
+ * added.
+ *
+ * <p>With a {@link SignatureCache} signed jars that have been verified before are opened without
+ * verification. Their entries get the recorded signers instead.
+ *
+ * @author Yannick Schinko
+ */
+class JarClassPathElement extends ClassPathElement {
+  private final JarFile jarFile;
+  @Getter private final Set<String> packageNames;
+  @Getter private final Manifest manifest;
+  /** The recorded signers of all entries or {@code null} if the jar verifies them itself. */
+  private final Map<String, CodeSigner[]> signers;
+
+  private volatile boolean open = true;
+
+  JarClassPathElement(URL url, Path path) throws IOException {
+    this(url, path, null);
+  }
+
+  /**
+   * Opens the jar.
+   *
+   * @param url The {@link URL} the jar was added with
+   * @param path The path of the jar file
+   * @param signatureCache The cache of verified signed jars or {@code null} to always verify them
+   * @throws IOException if the jar can't be read
+   */
+  JarClassPathElement(URL url, Path path, SignatureCache signatureCache) throws IOException {
+    super(url);
+
+    JarFile openedJarFile = new JarFile(path.toFile(), signatureCache == null);
+    Map<String, CodeSigner[]> recordedSigners = null;
+
+    try {
+      if ((signatureCache != null) && isSigned(openedJarFile)) {
+        recordedSigners = signatureCache.getSigners(path);
+
+        if (recordedSigners == null) {
+          // Failed verification. Let JarFile reject the tampered entries as usual.
+          openedJarFile.close();
+          openedJarFile = new JarFile(path.toFile());
+        }
+      }
+
+      this.packageNames = Collections.unmodifiableSet(scanPackageNames(openedJarFile));
+      this.manifest = openedJarFile.getManifest();
+    } catch (IOException | RuntimeException e) {
+      openedJarFile.close();
+
+      throw e;
+    }
+
+    this.jarFile = openedJarFile;
+    this.signers = recordedSigners;
+  }
+
+  @Override
+  ClassFile readClassFile(String path) throws IOException {
+    final JarEntry entry = jarFile.getJarEntry(path);
+
+    if (entry == null) return null;
+
+    final byte[] bytes;
+
+    try (InputStream in = jarFile.getInputStream(entry)) {
+      bytes = readFully(in, (int) entry.getSize());
+    }
+
+    if (signers != null) return new ClassFile(bytes, signers.get(path));
+
+    // The signers are only available after the entry has been read completely
+    return new ClassFile(bytes, entry.getCodeSigners());
+  }
+
+  @Override
+  boolean hasEntry(String path) {
+    return jarFile.getEntry(path) != null;
+  }
+
+  @Override
+  long getEntrySize(String path) {
+    final JarEntry entry = jarFile.getJarEntry(path);
+
+    return (entry == null) ? -1L : entry.getSize();
+  }
+
+  @Override
+  InputStream openEntryStream(String path) throws IOException {
+    final JarEntry entry = jarFile.getJarEntry(path);
+
+    return (entry == null) ? null : jarFile.getInputStream(entry);
+  }
+
+  @Override
+  Collection<String> getEntryNames() {
+    final List<String> entryNames = new ArrayList<>();
+    final Enumeration<JarEntry> entries = jarFile.entries();
+
+    while (entries.hasMoreElements()) {
+      final JarEntry entry = entries.nextElement();
+
+      if (!entry.isDirectory()) {
+        entryNames.add(entry.getName());
+      }
+    }
+
+    return entryNames;
+  }
+
+  @Override
+  boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    open = false;
+    jarFile.close();
+  }
+
+  private static boolean isSigned(JarFile jarFile) {
+    final Enumeration<JarEntry> entries = jarFile.entries();
+
+    while (entries.hasMoreElements()) {
+      if (SignatureFiles.isSignatureFile(entries.nextElement().getName())) return true;
+    }
+
+    return false;
+  }
+
+  private static Set<String> scanPackageNames(JarFile jarFile) {
+    final Set<String> packageNames = new HashSet<>();
+    final Enumeration<JarEntry> entries = jarFile.entries();
+
+    while (entries.hasMoreElements()) {
+      final JarEntry entry = entries.nextElement();
+
+      if (!entry.isDirectory()) {
+        addPackageName(packageNames, entry.getName());
+      }
+    }
+
+    return packageNames;
+  }
+}
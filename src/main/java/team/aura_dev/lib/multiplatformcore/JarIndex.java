@@ -0,0 +1,327 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The parsed central directory of a jar file.<br>
+ * Maps every entry name to where its data is located in the file. The central directory is parsed
+ * by this class itself, which allows the index to be persisted and the jar to be read without a
+ * {@link java.util.jar.JarFile}.
+ *
+ * <p>Only plain zip files with stored or deflated entries are supported. ZIP64 files and other
+ * compression methods are rejected, so they can be left to {@link java.util.jar.JarFile}.
+ *
+ * @author Yannick Schinko
+ */
+@Getter
+class JarIndex {
+  static final int METHOD_STORED = 0;
+  static final int METHOD_DEFLATED = 8;
+  static final int LOCAL_HEADER_SIZE = 30;
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+  private final Map<String, Entry> entries;
+  private final Set<String> packageNames;
+  private final boolean signed;
+  /** Where the end of central directory record is located in the file. */
+  private final int endOfCentralDirectoryOffset;
+  /** A CRC32 of the end of central directory record. Changes whenever the jar gets rewritten. */
+  private final int endOfCentralDirectoryHash;
+
+  private JarIndex(
+      Map<String, Entry> entries, int endOfCentralDirectoryOffset, int endOfCentralDirectoryHash) {
+    final Set<String> packageNames = new HashSet<>();
+    boolean signed = false;
+
+    for (String name : entries.keySet()) {
+      if (!name.endsWith("/")) {
+        ClassPathElement.addPackageName(packageNames, name);
+      }
+
+      signed |= SignatureFiles.isSignatureFile(name);
+    }
+
+    this.entries = Collections.unmodifiableMap(entries);
+    this.packageNames = Collections.unmodifiableSet(packageNames);
+    this.signed = signed;
+    this.endOfCentralDirectoryOffset = endOfCentralDirectoryOffset;
+    this.endOfCentralDirectoryHash = endOfCentralDirectoryHash;
+  }
+
+  /**
+   * Looks up an entry.
+   *
+   * @param name The name of the entry
+   * @return The entry or {@code null} if the jar doesn't contain it
+   */
+  Entry getEntry(String name) {
+    return entries.get(name);
+  }
+
+  /**
+   * Lists the names of all entries that aren't directories.
+   *
+   * @return The names of the files in the jar
+   */
+  List<String> getFileNames() {
+    final List<String> fileNames = new ArrayList<>(entries.size());
+
+    for (String name : entries.keySet()) {
+      if (!name.endsWith("/")) {
+        fileNames.add(name);
+      }
+    }
+
+    return fileNames;
+  }
+
+  /**
+   * Maps the jar file and parses its central directory.
+   *
+   * @param path The jar file
+   * @return The index or {@code null} if the jar uses features not supported by this class
+   * @throws IOException if the file can't be read or isn't a valid jar
+   */
+  static JarIndex read(Path path) throws IOException {
+    final ByteBuffer mapped = map(path);
+
+    try {
+      return read(mapped);
+    } finally {
+      // The index doesn't reference the mapping
+      BufferUnmapper.unmap(mapped);
+    }
+  }
+
+  /**
+   * Parses the central directory of a mapped jar file.
+   *
+   * @param mapped The whole jar file. Must use {@link ByteOrder#LITTLE_ENDIAN}.
+   * @return The index or {@code null} if the jar uses features not supported by this class
+   * @throws ZipException if the file isn't a valid jar, including any header or entry that doesn't
+   *     fit into the file
+   */
+  static JarIndex read(ByteBuffer mapped) throws ZipException {
+    final int endOfCentralDirectory = findEndOfCentralDirectory(mapped);
+    final int entryCount = Short.toUnsignedInt(mapped.getShort(endOfCentralDirectory + 10));
+    final long centralDirectorySize =
+        Integer.toUnsignedLong(mapped.getInt(endOfCentralDirectory + 12));
+    final long centralDirectoryOffset =
+        Integer.toUnsignedLong(mapped.getInt(endOfCentralDirectory + 16));
+
+    // ZIP64. Leave that to JarFile.
+    if ((entryCount == 0xFFFF)
+        || (centralDirectorySize == 0xFFFFFFFFL)
+        || (centralDirectoryOffset == 0xFFFFFFFFL)) return null;
+
+    final long centralDirectoryEnd = centralDirectoryOffset + centralDirectorySize;
+
+    if (centralDirectoryEnd > endOfCentralDirectory) {
+      throw new ZipException("Invalid central directory");
+    }
+
+    final Map<String, Entry> entries = new HashMap<>((entryCount * 4) / 3 + 1);
+    // A long, so adding the lengths of a malformed header can't overflow
+    long offset = centralDirectoryOffset;
+
+    for (int i = 0; i < entryCount; ++i) {
+      if ((offset + CENTRAL_DIRECTORY_HEADER_SIZE > centralDirectoryEnd)
+          || (mapped.getInt((int) offset) != CENTRAL_DIRECTORY_SIGNATURE)) {
+        throw new ZipException("Invalid central directory header");
+      }
+
+      final int header = (int) offset;
+      final int method = Short.toUnsignedInt(mapped.getShort(header + 10));
+      final long compressedSize = Integer.toUnsignedLong(mapped.getInt(header + 20));
+      final long size = Integer.toUnsignedLong(mapped.getInt(header + 24));
+      final int nameLength = Short.toUnsignedInt(mapped.getShort(header + 28));
+      final int extraLength = Short.toUnsignedInt(mapped.getShort(header + 30));
+      final int commentLength = Short.toUnsignedInt(mapped.getShort(header + 32));
+      final long localHeaderOffset = Integer.toUnsignedLong(mapped.getInt(header + 42));
+
+      if ((compressedSize == 0xFFFFFFFFL)
+          || (size == 0xFFFFFFFFL)
+          || (localHeaderOffset == 0xFFFFFFFFL)) return null;
+
+      // Entries can't be larger than an array. Leave that to JarFile.
+      if (size > Integer.MAX_VALUE) return null;
+
+      if ((method != METHOD_STORED) && (method != METHOD_DEFLATED)) return null;
+
+      if (offset + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength > centralDirectoryEnd) {
+        throw new ZipException("Invalid central directory header");
+      }
+
+      // The data has to be located in front of the central directory
+      if (localHeaderOffset + LOCAL_HEADER_SIZE + compressedSize > centralDirectoryOffset) {
+        throw new ZipException("Invalid entry offset");
+      }
+
+      final String name = readName(mapped, header + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength);
+
+      // Like JarFile, the first entry with a name wins
+      entries.putIfAbsent(
+          name, new Entry(method, (int) compressedSize, (int) size, (int) localHeaderOffset));
+
+      offset += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+
+    return new JarIndex(
+        entries, endOfCentralDirectory, hashEndOfCentralDirectory(mapped, endOfCentralDirectory));
+  }
+
+  /**
+   * Checks if the jar file still is the one this index was created from, by comparing its end of
+   * central directory record.<br>
+   * Only a few bytes at the end of the file are read for this.
+   *
+   * @param path The jar file
+   * @return {@code true} if the record is unchanged
+   */
+  boolean matches(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer record =
+          ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+      while (record.hasRemaining()) {
+        if (channel.read(record, endOfCentralDirectoryOffset + record.position()) < 0) {
+          return false;
+        }
+      }
+
+      return (record.getInt(0) == END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+          && (hashEndOfCentralDirectory(record, 0) == endOfCentralDirectoryHash);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes this index in a compact binary form.
+   *
+   * @param out Where to write to
+   * @throws IOException if writing fails
+   */
+  void write(DataOutput out) throws IOException {
+    out.writeInt(endOfCentralDirectoryOffset);
+    out.writeInt(endOfCentralDirectoryHash);
+    out.writeInt(entries.size());
+
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      final Entry value = entry.getValue();
+
+      out.writeUTF(entry.getKey());
+      out.writeByte(value.method);
+      out.writeInt(value.compressedSize);
+      out.writeInt(value.size);
+      out.writeInt(value.localHeaderOffset);
+    }
+  }
+
+  /**
+   * Reads an index written by {@link #write(DataOutput)}.
+   *
+   * @param in Where to read from
+   * @return The read index
+   * @throws IOException if reading fails or the data is invalid
+   */
+  static JarIndex read(DataInput in) throws IOException {
+    final int endOfCentralDirectoryOffset = in.readInt();
+    final int endOfCentralDirectoryHash = in.readInt();
+    final int entryCount = in.readInt();
+
+    if (entryCount < 0) throw new IOException("Invalid entry count");
+
+    final Map<String, Entry> entries = new HashMap<>((entryCount * 4) / 3 + 1);
+
+    for (int i = 0; i < entryCount; ++i) {
+      final String name = in.readUTF();
+
+      entries.put(name, new Entry(in.readByte(), in.readInt(), in.readInt(), in.readInt()));
+    }
+
+    return new JarIndex(entries, endOfCentralDirectoryOffset, endOfCentralDirectoryHash);
+  }
+
+  /**
+   * Maps a whole jar file read only.
+   *
+   * @param path The jar file
+   * @return The mapped file in {@link ByteOrder#LITTLE_ENDIAN}
+   * @throws IOException if the file can't be mapped or is larger than 2 GiB
+   */
+  static ByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long size = channel.size();
+
+      if (size > Integer.MAX_VALUE) throw new ZipException("File too large to be mapped");
+
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer mapped) throws ZipException {
+    final int last = mapped.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+    final int first = Math.max(0, last - MAX_COMMENT_LENGTH);
+
+    for (int offset = last; offset >= first; --offset) {
+      if (mapped.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) return offset;
+    }
+
+    throw new ZipException("Not a jar file");
+  }
+
+  private static int hashEndOfCentralDirectory(ByteBuffer buffer, int offset) {
+    final CRC32 crc = new CRC32();
+
+    for (int i = 0; i < END_OF_CENTRAL_DIRECTORY_SIZE; ++i) {
+      crc.update(buffer.get(offset + i));
+    }
+
+    return (int) crc.getValue();
+  }
+
+  private static String readName(ByteBuffer mapped, int offset, int length) {
+    final byte[] name = new byte[length];
+    final ByteBuffer view = mapped.duplicate();
+    view.position(offset);
+    view.get(name);
+
+    // Jar entry names are always UTF-8
+    return new String(name, StandardCharsets.UTF_8);
+  }
+
+  /** The location of an entry's data in the jar file. */
+  @RequiredArgsConstructor
+  @Getter
+  static final class Entry {
+    private final int method;
+    private final int compressedSize;
+    private final int size;
+    private final int localHeaderOffset;
+  }
+}
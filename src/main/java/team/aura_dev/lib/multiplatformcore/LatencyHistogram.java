@@ -0,0 +1,183 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with power of two buckets. Bucket {@code i} counts durations of up to
+ * {@code 2^i} nanoseconds, the last bucket everything above that.<br>
+ * Recording is lock free and cheap enough for the class loading hot path. The percentiles are the
+ * upper bounds of their buckets, so they are off by at most a factor of two.
+ *
+ * <p>The getters read the live values, so they might be slightly inconsistent with each other while
+ * durations are being recorded.
+ *
+ * @author Yannick Schinko
+ * @see ClassLoaderMetrics
+ */
+public class LatencyHistogram {
+  /** The amount of buckets. The last bucket starts at about 1 second. */
+  public static final int BUCKETS = 32;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; ++i) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos The duration in nanoseconds
+   */
+  void record(long nanos) {
+    if (nanos < 0) {
+      // System.nanoTime() isn't guaranteed to be monotonic on every platform
+      nanos = 0;
+    }
+
+    buckets[getBucket(nanos)].increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  /**
+   * Returns how many durations have been recorded.
+   *
+   * @return The amount of durations
+   */
+  public long getCount() {
+    long count = 0;
+
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the sum of all recorded durations.
+   *
+   * @return The total duration in nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  /**
+   * Returns the longest recorded duration.
+   *
+   * @return The longest duration in nanoseconds
+   */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Returns the average of the recorded durations.
+   *
+   * @return The average duration in nanoseconds or {@code 0} if nothing has been recorded
+   */
+  public long getMeanNanos() {
+    final long count = getCount();
+
+    return (count == 0) ? 0 : (getTotalNanos() / count);
+  }
+
+  /**
+   * Returns the median of the recorded durations.
+   *
+   * @return The upper bound of the bucket of the median in nanoseconds
+   * @see #getPercentileNanos(double)
+   */
+  public long getMedianNanos() {
+    return getPercentileNanos(0.5);
+  }
+
+  /**
+   * Returns the 99th percentile of the recorded durations.
+   *
+   * @return The upper bound of the bucket of the 99th percentile in nanoseconds
+   * @see #getPercentileNanos(double)
+   */
+  public long getP99Nanos() {
+    return getPercentileNanos(0.99);
+  }
+
+  /**
+   * Returns a percentile of the recorded durations.
+   *
+   * @param percentile The percentile, between {@code 0} and {@code 1}
+   * @return The upper bound of the bucket the percentile falls into in nanoseconds, but never more
+   *     than {@link #getMaxNanos()}. {@code 0} if nothing has been recorded.
+   * @throws IllegalArgumentException if {@code percentile} is not between {@code 0} and {@code 1}
+   */
+  public long getPercentileNanos(double percentile) {
+    if ((percentile < 0.0) || (percentile > 1.0)) {
+      throw new IllegalArgumentException("percentile must be between 0 and 1: " + percentile);
+    }
+
+    final long[] counts = getBucketCounts();
+    long count = 0;
+
+    for (long bucketCount : counts) {
+      count += bucketCount;
+    }
+
+    if (count == 0) return 0;
+
+    final long rank = Math.max(1, (long) Math.ceil(percentile * count));
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS - 1; ++i) {
+      seen += counts[i];
+
+      if (seen >= rank) return Math.min(1L << i, getMaxNanos());
+    }
+
+    return getMaxNanos();
+  }
+
+  /**
+   * Returns the counts of all buckets. Bucket {@code i} counts the durations of up to {@code 2^i}
+   * nanoseconds that didn't fit into the previous bucket.
+   *
+   * @return A copy of the counts, {@link #BUCKETS} long
+   */
+  public long[] getBucketCounts() {
+    final long[] counts = new long[BUCKETS];
+
+    for (int i = 0; i < BUCKETS; ++i) {
+      counts[i] = buckets[i].sum();
+    }
+
+    return counts;
+  }
+
+  static int getBucket(long nanos) {
+    // The smallest power of two that is at least nanos
+    final int bucket = (nanos <= 1) ? 0 : (64 - Long.numberOfLeadingZeros(nanos - 1));
+
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram(count="
+        + getCount()
+        + ", meanNanos="
+        + getMeanNanos()
+        + ", medianNanos="
+        + getMedianNanos()
+        + ", p99Nanos="
+        + getP99Nanos()
+        + ", maxNanos="
+        + getMaxNanos()
+        + ")";
+  }
+}
@@ -0,0 +1,224 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+/**
+ * A {@link ClassPathElement} for a jar whose {@link JarIndex} is already known.<br>
+ * The jar itself only gets opened once an entry is requested that the index says it contains. Until
+ * then no file is touched at all.
+ *
+ * <p>An opened jar can be closed again with {@link #closeIfIdle(long, long)} once it hasn't been
+ * used for a while. It gets reopened transparently the next time an entry is requested.
+ *
+ * @author Yannick Schinko
+ */
+class LazyJarClassPathElement extends ClassPathElement {
+  private final Path path;
+  private final JarIndex index;
+  private final ClassLoaderOptions options;
+  private final DecompressionPool pool;
+  private final SignatureCache signatureCache;
+  private ClassPathElement delegate;
+  private boolean closed = false;
+  /** The amount of reads currently using the delegate. It must not be closed while in use. */
+  private int users = 0;
+
+  private long lastUsed;
+  private int openCount = 0;
+
+  /**
+   * Creates the element without opening the jar.
+   *
+   * @param url The {@link URL} the jar was added with
+   * @param path The path of the jar file
+   * @param index The index of the jar file
+   * @param options The options that determine how the jar gets opened
+   * @param pool The pool to inflate entries of memory mapped jars with
+   * @param signatureCache The cache of verified signed jars or {@code null} to always verify them
+   */
+  LazyJarClassPathElement(
+      URL url,
+      Path path,
+      JarIndex index,
+      ClassLoaderOptions options,
+      DecompressionPool pool,
+      SignatureCache signatureCache) {
+    super(url);
+
+    this.path = path;
+    this.index = index;
+    this.options = options;
+    this.pool = pool;
+    this.signatureCache = signatureCache;
+  }
+
+  @Override
+  Set<String> getPackageNames() {
+    return index.getPackageNames();
+  }
+
+  @Override
+  ClassFile readClassFile(String entryPath) throws IOException {
+    // No need to open the jar for names it doesn't contain
+    if (index.getEntry(entryPath) == null) return null;
+
+    final ClassPathElement current = acquire();
+
+    try {
+      // Read outside of the lock, so concurrent reads don't wait for each other
+      return current.readClassFile(entryPath);
+    } finally {
+      release();
+    }
+  }
+
+  @Override
+  boolean hasEntry(String path) {
+    return index.getEntry(path) != null;
+  }
+
+  @Override
+  long getEntrySize(String path) {
+    final JarIndex.Entry entry = index.getEntry(path);
+
+    return (entry == null) ? -1L : entry.getSize();
+  }
+
+  /** The jar stays in use, and therefore open, until the stream gets closed. */
+  @Override
+  InputStream openEntryStream(String entryPath) throws IOException {
+    if (index.getEntry(entryPath) == null) return null;
+
+    final ClassPathElement current = acquire();
+    boolean opened = false;
+
+    try {
+      final InputStream in = current.openEntryStream(entryPath);
+
+      if (in == null) return null;
+
+      opened = true;
+
+      return new FilterInputStream(in) {
+        private boolean closed = false;
+
+        @Override
+        public void close() throws IOException {
+          synchronized (this) {
+            if (closed) return;
+
+            closed = true;
+          }
+
+          try {
+            super.close();
+          } finally {
+            release();
+          }
+        }
+      };
+    } finally {
+      if (!opened) {
+        release();
+      }
+    }
+  }
+
+  @Override
+  Collection<String> getEntryNames() {
+    return index.getFileNames();
+  }
+
+  @Override
+  Manifest getManifest() {
+    try {
+      final ClassPathElement current = acquire();
+
+      try {
+        return current.getManifest();
+      } finally {
+        release();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Override
+  synchronized boolean isOpen() {
+    return delegate != null;
+  }
+
+  /**
+   * Returns how often the jar has been opened. Includes reopening it after it was closed for being
+   * idle.
+   *
+   * @return How often the jar has been opened
+   */
+  synchronized int getOpenCount() {
+    return openCount;
+  }
+
+  /**
+   * Closes the jar if it is open and hasn't been used for the given time.<br>
+   * This element stays usable. The jar gets opened again when it's needed.
+   *
+   * @param now The current time as given by {@link System#nanoTime()}
+   * @param idleNanos For how long the jar must not have been used
+   * @return {@code true} if the jar was closed
+   * @throws IOException if closing the jar fails
+   */
+  synchronized boolean closeIfIdle(long now, long idleNanos) throws IOException {
+    if ((delegate == null) || (users > 0) || (now - lastUsed < idleNanos)) return false;
+
+    final ClassPathElement idleDelegate = delegate;
+    delegate = null;
+    idleDelegate.close();
+
+    return true;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+
+    if (delegate != null) {
+      delegate.close();
+      delegate = null;
+    }
+  }
+
+  private synchronized ClassPathElement acquire() throws IOException {
+    if (closed) throw new IOException("Already closed");
+
+    if (delegate == null) {
+      delegate = open();
+      ++openCount;
+    }
+
+    ++users;
+    lastUsed = System.nanoTime();
+
+    return delegate;
+  }
+
+  private synchronized void release() {
+    --users;
+    lastUsed = System.nanoTime();
+  }
+
+  private ClassPathElement open() throws IOException {
+    if (options.isMemoryMapped() && !index.isSigned()) {
+      return new MappedJarClassPathElement(url, JarIndex.map(path), index, pool);
+    }
+
+    return new JarClassPathElement(url, path, signatureCache);
+  }
+}
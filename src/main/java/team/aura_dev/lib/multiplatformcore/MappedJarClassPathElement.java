@@ -0,0 +1,377 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+import lombok.Getter;
+
+/**
+ * A {@link ClassPathElement} that memory maps a jar file and reads its entries straight from the
+ * mapped memory.<br>
+ * The central directory is parsed by {@link JarIndex}, so no {@link JarFile} is involved at all.
+ * Stored entries are handed out as slices of the mapping, compressed ones are inflated into buffers
+ * of a {@link DecompressionPool}.
+ *
+ * <p>The file channel is closed right after mapping the file, so no file descriptor is held. The
+ * mapping is released on {@link #close()}, as soon as no read is in progress and all handed out
+ * slices have been released (see {@link ClassFile#release()}). Until then it stays, as accessing an
+ * unmapped buffer crashes the JVM. If the JVM doesn't support unmapping (see {@link
+ * BufferUnmapper}), the mapping is released once it has been garbage collected.
+ *
+ * <p>Signature verification is not supported. Use {@link #open(URL, Path, DecompressionPool)},
+ * which returns {@code null} for any jar that can't be handled this way, or check {@link
+ * JarIndex#isSigned()} yourself.
+ *
+ * @author Yannick Schinko
+ */
+class MappedJarClassPathElement extends ClassPathElement {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+  private final ByteBuffer mapped;
+  private final JarIndex index;
+  private final DecompressionPool pool;
+  @Getter private final Manifest manifest;
+  private boolean open = true;
+  /** The reads in progress plus the handed out slices. The mapping must not be released before. */
+  private int users = 0;
+
+  private boolean mappingReleased = false;
+
+  /**
+   * Creates an element from an already mapped jar file and its index.
+   *
+   * @param url The {@link URL} the jar was added with
+   * @param mapped The whole jar file in {@link java.nio.ByteOrder#LITTLE_ENDIAN}
+   * @param index The index of the mapped jar file. Must not be signed.
+   * @param pool The pool to inflate compressed entries with
+   * @throws IOException if the manifest can't be read. The mapping is released then.
+   */
+  MappedJarClassPathElement(URL url, ByteBuffer mapped, JarIndex index, DecompressionPool pool)
+      throws IOException {
+    super(url);
+
+    this.mapped = mapped;
+    this.index = index;
+    this.pool = pool;
+
+    try {
+      this.manifest = readManifest();
+    } catch (IOException | RuntimeException e) {
+      BufferUnmapper.unmap(mapped);
+
+      throw e;
+    }
+  }
+
+  /**
+   * Maps and indexes the jar file.
+   *
+   * @param url The {@link URL} the jar was added with
+   * @param path The path of the jar file
+   * @param pool The pool to inflate compressed entries with
+   * @return The element or {@code null} if the jar is signed, uses ZIP64 or is too large to be
+   *     mapped in one piece
+   * @throws IOException if the file can't be read or isn't a valid jar
+   */
+  static MappedJarClassPathElement open(URL url, Path path, DecompressionPool pool)
+      throws IOException {
+    if (Files.size(path) > Integer.MAX_VALUE) return null;
+
+    final ByteBuffer mapped = JarIndex.map(path);
+
+    try {
+      final JarIndex index = JarIndex.read(mapped);
+
+      if ((index != null) && !index.isSigned()) {
+        return new MappedJarClassPathElement(url, mapped, index, pool);
+      }
+    } catch (IOException | RuntimeException e) {
+      BufferUnmapper.unmap(mapped);
+
+      throw e;
+    }
+
+    BufferUnmapper.unmap(mapped);
+
+    return null;
+  }
+
+  @Override
+  Set<String> getPackageNames() {
+    return index.getPackageNames();
+  }
+
+  @Override
+  ClassFile readClassFile(String path) throws IOException {
+    final JarIndex.Entry entry = index.getEntry(path);
+
+    if (entry == null) return null;
+
+    return read(entry);
+  }
+
+  @Override
+  boolean hasEntry(String path) {
+    return index.getEntry(path) != null;
+  }
+
+  @Override
+  long getEntrySize(String path) {
+    final JarIndex.Entry entry = index.getEntry(path);
+
+    return (entry == null) ? -1L : entry.getSize();
+  }
+
+  /**
+   * Stored entries are read straight from the mapping, compressed ones are inflated while reading.
+   * The mapping is kept until the stream gets closed.
+   */
+  @Override
+  InputStream openEntryStream(String path) throws IOException {
+    final JarIndex.Entry entry = index.getEntry(path);
+
+    if (entry == null) return null;
+
+    acquire();
+
+    try {
+      final int dataOffset = getDataOffset(entry);
+
+      if (entry.getMethod() == JarIndex.METHOD_STORED) {
+        return new ClassFile(slice(dataOffset, entry.getSize()), null, null, this::release)
+            .openStream();
+      }
+
+      final InputStream compressed =
+          new ClassFile(slice(dataOffset, entry.getCompressedSize()), null, null, this::release)
+              .openStream();
+
+      return new MappedInflaterInputStream(compressed, pool);
+    } catch (IOException | RuntimeException e) {
+      release();
+
+      throw e;
+    }
+  }
+
+  @Override
+  Collection<String> getEntryNames() {
+    return index.getFileNames();
+  }
+
+  /**
+   * Returns if the mapping is still held. That includes a closed element whose slices haven't all
+   * been released yet.
+   *
+   * @return {@code true} if the file is still mapped
+   */
+  @Override
+  synchronized boolean isOpen() {
+    return !mappingReleased;
+  }
+
+  /**
+   * Closes this element. The mapping is released right away if it isn't used anymore, otherwise as
+   * soon as the last slice has been released.
+   */
+  @Override
+  public synchronized void close() {
+    if (!open) return;
+
+    open = false;
+
+    if (users == 0) {
+      releaseMapping();
+    }
+  }
+
+  private synchronized void acquire() throws IOException {
+    if (!open) throw new IOException("Already closed");
+
+    ++users;
+  }
+
+  private synchronized void release() {
+    if ((--users == 0) && !open) {
+      releaseMapping();
+    }
+  }
+
+  private void releaseMapping() {
+    mappingReleased = true;
+    BufferUnmapper.unmap(mapped);
+  }
+
+  private ClassFile read(JarIndex.Entry entry) throws IOException {
+    acquire();
+
+    boolean slice = false;
+
+    try {
+      final ClassFile classFile = readAcquired(entry);
+
+      // A slice keeps the mapping until it gets released
+      slice = classFile.getReleaseAction() != null;
+
+      return classFile;
+    } finally {
+      if (!slice) {
+        release();
+      }
+    }
+  }
+
+  private ClassFile readAcquired(JarIndex.Entry entry) throws IOException {
+    final int dataOffset = getDataOffset(entry);
+    final int size = entry.getSize();
+    final int compressedSize = entry.getCompressedSize();
+
+    if (entry.getMethod() == JarIndex.METHOD_STORED) {
+      // No copy at all. Just a view on the mapped memory.
+      return new ClassFile(slice(dataOffset, size), null, null, this::release);
+    }
+
+    final ByteBuffer output = pool.acquireBuffer(size);
+    final ByteBuffer input = pool.acquireBuffer(compressedSize);
+    final Inflater inflater = pool.acquireInflater();
+
+    try {
+      final ByteBuffer compressed = mapped.duplicate();
+      compressed.position(dataOffset);
+      compressed.get(input.array(), input.arrayOffset(), compressedSize);
+
+      inflater.setInput(input.array(), input.arrayOffset(), compressedSize);
+
+      int inflated = 0;
+
+      while (inflated < size) {
+        final int read =
+            inflater.inflate(output.array(), output.arrayOffset() + inflated, size - inflated);
+
+        if ((read == 0)
+            && (inflater.finished() || inflater.needsDictionary() || inflater.needsInput())) {
+          break;
+        }
+
+        inflated += read;
+      }
+
+      if (inflated != size) {
+        throw new ZipException(
+            "Invalid entry size (expected " + size + " but got " + inflated + " bytes)");
+      }
+
+      return new ClassFile(output, null, pool);
+    } catch (DataFormatException e) {
+      pool.releaseBuffer(output);
+
+      throw new ZipException(e.getMessage());
+    } catch (IOException | RuntimeException e) {
+      pool.releaseBuffer(output);
+
+      throw e;
+    } finally {
+      pool.releaseBuffer(input);
+      pool.releaseInflater(inflater);
+    }
+  }
+
+  private int getDataOffset(JarIndex.Entry entry) throws ZipException {
+    final int offset = entry.getLocalHeaderOffset();
+
+    if ((offset + JarIndex.LOCAL_HEADER_SIZE > mapped.limit())
+        || (mapped.getInt(offset) != LOCAL_HEADER_SIGNATURE)) {
+      throw new ZipException("Invalid local file header");
+    }
+
+    final int nameLength = Short.toUnsignedInt(mapped.getShort(offset + 26));
+    final int extraLength = Short.toUnsignedInt(mapped.getShort(offset + 28));
+    final int dataOffset = offset + JarIndex.LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+    if ((long) dataOffset + entry.getCompressedSize() > mapped.limit()) {
+      throw new ZipException("Entry extends past the end of the file");
+    }
+
+    return dataOffset;
+  }
+
+  private ByteBuffer slice(int offset, int length) {
+    final ByteBuffer view = mapped.duplicate();
+    view.position(offset).limit(offset + length);
+
+    return view.slice();
+  }
+
+  /** Inflates an entry with an {@link Inflater} of the pool and returns it when closed. */
+  private static final class MappedInflaterInputStream extends InflaterInputStream {
+    private final DecompressionPool pool;
+    private boolean closed = false;
+    private boolean eof = false;
+
+    MappedInflaterInputStream(InputStream compressed, DecompressionPool pool) {
+      super(compressed, pool.acquireInflater());
+
+      this.pool = pool;
+    }
+
+    /** Like {@link java.util.zip.ZipFile}, adds a dummy byte the inflater may need at the end. */
+    @Override
+    protected void fill() throws IOException {
+      if (eof) throw new EOFException("Unexpected end of the compressed entry");
+
+      len = in.read(buf, 0, buf.length);
+
+      if (len == -1) {
+        buf[0] = 0;
+        len = 1;
+        eof = true;
+      }
+
+      inf.setInput(buf, 0, len);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (closed) return;
+
+      closed = true;
+
+      try {
+        super.close();
+      } finally {
+        pool.releaseInflater(inf);
+      }
+    }
+  }
+
+  private Manifest readManifest() throws IOException {
+    final JarIndex.Entry entry = index.getEntry(JarFile.MANIFEST_NAME);
+
+    if (entry == null) return null;
+
+    final ClassFile file = read(entry);
+
+    try {
+      final ByteBuffer buffer = file.getBuffer();
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.duplicate().get(bytes);
+
+      return new Manifest(new ByteArrayInputStream(bytes));
+    } finally {
+      file.release();
+    }
+  }
+}
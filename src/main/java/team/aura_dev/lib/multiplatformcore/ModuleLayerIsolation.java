@@ -0,0 +1,372 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import team.aura_dev.lib.multiplatformcore.bootstrap.MultiProjectBootstrapper;
+import team.aura_dev.lib.multiplatformcore.dependency.RuntimeDependency;
+import team.aura_dev.lib.multiplatformcore.download.DependencyDownloader;
+
+/**
+ * Loads jars through a {@code java.lang.ModuleLayer} instead of a {@link DependencyClassLoader}.
+ * <br>
+ * Every jar becomes a module, usually an automatic one. The module system then finds the module of
+ * a {@link Class} through its package directly, without searching through the jars.
+ *
+ * <p>Packages that have to stay in the parent {@link ClassLoader}, like the excluded {@code .api}
+ * and {@code .bootstrap} packages and this library itself, must not be part of any module. Jars and
+ * directories containing them are copied into a work directory without those packages first.
+ * Unaffected jars are used as they are.
+ *
+ * <p>The module system only exists since Java 9. As this library targets Java 8 it is accessed
+ * through reflection. Check {@link #isSupported()} before using it. The layer is fixed once it has
+ * been created, so jars added later can't be loaded through it. The copies stay in the work
+ * directory for as long as the layer is used and get removed with {@link #deleteWorkDir(Path)}.
+ *
+ * @author Yannick Schinko
+ */
+public final class ModuleLayerIsolation {
+  private static final String AUTOMATIC_MODULE_NAME = "Automatic-Module-Name";
+  private static final String MODULE_NAME_PREFIX = "multiplatformcore.isolated";
+  /**
+   * The packages of this library. Only these exact packages are kept in the parent, as the plugin
+   * code often lives in a subpackage.
+   */
+  private static final List<String> LIBRARY_PATHS =
+      Arrays.asList(
+          toPath(DependencyClassLoader.class.getPackage().getName()),
+          toPath(MultiProjectBootstrapper.class.getPackage().getName()),
+          toPath(RuntimeDependency.class.getPackage().getName()),
+          toPath(DependencyDownloader.class.getPackage().getName()));
+
+  private ModuleLayerIsolation() {}
+
+  /**
+   * Checks if the running JVM has a module system.
+   *
+   * @return {@code true} on Java 9 and newer
+   */
+  public static boolean isSupported() {
+    try {
+      Class.forName("java.lang.ModuleLayer");
+
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Creates a new module layer on top of the boot layer that contains the given jars and returns
+   * its {@link ClassLoader}.
+   *
+   * @param urls The jars and directories to put into the layer. Only {@code file:} {@link URL}s are
+   *     supported.
+   * @param parent The {@link ClassLoader} to ask for Classes the layer doesn't contain
+   * @param parentPackageNames The packages that must be loaded by {@code parent}. These and their
+   *     subpackages are removed from the modules, as are the packages of this library.
+   * @param workDir Where the copies without the parent packages are written to. Delete it with
+   *     {@link #deleteWorkDir(Path)} once the layer isn't used anymore.
+   * @return The {@link ClassLoader} of the new layer
+   * @throws IOException if reading the jars or writing the copies fails
+   * @throws IllegalStateException if the module system isn't supported or the modules can't be
+   *     resolved, for example because two jars contain the same package
+   */
+  public static ClassLoader createLayer(
+      Collection<URL> urls, ClassLoader parent, Collection<String> parentPackageNames, Path workDir)
+      throws IOException {
+    if (!isSupported()) {
+      throw new IllegalStateException("The module system requires Java 9 or newer");
+    }
+
+    final List<String> parentPaths = new ArrayList<>();
+
+    for (String packageName : parentPackageNames) {
+      parentPaths.add(toPath(packageName));
+    }
+
+    final List<Path> modules = new ArrayList<>();
+
+    for (URL url : new LinkedHashSet<>(urls)) {
+      final Path module = prepareModule(toFilePath(url), parentPaths, workDir, modules.size());
+
+      if (module != null) {
+        modules.add(module);
+      }
+    }
+
+    if (modules.isEmpty()) {
+      throw new IllegalStateException("There are no modules to put into the layer");
+    }
+
+    try {
+      return defineLayer(modules.toArray(new Path[0]), parent);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Creating the module layer failed", e.getTargetException());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Creating the module layer failed", e);
+    }
+  }
+
+  /**
+   * Deletes a work directory passed to {@link #createLayer(Collection, ClassLoader, Collection,
+   * Path)} and the copies in it.<br>
+   * Copies that can't be deleted yet, for example because the old layer still has them open on
+   * Windows, are left for the JVM to delete on exit.
+   *
+   * @param workDir The work directory to delete
+   */
+  public static void deleteWorkDir(Path workDir) {
+    if (!Files.isDirectory(workDir)) return;
+
+    try {
+      Files.walkFileTree(
+          workDir,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              deleteIfPossible(file);
+
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+              deleteIfPossible(dir);
+
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      // Whatever is left gets deleted on exit
+    }
+  }
+
+  private static void deleteIfPossible(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      path.toFile().deleteOnExit();
+    }
+  }
+
+  /**
+   * Returns the path to use as a module for a jar or directory.
+   *
+   * @return The jar itself, a copy without the parent packages or {@code null} if nothing is left
+   *     after removing them
+   */
+  private static Path prepareModule(Path source, List<String> parentPaths, Path workDir, int index)
+      throws IOException {
+    if (!Files.isDirectory(source) && !containsParentPackages(source, parentPaths)) return source;
+
+    Files.createDirectories(workDir);
+
+    final Path copy = workDir.resolve(MODULE_NAME_PREFIX + index + ".jar");
+    copy.toFile().deleteOnExit();
+    final Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest
+        .getMainAttributes()
+        .put(new Attributes.Name(AUTOMATIC_MODULE_NAME), MODULE_NAME_PREFIX + index);
+
+    int copiedEntries = 0;
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(copy), manifest)) {
+      if (Files.isDirectory(source)) {
+        copiedEntries = copyDirectory(source, parentPaths, out);
+      } else {
+        try (JarFile jar = new JarFile(source.toFile(), false)) {
+          final Enumeration<JarEntry> entries = jar.entries();
+
+          while (entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+
+            if (entry.isDirectory() || !isCopied(entry.getName(), parentPaths)) continue;
+
+            try (InputStream in = jar.getInputStream(entry)) {
+              copyEntry(entry.getName(), in, out);
+            }
+
+            ++copiedEntries;
+          }
+        }
+      }
+    }
+
+    if (copiedEntries == 0) {
+      Files.delete(copy);
+
+      return null;
+    }
+
+    return copy;
+  }
+
+  private static int copyDirectory(Path source, List<String> parentPaths, JarOutputStream out)
+      throws IOException {
+    final int[] copiedEntries = {0};
+
+    Files.walkFileTree(
+        source,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            final String name = source.relativize(file).toString().replace('\\', '/');
+
+            if (isCopied(name, parentPaths)) {
+              try (InputStream in = Files.newInputStream(file)) {
+                copyEntry(name, in, out);
+              }
+
+              ++copiedEntries[0];
+            }
+
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    return copiedEntries[0];
+  }
+
+  private static void copyEntry(String name, InputStream in, JarOutputStream out)
+      throws IOException {
+    final byte[] buffer = new byte[8192];
+    int read;
+
+    out.putNextEntry(new ZipEntry(name));
+
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+
+    out.closeEntry();
+  }
+
+  private static boolean containsParentPackages(Path jarFile, List<String> parentPaths)
+      throws IOException {
+    try (JarFile jar = new JarFile(jarFile.toFile(), false)) {
+      final Enumeration<JarEntry> entries = jar.entries();
+
+      while (entries.hasMoreElements()) {
+        final String name = entries.nextElement().getName();
+
+        if (isInParentPackage(name, parentPaths)) return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isCopied(String name, List<String> parentPaths) {
+    if (isInParentPackage(name, parentPaths)) return false;
+
+    // The copy gets its own manifest and becomes an automatic module
+    if (name.equals(JarFile.MANIFEST_NAME) || name.endsWith("module-info.class")) return false;
+
+    // Signatures don't match anymore after removing entries
+    return !SignatureFiles.isSignatureFile(name);
+  }
+
+  private static boolean isInParentPackage(String name, List<String> parentPaths) {
+    if (LIBRARY_PATHS.contains(name.substring(0, name.lastIndexOf('/') + 1))) return true;
+
+    for (String parentPath : parentPaths) {
+      if (name.startsWith(parentPath)) return true;
+    }
+
+    return false;
+  }
+
+  private static String toPath(String packageName) {
+    final String path = packageName.replace('.', '/');
+
+    return path.endsWith("/") ? path : (path + '/');
+  }
+
+  private static Path toFilePath(URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      throw new IllegalStateException("Only file URLs can be put into a module layer: " + url);
+    }
+
+    try {
+      return Paths.get(url.toURI());
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException("Invalid URL: " + url, e);
+    }
+  }
+
+  /**
+   * Does the equivalent of this Java 9 code:
+   *
+   * <pre>{@code
+   * ModuleFinder finder = ModuleFinder.of(modules);
+   * Set<String> names = <the names of finder.findAll()>;
+   * Configuration configuration =
+   *     ModuleLayer.boot().configuration().resolve(finder, ModuleFinder.of(), names);
+   * ModuleLayer layer = ModuleLayer.boot().defineModulesWithOneLoader(configuration, parent);
+   * return layer.findLoader(<any of the names>);
+   * }</pre>
+   */
+  private static ClassLoader defineLayer(Path[] modules, ClassLoader parent)
+      throws ReflectiveOperationException {
+    final Class<?> moduleFinderClass = Class.forName("java.lang.module.ModuleFinder");
+    final Class<?> moduleReferenceClass = Class.forName("java.lang.module.ModuleReference");
+    final Class<?> moduleDescriptorClass = Class.forName("java.lang.module.ModuleDescriptor");
+    final Class<?> configurationClass = Class.forName("java.lang.module.Configuration");
+    final Class<?> moduleLayerClass = Class.forName("java.lang.ModuleLayer");
+
+    final Method finderOf = moduleFinderClass.getMethod("of", Path[].class);
+    final Method descriptor = moduleReferenceClass.getMethod("descriptor");
+    final Method name = moduleDescriptorClass.getMethod("name");
+
+    final Object finder = finderOf.invoke(null, (Object) modules);
+    final Set<String> names = new LinkedHashSet<>();
+
+    for (Object reference : (Set<?>) moduleFinderClass.getMethod("findAll").invoke(finder)) {
+      names.add((String) name.invoke(descriptor.invoke(reference)));
+    }
+
+    final Object bootLayer = moduleLayerClass.getMethod("boot").invoke(null);
+    final Object configuration =
+        configurationClass
+            .getMethod("resolve", moduleFinderClass, moduleFinderClass, Collection.class)
+            .invoke(
+                moduleLayerClass.getMethod("configuration").invoke(bootLayer),
+                finder,
+                finderOf.invoke(null, (Object) new Path[0]),
+                names);
+    final Object layer =
+        moduleLayerClass
+            .getMethod("defineModulesWithOneLoader", configurationClass, ClassLoader.class)
+            .invoke(bootLayer, configuration, parent);
+
+    return (ClassLoader)
+        moduleLayerClass
+            .getMethod("findLoader", String.class)
+            .invoke(layer, names.iterator().next());
+  }
+}
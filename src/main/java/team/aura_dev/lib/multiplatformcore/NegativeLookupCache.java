@@ -0,0 +1,91 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, concurrent set of {@link Class} names that are known to not be contained in any {@link
+ * java.net.URL} of a {@link DependencyClassLoader}.<br>
+ * Once the cache is full it gets cleared completely. This keeps it bounded without any bookkeeping
+ * on the lookup path.
+ *
+ * <p>Entries are only valid for the generation of {@link java.net.URL}s they were recorded in. To
+ * make sure that a lookup that ran concurrently with {@link #invalidate()} can't record a stale
+ * miss, callers must obtain a stamp with {@link #getGeneration()} before looking up a {@link Class}
+ * and pass it to {@link #add(String, long)}.
+ *
+ * @author Yannick Schinko
+ */
+class NegativeLookupCache {
+  private final int maxSize;
+  private final Map<String, Boolean> misses = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxSize the maximum amount of names the cache holds before it gets cleared
+   */
+  NegativeLookupCache(int maxSize) {
+    if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Checks if the name is a known miss.
+   *
+   * @param name The name of the {@link Class}
+   * @return {@code true} if a previous lookup of this name failed and no {@link java.net.URL}s have
+   *     been added since
+   */
+  boolean contains(String name) {
+    return misses.containsKey(name);
+  }
+
+  /**
+   * The current generation. Needs to be obtained before the lookup happens.
+   *
+   * @return the current generation
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Records a miss.
+   *
+   * @param name The name of the {@link Class} that couldn't be found
+   * @param stamp The generation obtained with {@link #getGeneration()} before the lookup started
+   */
+  void add(String name, long stamp) {
+    if (generation.get() != stamp) return;
+
+    if (misses.size() >= maxSize) {
+      misses.clear();
+    }
+
+    misses.put(name, Boolean.TRUE);
+
+    // The cache got invalidated while we were adding the entry
+    if (generation.get() != stamp) {
+      misses.remove(name);
+    }
+  }
+
+  /** Drops all recorded misses. Must be called whenever new {@link java.net.URL}s were added. */
+  void invalidate() {
+    generation.incrementAndGet();
+    misses.clear();
+  }
+
+  /**
+   * The amount of names currently recorded.
+   *
+   * @return the amount of recorded misses
+   */
+  int size() {
+    return misses.size();
+  }
+}
@@ -0,0 +1,132 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.Collection;
+
+/**
+ * Checks if a {@link Class} name starts with any of a fixed set of package prefixes.<br>
+ * All prefixes must end with a {@code '.'}. The prefixes are put into an open addressing hash table
+ * keyed by {@link String#hashCode()} once. Matching then walks the {@link Class} name a single
+ * time, updating the same hash incrementally and probing the table at every {@code '.'}. So a match
+ * costs one pass over the name, no matter how many prefixes there are, and allocates nothing.
+ * Resource paths are matched the same way, reading every {@code '/'} as a {@code '.'}.
+ *
+ * @author Yannick Schinko
+ */
+final class PackagePrefixMatcher {
+  private final String[] prefixes;
+  private final int[] hashes;
+  private final int mask;
+  private final int maxLength;
+
+  /**
+   * Builds the matcher.
+   *
+   * @param prefixes The package prefixes to match. Every prefix must end with a {@code '.'}.
+   * @throws IllegalArgumentException if a prefix doesn't end with a {@code '.'}
+   */
+  PackagePrefixMatcher(Collection<String> prefixes) {
+    // Keep the table at most half full
+    final int size = Integer.highestOneBit(Math.max(1, prefixes.size()) * 2) << 1;
+    int longest = 0;
+
+    this.prefixes = new String[size];
+    this.hashes = new int[size];
+    this.mask = size - 1;
+
+    for (String prefix : prefixes) {
+      if (!prefix.endsWith(".")) {
+        throw new IllegalArgumentException("Prefix \"" + prefix + "\" must end with a '.'");
+      }
+
+      insert(prefix);
+      longest = Math.max(longest, prefix.length());
+    }
+
+    this.maxLength = longest;
+  }
+
+  /**
+   * Checks if the name starts with any of the prefixes.
+   *
+   * @param name The name to check
+   * @return {@code true} if any prefix matches
+   */
+  boolean matches(String name) {
+    return matches(name, '.');
+  }
+
+  /**
+   * Checks if a resource path, like {@code "foo/api/api.properties"}, is in any of the packages.
+   * The path isn't converted into a dotted name for that.
+   *
+   * @param path The path to check
+   * @return {@code true} if any prefix matches
+   */
+  boolean matchesPath(String path) {
+    return matches(path, '/');
+  }
+
+  private boolean matches(String name, char separator) {
+    final int length = Math.min(name.length(), maxLength);
+    int hash = 0;
+
+    for (int i = 0; i < length; ++i) {
+      final char c = name.charAt(i);
+
+      if (c == separator) {
+        hash = (31 * hash) + '.';
+
+        if (contains(hash, name, i + 1, separator)) return true;
+      } else {
+        hash = (31 * hash) + c;
+      }
+    }
+
+    return false;
+  }
+
+  private void insert(String prefix) {
+    final int hash = prefix.hashCode();
+
+    for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+      if (prefixes[slot] == null) {
+        prefixes[slot] = prefix;
+        hashes[slot] = hash;
+
+        return;
+      } else if (prefixes[slot].equals(prefix)) {
+        return;
+      }
+    }
+  }
+
+  private boolean contains(int hash, String name, int length, char separator) {
+    for (int slot = spread(hash) & mask; prefixes[slot] != null; slot = (slot + 1) & mask) {
+      final String prefix = prefixes[slot];
+
+      if ((hashes[slot] == hash)
+          && (prefix.length() == length)
+          && startsWith(name, prefix, separator)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean startsWith(String name, String prefix, char separator) {
+    if (separator == '.') return name.startsWith(prefix);
+
+    for (int i = 0; i < prefix.length(); ++i) {
+      final char c = name.charAt(i);
+
+      if (((c == separator) ? '.' : c) != prefix.charAt(i)) return false;
+    }
+
+    return true;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,204 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map from {@link String}s to values that finds every key with exactly one probe.<br>
+ * Built with hash and displace: The keys are spread into buckets by {@link String#hashCode()},
+ * which strings cache. Every bucket gets a seed that places all of its keys into distinct free
+ * slots of the table. A lookup therefore only mixes the hash code with the seed of its bucket and
+ * compares the key with the one key in that slot.
+ *
+ * <p>Keys with the same hash code can't be told apart by any seed. The few of them that end up in
+ * the same bucket are kept in a small {@link HashMap} next to the table.
+ *
+ * <p>Lookups never lock and never allocate. The map can be read by any amount of threads.
+ *
+ * @param <V> The type of the values
+ * @author Yannick Schinko
+ */
+final class PerfectHashMap<V> {
+  /** The average amount of keys per bucket. Bigger buckets need more attempts to find a seed. */
+  private static final int KEYS_PER_BUCKET = 4;
+  /**
+   * Leaving a fifth of the slots empty keeps the last buckets from needing as many attempts as
+   * there are keys.
+   */
+  private static final int SLOTS_PER_FIVE_KEYS = 6;
+  /** After how many attempts a bucket gives up and the table is built with more buckets. */
+  private static final int MAX_SEED = 1 << 16;
+
+  private final int size;
+  private final int[] seeds;
+  private final String[] keys;
+  private final Object[] values;
+  /** Keys whose hash code is already used by another key in their bucket. */
+  private final Map<String, V> collisions = new HashMap<>();
+
+  /**
+   * Builds the map.
+   *
+   * @param entries The keys and their values. Values must not be {@code null}.
+   */
+  PerfectHashMap(Map<String, V> entries) {
+    size = entries.size();
+    final int slotCount = (size == 0) ? 0 : ((size * SLOTS_PER_FIVE_KEYS) / 5 + 1);
+    keys = new String[slotCount];
+    values = new Object[slotCount];
+
+    int bucketCount = Math.max(1, size / KEYS_PER_BUCKET);
+    int[] builtSeeds;
+
+    while ((builtSeeds = build(entries, bucketCount)) == null) {
+      bucketCount *= 2;
+    }
+
+    seeds = builtSeeds;
+  }
+
+  /**
+   * Returns the value of a key.
+   *
+   * @param key The key
+   * @return The value or {@code null} if the map doesn't contain the key
+   */
+  @SuppressWarnings("unchecked")
+  V get(String key) {
+    if (keys.length == 0) return null;
+
+    final int slot = getSlot(key.hashCode(), seeds[getBucket(key, seeds.length)], keys.length);
+
+    if (key.equals(keys[slot])) return (V) values[slot];
+
+    return collisions.isEmpty() ? null : collisions.get(key);
+  }
+
+  /**
+   * Checks if the map contains a key.
+   *
+   * @param key The key
+   * @return {@code true} if it contains it
+   */
+  boolean containsKey(String key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Returns the amount of keys.
+   *
+   * @return The amount of keys
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Tries to place all keys with the given amount of buckets.
+   *
+   * @return The seeds of the buckets or {@code null} if a bucket couldn't be placed
+   */
+  private int[] build(Map<String, V> entries, int bucketCount) {
+    final List<List<Map.Entry<String, V>>> buckets = new ArrayList<>(bucketCount);
+
+    for (int i = 0; i < bucketCount; ++i) {
+      buckets.add(new ArrayList<>());
+    }
+
+    final List<Set<Integer>> bucketHashCodes = new ArrayList<>(bucketCount);
+
+    for (int i = 0; i < bucketCount; ++i) {
+      bucketHashCodes.add(new HashSet<>());
+    }
+
+    collisions.clear();
+
+    for (Map.Entry<String, V> entry : entries.entrySet()) {
+      final int bucket = getBucket(entry.getKey(), bucketCount);
+
+      if (bucketHashCodes.get(bucket).add(entry.getKey().hashCode())) {
+        buckets.get(bucket).add(entry);
+      } else {
+        collisions.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    final Integer[] order = new Integer[bucketCount];
+
+    for (int i = 0; i < bucketCount; ++i) {
+      order[i] = i;
+    }
+
+    // The biggest buckets are the hardest to place, so they go first while the table is empty
+    Arrays.sort(order, Comparator.comparingInt(bucket -> -buckets.get(bucket).size()));
+    Arrays.fill(keys, null);
+    Arrays.fill(values, null);
+
+    final int[] bucketSeeds = new int[bucketCount];
+    final int[] slots = new int[buckets.get(order[0]).size()];
+
+    for (int bucket : order) {
+      final List<Map.Entry<String, V>> bucketEntries = buckets.get(bucket);
+
+      if (bucketEntries.isEmpty()) break;
+
+      final int seed = findSeed(bucketEntries, slots);
+
+      if (seed == -1) return null;
+
+      bucketSeeds[bucket] = seed;
+
+      for (int i = 0; i < bucketEntries.size(); ++i) {
+        keys[slots[i]] = bucketEntries.get(i).getKey();
+        values[slots[i]] = bucketEntries.get(i).getValue();
+      }
+    }
+
+    return bucketSeeds;
+  }
+
+  /** Finds a seed that puts all keys of a bucket into distinct free slots and fills in those. */
+  private int findSeed(List<Map.Entry<String, V>> bucketEntries, int[] slots) {
+    seeds:
+    for (int seed = 0; seed < MAX_SEED; ++seed) {
+      for (int i = 0; i < bucketEntries.size(); ++i) {
+        final int slot = getSlot(bucketEntries.get(i).getKey().hashCode(), seed, keys.length);
+
+        if (keys[slot] != null) continue seeds;
+
+        for (int j = 0; j < i; ++j) {
+          if (slots[j] == slot) continue seeds;
+        }
+
+        slots[i] = slot;
+      }
+
+      return seed;
+    }
+
+    return -1;
+  }
+
+  private static int getBucket(String key, int bucketCount) {
+    return (key.hashCode() & Integer.MAX_VALUE) % bucketCount;
+  }
+
+  /** Mixes the hash code of a key with a seed, so every seed spreads the keys differently. */
+  private static int getSlot(int hashCode, int seed, int slotCount) {
+    int hash = hashCode ^ (seed * 0x9E3779B9);
+
+    hash ^= hash >>> 16;
+    hash *= 0x7FEB352D;
+    hash ^= hash >>> 15;
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+
+    return (hash & Integer.MAX_VALUE) % slotCount;
+  }
+}
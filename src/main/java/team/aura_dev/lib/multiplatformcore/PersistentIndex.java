@@ -0,0 +1,159 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Persists the {@link JarIndex}es of jar files between restarts.<br>
+ * Every index is keyed by the path, size and modification time of its jar and carries a hash of the
+ * jar's end of central directory record. An index is only reused if all of them still match, so a
+ * changed jar simply gets indexed again.
+ *
+ * <p>The file format is a small header followed by the records of all jars:
+ *
+ * <pre>
+ * int    magic ("MPCI")
+ * int    version
+ * int    record count
+ * record[]:
+ *   UTF  absolute jar path
+ *   long size
+ *   long last modified (millis)
+ *   ...  the {@link JarIndex} as written by {@link JarIndex#write(java.io.DataOutput)}
+ * </pre>
+ *
+ * @author Yannick Schinko
+ */
+class PersistentIndex {
+  private static final int MAGIC = 0x4D504349;
+  private static final int VERSION = 1;
+
+  private final Map<String, Record> loaded = new HashMap<>();
+  private final Map<String, Record> current = new LinkedHashMap<>();
+  private boolean changed = false;
+
+  /**
+   * Loads a previously saved index file.<br>
+   * A missing, corrupt or outdated file is ignored. The jars will then be indexed from scratch.
+   *
+   * @param file The index file
+   * @return {@code true} if the file was loaded
+   */
+  synchronized boolean load(Path file) {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) return false;
+
+      final int count = in.readInt();
+      final Map<String, Record> records = new HashMap<>();
+
+      for (int i = 0; i < count; ++i) {
+        final String path = in.readUTF();
+        final long size = in.readLong();
+        final long lastModified = in.readLong();
+
+        records.put(path, new Record(size, lastModified, JarIndex.read(in)));
+      }
+
+      // Only take over the records once the whole file could be read
+      loaded.putAll(records);
+
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException | RuntimeException e) {
+      // Corrupt index. Everything gets indexed again.
+      return false;
+    }
+  }
+
+  /**
+   * Returns the index of the jar. Either from the loaded index file if the jar is unchanged or
+   * freshly created.
+   *
+   * @param jar The jar file
+   * @return The index of the jar or {@code null} if the jar can't be indexed by {@link JarIndex}
+   * @throws IOException if the jar can't be read
+   */
+  synchronized JarIndex getIndex(Path jar) throws IOException {
+    final String key = getKey(jar);
+    final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+    final long size = attributes.size();
+    final long lastModified = attributes.lastModifiedTime().toMillis();
+    final Record record = loaded.get(key);
+
+    if ((record != null)
+        && (record.size == size)
+        && (record.lastModified == lastModified)
+        && record.index.matches(jar)) {
+      current.put(key, record);
+
+      return record.index;
+    }
+
+    final JarIndex index = JarIndex.read(jar);
+
+    if (index != null) {
+      current.put(key, new Record(size, lastModified, index));
+      changed = true;
+    }
+
+    return index;
+  }
+
+  /**
+   * Saves the indexes of all jars requested since this object was created, if any of them had to be
+   * indexed again.<br>
+   * The file is written with {@link AtomicFiles}, so a crash never leaves a half written index
+   * behind.
+   *
+   * @param file The index file
+   * @throws IOException if writing the file fails
+   */
+  synchronized void save(Path file) throws IOException {
+    if (!changed) return;
+
+    AtomicFiles.write(
+        file,
+        tempFile -> {
+          try (DataOutputStream out =
+              new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(current.size());
+
+            for (Map.Entry<String, Record> entry : current.entrySet()) {
+              final Record record = entry.getValue();
+
+              out.writeUTF(entry.getKey());
+              out.writeLong(record.size);
+              out.writeLong(record.lastModified);
+              record.index.write(out);
+            }
+          }
+        });
+    changed = false;
+  }
+
+  private static String getKey(Path jar) {
+    return jar.toAbsolutePath().normalize().toString();
+  }
+
+  @RequiredArgsConstructor
+  private static final class Record {
+    private final long size;
+    private final long lastModified;
+    private final JarIndex index;
+  }
+}
@@ -0,0 +1,114 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The platforms this library knows about and the packages they provide.<br>
+ * Classes in these packages are always provided by the platform, so the {@link
+ * DependencyClassLoader} asks its parent for them first instead of looking through its own jars.
+ *
+ * @author Yannick Schinko
+ */
+public enum Platform {
+  /** The Java runtime itself. Always active. */
+  JAVA(
+      null,
+      "java",
+      "jdk",
+      "sun",
+      "javax.crypto",
+      "javax.management",
+      "javax.naming",
+      "javax.net",
+      "javax.script",
+      "javax.security",
+      "javax.sql"),
+  BUKKIT(
+      "org.bukkit.Bukkit",
+      "org.bukkit",
+      "org.spigotmc",
+      "com.destroystokyo.paper",
+      "io.papermc.paper",
+      "net.minecraft",
+      "net.md_5.bungee.api.chat"),
+  BUNGEECORD("net.md_5.bungee.api.ProxyServer", "net.md_5.bungee"),
+  SPONGE("org.spongepowered.api.Sponge", "org.spongepowered.api", "net.minecraft"),
+  VELOCITY("com.velocitypowered.api.proxy.ProxyServer", "com.velocitypowered");
+
+  private final String markerClassName;
+  private final List<String> packageNames;
+
+  Platform(String markerClassName, String... packageNames) {
+    this.markerClassName = markerClassName;
+    this.packageNames = Collections.unmodifiableList(Arrays.asList(packageNames));
+  }
+
+  /**
+   * The packages that are provided by this platform.
+   *
+   * @return the package names, without a trailing {@code '.'}
+   */
+  public List<String> getPackageNames() {
+    return packageNames;
+  }
+
+  /**
+   * Checks if this platform is present by looking for a class that only it provides.
+   *
+   * @param classLoader The {@link ClassLoader} to check with. Usually the {@link ClassLoader} of
+   *     the bootstrap plugin.
+   * @return {@code true} if this platform is present. Always {@code true} for {@link #JAVA}.
+   */
+  public boolean isPresent(ClassLoader classLoader) {
+    if (markerClassName == null) return true;
+
+    try {
+      Class.forName(markerClassName, false, classLoader);
+
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Finds all platforms present.
+   *
+   * @param classLoader The {@link ClassLoader} to check with. Usually the {@link ClassLoader} of
+   *     the bootstrap plugin.
+   * @return All platforms for which {@link #isPresent(ClassLoader)} returns {@code true}
+   */
+  public static Set<Platform> detect(ClassLoader classLoader) {
+    final Set<Platform> platforms = EnumSet.noneOf(Platform.class);
+
+    for (Platform platform : values()) {
+      if (platform.isPresent(classLoader)) {
+        platforms.add(platform);
+      }
+    }
+
+    return platforms;
+  }
+
+  /**
+   * Combines the packages of several platforms.
+   *
+   * @param platforms The platforms to get the packages of
+   * @return The packages of all platforms, without duplicates
+   */
+  public static Set<String> getPackageNames(Collection<Platform> platforms) {
+    final Set<String> packageNames = new LinkedHashSet<>();
+
+    for (Platform platform : platforms) {
+      packageNames.addAll(platform.getPackageNames());
+    }
+
+    return packageNames;
+  }
+}
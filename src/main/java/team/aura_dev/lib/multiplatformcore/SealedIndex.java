@@ -0,0 +1,71 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lookup tables of a sealed {@link DependencyClassLoader} (see {@link
+ * DependencyClassLoader#seal()}).<br>
+ * Maps the binary name of every {@link Class} and the path of every resource directly to the {@link
+ * ClassPathElement} that contains it. If more than one element contains a name, the one added first
+ * wins, just like with the {@link ClassPathIndex}.
+ *
+ * <p>As no more elements can be added, the tables are {@link PerfectHashMap}s. Lookups, including
+ * misses, take a single probe without locking or allocating.
+ *
+ * @author Yannick Schinko
+ */
+class SealedIndex {
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final PerfectHashMap<ClassPathElement> classes;
+  private final PerfectHashMap<ClassPathElement> resources;
+
+  /**
+   * Lists the entries of all elements and builds the tables.
+   *
+   * @param elements The elements, in the order they were added
+   * @throws IOException if the entries of an element can't be listed
+   */
+  SealedIndex(List<ClassPathElement> elements) throws IOException {
+    final Map<String, ClassPathElement> classMap = new HashMap<>();
+    final Map<String, ClassPathElement> resourceMap = new HashMap<>();
+
+    for (ClassPathElement element : elements) {
+      for (String path : element.getEntryNames()) {
+        // putIfAbsent, so the element added first wins
+        resourceMap.putIfAbsent(path, element);
+
+        if (path.endsWith(CLASS_SUFFIX) && !path.startsWith("META-INF/")) {
+          classMap.putIfAbsent(
+              path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.'), element);
+        }
+      }
+    }
+
+    classes = new PerfectHashMap<>(classMap);
+    resources = new PerfectHashMap<>(resourceMap);
+  }
+
+  /**
+   * Returns the element containing a {@link Class}.
+   *
+   * @param name The binary name of the {@link Class}
+   * @return The element or {@code null} if none contains it
+   */
+  ClassPathElement getClassElement(String name) {
+    return classes.get(name);
+  }
+
+  /**
+   * Returns the element containing a resource.
+   *
+   * @param path The path of the resource, like {@code "foo/bar/baz.properties"}
+   * @return The element or {@code null} if none contains it
+   */
+  ClassPathElement getResourceElement(String path) {
+    return resources.get(path);
+  }
+}
@@ -0,0 +1,103 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+
+/**
+ * Reads the provider configuration files in {@code META-INF/services} the same way {@link
+ * java.util.ServiceLoader} does: One fully qualified class name per line, comments start with
+ * {@code '#'} and whitespace around the names is ignored.
+ *
+ * @author Yannick Schinko
+ */
+final class ServiceFiles {
+  /** The directory the service files are in. */
+  static final String SERVICES_DIR = "META-INF/services/";
+  /** The package name of {@link #SERVICES_DIR}, as returned by {@link ClassPathElement}. */
+  static final String SERVICES_PACKAGE = "META-INF.services";
+
+  private ServiceFiles() {}
+
+  /**
+   * Checks if a path is a service file. Only files directly in {@code META-INF/services} are.
+   *
+   * @param path The path of the entry, like {@code "META-INF/services/java.sql.Driver"}
+   * @return {@code true} if it is a service file
+   */
+  static boolean isServiceFile(String path) {
+    return path.startsWith(SERVICES_DIR)
+        && (path.length() > SERVICES_DIR.length())
+        && (path.indexOf('/', SERVICES_DIR.length()) == -1);
+  }
+
+  /**
+   * Reads the provider names of a service file. Like {@link java.util.ServiceLoader}, only the
+   * first occurrence of a name counts.
+   *
+   * @param serviceName The binary name of the service
+   * @param location Where the file is from. Only used in error messages.
+   * @param in The contents of the service file. Gets closed.
+   * @param providerNames The set to add the provider names to. Should keep the insertion order.
+   * @throws IOException if reading the file fails
+   * @throws ServiceConfigurationError if the file contains a name that isn't a valid class name
+   */
+  static void read(String serviceName, Object location, InputStream in, Set<String> providerNames)
+      throws IOException {
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String line;
+      int lineNumber = 0;
+
+      while ((line = reader.readLine()) != null) {
+        ++lineNumber;
+
+        final int comment = line.indexOf('#');
+        final String name = ((comment == -1) ? line : line.substring(0, comment)).trim();
+
+        if (name.isEmpty()) continue;
+
+        if (!isClassName(name)) {
+          throw new ServiceConfigurationError(
+              serviceName
+                  + ": "
+                  + location
+                  + ":"
+                  + lineNumber
+                  + ": Illegal provider-class name: "
+                  + name);
+        }
+
+        providerNames.add(name);
+      }
+    }
+  }
+
+  private static boolean isClassName(String name) {
+    boolean segmentStart = true;
+
+    for (int i = 0; i < name.length(); ) {
+      final int codePoint = name.codePointAt(i);
+
+      if (codePoint == '.') {
+        if (segmentStart) return false;
+
+        segmentStart = true;
+      } else if (segmentStart
+          ? !Character.isJavaIdentifierStart(codePoint)
+          : !Character.isJavaIdentifierPart(codePoint)) {
+        return false;
+      } else {
+        segmentStart = false;
+      }
+
+      i += Character.charCount(codePoint);
+    }
+
+    return !segmentStart;
+  }
+}
@@ -0,0 +1,222 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URLClassLoader;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import team.aura_dev.lib.multiplatformcore.dependency.RuntimeDependency;
+
+/**
+ * A JVM wide registry of {@link ClassLoader}s holding libraries that several plugins share.<br>
+ * Plugins that request exactly the same set of {@link RuntimeDependency}s (same coordinates, same
+ * hashes, same exclusions) get the same {@link ClassLoader}, so the library Classes only exist once
+ * in memory. Plugins that request anything else, like a different version, get their own {@link
+ * ClassLoader} and stay isolated.
+ *
+ * <p>Every plugin usually has its own relocated copy of this library, so the registry can't live in
+ * a static field. It is published as an MBean in the platform {@link MBeanServer} under a fixed
+ * name instead and only consists of JDK types, which makes it visible to all copies. The MBean
+ * exposes nothing but the registry map as the {@code Value} attribute of a {@link Map.Entry}.
+ *
+ * <p>A shared {@link ClassLoader} is closed once the last plugin using it has released it. Until
+ * then it keeps the {@link ClassLoader} of the plugin that created it alive.
+ *
+ * @author Yannick Schinko
+ */
+public final class SharedLibraries {
+  /** The name the registry is published under. Deliberately not derived from a class name. */
+  private static final String OBJECT_NAME = "multiplatformcore:type=SharedLibraries";
+
+  /** The registry once it has been looked up. The same map for all copies of this class. */
+  private static volatile Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>>
+      registry;
+
+  private SharedLibraries() {}
+
+  /**
+   * Generates the key that identifies a set of dependencies.
+   *
+   * @param dependencies The dependencies
+   * @return A key that only equals the key of another set if both sets are identical
+   */
+  public static String getKey(Collection<RuntimeDependency> dependencies) {
+    final TreeSet<String> artifacts = new TreeSet<>();
+
+    for (RuntimeDependency dependency : dependencies) {
+      artifacts.add(
+          dependency.getGroupId()
+              + ':'
+              + dependency.getArtifactId()
+              + ':'
+              + dependency.getVersion()
+              + ':'
+              + ((dependency.getClassifier() == null) ? "" : dependency.getClassifier())
+              + '@'
+              + dependency.getMd5Hash()
+              + '/'
+              + dependency.getSha1Hash()
+              + (dependency.isTransitive() ? "+" + new TreeSet<>(dependency.getExclusions()) : "")
+              + (dependency.getRelocations().isEmpty() ? "" : "~" + dependency.getRelocations())
+              + (dependency.isStripDebugInfo() ? "-debug" : ""));
+    }
+
+    return String.join(";", artifacts);
+  }
+
+  /**
+   * Returns the shared {@link ClassLoader} for the key and increments its usage count.<br>
+   * If there is none yet, {@code factory} is called to create and fill it. Concurrent calls for the
+   * same key wait until it's done.
+   *
+   * @param key The key of the set of dependencies. See {@link #getKey(Collection)}.
+   * @param factory Creates the {@link ClassLoader} and adds the libraries to it. Only called if
+   *     there isn't one for the key yet.
+   * @return The shared {@link ClassLoader}
+   * @throws IllegalStateException if {@code factory} failed, no matter which caller called it
+   */
+  public static URLClassLoader acquire(String key, Supplier<URLClassLoader> factory) {
+    final Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>> registry =
+        getRegistry();
+    final Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger> entry;
+    final boolean created;
+
+    synchronized (registry) {
+      final Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger> existing =
+          registry.get(key);
+
+      created = existing == null;
+      entry =
+          created
+              ? new AbstractMap.SimpleImmutableEntry<>(
+                  new CompletableFuture<>(), new AtomicInteger())
+              : existing;
+      entry.getValue().incrementAndGet();
+
+      if (created) {
+        registry.put(key, entry);
+      }
+    }
+
+    if (created) {
+      // Called outside of the lock, as filling it usually means downloading libraries
+      try {
+        entry.getKey().complete(factory.get());
+      } catch (RuntimeException | Error e) {
+        synchronized (registry) {
+          registry.remove(key, entry);
+        }
+
+        entry.getKey().completeExceptionally(e);
+      }
+    }
+
+    try {
+      return entry.getKey().join();
+    } catch (CompletionException e) {
+      entry.getValue().decrementAndGet();
+
+      throw new IllegalStateException("Creating the shared libraries failed", e.getCause());
+    }
+  }
+
+  /**
+   * Decrements the usage count of a shared {@link ClassLoader}. Closes it once it isn't used
+   * anymore.
+   *
+   * @param key The key the {@link ClassLoader} was acquired with
+   */
+  public static void release(String key) {
+    final Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>> registry =
+        getRegistry();
+    final Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger> entry;
+
+    synchronized (registry) {
+      entry = registry.get(key);
+
+      if ((entry == null) || (entry.getValue().decrementAndGet() > 0)) return;
+
+      registry.remove(key);
+    }
+
+    final Closeable classLoader = entry.getKey().getNow(null);
+
+    if (classLoader != null) {
+      try {
+        classLoader.close();
+      } catch (IOException e) {
+        // Only leaves some files open
+      }
+    }
+  }
+
+  /**
+   * Checks if there is a shared {@link ClassLoader} for the key.
+   *
+   * @param key The key of the set of dependencies
+   * @return {@code true} if at least one plugin uses a {@link ClassLoader} with that key
+   */
+  public static boolean isShared(String key) {
+    final Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>> registry =
+        getRegistry();
+
+    synchronized (registry) {
+      return registry.containsKey(key);
+    }
+  }
+
+  private static Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>>
+      getRegistry() {
+    Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>> current = registry;
+
+    if (current == null) {
+      synchronized (SharedLibraries.class) {
+        current = registry;
+
+        if (current == null) {
+          current = lookUpRegistry();
+          registry = current;
+        }
+      }
+    }
+
+    return current;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>>
+      lookUpRegistry() {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    try {
+      final ObjectName name = new ObjectName(OBJECT_NAME);
+      // Only JDK types, so no copy of this library is kept alive by it
+      final Map.Entry<String, Object> holder =
+          new AbstractMap.SimpleImmutableEntry<>(OBJECT_NAME, new ConcurrentHashMap<>());
+
+      try {
+        server.registerMBean(new StandardMBean(holder, (Class) Map.Entry.class), name);
+      } catch (InstanceAlreadyExistsException e) {
+        // Published by another copy already
+      }
+
+      return (Map<String, Map.Entry<CompletableFuture<URLClassLoader>, AtomicInteger>>)
+          server.getAttribute(name, "Value");
+    } catch (JMException e) {
+      throw new IllegalStateException("The shared library registry can't be accessed", e);
+    }
+  }
+}
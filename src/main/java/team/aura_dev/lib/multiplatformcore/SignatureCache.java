@@ -0,0 +1,321 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.Timestamp;
+import java.security.cert.CertPath;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Remembers the signers of every entry of signed jars that have been verified successfully.<br>
+ * Verifying a signed jar means hashing every entry and checking it against the signed manifest,
+ * which {@link JarFile} does again on every start. Once a jar has been verified completely, its
+ * signers are recorded under the SHA-1 hash of the jar, the same hash {@link
+ * team.aura_dev.lib.multiplatformcore.dependency.RuntimeDependency} pins. On later starts a jar
+ * with the same hash is opened without verification and its entries get the recorded signers.
+ * Hashing the jar once is a lot cheaper than verifying every entry, and the hash is shared with the
+ * other users of {@link FileHashes}.
+ *
+ * <p>The file format is a small header followed by the records of all jars:
+ *
+ * <pre>
+ * int    magic ("MPCS")
+ * int    version
+ * int    record count
+ * record[]:
+ *   UTF  SHA-1 hash of the jar in hex notation
+ *   int  signer group count
+ *   signer group[]:
+ *     int  signer count
+ *     signer[]:
+ *       cert path
+ *       boolean has timestamp
+ *       (long timestamp (millis), cert path) if it has one
+ *   int  entry count
+ *   entry[]:
+ *     UTF  entry name
+ *     int  signer group
+ * cert path:
+ *   UTF  certificate type
+ *   int  length
+ *   byte[length] the cert path in PkiPath encoding
+ * </pre>
+ *
+ * @author Yannick Schinko
+ */
+class SignatureCache {
+  private static final int MAGIC = 0x4D504353;
+  private static final int VERSION = 1;
+  private static final String CERT_PATH_ENCODING = "PkiPath";
+
+  private final Map<String, Map<String, CodeSigner[]>> loaded = new HashMap<>();
+  private final Map<String, Map<String, CodeSigner[]>> current = new LinkedHashMap<>();
+  private boolean changed = false;
+
+  /**
+   * Loads a previously saved cache file.<br>
+   * A missing, corrupt or outdated file is ignored. The jars will then be verified again.
+   *
+   * @param file The cache file
+   * @return {@code true} if the file was loaded
+   */
+  synchronized boolean load(Path file) {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) return false;
+
+      final int count = in.readInt();
+      final Map<String, Map<String, CodeSigner[]>> records = new HashMap<>();
+
+      for (int i = 0; i < count; ++i) {
+        records.put(in.readUTF(), readSigners(in));
+      }
+
+      // Only take over the records once the whole file could be read
+      loaded.putAll(records);
+
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException | CertificateException | RuntimeException e) {
+      // Corrupt cache. Everything gets verified again.
+      return false;
+    }
+  }
+
+  /**
+   * Returns the signers of all entries of a signed jar.<br>
+   * Either the recorded ones, if a jar with the same hash has been verified before, or they are
+   * recorded now by opening the jar with verification and reading every entry. Either way it's
+   * recorded as a {@link FlightRecorderEvents#ARTIFACT_VERIFICATION} event.
+   *
+   * @param jar The path of the jar file
+   * @return The signers of every signed entry, keyed by the entry name. {@code null} if the jar
+   *     can't be verified.
+   * @throws IOException if the jar can't be read
+   */
+  synchronized Map<String, CodeSigner[]> getSigners(Path jar) throws IOException {
+    final FlightRecorderEvents.Event event = FlightRecorderEvents.ARTIFACT_VERIFICATION.begin();
+    Map<String, CodeSigner[]> signers = null;
+    boolean cached = true;
+
+    try {
+      final String hash = FileHashes.sha1(jar);
+      signers = current.get(hash);
+
+      if (signers == null) {
+        signers = loaded.get(hash);
+
+        if (signers == null) {
+          cached = false;
+
+          try (JarFile jarFile = new JarFile(jar.toFile(), true)) {
+            signers = verify(jarFile);
+          }
+
+          if (signers == null) return null;
+
+          changed = true;
+        }
+
+        current.put(hash, signers);
+      }
+
+      return signers;
+    } finally {
+      event
+          .set("jar", jar.toString())
+          .set("cached", cached)
+          .set("verified", signers != null)
+          .commit();
+    }
+  }
+
+  /**
+   * Saves the signers of all jars requested since this object was created, if any of them had to be
+   * verified again.<br>
+   * The file is written with {@link AtomicFiles}, so a crash never leaves a half written cache
+   * behind.
+   *
+   * @param file The cache file
+   * @throws IOException if writing the file fails
+   */
+  synchronized void save(Path file) throws IOException {
+    if (!changed) return;
+
+    AtomicFiles.write(
+        file,
+        tempFile -> {
+          try (DataOutputStream out =
+              new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(current.size());
+
+            for (Map.Entry<String, Map<String, CodeSigner[]>> entry : current.entrySet()) {
+              out.writeUTF(entry.getKey());
+              writeSigners(out, entry.getValue());
+            }
+          } catch (CertificateException e) {
+            throw new IOException("Can't encode the certificates", e);
+          }
+        });
+    changed = false;
+  }
+
+  /**
+   * Reads every entry completely, which makes {@link JarFile} verify it.
+   *
+   * @return The signers of the signed entries or {@code null} if verifying an entry failed
+   */
+  private static Map<String, CodeSigner[]> verify(JarFile jarFile) throws IOException {
+    final Map<String, CodeSigner[]> signers = new HashMap<>();
+    final byte[] buffer = new byte[8192];
+    final Enumeration<JarEntry> entries = jarFile.entries();
+
+    try {
+      while (entries.hasMoreElements()) {
+        final JarEntry entry = entries.nextElement();
+
+        if (entry.isDirectory()) continue;
+
+        try (InputStream in = jarFile.getInputStream(entry)) {
+          while (in.read(buffer) != -1) {
+            // The signers are only available after the entry has been read completely
+          }
+        }
+
+        if (entry.getCodeSigners() != null) {
+          signers.put(entry.getName(), entry.getCodeSigners());
+        }
+      }
+    } catch (SecurityException e) {
+      // Tampered with. JarFile will refuse to load that entry anyway.
+      return null;
+    }
+
+    return signers;
+  }
+
+  private static void writeSigners(DataOutput out, Map<String, CodeSigner[]> signers)
+      throws IOException, CertificateException {
+    // Usually all entries share the same signers, so every group is only written once
+    final Map<SignerGroup, Integer> groups = new LinkedHashMap<>();
+
+    for (CodeSigner[] group : signers.values()) {
+      groups.putIfAbsent(new SignerGroup(group), groups.size());
+    }
+
+    out.writeInt(groups.size());
+
+    for (SignerGroup group : groups.keySet()) {
+      out.writeInt(group.signers.length);
+
+      for (CodeSigner signer : group.signers) {
+        writeCertPath(out, signer.getSignerCertPath());
+
+        final Timestamp timestamp = signer.getTimestamp();
+        out.writeBoolean(timestamp != null);
+
+        if (timestamp != null) {
+          out.writeLong(timestamp.getTimestamp().getTime());
+          writeCertPath(out, timestamp.getSignerCertPath());
+        }
+      }
+    }
+
+    out.writeInt(signers.size());
+
+    for (Map.Entry<String, CodeSigner[]> entry : signers.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeInt(groups.get(new SignerGroup(entry.getValue())));
+    }
+  }
+
+  private static Map<String, CodeSigner[]> readSigners(DataInput in)
+      throws IOException, CertificateException {
+    final int groupCount = in.readInt();
+    final List<CodeSigner[]> groups = new ArrayList<>(groupCount);
+
+    for (int i = 0; i < groupCount; ++i) {
+      final CodeSigner[] group = new CodeSigner[in.readInt()];
+
+      for (int j = 0; j < group.length; ++j) {
+        final CertPath certPath = readCertPath(in);
+        final Timestamp timestamp =
+            in.readBoolean() ? new Timestamp(new Date(in.readLong()), readCertPath(in)) : null;
+
+        group[j] = new CodeSigner(certPath, timestamp);
+      }
+
+      groups.add(group);
+    }
+
+    final int entryCount = in.readInt();
+    final Map<String, CodeSigner[]> signers = new HashMap<>(entryCount * 2);
+
+    for (int i = 0; i < entryCount; ++i) {
+      signers.put(in.readUTF(), groups.get(in.readInt()));
+    }
+
+    return Collections.unmodifiableMap(signers);
+  }
+
+  private static void writeCertPath(DataOutput out, CertPath certPath)
+      throws IOException, CertificateException {
+    final byte[] encoded = certPath.getEncoded(CERT_PATH_ENCODING);
+
+    out.writeUTF(certPath.getType());
+    out.writeInt(encoded.length);
+    out.write(encoded);
+  }
+
+  private static CertPath readCertPath(DataInput in) throws IOException, CertificateException {
+    final String type = in.readUTF();
+    final byte[] encoded = new byte[in.readInt()];
+    in.readFully(encoded);
+
+    return CertificateFactory.getInstance(type)
+        .generateCertPath(new ByteArrayInputStream(encoded), CERT_PATH_ENCODING);
+  }
+
+  /** Compares arrays of signers by their content. */
+  @RequiredArgsConstructor
+  private static final class SignerGroup {
+    private final CodeSigner[] signers;
+
+    @Override
+    public boolean equals(Object obj) {
+      return (obj instanceof SignerGroup) && Arrays.equals(signers, ((SignerGroup) obj).signers);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(signers);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.util.Locale;
+
+/**
+ * Recognizes the signature files of signed jars.<br>
+ * Like {@link java.util.jar.JarFile}, only the {@code .SF} files and signature blocks directly in
+ * {@code META-INF} count, in any case.
+ *
+ * @author Yannick Schinko
+ */
+public final class SignatureFiles {
+  private static final String META_INF = "META-INF/";
+
+  private SignatureFiles() {}
+
+  /**
+   * Checks if a jar entry is a signature file or signature block.
+   *
+   * @param name The name of the entry, like {@code "META-INF/SIGNER.SF"}
+   * @return {@code true} if it is part of the jar's signature
+   */
+  public static boolean isSignatureFile(String name) {
+    if (!name.startsWith(META_INF) || (name.indexOf('/', META_INF.length()) != -1)) return false;
+
+    final String upperCaseName = name.toUpperCase(Locale.ROOT);
+
+    return upperCaseName.endsWith(".SF")
+        || upperCaseName.endsWith(".RSA")
+        || upperCaseName.endsWith(".DSA")
+        || upperCaseName.endsWith(".EC");
+  }
+}
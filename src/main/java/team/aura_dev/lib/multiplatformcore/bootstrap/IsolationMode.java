@@ -0,0 +1,24 @@
+package team.aura_dev.lib.multiplatformcore.bootstrap;
+
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+import team.aura_dev.lib.multiplatformcore.ModuleLayerIsolation;
+
+/**
+ * How the {@link MultiProjectBootstrapper} isolates the plugin and its libraries from the rest of
+ * the server.
+ *
+ * @author Yannick Schinko
+ * @see MultiProjectBootstrapper#getIsolationMode()
+ */
+public enum IsolationMode {
+  /** The plugin and its libraries are loaded by the {@link DependencyClassLoader}. */
+  CLASS_LOADER,
+  /**
+   * The plugin and its libraries are loaded through a module layer (see {@link
+   * ModuleLayerIsolation}), created from the {@link java.net.URL}s of the {@link
+   * DependencyClassLoader} when the plugin gets initialized.<br>
+   * Libraries have to be added before that, as the {@link DependencyClassLoader}s get sealed once
+   * the layer has been created. Falls back to {@link #CLASS_LOADER} on Java 8.
+   */
+  MODULE_LAYER;
+}
@@ -1,12 +1,29 @@
 package team.aura_dev.lib.multiplatformcore.bootstrap;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import javax.management.JMException;
 import lombok.Getter;
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
 import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+import team.aura_dev.lib.multiplatformcore.FlightRecorderEvents;
+import team.aura_dev.lib.multiplatformcore.ModuleLayerIsolation;
+import team.aura_dev.lib.multiplatformcore.Platform;
 
 /**
  * This class is more or less the entry point into the {@link ClassLoader} magic. Creating the
@@ -14,31 +31,85 @@ import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
  * If something goes wrong with the {@link ClassLoader} itself you probably fix it in your child
  * class of this.
  *
+ * <p>If {@link #isHotReloadEnabled()} is overridden to return {@code true}, two {@link
+ * ClassLoader}s are used: The {@link #getDependencyLayer() dependency layer} holds all downloaded
+ * libraries and lives as long as this bootstrapper. The {@link #getDependencyClassLoader() plugin
+ * layer} on top of it holds only the plugin's own code. {@link #reload(Object, Object...)} replaces
+ * the plugin layer with a fresh one, so a reload only has to load the plugin's own Classes again.
+ *
+ * <p>With {@link #getIsolationMode()} the plugin can be loaded through a module layer instead, to
+ * compare both approaches.
+ *
  * @param <T> the base type of the plugin to load. Must not be the class of the plugin itself.<br>
  *     Ideally it's a minimal interface that only contains the calls the bootstrap plugin needs to
  *     call.
  * @author Yannick Schinko
  */
 public abstract class MultiProjectBootstrapper<T> {
+  private static final Executor RELOAD_EXECUTOR =
+      runnable -> {
+        final Thread thread = new Thread(runnable, "MultiProjectBootstrapper-Reload");
+        thread.setDaemon(true);
+        thread.start();
+      };
+
   @Getter protected final Class<T> pluginBaseClass;
-  @Getter protected final DependencyClassLoader dependencyClassLoader;
+  /**
+   * The {@link ClassLoader} the plugin is loaded with. With hot reloading this is the current
+   * plugin layer and gets replaced by {@link #reload(Object, Object...)}.
+   */
+  @Getter protected volatile DependencyClassLoader dependencyClassLoader;
+  /**
+   * The {@link ClassLoader} libraries should be added to. Without hot reloading this is the same as
+   * {@link #dependencyClassLoader}.
+   */
+  @Getter protected final DependencyClassLoader dependencyLayer;
+  /**
+   * The {@link ClassLoader} of the module layer the plugin has been loaded with. {@code null}
+   * unless {@link #getIsolationMode()} is {@link IsolationMode#MODULE_LAYER}.
+   */
+  @Getter protected volatile ClassLoader moduleLayerClassLoader;
+  /** Holds the copies of the jars used by {@link #moduleLayerClassLoader}. */
+  private volatile Path moduleLayerWorkDir;
+  /** How often the plugin has been reloaded. */
+  @Getter protected volatile int generation = 0;
+
+  private CompletableFuture<DependencyClassLoader> nextGeneration;
+  /** Held for the whole of {@link #reload(Object, Object...)}, so reloads run one at a time. */
+  private final Object reloadLock = new Object();
 
   @Getter protected T plugin;
   @Getter protected Class<? extends T> pluginClass;
 
   /**
    * Constructs a {@link MultiProjectBootstrapper} and initializes the {@link DependencyClassLoader}
-   * with the values from {@link #getPackageName()} and {@link #getExcludedPackages()}.
+   * with the values from {@link #getPackageName()}, {@link #getExcludedPackages()} and {@link
+   * #getClassLoaderOptions()}.<br>
+   * The packages from {@link #getParentFirstPackages()} are added to it as well.
    *
    * @param pluginBaseClass The plugin base class. After the plugin instance has been created is
    *     checked if it can be cast to this class.
    */
   protected MultiProjectBootstrapper(Class<T> pluginBaseClass) {
     this.pluginBaseClass = pluginBaseClass;
-    this.dependencyClassLoader =
+    this.dependencyLayer =
         AccessController.doPrivileged(
             (PrivilegedAction<DependencyClassLoader>)
-                () -> new DependencyClassLoader(getExcludedPackages()));
+                () ->
+                    isHotReloadEnabled()
+                        ? DependencyClassLoader.createDependencyLayer(
+                            DependencyClassLoader.class.getClassLoader(),
+                            getClassLoaderOptions(),
+                            getExcludedPackages())
+                        : new DependencyClassLoader(
+                            DependencyClassLoader.class.getClassLoader(),
+                            getClassLoaderOptions(),
+                            getExcludedPackages()));
+    this.dependencyLayer.addParentFirstPackages(getParentFirstPackages());
+    this.dependencyClassLoader =
+        isHotReloadEnabled() ? createPluginLayer(new URL[0]) : dependencyLayer;
+
+    nameLayers();
   }
 
   /**
@@ -58,7 +129,9 @@ public abstract class MultiProjectBootstrapper<T> {
 
   /**
    * Constructs a {@link MultiProjectBootstrapper} and initializes the {@link DependencyClassLoader}
-   * with {@code dependencyClassLoader}.
+   * with {@code dependencyClassLoader}.<br>
+   * The packages from {@link #getParentFirstPackages()} are added to it. With hot reloading it
+   * becomes the dependency layer and a plugin layer is created on top of it.
    *
    * @param pluginBaseClass The plugin base class. After the plugin instance has been created is
    *     checked if it can be cast to this class.
@@ -67,7 +140,12 @@ public abstract class MultiProjectBootstrapper<T> {
   protected MultiProjectBootstrapper(
       Class<T> pluginBaseClass, DependencyClassLoader dependencyClassLoader) {
     this.pluginBaseClass = pluginBaseClass;
-    this.dependencyClassLoader = dependencyClassLoader;
+    this.dependencyLayer = dependencyClassLoader;
+    this.dependencyLayer.addParentFirstPackages(getParentFirstPackages());
+    this.dependencyClassLoader =
+        isHotReloadEnabled() ? createPluginLayer(new URL[0]) : dependencyLayer;
+
+    nameLayers();
   }
 
   /**
@@ -102,6 +180,216 @@ public abstract class MultiProjectBootstrapper<T> {
     return new String[] {getPackageName() + ".api", getPackageName() + ".bootstrap"};
   }
 
+  /**
+   * Return the optional features of the {@link DependencyClassLoader}. This is passed to the {@link
+   * DependencyClassLoader} if you call {@link #MultiProjectBootstrapper(Class)}. If you call any of
+   * the other two constructors this method is ignored.
+   *
+   * @return {@link ClassLoaderOptions#DEFAULT}. Override this to enable features.
+   */
+  protected ClassLoaderOptions getClassLoaderOptions() {
+    return ClassLoaderOptions.DEFAULT;
+  }
+
+  /**
+   * Return if the plugin can be reloaded with {@link #reload(Object, Object...)}. This is evaluated
+   * in the constructor and determines if the plugin code and the libraries are loaded by separate
+   * {@link ClassLoader}s.
+   *
+   * @return {@code false}. Override this to enable hot reloading.
+   */
+  protected boolean isHotReloadEnabled() {
+    return false;
+  }
+
+  /**
+   * Return how the plugin is isolated. This is evaluated every time the plugin gets initialized.
+   *
+   * @return {@link IsolationMode#CLASS_LOADER}. Override this to use a module layer instead.
+   */
+  protected IsolationMode getIsolationMode() {
+    return IsolationMode.CLASS_LOADER;
+  }
+
+  /**
+   * Return the names of the packages whose classes are provided by the platform. The {@link
+   * DependencyClassLoader} asks its parent {@link ClassLoader} for these first instead of looking
+   * through its own jars. This is applied no matter which constructor was called.
+   *
+   * @return the packages of all platforms {@link Platform#detect(ClassLoader)} finds with the
+   *     {@link ClassLoader} of this class.<br>
+   *     <i>Note:</i> If your plugin depends on other plugins you can add their API packages here.
+   *     Just make sure to include the packages of {@code super.getParentFirstPackages()}.
+   * @see DependencyClassLoader#addParentFirstPackages(Collection)
+   */
+  protected Collection<String> getParentFirstPackages() {
+    return Platform.getPackageNames(Platform.detect(getClass().getClassLoader()));
+  }
+
+  /**
+   * Starts preparing the next generation of the plugin layer in the background.<br>
+   * A new plugin layer is created and all Classes the current one defined are loaded into it, so
+   * {@link #reload(Object, Object...)} only has to swap it in. Calling this again before reloading
+   * returns the same preparation.
+   *
+   * @return The preparation of the next plugin layer
+   * @throws IllegalStateException when hot reloading is not enabled
+   * @see #isHotReloadEnabled()
+   */
+  public synchronized CompletableFuture<DependencyClassLoader> prepareReload() {
+    if (dependencyLayer == dependencyClassLoader) {
+      throw new IllegalStateException("Hot reloading is not enabled");
+    }
+
+    if (nextGeneration == null) {
+      final DependencyClassLoader current = dependencyClassLoader;
+
+      nextGeneration =
+          CompletableFuture.supplyAsync(() -> prepareGeneration(current), RELOAD_EXECUTOR);
+    }
+
+    return nextGeneration;
+  }
+
+  /**
+   * Replaces the plugin layer with a new generation and bootstraps the plugin class again.<br>
+   * Uses the generation prepared by {@link #prepareReload()} or prepares one now. The libraries in
+   * the {@link #dependencyLayer} are kept, so only the plugin's own Classes are loaded again. The
+   * old plugin layer is closed once the new plugin instance has been created.
+   *
+   * <p>The old plugin instance must have been shut down before calling this. If creating the new
+   * instance fails, the old plugin layer stays in place.<br>
+   * Concurrent reloads run one after another, each with its own new generation.
+   *
+   * @param bootstrapPlugin the instance of the bootstrap class. See {@link
+   *     #initializePlugin(Object, Object...)}.
+   * @param params parameters forwarded to the plugin class constructor
+   * @return the instance of the reloaded plugin
+   * @throws IllegalStateException when hot reloading is not enabled or bootstrapping the plugin
+   *     fails
+   * @see #isHotReloadEnabled()
+   */
+  public T reload(Object bootstrapPlugin, Object... params) {
+    synchronized (reloadLock) {
+      final CompletableFuture<DependencyClassLoader> preparation;
+
+      // Taken over by this reload. The next one prepares its own generation.
+      synchronized (this) {
+        preparation = prepareReload();
+        nextGeneration = null;
+      }
+
+      final DependencyClassLoader next;
+
+      try {
+        next = preparation.join();
+      } catch (CompletionException e) {
+        throw new IllegalStateException("Preparing the next generation failed", e.getCause());
+      }
+
+      final DependencyClassLoader previous = dependencyClassLoader;
+      final ClassLoader previousModuleLayer = moduleLayerClassLoader;
+      final Path previousWorkDir = moduleLayerWorkDir;
+      final T previousPlugin = plugin;
+      final Class<? extends T> previousPluginClass = pluginClass;
+
+      dependencyClassLoader = next;
+
+      try {
+        initializePlugin(bootstrapPlugin, params);
+      } catch (RuntimeException e) {
+        dependencyClassLoader = previous;
+        moduleLayerClassLoader = previousModuleLayer;
+        replaceModuleLayerWorkDir(previousWorkDir);
+        plugin = previousPlugin;
+        pluginClass = previousPluginClass;
+        closeQuietly(next);
+
+        throw e;
+      }
+
+      ++generation;
+      closeQuietly(previous);
+      // Takes over the name of the previous generation
+      nameLayer(dependencyClassLoader, "plugin");
+
+      return plugin;
+    }
+  }
+
+  /**
+   * Creates a new plugin layer on top of the {@link #dependencyLayer}.
+   *
+   * @param urls Additional {@link java.net.URL}s to add to it besides its own jar
+   * @return The new plugin layer
+   */
+  protected DependencyClassLoader createPluginLayer(URL[] urls) {
+    final DependencyClassLoader pluginLayer =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    DependencyClassLoader.createPluginLayer(
+                        dependencyLayer,
+                        getClassLoaderOptions().toBuilder().recordDefinedClasses(true).build(),
+                        getExcludedPackages()));
+    pluginLayer.addParentFirstPackages(getParentFirstPackages());
+    pluginLayer.setPluginName(getPackageName());
+
+    for (URL url : urls) {
+      pluginLayer.addURL(url);
+    }
+
+    return pluginLayer;
+  }
+
+  private DependencyClassLoader prepareGeneration(DependencyClassLoader previous) {
+    // Keeps URLs that were added to the plugin layer after it was created
+    final DependencyClassLoader next = createPluginLayer(previous.getURLs());
+
+    for (String className : previous.getDefinedClassNames()) {
+      try {
+        next.loadClass(className);
+      } catch (ClassNotFoundException | LinkageError e) {
+        // The Class changed or is gone. It'll fail properly when it's actually used.
+      }
+    }
+
+    return next;
+  }
+
+  /**
+   * Sets {@link #getPackageName()} as the plugin name of the layers and registers their metrics as
+   * JMX MBeans, if {@link ClassLoaderOptions#isMetrics()} is enabled. The MBeans are named after
+   * the package name and the layer, like {@code "my.plugin/plugin"} and {@code
+   * "my.plugin/dependencies"}.
+   */
+  private void nameLayers() {
+    if (dependencyLayer == dependencyClassLoader) {
+      nameLayer(dependencyLayer, "plugin");
+    } else {
+      nameLayer(dependencyLayer, "dependencies");
+      nameLayer(dependencyClassLoader, "plugin");
+    }
+  }
+
+  private void nameLayer(DependencyClassLoader classLoader, String layer) {
+    classLoader.setPluginName(getPackageName());
+
+    try {
+      classLoader.registerMetricsMBean(getPackageName() + '/' + layer);
+    } catch (JMException | SecurityException e) {
+      // The metrics are still available through DependencyClassLoader.getMetrics()
+    }
+  }
+
+  private static void closeQuietly(DependencyClassLoader classLoader) {
+    try {
+      classLoader.close();
+    } catch (IOException e) {
+      // Only leaves some files open
+    }
+  }
+
   /**
    * Bootstraps the actual plugin class.
    *
@@ -130,9 +418,28 @@ public abstract class MultiProjectBootstrapper<T> {
         removeEnd(bootstrapClass.getPackage().getName(), ".bootstrap")
             + "."
             + bootstrapClass.getSimpleName().replace("Bootstrap", "");
-    final Object tempPlugin = initializePlugin(pluginClassName, mergedParams);
+    final FlightRecorderEvents.Event event =
+        FlightRecorderEvents.PLUGIN_INITIALIZATION
+            .begin()
+            .set("pluginName", getPackageName())
+            .set("pluginClass", pluginClassName);
+    final Path previousWorkDir = moduleLayerWorkDir;
+    final Object tempPlugin;
+
+    try {
+      tempPlugin = initializePlugin(pluginClassName, mergedParams);
+    } catch (RuntimeException e) {
+      event.set("success", false).commit();
+      replaceModuleLayerWorkDir(previousWorkDir);
+
+      throw e;
+    }
+
+    event.set("success", true).commit();
 
     if (!pluginBaseClass.isInstance(tempPlugin)) {
+      replaceModuleLayerWorkDir(previousWorkDir);
+
       throw new IllegalStateException(
           "The loaded plugin instance is of type \""
               + tempPlugin.getClass().getName()
@@ -145,12 +452,40 @@ public abstract class MultiProjectBootstrapper<T> {
     plugin = (T) tempPlugin;
     pluginClass = (Class<? extends T>) plugin.getClass();
 
+    // The previous layer is kept until the new plugin has been constructed
+    deleteModuleLayerWorkDir(previousWorkDir);
+
+    // Startup is over once the plugin has been constructed
+    finishStartupRecording(dependencyClassLoader);
+
+    if (dependencyLayer != dependencyClassLoader) {
+      finishStartupRecording(dependencyLayer);
+    }
+
     return plugin;
   }
 
+  /**
+   * Saves the Classes loaded during startup for prefetching and Class Data Sharing on the next
+   * start. Classes loaded later on are not recorded anymore.
+   */
+  private static void finishStartupRecording(DependencyClassLoader classLoader) {
+    try {
+      classLoader.finishClassPrefetch();
+    } catch (IOException e) {
+      // Only the recording is lost
+    }
+
+    try {
+      classLoader.finishClassDataSharing();
+    } catch (IOException e) {
+      // The previous class list stays
+    }
+  }
+
   private Object initializePlugin(String pluginClassName, Object... params) {
     try {
-      final Class<?> pluginClass = dependencyClassLoader.loadClass(pluginClassName);
+      final Class<?> pluginClass = createPluginClassLoader().loadClass(pluginClassName);
       // Checking if the parameter count matches is good enough of a way to find the matching
       // constructor in this case
       // 10/10 parameter matching
@@ -172,6 +507,60 @@ public abstract class MultiProjectBootstrapper<T> {
     }
   }
 
+  private ClassLoader createPluginClassLoader() throws IOException {
+    if ((getIsolationMode() != IsolationMode.MODULE_LAYER) || !ModuleLayerIsolation.isSupported()) {
+      moduleLayerClassLoader = null;
+
+      return dependencyClassLoader;
+    }
+
+    final Set<URL> urls = new LinkedHashSet<>(Arrays.asList(dependencyLayer.getURLs()));
+    urls.addAll(Arrays.asList(dependencyClassLoader.getURLs()));
+
+    final List<String> parentPackageNames =
+        new ArrayList<>(dependencyClassLoader.excludedPackageNames);
+    parentPackageNames.addAll(dependencyClassLoader.getParentFirstPackageNames());
+
+    final Path workDir = Files.createTempDirectory("multiplatformcore-modules");
+    workDir.toFile().deleteOnExit();
+
+    try {
+      moduleLayerClassLoader =
+          ModuleLayerIsolation.createLayer(
+              urls, dependencyLayer.getParent(), parentPackageNames, workDir);
+    } catch (IOException | RuntimeException e) {
+      ModuleLayerIsolation.deleteWorkDir(workDir);
+
+      throw e;
+    }
+
+    moduleLayerWorkDir = workDir;
+    // The layer can't see URLs added from now on, so adding them has to fail instead of leading to
+    // NoClassDefFoundErrors later
+    dependencyLayer.seal();
+    dependencyClassLoader.seal();
+
+    return moduleLayerClassLoader;
+  }
+
+  /**
+   * Makes {@code workDir} the work directory of the module layer again and deletes the one created
+   * since, if any.
+   */
+  private void replaceModuleLayerWorkDir(Path workDir) {
+    final Path createdWorkDir = moduleLayerWorkDir;
+
+    moduleLayerWorkDir = workDir;
+    deleteModuleLayerWorkDir(createdWorkDir);
+  }
+
+  /** Deletes {@code workDir} unless it's still used by the current module layer. */
+  private void deleteModuleLayerWorkDir(Path workDir) {
+    if ((workDir != null) && (workDir != moduleLayerWorkDir)) {
+      ModuleLayerIsolation.deleteWorkDir(workDir);
+    }
+  }
+
   private static String removeEnd(String str, String end) {
     if (!str.endsWith(end)) return str;
 
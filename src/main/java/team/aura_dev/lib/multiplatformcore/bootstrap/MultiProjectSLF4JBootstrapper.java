@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.PrivilegedAction;
 import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+import team.aura_dev.lib.multiplatformcore.FlightRecorderEvents;
 
 /**
  * This class is more or less the entry point into the {@link ClassLoader} magic. Creating the
@@ -86,10 +87,19 @@ public abstract class MultiProjectSLF4JBootstrapper<T> extends MultiProjectBoots
    *     slf4j-${pluginName}-${slf4jVersion}.zip}
    */
   public void checkAndLoadSLF4J(Path libsPath, String slf4jVersion, String pluginName) {
+    final FlightRecorderEvents.Event event =
+        FlightRecorderEvents.SLF4J_CHECK
+            .begin()
+            .set("pluginName", getPackageName())
+            .set("slf4jVersion", slf4jVersion)
+            .set("binding", pluginName);
+
     try {
       Class.forName("org.slf4j.impl.StaticLoggerBinder");
 
       // Class is present, we don't need to load SLF4J
+      event.set("loaded", false).commit();
+
       return;
     } catch (ClassNotFoundException e) {
       // Ignore and continue. We need to load SLF4J
@@ -101,11 +111,13 @@ public abstract class MultiProjectSLF4JBootstrapper<T> extends MultiProjectBoots
     } catch (IOException e) {
       throw new IllegalStateException("Unexpected IOException while trying to load SLF4J", e);
     }
+
+    event.set("loaded", true).commit();
   }
 
   /**
    * Extracts the specified SLF4J zip file from the current jar, saves it in the {@code libsPath}
-   * and then injects in the {@link #dependencyClassLoader}.<br>
+   * and then injects in the {@link #dependencyLayer}.<br>
    * Specifically this loads the resource {@code org/slf4j/slf4j-${libName}.zip} and saves it to
    * {@code ${libsPath}/org/slf4j/slf4j-${libName}/slf4j-${libName}-${slf4jVersion}.jar}. Then it
    * injects it into the classpath.
@@ -137,6 +149,6 @@ public abstract class MultiProjectSLF4JBootstrapper<T> extends MultiProjectBoots
       }
     }
 
-    dependencyClassLoader.addURL(outFile.toUri().toURL());
+    dependencyLayer.addURL(outFile.toUri().toURL());
   }
 }
@@ -0,0 +1,45 @@
+package team.aura_dev.lib.multiplatformcore.dependency;
+
+import javax.annotation.Nonnull;
+import lombok.Value;
+
+/**
+ * Moves a package and all of its subpackages into another package when the jars are loaded, just
+ * like the shadow plugin's {@code relocate} does at build time.<br>
+ * Both packages are given in their dotted form, like {@code relocate("com.google.common",
+ * "my.plugin.libs.guava")}.
+ *
+ * <p>Only the downloaded jars are rewritten, never the plugin's own jar. Its Classes are usually
+ * loaded before the dependencies are even downloaded. The plugin therefore has to reference the
+ * relocated names itself. The usual way is to apply the same relocation to the plugin jar at build
+ * time, with the shadow plugin's {@code relocate}, without bundling the dependency.
+ *
+ * @author Yannick Schinko
+ * @see RuntimeDependency.RuntimeDependencyBuilder#relocate(String, String)
+ */
+@Value
+public class Relocation {
+  @Nonnull private final String pattern;
+  @Nonnull private final String relocatedPattern;
+
+  /**
+   * Relocates a Class, package or resource name.
+   *
+   * @param name The name, either in dotted or in slashed form
+   * @param separator The separator {@code name} uses, either {@code '.'} or {@code '/'}
+   * @return The relocated name or {@code null} if the name is not part of {@link #pattern}
+   */
+  public String relocate(@Nonnull String name, char separator) {
+    final String from = pattern.replace('.', separator);
+
+    if (!name.startsWith(from)) return null;
+    if ((name.length() > from.length()) && (name.charAt(from.length()) != separator)) return null;
+
+    return relocatedPattern.replace('.', separator) + name.substring(from.length());
+  }
+
+  @Override
+  public String toString() {
+    return pattern + "->" + relocatedPattern;
+  }
+}
@@ -35,9 +35,14 @@ import lombok.Value;
  *         .exclusion("com.google.errorprone:error_prone_annotations")
  *         .exclusion("com.google.j2objc:j2objc-annotations")
  *         .exclusion("org.codehaus.mojo:animal-sniffer-annotations")
+ *         .relocate("ninja.leaping.configurate", "my.plugin.libs.configurate")
  *         .build();
  * }</pre>
  *
+ * <p>With a relocation like the one above, the plugin jar has to be relocated the same way at build
+ * time, so the plugin's code refers to {@code my.plugin.libs.configurate} as well (see {@link
+ * Relocation}).
+ *
  * @author Yannick Schinko
  */
 @SuppressFBWarnings(
@@ -55,6 +60,18 @@ public class RuntimeDependency {
   @Nonnull @Builder.Default private final Maven maven = Maven.MAVEN_CENTRAL;
   @Builder.Default private final boolean transitive = false;
   @Nonnull @Singular private final List<String> exclusions;
+  /**
+   * The packages moved when the jars are loaded. They apply to all downloaded jars, including the
+   * ones of other dependencies, so references to the moved packages get updated everywhere.
+   */
+  @Nonnull @Singular private final List<Relocation> relocations;
+  /**
+   * Strips the line numbers, local variable tables and source debug extensions from the classes of
+   * this dependency and its transitive dependencies, which saves Metaspace and class parsing time.
+   * The original jars stay untouched in the libs dir for debugging (see {@link
+   * team.aura_dev.lib.multiplatformcore.download.DependencyDownloader#KEEP_DEBUG_INFO_PROPERTY}).
+   */
+  @Builder.Default private final boolean stripDebugInfo = false;
 
   @Getter(lazy = true)
   private final Dependency dependency = generateDependency();
@@ -114,7 +131,9 @@ public class RuntimeDependency {
   public RuntimeDependencyBuilder toBuilder() {
     return builder(groupId, artifactId, version, md5Hash, sha1Hash)
         .classifier(classifier)
-        .exclusions(exclusions);
+        .exclusions(exclusions)
+        .relocations(relocations)
+        .stripDebugInfo(stripDebugInfo);
   }
 
   public static class RuntimeDependencyBuilder {
@@ -137,6 +156,24 @@ public class RuntimeDependency {
 
       return this;
     }
+
+    /**
+     * Moves a package and all its subpackages into another package (see {@link Relocation}).<br>
+     * The jars are rewritten once after they have been downloaded. Later starts load the rewritten
+     * jars directly.
+     *
+     * <p>The plugin's own jar isn't rewritten. Its code has to use the relocated names already, for
+     * example by relocating the plugin jar with the same rules at build time (see {@link
+     * Relocation}).
+     *
+     * @param pattern The package to move, like {@code com.google.common}
+     * @param relocatedPattern The package to move it to, like {@code my.plugin.libs.guava}
+     * @return This builder
+     */
+    public RuntimeDependencyBuilder relocate(
+        @Nonnull String pattern, @Nonnull String relocatedPattern) {
+      return relocation(new Relocation(pattern, relocatedPattern));
+    }
   }
 
   /**
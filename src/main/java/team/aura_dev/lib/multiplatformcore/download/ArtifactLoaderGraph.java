@@ -0,0 +1,176 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import eu.mikroskeem.picomaven.DownloadResult;
+import java.net.MalformedURLException;
+import java.nio.file.Path;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import lombok.Value;
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+
+/**
+ * Builds one small {@link DependencyClassLoader} per artifact, connected along the resolved
+ * dependency graph.<br>
+ * The loader of an artifact only contains its own jar. Everything else is looked up in the loaders
+ * of its (transitive) dependencies, nearest first like Maven does it, and then in the parent. As
+ * every loader only asks the loaders that actually contain a package, lookups don't have to go
+ * through every library. And two artifacts can depend on different versions of the same library.
+ *
+ * @author Yannick Schinko
+ */
+class ArtifactLoaderGraph {
+  private final DependencyClassLoader template;
+  private final ClassLoaderOptions options;
+  private final Map<Path, DependencyClassLoader> loaders = new LinkedHashMap<>();
+
+  /**
+   * Creates an empty graph.
+   *
+   * @param template The {@link DependencyClassLoader} the artifact loaders copy their parent,
+   *     excluded packages and parent first packages from
+   */
+  ArtifactLoaderGraph(DependencyClassLoader template) {
+    this.template = template;
+    this.options = template.getOptions().toBuilder().artifactLoaderGraph(false).build();
+  }
+
+  /**
+   * Converts the result of a download and its transitive dependencies into a graph of {@link
+   * Artifact}s.
+   *
+   * @param result The result of a download
+   * @return The artifact of the download, including its dependencies
+   */
+  static Artifact toArtifact(DownloadResult result) {
+    return toArtifact(result, UnaryOperator.identity());
+  }
+
+  /**
+   * Converts the result of a download and its transitive dependencies into a graph of {@link
+   * Artifact}s, using other jars in place of the downloaded ones.
+   *
+   * @param result The result of a download
+   * @param jarMapper Returns the jar to load for a downloaded jar, like its relocated version
+   * @return The artifact of the download, including its dependencies
+   */
+  static Artifact toArtifact(DownloadResult result, UnaryOperator<Path> jarMapper) {
+    return new Artifact(
+        jarMapper.apply(result.getArtifactPath()),
+        result.getTransitiveDependencies().stream()
+            .map(dependency -> toArtifact(dependency, jarMapper))
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Returns the loader of an artifact, creating it and the loaders of its dependencies if needed.
+   *
+   * @param artifact The artifact
+   * @return The loader of the artifact
+   * @throws MalformedURLException if the path of an artifact can't be converted into a {@link
+   *     java.net.URL}
+   */
+  DependencyClassLoader getLoader(Artifact artifact) throws MalformedURLException {
+    final DependencyClassLoader existing = loaders.get(artifact.getJar());
+
+    if (existing != null) return existing;
+
+    final DependencyClassLoader loader = createLoader();
+    loader.addURL(artifact.getJar().toUri().toURL());
+    // Registered before adding the edges, so cycles end here
+    loaders.put(artifact.getJar(), loader);
+
+    for (Artifact dependency : getTransitiveDependencies(Collections.singletonList(artifact))) {
+      loader.addDelegate(getLoader(dependency), false);
+    }
+
+    return loader;
+  }
+
+  /**
+   * All loaders created so far, in the order they were created.
+   *
+   * @return The loaders
+   */
+  Collection<DependencyClassLoader> getLoaders() {
+    return Collections.unmodifiableCollection(loaders.values());
+  }
+
+  /**
+   * Lists all transitive dependencies of the given artifacts, nearest first. Every jar is listed
+   * only once and the given artifacts themselves are not listed.
+   *
+   * @param artifacts The artifacts to start from
+   * @return The transitive dependencies in breadth first order
+   */
+  static List<Artifact> getTransitiveDependencies(List<Artifact> artifacts) {
+    final List<Artifact> dependencies = new ArrayList<>();
+    final Set<Path> visited = new HashSet<>();
+    final Queue<Artifact> queue = new ArrayDeque<>(artifacts);
+
+    for (Artifact artifact : artifacts) {
+      visited.add(artifact.getJar());
+    }
+
+    while (!queue.isEmpty()) {
+      for (Artifact dependency : queue.poll().getDependencies()) {
+        if (visited.add(dependency.getJar())) {
+          dependencies.add(dependency);
+          queue.add(dependency);
+        }
+      }
+    }
+
+    return dependencies;
+  }
+
+  private DependencyClassLoader createLoader() {
+    final String[] excludedPackageNames =
+        template.excludedPackageNames.stream()
+            .map(ArtifactLoaderGraph::removeTrailingDot)
+            .toArray(String[]::new);
+    final DependencyClassLoader loader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    DependencyClassLoader.createDependencyLayer(
+                        template.getParent(), options, excludedPackageNames));
+
+    loader.addParentFirstPackages(
+        template.getParentFirstPackageNames().stream()
+            .map(ArtifactLoaderGraph::removeTrailingDot)
+            .collect(Collectors.toList()));
+
+    return loader;
+  }
+
+  private static String removeTrailingDot(String packageName) {
+    return packageName.substring(0, packageName.length() - 1);
+  }
+
+  /** A downloaded artifact and the artifacts it depends on. */
+  @SuppressFBWarnings(
+      value = {
+        "JLM_JSR166_UTILCONCURRENT_MONITORENTER",
+        "RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE"
+      },
+      justification = "Code is generated by lombok which means I don't have any influence on it.")
+  @Value
+  static class Artifact {
+    private final Path jar;
+    private final List<Artifact> dependencies;
+  }
+}
@@ -0,0 +1,112 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import lombok.Value;
+
+/**
+ * How much stripping the debug info from the jars of dependencies saved (see {@link
+ * team.aura_dev.lib.multiplatformcore.dependency.RuntimeDependency#isStripDebugInfo()}).<br>
+ * The Metaspace is only a rough lower bound, not an estimate: It counts the stripped table entries
+ * at what HotSpot needs at least to store them. Line numbers take about 2 bytes each in their
+ * compressed form, local variables 12 bytes each and the source debug extension is kept as it is.
+ * The per method bookkeeping of the tables, the alignment of the methods and the names of the local
+ * variables in the constant pool aren't counted. The actual savings are several times higher. For
+ * guava 21 the bound is 0.4 MB, while the used Metaspace drops by 1.8 MiB. Compare the usage of the
+ * {@code Metaspace} {@link java.lang.management.MemoryPoolMXBean} with and without stripping to get
+ * the real number.
+ *
+ * @author Yannick Schinko
+ * @see DependencyDownloader#getDebugInfoSavings()
+ */
+@Value
+public class DebugInfoSavings {
+  /** Nothing saved. */
+  public static final DebugInfoSavings NONE = new DebugInfoSavings(0, 0, 0, 0, 0);
+
+  /** The amount of jars that have been stripped. */
+  private final int jars;
+  /** The amount of class files in those jars. */
+  private final int classes;
+  /** The size of the class files before stripping them, in bytes. */
+  private final long originalBytes;
+  /** The size of the class files after stripping them, in bytes. */
+  private final long strippedBytes;
+  /**
+   * The Metaspace the stripped attributes would have taken up at the very least, in bytes. A rough
+   * lower bound, see above.
+   */
+  private final long metaspaceLowerBoundBytes;
+
+  /**
+   * Returns by how much the class files shrunk.
+   *
+   * @return The saved bytes
+   */
+  public long getSavedBytes() {
+    return originalBytes - strippedBytes;
+  }
+
+  /**
+   * Adds up the savings of two sets of jars.
+   *
+   * @param other The savings to add
+   * @return The combined savings
+   */
+  public DebugInfoSavings add(DebugInfoSavings other) {
+    return new DebugInfoSavings(
+        jars + other.jars,
+        classes + other.classes,
+        originalBytes + other.originalBytes,
+        strippedBytes + other.strippedBytes,
+        metaspaceLowerBoundBytes + other.metaspaceLowerBoundBytes);
+  }
+
+  /**
+   * Saves the savings next to a stripped jar, so they are known when the jar is taken from the
+   * cache.
+   *
+   * @param file The file to save them in
+   * @throws IOException if writing the file fails
+   */
+  void save(Path file) throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty("jars", Integer.toString(jars));
+    properties.setProperty("classes", Integer.toString(classes));
+    properties.setProperty("originalBytes", Long.toString(originalBytes));
+    properties.setProperty("strippedBytes", Long.toString(strippedBytes));
+    properties.setProperty("metaspaceLowerBoundBytes", Long.toString(metaspaceLowerBoundBytes));
+
+    try (OutputStream out = Files.newOutputStream(file)) {
+      properties.store(out, "Savings of stripping the debug info");
+    }
+  }
+
+  /**
+   * Loads the savings saved with {@link #save(Path)}.
+   *
+   * @param file The file they were saved in
+   * @return The savings or {@link #NONE} if the file is missing or corrupt
+   */
+  static DebugInfoSavings load(Path file) {
+    final Properties properties = new Properties();
+
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+
+      return new DebugInfoSavings(
+          Integer.parseInt(properties.getProperty("jars")),
+          Integer.parseInt(properties.getProperty("classes")),
+          Long.parseLong(properties.getProperty("originalBytes")),
+          Long.parseLong(properties.getProperty("strippedBytes")),
+          Long.parseLong(properties.getProperty("metaspaceLowerBoundBytes")));
+    } catch (IOException | RuntimeException e) {
+      // Only the report is affected
+      return NONE;
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removes the debug info from class files: The {@code LineNumberTable}, {@code LocalVariableTable}
+ * and {@code LocalVariableTypeTable} of every method and the {@code SourceDebugExtension} of the
+ * class. None of them are needed to run the code. Stack traces only lose their line numbers, the
+ * {@code SourceFile} attribute is kept.<br>
+ * Used by {@link JarTransformer}. Counts what it removed, see {@link #getSavings()}.
+ *
+ * <p>Instances are not thread safe.
+ *
+ * @author Yannick Schinko
+ */
+class DebugInfoStripper {
+  /** See {@link DebugInfoSavings} for what the Metaspace bound leaves out. */
+  static final int LINE_NUMBER_METASPACE_BYTES = 2;
+
+  static final int LOCAL_VARIABLE_METASPACE_BYTES = 12;
+
+  private static final int CLASS_MAGIC = 0xCAFEBABE;
+  private static final String CODE = "Code";
+  private static final String LINE_NUMBER_TABLE = "LineNumberTable";
+  private static final String LOCAL_VARIABLE_TABLE = "LocalVariableTable";
+  private static final String SOURCE_DEBUG_EXTENSION = "SourceDebugExtension";
+  private static final Set<String> CODE_DEBUG_ATTRIBUTES =
+      Collections.unmodifiableSet(
+          new HashSet<>(
+              Arrays.asList(LINE_NUMBER_TABLE, LOCAL_VARIABLE_TABLE, "LocalVariableTypeTable")));
+
+  private int classes = 0;
+  private long originalBytes = 0;
+  private long strippedBytes = 0;
+  private long metaspaceLowerBoundBytes = 0;
+
+  /**
+   * Strips the debug info from a class file.
+   *
+   * @param classFile The class file
+   * @return The stripped class file. The same array if it had no debug info.
+   * @throws IOException if the class file is malformed
+   */
+  byte[] strip(byte[] classFile) throws IOException {
+    final ByteBuffer in = ByteBuffer.wrap(classFile);
+
+    // Not a class file after all. Leave it alone.
+    if ((classFile.length < 10) || (in.getInt() != CLASS_MAGIC)) return classFile;
+
+    try {
+      in.getInt(); // version
+      final String[] utf8s = readUtf8Constants(in);
+
+      // access flags, this class, super class
+      in.position(in.position() + 6);
+      // interfaces
+      final int interfaceCount = Short.toUnsignedInt(in.getShort());
+      in.position(in.position() + (2 * interfaceCount));
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(classFile.length);
+      out.write(classFile, 0, in.position());
+
+      copyMembers(in, out, utf8s);
+      copyMembers(in, out, utf8s);
+      copyAttributes(in, out, utf8s, false);
+
+      final byte[] stripped = out.toByteArray();
+
+      ++classes;
+      originalBytes += classFile.length;
+      strippedBytes += stripped.length;
+
+      return (stripped.length == classFile.length) ? classFile : stripped;
+    } catch (RuntimeException e) {
+      throw new IOException("Malformed class file", e);
+    }
+  }
+
+  /**
+   * Returns what has been stripped so far.
+   *
+   * @return The savings of all class files stripped by this instance, as one jar
+   */
+  DebugInfoSavings getSavings() {
+    return new DebugInfoSavings(1, classes, originalBytes, strippedBytes, metaspaceLowerBoundBytes);
+  }
+
+  /** Copies the fields or methods. */
+  private void copyMembers(ByteBuffer in, ByteArrayOutputStream out, String[] utf8s) {
+    final int count = Short.toUnsignedInt(in.getShort());
+    writeShort(out, count);
+
+    for (int i = 0; i < count; ++i) {
+      // access flags, name, descriptor
+      copy(in, out, 6);
+      copyAttributes(in, out, utf8s, false);
+    }
+  }
+
+  /**
+   * Copies attributes, leaving out the debug attributes.
+   *
+   * @param inCode If these are the attributes of a {@code Code} attribute
+   */
+  private void copyAttributes(
+      ByteBuffer in, ByteArrayOutputStream out, String[] utf8s, boolean inCode) {
+    final int count = Short.toUnsignedInt(in.getShort());
+    final ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+    int kept = 0;
+
+    for (int i = 0; i < count; ++i) {
+      final int nameIndex = Short.toUnsignedInt(in.getShort());
+      final int length = in.getInt();
+      final String name = utf8s[nameIndex];
+
+      if (inCode && CODE_DEBUG_ATTRIBUTES.contains(name)) {
+        // Both tables start with their entry count
+        final int entries = Short.toUnsignedInt(in.getShort(in.position()));
+
+        metaspaceLowerBoundBytes +=
+            LINE_NUMBER_TABLE.equals(name)
+                ? (long) entries * LINE_NUMBER_METASPACE_BYTES
+                : LOCAL_VARIABLE_TABLE.equals(name)
+                    ? (long) entries * LOCAL_VARIABLE_METASPACE_BYTES
+                    // Shares the entries of the LocalVariableTable
+                    : 0;
+        in.position(in.position() + length);
+      } else if (!inCode && SOURCE_DEBUG_EXTENSION.equals(name)) {
+        metaspaceLowerBoundBytes += length;
+        in.position(in.position() + length);
+      } else if (!inCode && CODE.equals(name)) {
+        final ByteArrayOutputStream code = new ByteArrayOutputStream(length);
+        final int codeLength = in.getInt(in.position() + 4);
+        // max stack, max locals, code length, code
+        copy(in, code, 8 + codeLength);
+        // exception table
+        final int exceptionTableLength = Short.toUnsignedInt(in.getShort(in.position()));
+        copy(in, code, 2 + (8 * exceptionTableLength));
+        copyAttributes(in, code, utf8s, true);
+
+        writeShort(attributes, nameIndex);
+        writeInt(attributes, code.size());
+        writeTo(code, attributes);
+        ++kept;
+      } else {
+        writeShort(attributes, nameIndex);
+        writeInt(attributes, length);
+        copy(in, attributes, length);
+        ++kept;
+      }
+    }
+
+    writeShort(out, kept);
+    writeTo(attributes, out);
+  }
+
+  /** Reads the constant pool and returns its strings. Other entries are {@code null}. */
+  private static String[] readUtf8Constants(ByteBuffer in) {
+    final int count = Short.toUnsignedInt(in.getShort());
+    final String[] utf8s = new String[count];
+
+    for (int i = 1; i < count; ++i) {
+      final int tag = in.get();
+
+      switch (tag) {
+        case 1: // Utf8
+          final int length = Short.toUnsignedInt(in.getShort());
+          // Attribute names are plain ASCII, so modified UTF-8 doesn't matter here
+          utf8s[i] = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+          in.position(in.position() + length);
+          break;
+        case 7: // Class
+        case 8: // String
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          in.position(in.position() + 2);
+          break;
+        case 15: // MethodHandle
+          in.position(in.position() + 3);
+          break;
+        case 3: // Integer
+        case 4: // Float
+        case 9: // Fieldref
+        case 10: // Methodref
+        case 11: // InterfaceMethodref
+        case 12: // NameAndType
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          in.position(in.position() + 4);
+          break;
+        case 5: // Long
+        case 6: // Double
+          in.position(in.position() + 8);
+          // Take up two entries
+          ++i;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+      }
+    }
+
+    return utf8s;
+  }
+
+  private static void copy(ByteBuffer in, ByteArrayOutputStream out, int length) {
+    out.write(in.array(), in.position(), length);
+    in.position(in.position() + length);
+  }
+
+  private static void writeTo(ByteArrayOutputStream from, ByteArrayOutputStream to) {
+    final byte[] bytes = from.toByteArray();
+    to.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value >>> 16);
+    writeShort(out, value & 0xFFFF);
+  }
+}
@@ -9,28 +9,78 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+import team.aura_dev.lib.multiplatformcore.FileHashes;
+import team.aura_dev.lib.multiplatformcore.FlightRecorderEvents;
+import team.aura_dev.lib.multiplatformcore.Platform;
+import team.aura_dev.lib.multiplatformcore.SharedLibraries;
+import team.aura_dev.lib.multiplatformcore.dependency.Relocation;
 import team.aura_dev.lib.multiplatformcore.dependency.RuntimeDependency;
 
 /**
  * This class takes care of downloading your dependencies recursively and injecting them into the
- * classpath.
+ * classpath.<br>
+ * The dependencies are always injected into the {@link DependencyClassLoader#getDependencyLayer()
+ * dependency layer}, so they survive reloads of the plugin. With {@link
+ * team.aura_dev.lib.multiplatformcore.ClassLoaderOptions#isSharedLibraries()} they are loaded by a
+ * {@link ClassLoader} shared with all plugins that request the same dependencies instead. With
+ * {@link team.aura_dev.lib.multiplatformcore.ClassLoaderOptions#isArtifactLoaderGraph()} every
+ * artifact gets its own {@link ClassLoader} (see {@link ArtifactLoaderGraph}).
+ *
+ * <p>If any of the dependencies declares {@link RuntimeDependency#getRelocations() relocations} or
+ * asks for its {@link RuntimeDependency#isStripDebugInfo() debug info to be stripped}, the affected
+ * jars are rewritten once (see {@link JarTransformer}) and the rewritten copies are loaded instead.
  *
  * @author Yannick Schinko
  */
 // TODO: Logging!
 @RequiredArgsConstructor
 public class DependencyDownloader {
+  /** The name of the file in {@link #libsDir} the jar indexes are persisted in. */
+  public static final String INDEX_FILE_NAME = "classpath.idx";
+  /** The name of the file in {@link #libsDir} the Classes loaded during startup are recorded in. */
+  public static final String PREFETCH_FILE_NAME = "classes.lst";
+  /** The name of the file in {@link #libsDir} the signers of verified signed jars are kept in. */
+  public static final String SIGNATURE_CACHE_FILE_NAME = "signatures.cache";
+  /**
+   * The name of the directory in {@link #libsDir} the jars rewritten by {@link
+   * RuntimeDependency#getRelocations() relocations} or {@link RuntimeDependency#isStripDebugInfo()
+   * debug info stripping} are cached in.
+   */
+  public static final String TRANSFORMED_DIR_NAME = "transformed";
+  /**
+   * The system property that turns off {@link RuntimeDependency#isStripDebugInfo() debug info
+   * stripping}, so the original jars with their line numbers and local variables are loaded.
+   */
+  public static final String KEEP_DEBUG_INFO_PROPERTY = "multiplatformcore.keepDebugInfo";
+
+  /** How long to wait before checking again whether any of the downloads is done. */
+  private static final long DOWNLOAD_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
   private final DependencyClassLoader classLoader;
   private final Path libsDir;
+  /** The savings of every stripped jar, keyed by the stripped jar. */
+  private final Map<Path, DebugInfoSavings> debugInfoSavings = new ConcurrentHashMap<>();
 
   /**
    * Downloads all dependencies, that should be downloaded according to their respective conditions,
@@ -61,6 +111,16 @@ public class DependencyDownloader {
       value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
       justification = "SpotBugs is incorrect in this case")
   public void downloadAndInjectInClasspath(Collection<RuntimeDependency> dependencies) {
+    final DependencyClassLoader target = classLoader.getDependencyLayer();
+
+    if (target.getOptions().isSharedLibraries() && !dependencies.isEmpty()) {
+      final String key = SharedLibraries.getKey(dependencies);
+
+      target.addSharedLibrary(key, SharedLibraries.acquire(key, () -> createShared(dependencies)));
+
+      return;
+    }
+
     try {
       Files.createDirectories(libsDir);
     } catch (IOException e) {
@@ -88,36 +148,296 @@ public class DependencyDownloader {
                     .collect(Collectors.toList()));
 
     try (PicoMaven picoMaven = picoMavenBase.build()) {
-      List<DownloadResult> downloads =
-          picoMaven
-              .downloadAllArtifacts()
-              .values()
-              .parallelStream()
-              .flatMap(this::processDownload)
+      final Map<Dependency, Future<DownloadResult>> futures = picoMaven.downloadAllArtifacts();
+      final List<DownloadResult> results = awaitDownloads(futures);
+      final List<DownloadResult> downloads =
+          results.stream()
+              .flatMap(DependencyDownloader::withTransitiveDependencies)
               .peek(this::checkDownload)
               .collect(Collectors.toList());
 
+      putPinnedHashes(dependencies, results);
+
+      final UnaryOperator<Path> jarMapper = getJarMapper(dependencies, results);
+
+      if (target.getOptions().isArtifactLoaderGraph()) {
+        injectAsGraph(target, results, jarMapper);
+
+        return;
+      }
+
+      final Path indexFile = libsDir.resolve(INDEX_FILE_NAME);
+
+      target.loadPersistentIndex(indexFile);
+      target.loadSignatureCache(libsDir.resolve(SIGNATURE_CACHE_FILE_NAME));
+
       downloads.stream()
           .map(DownloadResult::getAllDownloadedFiles)
           .flatMap(List::stream)
+          .map(jarMapper)
           .forEach(this::injectInClasspath);
+
+      savePersistentIndex(indexFile);
+      target.startClassPrefetch(libsDir.resolve(PREFETCH_FILE_NAME));
+      target.startClassDataSharing(libsDir);
+    }
+  }
+
+  /**
+   * Creates a {@link DependencyClassLoader} for every artifact, connected along their dependencies
+   * (see {@link ArtifactLoaderGraph}), and adds them to {@code target} as delegates.
+   */
+  private void injectAsGraph(
+      DependencyClassLoader target, List<DownloadResult> results, UnaryOperator<Path> jarMapper) {
+    final ArtifactLoaderGraph graph = new ArtifactLoaderGraph(target);
+    final List<ArtifactLoaderGraph.Artifact> roots =
+        results.stream()
+            .map(result -> ArtifactLoaderGraph.toArtifact(result, jarMapper))
+            .collect(Collectors.toList());
+
+    try {
+      for (ArtifactLoaderGraph.Artifact root : roots) {
+        target.addDelegate(graph.getLoader(root), true);
+      }
+
+      for (ArtifactLoaderGraph.Artifact dependency :
+          ArtifactLoaderGraph.getTransitiveDependencies(roots)) {
+        target.addDelegate(graph.getLoader(dependency), true);
+      }
+    } catch (MalformedURLException | IllegalArgumentException e) {
+      // Rethrow because we rely on this working
+      throw new DependencyDownloadException(
+          "Error while trying to inject a dependency in the classloader", libsDir, e);
+    }
+  }
+
+  /**
+   * Returns how much stripping the debug info from the dependencies saved (see {@link
+   * RuntimeDependency#isStripDebugInfo()}).<br>
+   * Also reports the savings of jars that were stripped during a previous start and taken from the
+   * cache. The Metaspace is only a rough lower bound (see {@link DebugInfoSavings}).
+   *
+   * @return The combined savings of all stripped jars injected by this downloader
+   */
+  public DebugInfoSavings getDebugInfoSavings() {
+    return debugInfoSavings.values().stream().reduce(DebugInfoSavings.NONE, DebugInfoSavings::add);
+  }
+
+  /**
+   * Returns the function that picks the jar to load for a downloaded jar.<br>
+   * The relocations of all dependencies apply to all jars, as the references to relocated packages
+   * have to be rewritten in every jar, not just in the one containing them. The debug info is
+   * stripped from the jars of the dependencies that ask for it, including their transitive
+   * dependencies.
+   */
+  private UnaryOperator<Path> getJarMapper(
+      Collection<RuntimeDependency> dependencies, List<DownloadResult> results) {
+    final List<Relocation> relocations =
+        dependencies.stream()
+            .map(RuntimeDependency::getRelocations)
+            .flatMap(List::stream)
+            .distinct()
+            .collect(Collectors.toList());
+    final Set<Path> strippedJars = getStrippedJars(dependencies, results);
+
+    if (relocations.isEmpty() && strippedJars.isEmpty()) return UnaryOperator.identity();
+
+    final JarRelocator relocator = relocations.isEmpty() ? null : new JarRelocator(relocations);
+    final JarTransformer transformer = new JarTransformer(relocator, false);
+    final JarTransformer stripper = new JarTransformer(relocator, true);
+    final Path cacheDir = libsDir.resolve(TRANSFORMED_DIR_NAME);
+
+    return jar -> {
+      final boolean strip = strippedJars.contains(jar);
+
+      if (!strip && (relocator == null)) return jar;
+
+      try {
+        final Path transformedJar =
+            (strip ? stripper : transformer).getTransformedJar(jar, cacheDir);
+
+        if (strip) {
+          debugInfoSavings.put(transformedJar, JarTransformer.getSavings(transformedJar));
+        }
+
+        return transformedJar;
+      } catch (IOException e) {
+        // Rethrow because we rely on this working
+        throw new DependencyDownloadException(
+            "Error while trying to transform the dependency " + jar.getFileName(), libsDir, e);
+      }
+    };
+  }
+
+  private static Set<Path> getStrippedJars(
+      Collection<RuntimeDependency> dependencies, List<DownloadResult> results) {
+    if (Boolean.getBoolean(KEEP_DEBUG_INFO_PROPERTY)) return Collections.emptySet();
+
+    final Set<Dependency> strippedDependencies =
+        dependencies.stream()
+            .filter(RuntimeDependency::isStripDebugInfo)
+            .map(RuntimeDependency::getDependency)
+            .collect(Collectors.toSet());
+
+    if (strippedDependencies.isEmpty()) return Collections.emptySet();
+
+    return results.stream()
+        .filter(result -> strippedDependencies.contains(result.getDependency()))
+        .flatMap(DependencyDownloader::withTransitiveDependencies)
+        .map(DownloadResult::getArtifactPath)
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Hands the SHA-1 hashes the artifacts have been downloaded with to {@link FileHashes}. That way
+   * the caches keyed by the hash of a jar, like the {@link JarTransformer} and the signature cache,
+   * don't have to hash the artifacts again. Transitive dependencies have no pinned hash and still
+   * get hashed once.
+   */
+  private static void putPinnedHashes(
+      Collection<RuntimeDependency> dependencies, List<DownloadResult> results) {
+    final Map<Dependency, String> pinnedHashes = new HashMap<>();
+
+    for (RuntimeDependency dependency : dependencies) {
+      pinnedHashes.putIfAbsent(dependency.getDependency(), dependency.getSha1Hash());
+    }
+
+    for (DownloadResult result : results) {
+      final String sha1 = pinnedHashes.get(result.getDependency());
+
+      if ((sha1 == null) || sha1.isEmpty() || (result.getArtifactPath() == null)) continue;
+
+      try {
+        FileHashes.putSha1(result.getArtifactPath(), sha1);
+      } catch (IOException e) {
+        // Gets hashed when it's needed
+      }
     }
   }
 
-  private Stream<DownloadResult> processDownload(Future<DownloadResult> future) {
+  private void savePersistentIndex(Path indexFile) {
     try {
-      final DownloadResult result = future.get();
+      classLoader.getDependencyLayer().savePersistentIndex(indexFile);
+    } catch (IOException e) {
+      // Not critical. The jars just get indexed again on the next start.
+    }
+  }
+
+  /**
+   * Creates a {@link DependencyClassLoader} that can be shared with other plugins and downloads the
+   * dependencies into it.<br>
+   * Its parent is the system {@link ClassLoader}, as it must not depend on any plugin.
+   */
+  private DependencyClassLoader createShared(Collection<RuntimeDependency> dependencies) {
+    final ClassLoader parent = ClassLoader.getSystemClassLoader();
+    final DependencyClassLoader shared =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    DependencyClassLoader.createDependencyLayer(
+                        parent,
+                        classLoader
+                            .getDependencyLayer()
+                            .getOptions()
+                            .toBuilder()
+                            .sharedLibraries(false)
+                            .artifactLoaderGraph(false)
+                            .build()));
+    shared.addParentFirstPackages(Platform.getPackageNames(Platform.detect(parent)));
+
+    new DependencyDownloader(shared, libsDir).downloadAndInjectInClasspath(dependencies);
+
+    return shared;
+  }
+
+  /**
+   * Waits for all downloads to finish.<br>
+   * The downloads are polled instead of waited for one after another, so the {@link
+   * FlightRecorderEvents#ARTIFACT_DOWNLOAD} event of every download gets committed as soon as its
+   * own download is done and doesn't include the time spent waiting for the others.
+   *
+   * @param futures The running downloads
+   * @return The results in the order of {@code futures}
+   */
+  private List<DownloadResult> awaitDownloads(Map<Dependency, Future<DownloadResult>> futures) {
+    final Map<Dependency, FlightRecorderEvents.Event> pending = new LinkedHashMap<>();
+    final Map<Dependency, DownloadResult> results = new HashMap<>();
+
+    // The downloads are running already, so the events have to start now
+    for (Dependency dependency : futures.keySet()) {
+      pending.put(dependency, FlightRecorderEvents.ARTIFACT_DOWNLOAD.begin());
+    }
 
-      final List<DownloadResult> allDownloads =
-          new LinkedList<>(result.getTransitiveDependencies());
-      allDownloads.add(0, result);
+    while (!pending.isEmpty()) {
+      final Iterator<Map.Entry<Dependency, FlightRecorderEvents.Event>> iterator =
+          pending.entrySet().iterator();
+      boolean completed = false;
 
-      return allDownloads.stream();
+      while (iterator.hasNext()) {
+        final Map.Entry<Dependency, FlightRecorderEvents.Event> entry = iterator.next();
+        final Future<DownloadResult> future = futures.get(entry.getKey());
+
+        if (!future.isDone()) continue;
+
+        results.put(entry.getKey(), getResult(entry.getKey(), future, entry.getValue()));
+        iterator.remove();
+        completed = true;
+      }
+
+      if (!pending.isEmpty() && !completed) {
+        LockSupport.parkNanos(DOWNLOAD_POLL_INTERVAL_NANOS);
+
+        if (Thread.interrupted()) {
+          Thread.currentThread().interrupt();
+
+          throw new DependencyDownloadException(
+              "Interrupted while waiting for the dependencies to download",
+              libsDir,
+              new InterruptedException());
+        }
+      }
+    }
+
+    return futures.keySet().stream().map(results::get).collect(Collectors.toList());
+  }
+
+  private DownloadResult getResult(
+      Dependency dependency, Future<DownloadResult> future, FlightRecorderEvents.Event event) {
+    event
+        .set("pluginName", classLoader.getPluginName())
+        .set("coordinates", getDependencyName(dependency));
+
+    final DownloadResult result;
+
+    try {
+      result = future.get();
     } catch (InterruptedException | ExecutionException e) {
+      event.set("success", false).commit();
+
       // Rethrow because we rely on this working
       throw new DependencyDownloadException(
           "Error while trying to download a dependency", libsDir, e);
     }
+
+    if (event.shouldCommit()) {
+      final List<DownloadResult> downloads =
+          withTransitiveDependencies(result).collect(Collectors.toList());
+
+      event
+          .set("artifacts", downloads.size())
+          .set("bytes", downloads.stream().mapToLong(DependencyDownloader::getSize).sum())
+          .set("success", downloads.stream().allMatch(DownloadResult::isSuccess))
+          .commit();
+    }
+
+    return result;
+  }
+
+  private static Stream<DownloadResult> withTransitiveDependencies(DownloadResult result) {
+    final List<DownloadResult> allDownloads = new LinkedList<>(result.getTransitiveDependencies());
+    allDownloads.add(0, result);
+
+    return allDownloads.stream();
   }
 
   private void checkDownload(DownloadResult result) {
@@ -131,9 +451,11 @@ public class DependencyDownloader {
 
   private void injectInClasspath(Path jarFile) {
     try {
-      URL jarFileUrl = new URL("jar", "", "file:" + jarFile.toAbsolutePath().toString() + "!/");
+      // A plain file URL. jar: URLs would be opened through the JVM wide JarURLConnection cache,
+      // which never closes them.
+      final URL jarFileUrl = jarFile.toAbsolutePath().toUri().toURL();
 
-      classLoader.addURL(jarFileUrl);
+      classLoader.getDependencyLayer().addURL(jarFileUrl);
     } catch (MalformedURLException | IllegalArgumentException e) {
       // Rethrow because we rely on this working
       throw new DependencyDownloadException(
@@ -141,6 +463,21 @@ public class DependencyDownloader {
     }
   }
 
+  /** Returns the size of the files of a download, without its transitive dependencies. */
+  private static long getSize(DownloadResult result) {
+    long size = 0;
+
+    for (Path file : result.getAllDownloadedFiles()) {
+      try {
+        size += Files.size(file);
+      } catch (IOException e) {
+        // Only the reported size is off
+      }
+    }
+
+    return size;
+  }
+
   private static String getDependencyName(Dependency dependency) {
     return dependency.getGroupId()
         + ':'
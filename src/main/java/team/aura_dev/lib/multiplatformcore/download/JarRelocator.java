@@ -0,0 +1,444 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import team.aura_dev.lib.multiplatformcore.dependency.Relocation;
+
+/**
+ * Applies {@link Relocation}s to the entries of jar files. Used by {@link JarTransformer}.
+ *
+ * <p>Every reference to a Class lives in the constant pool of a class file, so only the constant
+ * pool needs to be rewritten. Class names, descriptors and generic signatures are relocated, as
+ * well as string constants that start with a relocated package (like the argument of {@link
+ * Class#forName(String)}). The rest of the class file is copied untouched. Resources in relocated
+ * packages and service files in {@code META-INF/services} are moved as well.
+ *
+ * @author Yannick Schinko
+ */
+@RequiredArgsConstructor
+class JarRelocator {
+  private static final int CLASS_MAGIC = 0xCAFEBABE;
+  private static final String SERVICES_DIR = "META-INF/services/";
+  private static final String VERSIONS_DIR = "META-INF/versions/";
+
+  private static final byte CONSTANT_UTF8 = 1;
+  private static final byte CONSTANT_INTEGER = 3;
+  private static final byte CONSTANT_FLOAT = 4;
+  private static final byte CONSTANT_LONG = 5;
+  private static final byte CONSTANT_DOUBLE = 6;
+  private static final byte CONSTANT_CLASS = 7;
+  private static final byte CONSTANT_STRING = 8;
+  private static final byte CONSTANT_FIELDREF = 9;
+  private static final byte CONSTANT_METHODREF = 10;
+  private static final byte CONSTANT_INTERFACE_METHODREF = 11;
+  private static final byte CONSTANT_NAME_AND_TYPE = 12;
+  private static final byte CONSTANT_METHOD_HANDLE = 15;
+  private static final byte CONSTANT_METHOD_TYPE = 16;
+  private static final byte CONSTANT_DYNAMIC = 17;
+  private static final byte CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final byte CONSTANT_MODULE = 19;
+  private static final byte CONSTANT_PACKAGE = 20;
+
+  /** How a string in the constant pool is used. Determines how it gets relocated. */
+  private enum Usage {
+    /** Names of members, attributes and descriptors referenced from outside the constant pool. */
+    UNKNOWN,
+    CLASS_NAME,
+    PACKAGE_NAME,
+    DESCRIPTOR,
+    STRING_CONSTANT
+  }
+
+  @Getter private final List<Relocation> relocations;
+
+  /**
+   * Rewrites the constant pool of a class file.
+   *
+   * @param classFile The class file
+   * @return The relocated class file. The same array if nothing changed.
+   * @throws IOException if the class file is malformed
+   */
+  byte[] relocateClass(byte[] classFile) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+
+    // Not a class file after all. Leave it alone.
+    if ((classFile.length < 10) || (in.readInt() != CLASS_MAGIC)) return classFile;
+
+    final int version = in.readInt();
+    final int constantCount = in.readUnsignedShort();
+    final byte[] tags = new byte[constantCount];
+    final Object[] values = new Object[constantCount];
+    final Usage[] usages = new Usage[constantCount];
+
+    for (int i = 1; i < constantCount; ++i) {
+      tags[i] = in.readByte();
+
+      switch (tags[i]) {
+        case CONSTANT_UTF8:
+          values[i] = in.readUTF();
+          usages[i] = Usage.UNKNOWN;
+          break;
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+          values[i] = in.readUnsignedShort();
+          break;
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_DYNAMIC:
+        case CONSTANT_INVOKE_DYNAMIC:
+          values[i] = new int[] {in.readUnsignedShort(), in.readUnsignedShort()};
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          values[i] = in.readLong();
+          // Longs and doubles take up two entries
+          ++i;
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          values[i] = new int[] {in.readUnsignedByte(), in.readUnsignedShort()};
+          break;
+        default:
+          throw new IOException("Unknown constant pool tag " + tags[i]);
+      }
+    }
+
+    final int constantPoolEnd = classFile.length - in.available();
+
+    classifyUsages(tags, values, usages);
+
+    boolean changed = false;
+
+    for (int i = 1; i < constantCount; ++i) {
+      if (tags[i] != CONSTANT_UTF8) continue;
+
+      final String value = (String) values[i];
+      final String relocated = relocateConstant(value, usages[i]);
+
+      if (!relocated.equals(value)) {
+        values[i] = relocated;
+        changed = true;
+      }
+    }
+
+    if (!changed) return classFile;
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(classFile.length + 256);
+    final DataOutputStream out = new DataOutputStream(buffer);
+
+    out.writeInt(CLASS_MAGIC);
+    out.writeInt(version);
+    out.writeShort(constantCount);
+
+    for (int i = 1; i < constantCount; ++i) {
+      out.writeByte(tags[i]);
+
+      switch (tags[i]) {
+        case CONSTANT_UTF8:
+          out.writeUTF((String) values[i]);
+          break;
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+          out.writeShort((Integer) values[i]);
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          out.writeLong((Long) values[i]);
+          ++i;
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          out.writeByte(((int[]) values[i])[0]);
+          out.writeShort(((int[]) values[i])[1]);
+          break;
+        default:
+          out.writeShort(((int[]) values[i])[0]);
+          out.writeShort(((int[]) values[i])[1]);
+          break;
+      }
+    }
+
+    // Everything after the constant pool only refers to it by index
+    out.write(classFile, constantPoolEnd, classFile.length - constantPoolEnd);
+
+    return buffer.toByteArray();
+  }
+
+  private static void classifyUsages(byte[] tags, Object[] values, Usage[] usages) {
+    for (int i = 1; i < tags.length; ++i) {
+      switch (tags[i]) {
+        case CONSTANT_CLASS:
+          usages[(Integer) values[i]] = Usage.CLASS_NAME;
+          break;
+        case CONSTANT_PACKAGE:
+          usages[(Integer) values[i]] = Usage.PACKAGE_NAME;
+          break;
+        case CONSTANT_METHOD_TYPE:
+          usages[(Integer) values[i]] = Usage.DESCRIPTOR;
+          break;
+        case CONSTANT_NAME_AND_TYPE:
+          usages[((int[]) values[i])[1]] = Usage.DESCRIPTOR;
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          ++i;
+          break;
+        default:
+          break;
+      }
+    }
+
+    // String constants last, so a string that is also used as a name is still relocated as one
+    for (int i = 1; i < tags.length; ++i) {
+      if (tags[i] == CONSTANT_STRING) {
+        final int index = (Integer) values[i];
+
+        if (usages[index] == Usage.UNKNOWN) {
+          usages[index] = Usage.STRING_CONSTANT;
+        }
+      } else if ((tags[i] == CONSTANT_LONG) || (tags[i] == CONSTANT_DOUBLE)) {
+        ++i;
+      }
+    }
+  }
+
+  private String relocateConstant(String value, Usage usage) {
+    switch (usage) {
+      case CLASS_NAME:
+        return (value.charAt(0) == '[') ? relocateSignature(value) : relocateName(value, '/');
+      case PACKAGE_NAME:
+        return relocateName(value, '/');
+      case DESCRIPTOR:
+        return relocateSignature(value);
+      case STRING_CONSTANT:
+        return relocateName(relocateName(value, '.'), '/');
+      default:
+        // Member names can't contain slashes, so anything with one is a descriptor or signature
+        if (value.indexOf('/') == -1) return value;
+
+        final String relocated = relocateSignature(value);
+
+        return relocated.equals(value) ? relocateName(value, '/') : relocated;
+    }
+  }
+
+  /**
+   * Relocates a name with the first matching {@link Relocation}.
+   *
+   * @return The relocated name or {@code name} itself if no relocation matches
+   */
+  String relocateName(String name, char separator) {
+    for (Relocation relocation : relocations) {
+      final String relocated = relocation.relocate(name, separator);
+
+      if (relocated != null) return relocated;
+    }
+
+    return name;
+  }
+
+  /**
+   * Relocates all class names in a field or method descriptor or a generic signature.
+   *
+   * @return The relocated signature or {@code signature} itself if it didn't change or isn't a
+   *     valid signature
+   */
+  String relocateSignature(String signature) {
+    final StringBuilder out = new StringBuilder(signature.length() + 16);
+
+    try {
+      int i = 0;
+
+      // Type parameters: <T:Ljava/lang/Object;U::Ljava/lang/Comparable<TU;>;>
+      if (signature.charAt(0) == '<') {
+        out.append('<');
+        ++i;
+
+        while (signature.charAt(i) != '>') {
+          final int colon = signature.indexOf(':', i);
+
+          if (colon == -1) return signature;
+
+          out.append(signature, i, colon);
+          i = colon;
+
+          while (signature.charAt(i) == ':') {
+            out.append(':');
+            ++i;
+
+            if ((signature.charAt(i) != ':') && (signature.charAt(i) != '>')) {
+              i = relocateType(signature, i, out);
+            }
+          }
+        }
+
+        out.append('>');
+        ++i;
+      }
+
+      while (i < signature.length()) {
+        final char c = signature.charAt(i);
+
+        if ((c == '(') || (c == ')') || (c == '^')) {
+          out.append(c);
+          ++i;
+        } else {
+          i = relocateType(signature, i, out);
+        }
+      }
+    } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      return signature;
+    }
+
+    final String relocated = out.toString();
+
+    return relocated.equals(signature) ? signature : relocated;
+  }
+
+  /** Relocates one type of a signature and returns the index after it. */
+  private int relocateType(String signature, int start, StringBuilder out) {
+    int i = start;
+    final char c = signature.charAt(i);
+
+    switch (c) {
+      case 'B':
+      case 'C':
+      case 'D':
+      case 'F':
+      case 'I':
+      case 'J':
+      case 'S':
+      case 'Z':
+      case 'V':
+        out.append(c);
+        return i + 1;
+      case '[':
+        out.append(c);
+        return relocateType(signature, i + 1, out);
+      case 'T':
+        final int end = signature.indexOf(';', i);
+
+        if (end == -1) throw new IllegalArgumentException("Unterminated type variable");
+
+        out.append(signature, i, end + 1);
+        return end + 1;
+      case 'L':
+        out.append('L');
+        ++i;
+
+        final int nameEnd = findNameEnd(signature, i);
+        out.append(relocateName(signature.substring(i, nameEnd), '/'));
+        i = nameEnd;
+
+        while (true) {
+          final char next = signature.charAt(i);
+
+          if (next == ';') {
+            out.append(';');
+            return i + 1;
+          } else if (next == '<') {
+            out.append('<');
+            ++i;
+
+            while (signature.charAt(i) != '>') {
+              final char argument = signature.charAt(i);
+
+              if (argument == '*') {
+                out.append('*');
+                ++i;
+              } else {
+                if ((argument == '+') || (argument == '-')) {
+                  out.append(argument);
+                  ++i;
+                }
+
+                i = relocateType(signature, i, out);
+              }
+            }
+
+            out.append('>');
+            ++i;
+          } else if (next == '.') {
+            // Inner class of a generic class. Only its simple name follows.
+            final int innerEnd = findNameEnd(signature, i + 1);
+            out.append(signature, i, innerEnd);
+            i = innerEnd;
+          } else {
+            throw new IllegalArgumentException("Unexpected character " + next);
+          }
+        }
+      default:
+        throw new IllegalArgumentException("Unexpected character " + c);
+    }
+  }
+
+  private static int findNameEnd(String signature, int start) {
+    for (int i = start; i < signature.length(); ++i) {
+      final char c = signature.charAt(i);
+
+      if ((c == ';') || (c == '<') || (c == '.')) return i;
+    }
+
+    throw new IllegalArgumentException("Unterminated class name");
+  }
+
+  /**
+   * Relocates the name of a jar entry. Entries in {@code META-INF} are only moved if they are
+   * service files or in the directory of a Java version.
+   *
+   * @param name The name of the entry
+   * @return The relocated name or {@code name} itself if no relocation matches
+   */
+  String relocateEntryName(String name) {
+    if (name.startsWith(SERVICES_DIR)) {
+      return SERVICES_DIR + relocateName(name.substring(SERVICES_DIR.length()), '.');
+    } else if (name.startsWith(VERSIONS_DIR)) {
+      final int versionEnd = name.indexOf('/', VERSIONS_DIR.length());
+
+      if (versionEnd == -1) return name;
+
+      return name.substring(0, versionEnd + 1) + relocateName(name.substring(versionEnd + 1), '/');
+    } else if (name.startsWith("META-INF/")) {
+      return name;
+    }
+
+    return relocateName(name, '/');
+  }
+
+  /**
+   * Relocates the implementation names listed in a file in {@code META-INF/services}.
+   *
+   * @param contents The contents of the service file
+   * @return The relocated contents
+   * @throws IOException if the file can't be read
+   */
+  byte[] relocateServiceFile(byte[] contents) throws IOException {
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new ByteArrayInputStream(contents), StandardCharsets.UTF_8))) {
+      return reader
+          .lines()
+          .map(line -> relocateName(line.trim(), '.'))
+          .collect(Collectors.joining("\n", "", "\n"))
+          .getBytes(StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import lombok.RequiredArgsConstructor;
+import team.aura_dev.lib.multiplatformcore.AtomicFiles;
+import team.aura_dev.lib.multiplatformcore.FileHashes;
+import team.aura_dev.lib.multiplatformcore.SignatureFiles;
+
+/**
+ * Rewrites jar files with a {@link JarRelocator} and/or a {@link DebugInfoStripper} and keeps the
+ * rewritten jars in a cache directory.<br>
+ * The cached jars are keyed by the SHA-1 hash of the original jar and the transformations, so every
+ * jar only gets rewritten once. Later starts just look up the hash of the original jar (see {@link
+ * FileHashes}) and load the cached one. The original jar is never modified.
+ *
+ * <p>Signatures are dropped, as they don't match the rewritten jar anymore.
+ *
+ * @author Yannick Schinko
+ */
+@RequiredArgsConstructor
+class JarTransformer {
+  /** Bump this whenever the output changes, so previously cached jars get rewritten. */
+  private static final int VERSION = 1;
+
+  private static final String SAVINGS_FILE_SUFFIX = ".savings";
+
+  /** The relocations to apply or {@code null} to not relocate anything. */
+  private final JarRelocator relocator;
+
+  private final boolean stripDebugInfo;
+
+  /**
+   * Returns the transformed version of a jar, rewriting it if it isn't in the cache yet.
+   *
+   * @param jar The original jar
+   * @param cacheDir The directory the transformed jars are kept in
+   * @return The transformed jar in {@code cacheDir}
+   * @throws IOException if reading the jar or writing the transformed one fails
+   */
+  Path getTransformedJar(Path jar, Path cacheDir) throws IOException {
+    final String fileName = jar.getFileName().toString();
+    final String baseName =
+        fileName.endsWith(".jar") ? fileName.substring(0, fileName.length() - 4) : fileName;
+    final Path transformedJar = cacheDir.resolve(baseName + '-' + getCacheKey(jar) + ".jar");
+
+    if (Files.isRegularFile(transformedJar)) return transformedJar;
+
+    Files.createDirectories(cacheDir);
+
+    AtomicFiles.write(
+        transformedJar,
+        tempFile -> {
+          final DebugInfoSavings savings = transform(jar, tempFile);
+
+          if (stripDebugInfo) {
+            savings.save(getSavingsFile(transformedJar));
+          }
+        });
+
+    return transformedJar;
+  }
+
+  /**
+   * Writes a transformed copy of a jar.
+   *
+   * @param jar The original jar
+   * @param target The file to write the transformed jar to
+   * @return What stripping the debug info saved. {@link DebugInfoSavings#NONE} if it isn't
+   *     stripped.
+   * @throws IOException if reading the jar or writing the transformed one fails
+   */
+  DebugInfoSavings transform(Path jar, Path target) throws IOException {
+    final DebugInfoStripper stripper = stripDebugInfo ? new DebugInfoStripper() : null;
+    final Set<String> writtenNames = new HashSet<>();
+
+    try (JarFile in = new JarFile(jar.toFile(), false);
+        JarOutputStream out = new JarOutputStream(Files.newOutputStream(target))) {
+      final Enumeration<JarEntry> entries = in.entries();
+
+      while (entries.hasMoreElements()) {
+        final JarEntry entry = entries.nextElement();
+        final String name = entry.getName();
+
+        if (SignatureFiles.isSignatureFile(name)) continue;
+
+        final String transformedName =
+            (relocator == null) ? name : relocator.relocateEntryName(name);
+
+        // Two entries can't end up with the same name. The first one wins, like on a classpath.
+        if (!writtenNames.add(transformedName)) continue;
+
+        final JarEntry transformedEntry = new JarEntry(transformedName);
+        transformedEntry.setTime(entry.getTime());
+        out.putNextEntry(transformedEntry);
+
+        if (!entry.isDirectory()) {
+          byte[] contents;
+
+          try (InputStream entryIn = in.getInputStream(entry)) {
+            contents = readFully(entryIn);
+          }
+
+          if (name.endsWith(".class")) {
+            if (relocator != null) {
+              contents = relocator.relocateClass(contents);
+            }
+
+            if (stripper != null) {
+              contents = stripper.strip(contents);
+            }
+          } else if ((relocator != null) && name.startsWith("META-INF/services/")) {
+            contents = relocator.relocateServiceFile(contents);
+          }
+
+          out.write(contents);
+        }
+
+        out.closeEntry();
+      }
+    }
+
+    return (stripper == null) ? DebugInfoSavings.NONE : stripper.getSavings();
+  }
+
+  /**
+   * Returns what stripping the debug info of a jar returned by {@link #getTransformedJar(Path,
+   * Path)} saved.
+   *
+   * @param transformedJar The transformed jar
+   * @return The savings or {@link DebugInfoSavings#NONE} if the debug info wasn't stripped
+   */
+  static DebugInfoSavings getSavings(Path transformedJar) {
+    final Path savingsFile = getSavingsFile(transformedJar);
+
+    return Files.isRegularFile(savingsFile)
+        ? DebugInfoSavings.load(savingsFile)
+        : DebugInfoSavings.NONE;
+  }
+
+  private static Path getSavingsFile(Path transformedJar) {
+    return transformedJar.resolveSibling(transformedJar.getFileName() + SAVINGS_FILE_SUFFIX);
+  }
+
+  private String getCacheKey(Path jar) throws IOException {
+    final MessageDigest digest = FileHashes.newSha1Digest();
+
+    digest.update(
+        (FileHashes.sha1(jar)
+                + ":"
+                + VERSION
+                + ":"
+                + ((relocator == null) ? "[]" : relocator.getRelocations())
+                + (stripDebugInfo ? ":stripped" : ""))
+            .getBytes(StandardCharsets.UTF_8));
+
+    // 64 bits are plenty to tell the few versions of a jar apart
+    return FileHashes.toHex(Arrays.copyOf(digest.digest(), 8));
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,56 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AtomicFilesTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void writeLinesTest() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("lines.txt");
+
+    AtomicFiles.writeLines(file, Arrays.asList("first", "second"));
+    assertEquals(Arrays.asList("first", "second"), Files.readAllLines(file));
+
+    AtomicFiles.writeLines(file, Collections.singletonList("replaced"));
+    assertEquals(Collections.singletonList("replaced"), Files.readAllLines(file));
+    assertFalse(Files.exists(file.resolveSibling("lines.txt.tmp")));
+  }
+
+  @Test
+  public void failedWriteTest() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("data.bin");
+
+    Files.write(file, "Old".getBytes(StandardCharsets.UTF_8));
+
+    try {
+      AtomicFiles.write(
+          file,
+          tempFile -> {
+            Files.write(tempFile, "Half".getBytes(StandardCharsets.UTF_8));
+
+            throw new IOException("Test");
+          });
+
+      fail("Expected an IOException");
+    } catch (IOException e) {
+      assertEquals("Test", e.getMessage());
+    }
+
+    // The old contents survive and the temporary file is gone
+    assertEquals("Old", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    assertFalse(Files.exists(file.resolveSibling("data.bin.tmp")));
+  }
+}
@@ -0,0 +1,118 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static team.aura_dev.lib.multiplatformcore.TestJars.createJar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.example.ExampleUtility;
+
+public class ClassDataSharingTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void writeClassListTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class, Base.class, Derived.class);
+    final Path directory = folder.newFolder().toPath();
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(jar.toUri().toURL());
+      classLoader.loadClass(Derived.class.getName());
+      classLoader.loadClass(ExampleUtility.class.getName());
+
+      assertEquals(3, ClassDataSharing.writeClassList(classLoader, directory));
+    }
+
+    final List<String> classList =
+        Files.readAllLines(
+            directory.resolve(ClassDataSharing.CLASS_LIST_FILE_NAME), StandardCharsets.UTF_8);
+    final String base = toInternalName(Base.class) + " id: 1 super: 0 source: " + jar;
+
+    assertEquals("java/lang/Object id: 0", classList.get(0));
+    // The super class comes first
+    assertEquals(base, classList.get(1));
+    assertEquals(
+        toInternalName(Derived.class) + " id: 2 super: 1 source: " + jar, classList.get(2));
+    assertEquals(
+        1,
+        Files.readAllLines(
+                directory.resolve(ClassDataSharing.JARS_FILE_NAME), StandardCharsets.UTF_8)
+            .size());
+  }
+
+  @Test
+  public void verifyArchiveTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final Path directory = folder.newFolder().toPath();
+    final Path archive = directory.resolve(ClassDataSharing.ARCHIVE_FILE_NAME);
+
+    assertFalse(ClassDataSharing.verifyArchive(directory));
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(jar.toUri().toURL());
+      classLoader.loadClass(ExampleUtility.class.getName());
+
+      ClassDataSharing.writeClassList(classLoader, directory);
+    }
+
+    // Not a real archive, but only the jars are checked
+    Files.write(archive, new byte[] {0});
+
+    assertTrue(ClassDataSharing.verifyArchive(directory));
+
+    Files.setLastModifiedTime(
+        jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 1000));
+
+    assertFalse(ClassDataSharing.verifyArchive(directory));
+    assertFalse(Files.exists(archive));
+  }
+
+  @Test
+  public void isArchiveTest() throws IOException {
+    final Path directory = folder.newFolder().toPath();
+    final String archive = directory.resolve(ClassDataSharing.ARCHIVE_FILE_NAME).toString();
+    final Path defaultArchive =
+        Paths.get(System.getProperty("java.home"), "lib", "server", "classes.jsa");
+
+    assertTrue(ClassDataSharing.isArchive(archive, directory));
+    assertTrue(
+        ClassDataSharing.isArchive(defaultArchive + File.pathSeparator + archive, directory));
+    assertFalse(ClassDataSharing.isArchive(defaultArchive.toString(), directory));
+    assertFalse(ClassDataSharing.isArchive("", directory));
+
+    // Only the default archive of the JDK, if any
+    Files.write(directory.resolve(ClassDataSharing.ARCHIVE_FILE_NAME), new byte[] {0});
+
+    assertFalse(ClassDataSharing.isArchiveInUse(directory));
+  }
+
+  private DependencyClassLoader createClassLoader() {
+    final ClassLoaderOptions options = ClassLoaderOptions.builder().classDataSharing(true).build();
+
+    return AccessController.doPrivileged(
+        (PrivilegedAction<DependencyClassLoader>)
+            () ->
+                DependencyClassLoader.createDependencyLayer(getClass().getClassLoader(), options));
+  }
+
+  private static String toInternalName(Class<?> clazz) {
+    return clazz.getName().replace('.', '/');
+  }
+
+  public static class Base {}
+
+  public static class Derived extends Base {}
+}
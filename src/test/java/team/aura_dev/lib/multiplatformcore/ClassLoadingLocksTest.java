@@ -0,0 +1,56 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ClassLoadingLocksTest {
+  @Test
+  public void acquireReleaseTest() {
+    final ClassLoadingLocks locks = new ClassLoadingLocks();
+    final ClassLoadingLocks.NameLock lock = locks.acquire("foo.Bar");
+
+    assertTrue(lock.isHeldByCurrentThread());
+    assertEquals(1, locks.size());
+
+    locks.release(lock);
+
+    assertEquals(0, locks.size());
+  }
+
+  @Test
+  public void reentrantTest() {
+    final ClassLoadingLocks locks = new ClassLoadingLocks();
+    final ClassLoadingLocks.NameLock outer = locks.acquire("foo.Bar");
+    final ClassLoadingLocks.NameLock inner = locks.acquire("foo.Bar");
+
+    assertSame(outer, inner);
+
+    locks.release(inner);
+
+    assertEquals(1, locks.size());
+    assertTrue(outer.isHeldByCurrentThread());
+
+    locks.release(outer);
+
+    assertEquals(0, locks.size());
+  }
+
+  @Test
+  public void differentNamesTest() {
+    final ClassLoadingLocks locks = new ClassLoadingLocks();
+    final ClassLoadingLocks.NameLock one = locks.acquire("foo.Bar");
+    final ClassLoadingLocks.NameLock two = locks.acquire("foo.Baz");
+
+    assertNotSame(one, two);
+    assertEquals(2, locks.size());
+
+    locks.release(one);
+    locks.release(two);
+
+    assertEquals(0, locks.size());
+  }
+}
@@ -0,0 +1,82 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassPathIndexTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void directoryIndexTest() throws IOException {
+    final Path root = folder.newFolder().toPath();
+    Files.createDirectories(root.resolve("foo/bar"));
+    Files.createFile(root.resolve("foo/bar/Baz.class"));
+    Files.createFile(root.resolve("Root.class"));
+
+    final ClassPathIndex index = new ClassPathIndex(ClassLoaderOptions.DEFAULT);
+    index.add(root.toUri().toURL());
+
+    assertEquals(1, index.getOwners("foo.bar").length);
+    assertEquals(1, index.getOwners("").length);
+    assertEquals(0, index.getOwners("foo").length);
+    assertFalse(index.hasUnindexedURLs());
+
+    index.close();
+  }
+
+  @Test
+  public void duplicateUrlTest() throws IOException {
+    final Path root = folder.newFolder().toPath();
+    Files.createDirectories(root.resolve("foo"));
+    Files.createFile(root.resolve("foo/Bar.class"));
+
+    final ClassPathIndex index = new ClassPathIndex(ClassLoaderOptions.DEFAULT);
+    index.add(root.toUri().toURL());
+    index.add(root.toUri().toURL());
+
+    assertEquals(1, index.getOwners("foo").length);
+
+    index.close();
+  }
+
+  @Test
+  public void serviceIndexTest() throws IOException {
+    final Path first = folder.newFolder().toPath();
+    final Path second = folder.newFolder().toPath();
+    Files.createDirectories(first.resolve("META-INF/services/foo"));
+    Files.createFile(first.resolve("META-INF/services/foo.Bar"));
+    Files.createFile(first.resolve("META-INF/services/foo/Baz"));
+    Files.createDirectories(second.resolve("META-INF/services"));
+    Files.createFile(second.resolve("META-INF/services/foo.Bar"));
+
+    final ClassPathIndex index = new ClassPathIndex(ClassLoaderOptions.DEFAULT);
+    index.add(first.toUri().toURL());
+    index.add(second.toUri().toURL());
+    index.add(second.toUri().toURL());
+
+    assertEquals(2, index.getServiceFileOwners("META-INF/services/foo.Bar").length);
+    assertEquals(0, index.getServiceFileOwners("META-INF/services/foo/Baz").length);
+    assertEquals(0, index.getServiceFileOwners("META-INF/services/foo.Qux").length);
+
+    index.close();
+  }
+
+  @Test
+  public void unindexedUrlTest() throws IOException {
+    final ClassPathIndex index = new ClassPathIndex(ClassLoaderOptions.DEFAULT);
+    index.add(new URL("https://example.com/foo.jar"));
+
+    assertTrue(index.hasUnindexedURLs());
+
+    index.close();
+  }
+}
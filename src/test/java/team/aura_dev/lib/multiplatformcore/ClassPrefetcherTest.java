@@ -0,0 +1,137 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassPrefetcherTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recordTest() throws IOException {
+    final Path recordingFile = folder.getRoot().toPath().resolve("classes.lst");
+    final ClassPrefetcher prefetcher =
+        new ClassPrefetcher(new ClassPathIndex(ClassLoaderOptions.DEFAULT), recordingFile, 1024);
+
+    prefetcher.start(1);
+    prefetcher.record("foo.Bar");
+    prefetcher.record("foo.Baz");
+    prefetcher.record("foo.Bar");
+    prefetcher.finish();
+    // Ignored after finishing
+    prefetcher.record("foo.Qux");
+    prefetcher.finish();
+
+    assertEquals(
+        Arrays.asList("foo.Bar", "foo.Baz"),
+        Files.readAllLines(recordingFile, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void prefetchTest() throws IOException, InterruptedException {
+    final ClassPathIndex index = createIndex("foo/A.class", "foo/B.class");
+    // foo.Missing doesn't exist anymore
+    final Path recordingFile = createRecording("foo.A", "foo.Missing", "foo.B");
+    final ClassPrefetcher prefetcher = new ClassPrefetcher(index, recordingFile, 1024);
+
+    prefetcher.start(2);
+
+    assertTrue(prefetcher.awaitPrefetch(10, TimeUnit.SECONDS));
+
+    final ClassPrefetcher.Prefetched prefetched = prefetcher.take("foo.A");
+
+    assertNotNull(prefetched);
+    assertEquals(3, prefetched.getSize());
+    assertNotNull(prefetcher.take("foo.B"));
+    assertNull(prefetcher.take("foo.Missing"));
+    // Can only be taken once
+    assertNull(prefetcher.take("foo.A"));
+    assertEquals(2, prefetcher.getHits());
+
+    prefetcher.finish();
+    index.close();
+  }
+
+  @Test
+  public void memoryLimitTest() throws IOException, InterruptedException {
+    final ClassPathIndex index = createIndex("foo/A.class", "foo/B.class", "foo/C.class");
+    final Path recordingFile = createRecording("foo.A", "foo.B", "foo.C");
+    // Only room for two class files at a time
+    final ClassPrefetcher prefetcher = new ClassPrefetcher(index, recordingFile, 6);
+
+    prefetcher.start(1);
+
+    assertFalse(prefetcher.awaitPrefetch(200, TimeUnit.MILLISECONDS));
+    assertNotNull(prefetcher.take("foo.A"));
+    assertTrue(prefetcher.awaitPrefetch(10, TimeUnit.SECONDS));
+    assertNotNull(prefetcher.take("foo.B"));
+    assertNotNull(prefetcher.take("foo.C"));
+
+    prefetcher.finish();
+    index.close();
+  }
+
+  @Test
+  public void outdatedRecordingTest() throws IOException, InterruptedException {
+    final ClassPathIndex index = createIndex("foo/A.class");
+    final String[] names = new String[200];
+
+    for (int i = 0; i < names.length; ++i) {
+      names[i] = "foo.Missing" + i;
+    }
+
+    names[names.length - 1] = "foo.A";
+
+    final ClassPrefetcher prefetcher = new ClassPrefetcher(index, createRecording(names), 1024);
+
+    prefetcher.start(1);
+
+    assertTrue(prefetcher.awaitPrefetch(10, TimeUnit.SECONDS));
+    // Gave up before reaching it
+    assertNull(prefetcher.take("foo.A"));
+
+    prefetcher.finish();
+    index.close();
+  }
+
+  private ClassPathIndex createIndex(String... entries) throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new JarEntry(entry));
+        out.write(new byte[] {1, 2, 3});
+        out.closeEntry();
+      }
+    }
+
+    final ClassPathIndex index = new ClassPathIndex(ClassLoaderOptions.DEFAULT);
+    index.add(jar.toUri().toURL());
+
+    return index;
+  }
+
+  private Path createRecording(String... names) throws IOException {
+    final Path recordingFile = folder.newFile().toPath();
+    final List<String> lines = Arrays.asList(names);
+
+    Files.write(recordingFile, lines, StandardCharsets.UTF_8);
+
+    return recordingFile;
+  }
+}
@@ -1,12 +1,57 @@
 package team.aura_dev.lib.multiplatformcore;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static team.aura_dev.lib.multiplatformcore.TestJars.createJar;
+import static team.aura_dev.lib.multiplatformcore.TestJars.readFully;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import team.aura_dev.lib.multiplatformcore.benchmark.ClassLoadingBenchmark;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.example.ConfigurateTest;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.example.ExampleUtility;
 
 public class DependencyClassLoaderTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void constructorTests() {
     final DependencyClassLoader one =
@@ -22,4 +67,782 @@ public class DependencyClassLoaderTest {
     assertEquals("@group@.api.", two.excludedPackageNames.get(0));
     assertEquals("@group@.bootstrap.", two.excludedPackageNames.get(1));
   }
+
+  @Test
+  public void loadFromIndexedJarTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(jar.toUri().toURL());
+
+      final Class<?> loadedClass = classLoader.loadClass(ExampleUtility.class.getName());
+
+      assertNotSame(ExampleUtility.class, loadedClass);
+      assertSame(classLoader, loadedClass.getClassLoader());
+      assertEquals(
+          jar.toUri().toURL(), loadedClass.getProtectionDomain().getCodeSource().getLocation());
+      assertEquals(ExampleUtility.class.getPackage().getName(), loadedClass.getPackage().getName());
+    }
+  }
+
+  @Test
+  public void loadFromJarUrlTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(new URL("jar:" + jar.toUri().toURL() + "!/"));
+
+      assertSame(
+          classLoader, classLoader.loadClass(ExampleUtility.class.getName()).getClassLoader());
+    }
+  }
+
+  @Test
+  public void loadFromMappedJarTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final ClassLoaderOptions options = ClassLoaderOptions.builder().memoryMapped(true).build();
+
+    try (DependencyClassLoader classLoader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    new DependencyClassLoader(
+                        getClass().getClassLoader(), options, "@group@.dummy"))) {
+      classLoader.addURL(jar.toUri().toURL());
+
+      final Class<?> loadedClass = classLoader.loadClass(ExampleUtility.class.getName());
+
+      assertSame(classLoader, loadedClass.getClassLoader());
+      assertEquals(
+          jar.toUri().toURL(), loadedClass.getProtectionDomain().getCodeSource().getLocation());
+    }
+  }
+
+  @Test
+  public void persistentIndexTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final Path indexFile = folder.getRoot().toPath().resolve("classpath.idx");
+    final ClassLoaderOptions options = ClassLoaderOptions.builder().persistentIndex(true).build();
+
+    for (int run = 0; run < 2; ++run) {
+      try (DependencyClassLoader classLoader =
+          AccessController.doPrivileged(
+              (PrivilegedAction<DependencyClassLoader>)
+                  () ->
+                      new DependencyClassLoader(
+                          getClass().getClassLoader(), options, "@group@.dummy"))) {
+        // Only the second run finds an index file
+        assertEquals(run == 1, classLoader.loadPersistentIndex(indexFile));
+
+        classLoader.addURL(jar.toUri().toURL());
+
+        assertSame(
+            classLoader, classLoader.loadClass(ExampleUtility.class.getName()).getClassLoader());
+
+        classLoader.savePersistentIndex(indexFile);
+      }
+
+      assertTrue(Files.exists(indexFile));
+    }
+  }
+
+  @Test
+  public void classPrefetchTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final Path recordingFile = folder.getRoot().toPath().resolve("classes.lst");
+    final ClassLoaderOptions options = ClassLoaderOptions.builder().prefetch(true).build();
+
+    for (int run = 0; run < 2; ++run) {
+      try (DependencyClassLoader classLoader =
+          AccessController.doPrivileged(
+              (PrivilegedAction<DependencyClassLoader>)
+                  () ->
+                      new DependencyClassLoader(
+                          getClass().getClassLoader(), options, "@group@.dummy"))) {
+        classLoader.addURL(jar.toUri().toURL());
+        classLoader.startClassPrefetch(recordingFile);
+
+        // Prefetched or not, the result has to be the same
+        final Class<?> loadedClass = classLoader.loadClass(ExampleUtility.class.getName());
+
+        assertSame(classLoader, loadedClass.getClassLoader());
+        assertEquals(
+            jar.toUri().toURL(), loadedClass.getProtectionDomain().getCodeSource().getLocation());
+
+        classLoader.finishClassPrefetch();
+      }
+
+      assertTrue(Files.readAllLines(recordingFile).contains(ExampleUtility.class.getName()));
+    }
+  }
+
+  @Test
+  public void lazyOpeningTest() throws IOException, ClassNotFoundException, InterruptedException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final Path unusedJar = createJar(folder, ConfigurateTest.class);
+    final ClassLoaderOptions options =
+        ClassLoaderOptions.builder().lazyOpening(true).idleJarTimeout(50).build();
+
+    try (DependencyClassLoader classLoader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    new DependencyClassLoader(
+                        getClass().getClassLoader(), options, "@group@.dummy"))) {
+      classLoader.addURL(jar.toUri().toURL());
+      classLoader.addURL(unusedJar.toUri().toURL());
+
+      assertEquals(0, classLoader.getOpenJarCount());
+
+      assertSame(
+          classLoader, classLoader.loadClass(ExampleUtility.class.getName()).getClassLoader());
+      assertEquals(1, classLoader.getTotalJarOpenCount());
+
+      // Wait for the idle jar to be closed
+      for (int i = 0; (i < 100) && (classLoader.getOpenJarCount() > 0); ++i) {
+        Thread.sleep(20);
+      }
+
+      assertEquals(0, classLoader.getOpenJarCount());
+    }
+  }
+
+  @Test
+  public void reloadReleasesResourcesTest() throws Exception {
+    final ClassLoaderOptions[] backends = {
+      ClassLoaderOptions.DEFAULT,
+      ClassLoaderOptions.builder().memoryMapped(true).build(),
+      ClassLoaderOptions.builder().lazyOpening(true).build(),
+      ClassLoaderOptions.builder().lazyOpening(true).memoryMapped(true).build()
+    };
+
+    for (ClassLoaderOptions options : backends) {
+      assertReloadReleasesResources(options);
+    }
+  }
+
+  private void assertReloadReleasesResources(ClassLoaderOptions options) throws Exception {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final URL jarUrl = new URL("jar:" + jar.toUri().toURL() + "!/");
+    final String resourceName = ExampleUtility.class.getName().replace('.', '/') + ".class";
+    final List<WeakReference<DependencyClassLoader>> classLoaders = new ArrayList<>();
+    // Warm up, so lazily opened JDK files don't count
+    reloadOnce(options, jarUrl, resourceName);
+
+    final long openFilesBefore = getOpenFileDescriptorCount();
+
+    for (int i = 0; i < 50; ++i) {
+      classLoaders.add(new WeakReference<>(reloadOnce(options, jarUrl, resourceName)));
+    }
+
+    if (openFilesBefore >= 0) {
+      // A little slack for unrelated files the JVM might have opened in the meantime
+      assertTrue(options.toString(), getOpenFileDescriptorCount() <= openFilesBefore + 5);
+    }
+
+    // Mappings don't need a file descriptor, but they lock the file just the same
+    assertTrue(options.toString(), getMappingCount(jar) <= 0);
+
+    for (int i = 0; (i < 20) && classLoaders.stream().anyMatch(ref -> ref.get() != null); ++i) {
+      System.gc();
+      Thread.sleep(50);
+    }
+
+    assertTrue(options.toString(), classLoaders.stream().allMatch(ref -> ref.get() == null));
+  }
+
+  private DependencyClassLoader reloadOnce(
+      ClassLoaderOptions options, URL jarUrl, String resourceName)
+      throws IOException, ClassNotFoundException {
+    final DependencyClassLoader classLoader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    new DependencyClassLoader(
+                        getClass().getClassLoader(), options, "@group@.dummy"));
+
+    try {
+      classLoader.addURL(jarUrl);
+      classLoader.loadClass(ExampleUtility.class.getName());
+
+      try (InputStream in = classLoader.getResourceAsStream(resourceName)) {
+        assertNotNull(in);
+      }
+    } finally {
+      classLoader.close();
+    }
+
+    return classLoader;
+  }
+
+  /**
+   * Counts how often a file is currently memory mapped.
+   *
+   * @return The amount of mappings or {@code -1} if that can't be determined on this system
+   */
+  static long getMappingCount(Path file) throws IOException {
+    final Path maps = Paths.get("/proc/self/maps");
+
+    if (!BufferUnmapper.isSupported() || !Files.isReadable(maps)) return -1;
+
+    final String path = file.toRealPath().toString();
+
+    try (Stream<String> lines = Files.lines(maps)) {
+      return lines.filter(line -> line.endsWith(path)).count();
+    }
+  }
+
+  private static long getOpenFileDescriptorCount() {
+    final OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+
+    if (bean instanceof com.sun.management.UnixOperatingSystemMXBean) {
+      return ((com.sun.management.UnixOperatingSystemMXBean) bean).getOpenFileDescriptorCount();
+    }
+
+    // Not supported on this system
+    return -1;
+  }
+
+  @Test
+  public void sharedLibraryTest() throws IOException, ClassNotFoundException {
+    final String key = "sharedLibraryTest";
+    final URL jarUrl = createJar(folder, ExampleUtility.class).toUri().toURL();
+    final URLClassLoader shared =
+        SharedLibraries.acquire(
+            key,
+            () -> {
+              final DependencyClassLoader sharedLoader =
+                  AccessController.doPrivileged(
+                      (PrivilegedAction<DependencyClassLoader>)
+                          () ->
+                              DependencyClassLoader.createDependencyLayer(
+                                  getClass().getClassLoader(), ClassLoaderOptions.DEFAULT));
+              sharedLoader.addURL(jarUrl);
+
+              return sharedLoader;
+            });
+    SharedLibraries.acquire(
+        key,
+        () -> {
+          throw new AssertionError("Must not be created twice");
+        });
+
+    try (DependencyClassLoader first = createClassLoader();
+        DependencyClassLoader second = createClassLoader()) {
+      first.addSharedLibrary(key, shared);
+      second.addSharedLibrary(key, shared);
+
+      final Class<?> loadedClass = first.loadClass(ExampleUtility.class.getName());
+
+      assertSame(shared, loadedClass.getClassLoader());
+      assertSame(loadedClass, second.loadClass(ExampleUtility.class.getName()));
+      // Unrelated Classes still come from the parent
+      assertSame(Test.class, first.loadClass(Test.class.getName()));
+    }
+
+    // Released by both
+    assertFalse(SharedLibraries.isShared(key));
+  }
+
+  @Test
+  public void childFirstResourceTest() throws IOException {
+    // Also part of the test resources, so the parent has it too
+    final String name = "org/slf4j/slf4j-api-1.7.25.zip";
+    final byte[] content = "Not a zip file".getBytes(StandardCharsets.UTF_8);
+    final Path jar = createResourceJar(name, content);
+
+    for (boolean memoryMapped : new boolean[] {false, true}) {
+      final ClassLoaderOptions options =
+          ClassLoaderOptions.builder().memoryMapped(memoryMapped).build();
+
+      try (DependencyClassLoader classLoader =
+          AccessController.doPrivileged(
+              (PrivilegedAction<DependencyClassLoader>)
+                  () ->
+                      new DependencyClassLoader(
+                          getClass().getClassLoader(), options, "@group@.dummy"))) {
+        classLoader.addURL(jar.toUri().toURL());
+
+        final URL url = classLoader.getResource(name);
+        final List<URL> urls = Collections.list(classLoader.getResources(name));
+
+        assertEquals("jar:" + jar.toUri().toURL() + "!/" + name, url.toExternalForm());
+        assertEquals(2, urls.size());
+        assertEquals(url, urls.get(0));
+        assertEquals(getClass().getClassLoader().getResource(name), urls.get(1));
+
+        try (InputStream in = classLoader.getResourceAsStream(name)) {
+          assertArrayEquals(content, readFully(in));
+        }
+
+        try (InputStream in = url.openStream()) {
+          assertArrayEquals(content, readFully(in));
+        }
+
+        assertNull(classLoader.getResource("does/not/exist.txt"));
+        assertNull(classLoader.getResourceAsStream("does/not/exist.txt"));
+      }
+    }
+  }
+
+  @Test
+  public void largeResourceTest() throws IOException {
+    final String smallName = "largeResourceTest/small.bin";
+    final String largeName = "largeResourceTest/large.bin";
+    final byte[] small = new byte[(int) DependencyClassLoader.MAX_BUFFERED_RESOURCE_SIZE];
+    final byte[] large = new byte[(int) DependencyClassLoader.MAX_BUFFERED_RESOURCE_SIZE + 1];
+
+    new Random(0).nextBytes(small);
+    new Random(1).nextBytes(large);
+
+    final Path smallJar = createResourceJar(smallName, small);
+    final Path largeJar = createResourceJar(largeName, large);
+
+    for (ClassLoaderOptions options :
+        new ClassLoaderOptions[] {
+          ClassLoaderOptions.builder().build(),
+          ClassLoaderOptions.builder().memoryMapped(true).build(),
+          ClassLoaderOptions.builder().lazyOpening(true).build()
+        }) {
+      try (DependencyClassLoader classLoader =
+          AccessController.doPrivileged(
+              (PrivilegedAction<DependencyClassLoader>)
+                  () ->
+                      new DependencyClassLoader(
+                          getClass().getClassLoader(), options, "@group@.dummy"))) {
+        classLoader.addURL(smallJar.toUri().toURL());
+        classLoader.addURL(largeJar.toUri().toURL());
+
+        try (InputStream in = classLoader.getResourceAsStream(smallName)) {
+          // Read into memory right away
+          assertSame(ClassPathElement.class, in.getClass().getEnclosingClass());
+          assertArrayEquals(small, readFully(in));
+        }
+
+        try (InputStream in = classLoader.getResourceAsStream(largeName)) {
+          // Streamed from the element instead, not through a URL that opens the jar again
+          assertFalse(in.getClass().getName().startsWith("sun.net."));
+          assertArrayEquals(large, readFully(in));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void resourceCacheTest() throws IOException {
+    final String name = "resourceCacheTest/test.txt";
+    final byte[] content = "Test".getBytes(StandardCharsets.UTF_8);
+    final ClassLoaderOptions options = ClassLoaderOptions.builder().resourceCache(true).build();
+
+    try (DependencyClassLoader classLoader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    new DependencyClassLoader(
+                        getClass().getClassLoader(), options, "@group@.dummy"))) {
+      // Remembered as missing
+      assertNull(classLoader.getResource(name));
+      assertNull(classLoader.getResource(name));
+
+      classLoader.addURL(createResourceJar(name, content).toUri().toURL());
+
+      final URL url = classLoader.getResource(name);
+
+      assertNotNull(url);
+      assertEquals(url, classLoader.getResource(name));
+
+      try (InputStream in = classLoader.getResourceAsStream(name)) {
+        assertArrayEquals(content, readFully(in));
+      }
+    }
+  }
+
+  @Test
+  public void sealTest() throws IOException, ClassNotFoundException {
+    final String resourceName = "sealTest/test.txt";
+    final byte[] content = "Test".getBytes(StandardCharsets.UTF_8);
+    final Path first = createJar(folder, ExampleUtility.class);
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(first.toUri().toURL());
+      classLoader.addURL(
+          createJar(folder, ExampleUtility.class, ConfigurateTest.class).toUri().toURL());
+      classLoader.addURL(createResourceJar(resourceName, content).toUri().toURL());
+      classLoader.seal();
+
+      assertTrue(classLoader.isSealed());
+
+      try {
+        classLoader.addURL(createJar(folder, Test.class).toUri().toURL());
+
+        fail("Added a URL after sealing");
+      } catch (IllegalStateException e) {
+        // Expected
+      }
+
+      // The jar added first still wins
+      assertEquals(
+          first.toUri().toURL(),
+          classLoader
+              .loadClass(ExampleUtility.class.getName())
+              .getProtectionDomain()
+              .getCodeSource()
+              .getLocation());
+      assertSame(
+          classLoader, classLoader.loadClass(ConfigurateTest.class.getName()).getClassLoader());
+      // Not in any of our jars
+      assertSame(Test.class, classLoader.loadClass(Test.class.getName()));
+      assertSame(
+          DependencyClassLoader.class,
+          classLoader.loadClass(DependencyClassLoader.class.getName()));
+
+      try {
+        classLoader.loadClass(ExampleUtility.class.getPackage().getName() + ".DoesNotExist");
+
+        fail("Expected an exception to be thrown");
+      } catch (ClassNotFoundException e) {
+        // Expected
+      }
+
+      assertNotNull(classLoader.getResource(resourceName));
+      assertNull(classLoader.getResource("sealTest/missing.txt"));
+
+      try (InputStream in = classLoader.getResourceAsStream(resourceName)) {
+        assertArrayEquals(content, readFully(in));
+      }
+    }
+  }
+
+  @Test
+  public void unownedPackageGoesToParentTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(jar.toUri().toURL());
+
+      // Not part of any of the added jars
+      assertSame(Test.class, classLoader.loadClass(Test.class.getName()));
+    }
+  }
+
+  @Test
+  public void negativeLookupCacheTest() throws IOException, ClassNotFoundException {
+    final String name = ConfigurateTest.class.getName();
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(createJar(folder, ExampleUtility.class).toUri().toURL());
+
+      // Same package as a class in the jar, but not in the jar itself
+      assertSame(ConfigurateTest.class, classLoader.loadClass(name));
+      assertTrue(classLoader.negativeLookupCache.contains(name));
+
+      // Not owned by any jar at all, so the index answers it without the cache
+      classLoader.loadClass(Test.class.getName());
+      assertFalse(classLoader.negativeLookupCache.contains(Test.class.getName()));
+
+      // Adding a jar that contains the class must invalidate the cache
+      classLoader.addURL(createJar(folder, ConfigurateTest.class).toUri().toURL());
+
+      assertFalse(classLoader.negativeLookupCache.contains(name));
+      assertSame(classLoader, classLoader.loadClass(name).getClassLoader());
+    }
+  }
+
+  @Test
+  public void missingClassTest() throws IOException {
+    final String name = ExampleUtility.class.getPackage().getName() + ".DoesNotExist";
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(createJar(folder, ExampleUtility.class).toUri().toURL());
+
+      classLoader.loadClass(name);
+
+      fail("Expected an exception to be thrown");
+    } catch (ClassNotFoundException e) {
+      assertEquals(name, e.getMessage());
+      assertEquals(0, e.getSuppressed().length);
+    }
+  }
+
+  @Test
+  public void excludedClassFallbackTest() throws IOException, ClassNotFoundException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final ClassLoaderOptions options = ClassLoaderOptions.builder().metrics(true).build();
+
+    try (DependencyClassLoader classLoader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    new DependencyClassLoader(
+                        null,
+                        options,
+                        new String[] {ExampleUtility.class.getPackage().getName()}))) {
+      classLoader.addURL(jar.toUri().toURL());
+
+      // The package is excluded, but the parent doesn't have the class, so it still gets loaded
+      // from our jar
+      assertSame(
+          classLoader, classLoader.loadClass(ExampleUtility.class.getName()).getClassLoader());
+      assertEquals(1, classLoader.getMetrics().getExcludedPackageHits());
+      assertEquals(1, classLoader.getMetrics().getClassesDefined());
+      // But everything the parent has comes from the parent
+      assertSame(String.class, classLoader.loadClass(String.class.getName()));
+    }
+  }
+
+  @Test
+  public void parentFirstPackagesTest() throws IOException, ClassNotFoundException {
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(createJar(folder, ExampleUtility.class).toUri().toURL());
+      classLoader.addParentFirstPackages(
+          Collections.singleton(ExampleUtility.class.getPackage().getName()));
+
+      assertTrue(
+          classLoader
+              .getParentFirstPackageNames()
+              .contains(ExampleUtility.class.getPackage().getName() + "."));
+      assertTrue(classLoader.getParentFirstPackageNames().contains("java."));
+
+      final long before = classLoader.getShortCircuitedLookups();
+
+      // Present in our jar, but the parent has it too
+      assertSame(ExampleUtility.class, classLoader.loadClass(ExampleUtility.class.getName()));
+      assertEquals(before + 1, classLoader.getShortCircuitedLookups());
+    }
+  }
+
+  @Test
+  public void metricsTest() throws IOException, ClassNotFoundException, JMException {
+    final Path jar = createJar(folder, ExampleUtility.class);
+    final ClassLoaderOptions options = ClassLoaderOptions.builder().metrics(true).build();
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName objectName;
+
+    try (DependencyClassLoader classLoader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    new DependencyClassLoader(
+                        getClass().getClassLoader(), options, "@group@.dummy"))) {
+      classLoader.addURL(jar.toUri().toURL());
+
+      final ClassLoaderMetrics metrics = classLoader.getMetrics();
+
+      classLoader.loadClass(ExampleUtility.class.getName());
+      // Already loaded, so not counted again
+      classLoader.loadClass(ExampleUtility.class.getName());
+      // Always excluded
+      classLoader.loadClass(DependencyClassLoader.class.getName());
+
+      try {
+        classLoader.loadClass("does.not.Exist");
+        fail("Expected ClassNotFoundException");
+      } catch (ClassNotFoundException e) {
+        // Expected
+      }
+
+      assertNull(classLoader.getResource("does/not/exist.txt"));
+
+      assertEquals(1, metrics.getClassesDefined());
+      assertEquals(
+          Collections.singletonMap(jar.toUri().toURL().toString(), 1L),
+          metrics.getClassesDefinedPerJar());
+      assertEquals(1, metrics.getMisses());
+      assertEquals(1, metrics.getExcludedPackageHits());
+      assertEquals(1, metrics.getResourceLookups());
+      assertEquals(1, metrics.getDefineClassLatency().getCount());
+      assertEquals(1, metrics.getResourceLookupLatency().getCount());
+      assertTrue(metrics.getParentDelegations() >= 3);
+      assertTrue(metrics.getLoadClassLatency().getCount() >= 3);
+
+      objectName = classLoader.registerMetricsMBean("metricsTest");
+
+      assertEquals(1L, server.getAttribute(objectName, "ClassesDefined"));
+      assertEquals(1L, server.getAttribute(objectName, "Misses"));
+      assertEquals(
+          metrics.getDefineClassLatency().getCount(),
+          ((CompositeData) server.getAttribute(objectName, "DefineClassLatency")).get("count"));
+    }
+
+    assertFalse(server.isRegistered(objectName));
+  }
+
+  @Test
+  public void metricsDisabledTest() throws IOException, JMException {
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      assertNull(classLoader.getMetrics());
+      assertNull(classLoader.registerMetricsMBean("metricsDisabledTest"));
+    }
+  }
+
+  @Test
+  public void serviceProvidersTest() throws IOException {
+    final String name = "META-INF/services/" + CharSequence.class.getName();
+
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(
+          createResourceJar(
+                  name, "# Comment\n java.lang.String \n".getBytes(StandardCharsets.UTF_8))
+              .toUri()
+              .toURL());
+      classLoader.addURL(
+          createResourceJar(
+                  name,
+                  "java.lang.StringBuilder # Comment\njava.lang.String"
+                      .getBytes(StandardCharsets.UTF_8))
+              .toUri()
+              .toURL());
+
+      final List<String> providerNames =
+          classLoader.getServiceProviderNames(CharSequence.class.getName());
+
+      assertEquals(2, Collections.list(classLoader.getResources(name)).size());
+      assertEquals(Arrays.asList("java.lang.String", "java.lang.StringBuilder"), providerNames);
+      assertSame(providerNames, classLoader.getServiceProviderNames(CharSequence.class.getName()));
+      assertEquals(
+          Arrays.asList(String.class, StringBuilder.class),
+          classLoader.getServiceProviders(CharSequence.class));
+      assertEquals(Collections.emptyList(), classLoader.getServiceProviders(Runnable.class));
+
+      // Clears the cache
+      classLoader.addURL(
+          createResourceJar(name, "java.lang.StringBuffer".getBytes(StandardCharsets.UTF_8))
+              .toUri()
+              .toURL());
+
+      assertEquals(
+          Arrays.asList(String.class, StringBuilder.class, StringBuffer.class),
+          classLoader.getServiceProviders(CharSequence.class));
+    }
+  }
+
+  @Test
+  public void closedServiceProvidersTest() throws IOException {
+    final DependencyClassLoader classLoader = createClassLoader();
+
+    classLoader.addURL(
+        createResourceJar(
+                "META-INF/services/" + CharSequence.class.getName(),
+                "java.lang.String".getBytes(StandardCharsets.UTF_8))
+            .toUri()
+            .toURL());
+    classLoader.addURL(
+        createResourceJar(
+                "META-INF/services/" + Runnable.class.getName(),
+                "java.lang.Thread".getBytes(StandardCharsets.UTF_8))
+            .toUri()
+            .toURL());
+
+    assertEquals(
+        Collections.singletonList(String.class),
+        classLoader.getServiceProviders(CharSequence.class));
+
+    classLoader.close();
+
+    // Neither the cached nor the indexed service files point to the closed jars anymore
+    assertEquals(Collections.emptyList(), classLoader.getServiceProviders(CharSequence.class));
+    assertEquals(Collections.emptyList(), classLoader.getServiceProviders(Runnable.class));
+  }
+
+  @Test
+  public void invalidServiceProvidersTest() throws IOException {
+    try (DependencyClassLoader classLoader = createClassLoader()) {
+      classLoader.addURL(
+          createResourceJar(
+                  "META-INF/services/" + Runnable.class.getName(),
+                  "java.lang.Object".getBytes(StandardCharsets.UTF_8))
+              .toUri()
+              .toURL());
+      classLoader.addURL(
+          createResourceJar(
+                  "META-INF/services/invalidServiceProvidersTest.Service",
+                  "foo.Bar\nfoo bar".getBytes(StandardCharsets.UTF_8))
+              .toUri()
+              .toURL());
+
+      try {
+        classLoader.getServiceProviders(Runnable.class);
+
+        fail("Accepted a provider that isn't a subtype");
+      } catch (ServiceConfigurationError e) {
+        assertTrue(e.getMessage(), e.getMessage().endsWith("not a subtype"));
+      }
+
+      try {
+        classLoader.getServiceProviderNames("invalidServiceProvidersTest.Service");
+
+        fail("Accepted an illegal provider name");
+      } catch (ServiceConfigurationError e) {
+        assertTrue(
+            e.getMessage(), e.getMessage().endsWith(":2: Illegal provider-class name: foo bar"));
+      }
+    }
+  }
+
+  @Test(timeout = 60_000)
+  public void parallelLoadStressTest() throws Exception {
+    final int threads = 16;
+    final URL jar = Test.class.getProtectionDomain().getCodeSource().getLocation();
+    final List<String> classNames = ClassLoadingBenchmark.listClassNames(jar);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    try {
+      for (int round = 0; round < 10; ++round) {
+        try (DependencyClassLoader classLoader = createClassLoader()) {
+          classLoader.addURL(jar);
+
+          final CyclicBarrier barrier = new CyclicBarrier(threads);
+          final List<Future<List<Class<?>>>> futures = new ArrayList<>();
+
+          for (int thread = 0; thread < threads; ++thread) {
+            futures.add(
+                executor.submit(
+                    () -> {
+                      final List<Class<?>> loaded = new ArrayList<>();
+                      barrier.await();
+
+                      for (String className : classNames) {
+                        loaded.add(Class.forName(className, false, classLoader));
+                      }
+
+                      return loaded;
+                    }));
+          }
+
+          final List<Class<?>> expected = futures.get(0).get();
+
+          for (Future<List<Class<?>>> future : futures) {
+            final List<Class<?>> loaded = future.get();
+
+            for (int i = 0; i < expected.size(); ++i) {
+              assertSame(expected.get(i), loaded.get(i));
+              assertSame(classLoader, loaded.get(i).getClassLoader());
+            }
+          }
+
+          assertEquals(0, classLoader.classLoadingLocks.size());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private DependencyClassLoader createClassLoader() {
+    return AccessController.doPrivileged(
+        (PrivilegedAction<DependencyClassLoader>)
+            () -> new DependencyClassLoader(getClass().getClassLoader(), "@group@.dummy"));
+  }
+
+  private Path createResourceJar(String name, byte[] content) throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new JarEntry(name));
+      out.write(content);
+      out.closeEntry();
+    }
+
+    return jar;
+  }
 }
@@ -0,0 +1,48 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Locale;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileHashesTest {
+  // SHA-1 of "Test"
+  private static final String TEST_SHA1 = "640ab2bae07bedc4c163f679a746f7ab7fb5d1fa";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void sha1Test() throws IOException {
+    final Path file = folder.newFile().toPath();
+
+    Files.write(file, "Test".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(TEST_SHA1, FileHashes.sha1(file));
+    assertEquals(TEST_SHA1, FileHashes.sha1(file.getParent().resolve(".").resolve(file)));
+  }
+
+  @Test
+  public void putSha1Test() throws IOException {
+    final Path file = folder.newFile().toPath();
+    final String pinned = "0000000000000000000000000000000000000000";
+
+    Files.write(file, "Test".getBytes(StandardCharsets.UTF_8));
+    FileHashes.putSha1(file, pinned.toUpperCase(Locale.ROOT));
+
+    // Not hashed again
+    assertEquals(pinned, FileHashes.sha1(file));
+
+    Files.setLastModifiedTime(
+        file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+
+    // Hashed again once it changed
+    assertEquals(TEST_SHA1, FileHashes.sha1(file));
+  }
+}
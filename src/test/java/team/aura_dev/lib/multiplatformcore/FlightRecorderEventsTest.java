@@ -0,0 +1,133 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlightRecorderEventsTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void disabledEventTest() {
+    final FlightRecorderEvents.Event event = FlightRecorderEvents.Event.NONE;
+
+    // Does nothing, not even checking the field names
+    assertSame(event, event.set("doesNotExist", 42));
+    assertFalse(event.shouldCommit());
+    event.commit();
+  }
+
+  @Test
+  public void typeNamesTest() {
+    assertEquals(5, FlightRecorderEvents.getTypes().size());
+
+    for (FlightRecorderEvents.Type type : FlightRecorderEvents.getTypes()) {
+      assertTrue(
+          type.getName().startsWith(FlightRecorderEvents.class.getPackage().getName() + "."));
+    }
+  }
+
+  @Test
+  public void recordingTest() throws Exception {
+    assumeTrue(FlightRecorderEvents.isSupported());
+
+    // The test targets Java 8, so the Flight Recorder API has to be used through reflection
+    final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+    final Object recording = recordingClass.getConstructor().newInstance();
+    final Path file = folder.getRoot().toPath().resolve("recording.jfr");
+    final Path jar = folder.getRoot().toPath().resolve("signed.jar");
+
+    try (InputStream in = getClass().getResourceAsStream("signed.jar")) {
+      Files.copy(in, jar, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    try {
+      recordingClass.getMethod("start").invoke(recording);
+
+      assertTrue(FlightRecorderEvents.PLUGIN_INITIALIZATION.isEnabled());
+
+      FlightRecorderEvents.PLUGIN_INITIALIZATION
+          .begin()
+          .set("pluginName", "test.plugin")
+          .set("pluginClass", "test.plugin.Plugin")
+          .set("success", true)
+          .commit();
+      FlightRecorderEvents.SLOW_CLASS_LOAD
+          .begin()
+          .set("pluginName", "test.plugin")
+          .set("className", "test.Slow")
+          .set("loadDuration", FlightRecorderEvents.SLOW_CLASS_LOAD_THRESHOLD_NANOS)
+          .commit();
+
+      // Verified the first time, then taken from the cache
+      final SignatureCache signatureCache = new SignatureCache();
+      signatureCache.getSigners(jar);
+      signatureCache.getSigners(jar);
+
+      recordingClass.getMethod("stop").invoke(recording);
+
+      assertFalse(FlightRecorderEvents.PLUGIN_INITIALIZATION.isEnabled());
+      assertSame(FlightRecorderEvents.Event.NONE, FlightRecorderEvents.SLOW_CLASS_LOAD.begin());
+
+      recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+    } finally {
+      recordingClass.getMethod("close").invoke(recording);
+    }
+
+    final List<String> events = new ArrayList<>();
+
+    for (Object event :
+        (List<?>)
+            Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class)
+                .invoke(null, file)) {
+      final Object eventType = event.getClass().getMethod("getEventType").invoke(event);
+      final String name = (String) eventType.getClass().getMethod("getName").invoke(eventType);
+
+      if (name.equals(FlightRecorderEvents.ARTIFACT_VERIFICATION.getName())) {
+        events.add(
+            name
+                + ' '
+                + getValue(event, "jar")
+                + " cached="
+                + getValue(event, "cached")
+                + " verified="
+                + getValue(event, "verified"));
+      } else if (name.startsWith(FlightRecorderEvents.class.getPackage().getName())) {
+        events.add(name + ' ' + getValue(event, "pluginName"));
+      }
+    }
+
+    final List<String> expected = new ArrayList<>();
+    expected.add(FlightRecorderEvents.PLUGIN_INITIALIZATION.getName() + " test.plugin");
+    expected.add(FlightRecorderEvents.SLOW_CLASS_LOAD.getName() + " test.plugin");
+    expected.add(
+        FlightRecorderEvents.ARTIFACT_VERIFICATION.getName()
+            + ' '
+            + jar
+            + " cached=false verified=true");
+    expected.add(
+        FlightRecorderEvents.ARTIFACT_VERIFICATION.getName()
+            + ' '
+            + jar
+            + " cached=true verified=true");
+
+    assertEquals(expected, events);
+  }
+
+  private static Object getValue(Object event, String field) throws ReflectiveOperationException {
+    return event.getClass().getMethod("getValue", String.class).invoke(event, field);
+  }
+}
@@ -0,0 +1,59 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+  @Test
+  public void getBucketTest() {
+    assertEquals(0, LatencyHistogram.getBucket(0));
+    assertEquals(0, LatencyHistogram.getBucket(1));
+    assertEquals(1, LatencyHistogram.getBucket(2));
+    assertEquals(2, LatencyHistogram.getBucket(3));
+    assertEquals(2, LatencyHistogram.getBucket(4));
+    assertEquals(10, LatencyHistogram.getBucket(1000));
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void recordTest() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMeanNanos());
+    assertEquals(0, histogram.getMedianNanos());
+
+    for (int i = 0; i < 98; ++i) {
+      histogram.record(100);
+    }
+
+    histogram.record(1000);
+    histogram.record(5000);
+    // Clamped to 0
+    histogram.record(-1);
+
+    assertEquals(101, histogram.getCount());
+    assertEquals((98 * 100) + 1000 + 5000, histogram.getTotalNanos());
+    assertEquals(5000, histogram.getMaxNanos());
+    assertEquals(histogram.getTotalNanos() / 101, histogram.getMeanNanos());
+    assertEquals(128, histogram.getMedianNanos());
+    assertEquals(1024, histogram.getP99Nanos());
+    // Never above the maximum
+    assertEquals(5000, histogram.getPercentileNanos(1.0));
+
+    final long[] expected = new long[LatencyHistogram.BUCKETS];
+    expected[0] = 1;
+    expected[7] = 98;
+    expected[10] = 1;
+    expected[13] = 1;
+
+    assertArrayEquals(expected, histogram.getBucketCounts());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidPercentileTest() {
+    new LatencyHistogram().getPercentileNanos(1.5);
+  }
+}
@@ -0,0 +1,126 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LazyJarClassPathElementTest {
+  private static final byte[] CONTENT = {1, 2, 3};
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final DecompressionPool pool = new DecompressionPool(4);
+
+  @Test
+  public void lazyOpenTest() throws IOException {
+    testLazyOpen(ClassLoaderOptions.DEFAULT);
+  }
+
+  @Test
+  public void lazyOpenMappedTest() throws IOException {
+    testLazyOpen(ClassLoaderOptions.builder().memoryMapped(true).build());
+  }
+
+  @Test
+  public void closeIfIdleTest() throws IOException {
+    final Path jar = createJar();
+
+    try (LazyJarClassPathElement element = createElement(jar, ClassLoaderOptions.DEFAULT)) {
+      read(element);
+
+      // Not idle for long enough
+      assertFalse(element.closeIfIdle(System.nanoTime(), TimeUnit.HOURS.toNanos(1)));
+      assertTrue(element.isOpen());
+
+      assertTrue(element.closeIfIdle(System.nanoTime(), 0));
+      assertFalse(element.isOpen());
+
+      // Reopened transparently
+      read(element);
+
+      assertTrue(element.isOpen());
+      assertEquals(2, element.getOpenCount());
+    }
+  }
+
+  @Test
+  public void openEntryStreamTest() throws IOException {
+    try (LazyJarClassPathElement element = createElement(createJar(), ClassLoaderOptions.DEFAULT)) {
+      final InputStream in = element.openEntryStream("foo/Bar.class");
+
+      // In use by the stream, so it isn't idle
+      assertFalse(element.closeIfIdle(System.nanoTime(), 0));
+      assertEquals(CONTENT.length, in.read(new byte[CONTENT.length * 2]));
+
+      in.close();
+
+      assertTrue(element.closeIfIdle(System.nanoTime(), 0));
+      assertNull(element.openEntryStream("foo/Missing.class"));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void closedTest() throws IOException {
+    final LazyJarClassPathElement element = createElement(createJar(), ClassLoaderOptions.DEFAULT);
+
+    element.close();
+    element.readClassFile("foo/Bar.class");
+  }
+
+  private void testLazyOpen(ClassLoaderOptions options) throws IOException {
+    try (LazyJarClassPathElement element = createElement(createJar(), options)) {
+      assertTrue(element.getPackageNames().contains("foo"));
+      // Not contained, so no need to open the jar
+      assertNull(element.readClassFile("foo/Missing.class"));
+      assertFalse(element.isOpen());
+      assertEquals(0, element.getOpenCount());
+
+      read(element);
+
+      assertTrue(element.isOpen());
+      assertEquals(1, element.getOpenCount());
+    }
+  }
+
+  private LazyJarClassPathElement createElement(Path jar, ClassLoaderOptions options)
+      throws IOException {
+    return new LazyJarClassPathElement(
+        jar.toUri().toURL(), jar, JarIndex.read(jar), options, pool, null);
+  }
+
+  private static void read(LazyJarClassPathElement element) throws IOException {
+    final ClassPathElement.ClassFile classFile = element.readClassFile("foo/Bar.class");
+    final ByteBuffer buffer = classFile.getBuffer();
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    classFile.release();
+
+    assertArrayEquals(CONTENT, bytes);
+  }
+
+  private Path createJar() throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new JarEntry("foo/Bar.class"));
+      out.write(CONTENT);
+      out.closeEntry();
+    }
+
+    return jar;
+  }
+}
@@ -0,0 +1,268 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedJarClassPathElementTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final DecompressionPool pool = new DecompressionPool(4);
+
+  @Test
+  public void readTest() throws IOException {
+    final byte[] stored = randomBytes(1000);
+    final byte[] deflated =
+        new String(new char[500]).replace('\0', 'x').getBytes(StandardCharsets.UTF_8);
+    final Path jar = folder.newFile().toPath();
+    final Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue("Implementation-Title", "Test");
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+      writeEntry(out, "foo/Stored.class", stored, ZipEntry.STORED);
+      writeEntry(out, "foo/bar/Deflated.class", deflated, ZipEntry.DEFLATED);
+    }
+
+    final MappedJarClassPathElement element =
+        MappedJarClassPathElement.open(jar.toUri().toURL(), jar, pool);
+
+    assertNotNull(element);
+    assertTrue(element.getPackageNames().contains("foo"));
+    assertTrue(element.getPackageNames().contains("foo.bar"));
+    assertEquals(
+        "Test", element.getManifest().getMainAttributes().getValue("Implementation-Title"));
+
+    final ClassPathElement.ClassFile storedFile = element.readClassFile("foo/Stored.class");
+    final ClassPathElement.ClassFile deflatedFile = element.readClassFile("foo/bar/Deflated.class");
+
+    assertTrue(storedFile.getBuffer().isDirect());
+    assertArrayEquals(stored, toArray(storedFile.getBuffer()));
+    assertArrayEquals(deflated, toArray(deflatedFile.getBuffer()));
+    assertNull(element.readClassFile("foo/Missing.class"));
+
+    storedFile.release();
+    deflatedFile.release();
+  }
+
+  @Test
+  public void closeReleasesMappingTest() throws IOException {
+    final byte[] stored = randomBytes(1000);
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      writeEntry(out, "foo/Stored.class", stored, ZipEntry.STORED);
+    }
+
+    final MappedJarClassPathElement element =
+        MappedJarClassPathElement.open(jar.toUri().toURL(), jar, pool);
+
+    assertNotNull(element);
+
+    final ClassPathElement.ClassFile storedFile = element.readClassFile("foo/Stored.class");
+
+    element.close();
+
+    // The slice still points into the mapping, so it must stay
+    assertTrue(element.isOpen());
+    assertNotEquals(0, DependencyClassLoaderTest.getMappingCount(jar));
+    assertArrayEquals(stored, toArray(storedFile.getBuffer()));
+
+    storedFile.release();
+
+    assertFalse(element.isOpen());
+    assertTrue(DependencyClassLoaderTest.getMappingCount(jar) <= 0);
+
+    try {
+      element.readClassFile("foo/Stored.class");
+
+      fail("Read from a closed element");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void openEntryStreamTest() throws IOException {
+    final byte[] stored = randomBytes(100_000);
+    final byte[] deflated =
+        new String(new char[100_000]).replace('\0', 'x').getBytes(StandardCharsets.UTF_8);
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      writeEntry(out, "foo/stored.bin", stored, ZipEntry.STORED);
+      writeEntry(out, "foo/deflated.bin", deflated, ZipEntry.DEFLATED);
+    }
+
+    final MappedJarClassPathElement element =
+        MappedJarClassPathElement.open(jar.toUri().toURL(), jar, pool);
+
+    assertNotNull(element);
+    assertNull(element.openEntryStream("foo/missing.bin"));
+
+    try (InputStream in = element.openEntryStream("foo/stored.bin")) {
+      assertArrayEquals(stored, readFully(in));
+    }
+
+    final InputStream deflatedStream = element.openEntryStream("foo/deflated.bin");
+
+    element.close();
+
+    // The stream still reads from the mapping, so it must stay
+    assertTrue(element.isOpen());
+    assertArrayEquals(deflated, readFully(deflatedStream));
+
+    deflatedStream.close();
+
+    assertFalse(element.isOpen());
+  }
+
+  @Test
+  public void signedJarTest() throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      writeEntry(out, "META-INF/SIGNER.SF", new byte[10], ZipEntry.DEFLATED);
+      writeEntry(out, "foo/Bar.class", new byte[10], ZipEntry.DEFLATED);
+    }
+
+    // Can't verify signatures, so it has to be read through a JarFile
+    assertNull(MappedJarClassPathElement.open(jar.toUri().toURL(), jar, pool));
+  }
+
+  @Test(expected = IOException.class)
+  public void invalidJarTest() throws IOException {
+    final Path jar = folder.newFile().toPath();
+    Files.write(jar, randomBytes(100));
+
+    MappedJarClassPathElement.open(jar.toUri().toURL(), jar, pool);
+  }
+
+  @Test
+  public void malformedJarTest() throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      writeEntry(out, "foo/Bar.class", new byte[10], ZipEntry.DEFLATED);
+    }
+
+    final byte[] bytes = Files.readAllBytes(jar);
+    final int centralDirectory = findCentralDirectoryHeader(bytes);
+
+    // A name longer than the whole central directory
+    assertMalformed(bytes, centralDirectory + 28, (short) 0xFFFF);
+    // Data past the end of the file
+    assertMalformed(bytes, centralDirectory + 42, bytes.length);
+    // A compressed size reaching into the central directory
+    assertMalformed(bytes, centralDirectory + 20, centralDirectory);
+  }
+
+  private void assertMalformed(byte[] bytes, int offset, Object value) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+
+    if (value instanceof Short) {
+      buffer.putShort(offset, (Short) value);
+    } else {
+      buffer.putInt(offset, (Integer) value);
+    }
+
+    try {
+      JarIndex.read(buffer);
+
+      fail("Read a malformed jar");
+    } catch (ZipException e) {
+      // Expected, so the jar can be left to JarFile
+    }
+
+    final Path jar = folder.newFile().toPath();
+    Files.write(jar, buffer.array());
+
+    try {
+      MappedJarClassPathElement.open(jar.toUri().toURL(), jar, pool);
+
+      fail("Opened a malformed jar");
+    } catch (ZipException e) {
+      // Expected
+    }
+  }
+
+  private static int findCentralDirectoryHeader(byte[] bytes) {
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+    for (int offset = bytes.length - 4; offset >= 0; --offset) {
+      if (buffer.getInt(offset) == 0x02014b50) return offset;
+    }
+
+    throw new AssertionError("No central directory");
+  }
+
+  private static void writeEntry(JarOutputStream out, String name, byte[] content, int method)
+      throws IOException {
+    final JarEntry entry = new JarEntry(name);
+    entry.setMethod(method);
+
+    if (method == ZipEntry.STORED) {
+      final CRC32 crc = new CRC32();
+      crc.update(content);
+
+      entry.setSize(content.length);
+      entry.setCompressedSize(content.length);
+      entry.setCrc(crc.getValue());
+    }
+
+    out.putNextEntry(entry);
+    out.write(content);
+    out.closeEntry();
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+
+    return out.toByteArray();
+  }
+
+  private static byte[] randomBytes(int length) {
+    final byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+
+    return bytes;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+
+    return bytes;
+  }
+}
@@ -0,0 +1,58 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NegativeLookupCacheTest {
+  @Test
+  public void addTest() {
+    final NegativeLookupCache cache = new NegativeLookupCache(10);
+
+    cache.add("foo.Bar", cache.getGeneration());
+
+    assertTrue(cache.contains("foo.Bar"));
+    assertFalse(cache.contains("foo.Baz"));
+  }
+
+  @Test
+  public void invalidateTest() {
+    final NegativeLookupCache cache = new NegativeLookupCache(10);
+
+    cache.add("foo.Bar", cache.getGeneration());
+    cache.invalidate();
+
+    assertFalse(cache.contains("foo.Bar"));
+  }
+
+  @Test
+  public void staleStampTest() {
+    final NegativeLookupCache cache = new NegativeLookupCache(10);
+    final long stamp = cache.getGeneration();
+
+    // A URL got added while the lookup was running
+    cache.invalidate();
+    cache.add("foo.Bar", stamp);
+
+    assertFalse(cache.contains("foo.Bar"));
+  }
+
+  @Test
+  public void boundedTest() {
+    final NegativeLookupCache cache = new NegativeLookupCache(10);
+
+    for (int i = 0; i < 100; ++i) {
+      cache.add("foo.Bar" + i, cache.getGeneration());
+    }
+
+    assertTrue(cache.size() <= 10);
+    assertTrue(cache.contains("foo.Bar99"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidSizeTest() {
+    assertEquals(0, new NegativeLookupCache(0).size());
+  }
+}
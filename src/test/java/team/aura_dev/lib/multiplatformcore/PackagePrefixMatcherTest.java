@@ -0,0 +1,73 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class PackagePrefixMatcherTest {
+  @Test
+  public void matchTest() {
+    final PackagePrefixMatcher matcher =
+        new PackagePrefixMatcher(Arrays.asList("foo.api.", "foo.bootstrap.", "bar."));
+
+    assertTrue(matcher.matches("foo.api.Api"));
+    assertTrue(matcher.matches("foo.api.sub.Api"));
+    assertTrue(matcher.matches("foo.bootstrap.Bootstrap"));
+    assertTrue(matcher.matches("bar.Bar"));
+
+    assertFalse(matcher.matches("foo.Plugin"));
+    assertFalse(matcher.matches("foo.apiary.Bee"));
+    assertFalse(matcher.matches("foo.api"));
+    assertFalse(matcher.matches("baz.bar.Bar"));
+    assertFalse(matcher.matches(""));
+  }
+
+  @Test
+  public void matchPathTest() {
+    final PackagePrefixMatcher matcher =
+        new PackagePrefixMatcher(Arrays.asList("foo.api.", "bar."));
+
+    assertTrue(matcher.matchesPath("foo/api/api.properties"));
+    assertTrue(matcher.matchesPath("foo/api/sub/Api.class"));
+    assertTrue(matcher.matchesPath("bar/bar.txt"));
+
+    assertFalse(matcher.matchesPath("foo/plugin.yml"));
+    assertFalse(matcher.matchesPath("foo/apiary/bee.txt"));
+    assertFalse(matcher.matchesPath("foo/api"));
+    assertFalse(matcher.matchesPath("bar.txt"));
+    assertFalse(matcher.matchesPath("foo.api.txt"));
+    assertFalse(matcher.matchesPath(""));
+  }
+
+  @Test
+  public void manyPrefixesTest() {
+    final String[] prefixes = new String[100];
+
+    for (int i = 0; i < prefixes.length; ++i) {
+      prefixes[i] = "foo.api" + i + ".";
+    }
+
+    final PackagePrefixMatcher matcher = new PackagePrefixMatcher(Arrays.asList(prefixes));
+
+    for (int i = 0; i < prefixes.length; ++i) {
+      assertTrue(matcher.matches("foo.api" + i + ".Api"));
+    }
+
+    assertFalse(matcher.matches("foo.api100.Api"));
+  }
+
+  @Test
+  public void emptyTest() {
+    final PackagePrefixMatcher matcher = new PackagePrefixMatcher(Collections.emptyList());
+
+    assertFalse(matcher.matches("foo.Bar"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidPrefixTest() {
+    new PackagePrefixMatcher(Collections.singletonList("foo"));
+  }
+}
@@ -0,0 +1,60 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class PerfectHashMapTest {
+  @Test
+  public void emptyTest() {
+    final PerfectHashMap<Integer> map = new PerfectHashMap<>(Collections.emptyMap());
+
+    assertEquals(0, map.size());
+    assertNull(map.get("foo"));
+  }
+
+  @Test
+  public void lookupTest() {
+    final Map<String, Integer> entries = new HashMap<>();
+
+    for (int i = 0; i < 10000; ++i) {
+      entries.put("foo/bar/Class" + i + ".class", i);
+    }
+
+    final PerfectHashMap<Integer> map = new PerfectHashMap<>(entries);
+
+    assertEquals(entries.size(), map.size());
+
+    for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+
+    assertNull(map.get("foo/bar/Class10000.class"));
+    assertFalse(map.containsKey(""));
+    assertTrue(map.containsKey("foo/bar/Class0.class"));
+  }
+
+  @Test
+  public void sameHashCodeTest() {
+    final Map<String, Integer> entries = new HashMap<>();
+    // All of these have the same hash code
+    entries.put("AaAa", 1);
+    entries.put("AaBB", 2);
+    entries.put("BBAa", 3);
+    entries.put("BBBB", 4);
+
+    final PerfectHashMap<Integer> map = new PerfectHashMap<>(entries);
+
+    assertEquals(Integer.valueOf(1), map.get("AaAa"));
+    assertEquals(Integer.valueOf(2), map.get("AaBB"));
+    assertEquals(Integer.valueOf(3), map.get("BBAa"));
+    assertEquals(Integer.valueOf(4), map.get("BBBB"));
+    assertNull(map.get("CCCC"));
+  }
+}
@@ -0,0 +1,106 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersistentIndexTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTripTest() throws IOException {
+    final Path jar = createJar("foo/Bar.class", "foo/baz/Qux.class");
+    final Path indexFile = folder.getRoot().toPath().resolve("classpath.idx");
+
+    final PersistentIndex index = new PersistentIndex();
+    final JarIndex jarIndex = index.getIndex(jar);
+
+    assertNotNull(jarIndex);
+    index.save(indexFile);
+
+    final PersistentIndex loadedIndex = new PersistentIndex();
+
+    assertTrue(loadedIndex.load(indexFile));
+
+    final JarIndex loadedJarIndex = loadedIndex.getIndex(jar);
+
+    assertEquals(jarIndex.getEntries().keySet(), loadedJarIndex.getEntries().keySet());
+    assertEquals(jarIndex.getPackageNames(), loadedJarIndex.getPackageNames());
+    assertEquals(
+        jarIndex.getEntry("foo/Bar.class").getLocalHeaderOffset(),
+        loadedJarIndex.getEntry("foo/Bar.class").getLocalHeaderOffset());
+    // Cached and unchanged
+    assertSame(loadedJarIndex, loadedIndex.getIndex(jar));
+  }
+
+  @Test
+  public void staleIndexTest() throws IOException {
+    final Path jar = createJar("foo/Bar.class");
+    final Path indexFile = folder.getRoot().toPath().resolve("classpath.idx");
+
+    final PersistentIndex index = new PersistentIndex();
+    index.getIndex(jar);
+    index.save(indexFile);
+
+    // Rewrite the jar with different contents but the same modification time
+    final FileTime lastModified = Files.getLastModifiedTime(jar);
+    Files.delete(jar);
+    Files.copy(createJar("other/Thing.class", "other/More.class"), jar);
+    Files.setLastModifiedTime(jar, lastModified);
+
+    final PersistentIndex loadedIndex = new PersistentIndex();
+    assertTrue(loadedIndex.load(indexFile));
+
+    final JarIndex jarIndex = loadedIndex.getIndex(jar);
+
+    assertTrue(jarIndex.getPackageNames().contains("other"));
+    assertFalse(jarIndex.getPackageNames().contains("foo"));
+
+    loadedIndex.save(indexFile);
+
+    final PersistentIndex reloadedIndex = new PersistentIndex();
+    assertTrue(reloadedIndex.load(indexFile));
+    assertNotSame(jarIndex, reloadedIndex.getIndex(jar));
+    assertTrue(reloadedIndex.getIndex(jar).getPackageNames().contains("other"));
+  }
+
+  @Test
+  public void corruptIndexTest() throws IOException {
+    final Path indexFile = folder.newFile().toPath();
+    Files.write(indexFile, new byte[] {'M', 'P', 'C', 'I', 0, 0, 0, 1, 0, 0, 0, 5});
+
+    final PersistentIndex index = new PersistentIndex();
+
+    assertFalse(index.load(indexFile));
+    assertFalse(index.load(folder.getRoot().toPath().resolve("missing.idx")));
+    // Still fully functional
+    assertNotNull(index.getIndex(createJar("foo/Bar.class")));
+  }
+
+  private Path createJar(String... entries) throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new JarEntry(entry));
+        out.write(new byte[] {1, 2, 3});
+        out.closeEntry();
+      }
+    }
+
+    return jar;
+  }
+}
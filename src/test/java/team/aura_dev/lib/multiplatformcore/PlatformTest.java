@@ -0,0 +1,37 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.Test;
+
+public class PlatformTest {
+  @Test
+  public void detectTest() {
+    // No platform is on the test classpath
+    assertEquals(
+        Collections.singleton(Platform.JAVA), Platform.detect(getClass().getClassLoader()));
+  }
+
+  @Test
+  public void isPresentTest() {
+    assertTrue(Platform.JAVA.isPresent(getClass().getClassLoader()));
+    assertFalse(Platform.BUKKIT.isPresent(getClass().getClassLoader()));
+  }
+
+  @Test
+  public void getPackageNamesTest() {
+    final Set<String> packageNames =
+        Platform.getPackageNames(Arrays.asList(Platform.BUKKIT, Platform.SPONGE));
+
+    assertTrue(packageNames.contains("org.bukkit"));
+    assertTrue(packageNames.contains("org.spongepowered.api"));
+    assertEquals(
+        Platform.BUKKIT.getPackageNames().size() + Platform.SPONGE.getPackageNames().size() - 1,
+        packageNames.size());
+  }
+}
@@ -0,0 +1,124 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import team.aura_dev.lib.multiplatformcore.dependency.RuntimeDependency;
+
+public class SharedLibrariesTest {
+  private static final RuntimeDependency FOO =
+      RuntimeDependency.builder("com.example", "foo", "1.0", "md5", "sha1").build();
+  private static final RuntimeDependency BAR =
+      RuntimeDependency.builder("com.example", "bar", "1.0", "md5", "sha1").build();
+
+  @Test
+  public void keyTest() {
+    assertEquals(
+        SharedLibraries.getKey(Arrays.asList(FOO, BAR)),
+        SharedLibraries.getKey(Arrays.asList(BAR, FOO)));
+    assertNotEquals(
+        SharedLibraries.getKey(Collections.singleton(FOO)),
+        SharedLibraries.getKey(Collections.singleton(FOO.toBuilder().version("2.0").build())));
+    assertNotEquals(
+        SharedLibraries.getKey(Collections.singleton(FOO)),
+        SharedLibraries.getKey(Collections.singleton(FOO.toBuilder().sha1Hash("other").build())));
+    assertNotEquals(
+        SharedLibraries.getKey(Collections.singleton(FOO)),
+        SharedLibraries.getKey(Collections.singleton(FOO.toBuilder().transitive().build())));
+  }
+
+  @Test
+  public void registryTest() throws Exception {
+    final String key = "registryTest";
+    final URL ownLocation =
+        SharedLibraries.class.getProtectionDomain().getCodeSource().getLocation();
+
+    SharedLibraries.acquire(key, () -> new URLClassLoader(new URL[0]));
+
+    try (URLClassLoader copy = new URLClassLoader(new URL[] {ownLocation}, null)) {
+      final Class<?> copiedClass = copy.loadClass(SharedLibraries.class.getName());
+
+      assertNotSame(SharedLibraries.class, copiedClass);
+      // Another copy of the library sees the same registry
+      assertEquals(true, copiedClass.getMethod("isShared", String.class).invoke(null, key));
+    } finally {
+      SharedLibraries.release(key);
+    }
+
+    // The system properties must only ever contain strings
+    for (Object value : System.getProperties().values()) {
+      assertTrue(value instanceof String);
+    }
+
+    System.getProperties().list(new PrintStream(new ByteArrayOutputStream()));
+  }
+
+  @Test
+  public void acquireReleaseTest() {
+    final String key = "acquireReleaseTest";
+    final AtomicInteger created = new AtomicInteger();
+    final URLClassLoader classLoader = new URLClassLoader(new URL[0]);
+
+    final URLClassLoader first =
+        SharedLibraries.acquire(
+            key,
+            () -> {
+              created.incrementAndGet();
+
+              return classLoader;
+            });
+    final URLClassLoader second =
+        SharedLibraries.acquire(
+            key,
+            () -> {
+              created.incrementAndGet();
+
+              return new URLClassLoader(new URL[0]);
+            });
+
+    assertSame(classLoader, first);
+    assertSame(classLoader, second);
+    assertEquals(1, created.get());
+
+    SharedLibraries.release(key);
+
+    assertTrue(SharedLibraries.isShared(key));
+
+    SharedLibraries.release(key);
+
+    assertFalse(SharedLibraries.isShared(key));
+  }
+
+  @Test
+  public void failedFactoryTest() {
+    final String key = "failedFactoryTest";
+    final RuntimeException exception = new RuntimeException("Download failed");
+
+    try {
+      SharedLibraries.acquire(
+          key,
+          () -> {
+            throw exception;
+          });
+
+      fail("Expected an exception to be thrown");
+    } catch (IllegalStateException e) {
+      assertSame(exception, e.getCause());
+    }
+
+    assertFalse(SharedLibraries.isShared(key));
+  }
+}
@@ -0,0 +1,162 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSigner;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SignatureCacheTest {
+  /** A jar containing {@code foo/Bar.class} and {@code foo/data.txt}, signed with a test key. */
+  private static final String SIGNED_JAR = "signed.jar";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTripTest() throws IOException {
+    final Path jar = copySignedJar();
+    final Path cacheFile = folder.getRoot().toPath().resolve("signatures.cache");
+
+    final SignatureCache cache = new SignatureCache();
+    final Map<String, CodeSigner[]> signers = cache.getSigners(jar);
+
+    assertNotNull(signers);
+    assertEquals(1, signers.get("foo/Bar.class").length);
+    assertNull(signers.get("META-INF/TEST.SF"));
+    cache.save(cacheFile);
+
+    final SignatureCache loadedCache = new SignatureCache();
+
+    assertTrue(loadedCache.load(cacheFile));
+
+    final Map<String, CodeSigner[]> loadedSigners = loadedCache.getSigners(jar);
+
+    assertEquals(signers.keySet(), loadedSigners.keySet());
+    assertArrayEquals(signers.get("foo/Bar.class"), loadedSigners.get("foo/Bar.class"));
+    // Nothing had to be verified, so nothing gets written
+    Files.delete(cacheFile);
+    loadedCache.save(cacheFile);
+    assertFalse(Files.exists(cacheFile));
+    assertSame(loadedSigners, loadedCache.getSigners(jar));
+  }
+
+  @Test
+  public void changedJarTest() throws IOException {
+    final Path jar = copySignedJar();
+    final Path cacheFile = folder.getRoot().toPath().resolve("signatures.cache");
+
+    final SignatureCache cache = new SignatureCache();
+    cache.getSigners(jar);
+    cache.save(cacheFile);
+
+    // Different contents with the same modification time have a different hash
+    final FileTime lastModified = Files.getLastModifiedTime(jar);
+    final byte[] contents = Files.readAllBytes(jar);
+    // The modification time of the first local header, which nobody but the hash looks at
+    contents[10] ^= 1;
+    Files.write(jar, contents);
+    Files.setLastModifiedTime(jar, lastModified);
+
+    final SignatureCache loadedCache = new SignatureCache();
+    assertTrue(loadedCache.load(cacheFile));
+
+    final Map<String, CodeSigner[]> signers = loadedCache.getSigners(jar);
+
+    // Verified again, not taken from the file
+    assertNotNull(signers);
+    Files.delete(cacheFile);
+    loadedCache.save(cacheFile);
+    assertTrue(Files.exists(cacheFile));
+  }
+
+  @Test
+  public void jarClassPathElementTest() throws IOException {
+    final Path jar = copySignedJar();
+    final SignatureCache cache = new SignatureCache();
+    final Path cacheFile = folder.getRoot().toPath().resolve("signatures.cache");
+
+    final CodeSigner[] verifiedSigners;
+
+    try (JarClassPathElement element = new JarClassPathElement(jar.toUri().toURL(), jar)) {
+      verifiedSigners = element.readClassFile("foo/Bar.class").getCodeSigners();
+    }
+
+    try (JarClassPathElement element = new JarClassPathElement(jar.toUri().toURL(), jar, cache)) {
+      assertArrayEquals(verifiedSigners, element.readClassFile("foo/Bar.class").getCodeSigners());
+    }
+
+    cache.save(cacheFile);
+
+    final SignatureCache loadedCache = new SignatureCache();
+    assertTrue(loadedCache.load(cacheFile));
+
+    try (JarClassPathElement element =
+        new JarClassPathElement(jar.toUri().toURL(), jar, loadedCache)) {
+      final ClassPathElement.ClassFile classFile = element.readClassFile("foo/Bar.class");
+
+      assertEquals(3, classFile.getBuffer().remaining());
+      assertArrayEquals(verifiedSigners, classFile.getCodeSigners());
+    }
+  }
+
+  @Test
+  public void unsignedJarTest() throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new JarEntry("foo/Bar.class"));
+      out.write(new byte[] {1, 2, 3});
+      out.closeEntry();
+    }
+
+    final SignatureCache cache = new SignatureCache();
+    final Path cacheFile = folder.getRoot().toPath().resolve("signatures.cache");
+
+    try (JarClassPathElement element = new JarClassPathElement(jar.toUri().toURL(), jar, cache)) {
+      assertNull(element.readClassFile("foo/Bar.class").getCodeSigners());
+    }
+
+    // Unsigned jars are never recorded
+    cache.save(cacheFile);
+    assertFalse(Files.exists(cacheFile));
+  }
+
+  @Test
+  public void corruptCacheTest() throws IOException {
+    final Path cacheFile = folder.newFile().toPath();
+    Files.write(cacheFile, new byte[] {'M', 'P', 'C', 'S', 0, 0, 0, 1, 0, 0, 0, 5});
+
+    final SignatureCache cache = new SignatureCache();
+
+    assertFalse(cache.load(cacheFile));
+    assertFalse(cache.load(folder.getRoot().toPath().resolve("missing.cache")));
+    // Still fully functional
+    assertNotNull(cache.getSigners(copySignedJar()));
+  }
+
+  private Path copySignedJar() throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (InputStream in = SignatureCacheTest.class.getResourceAsStream(SIGNED_JAR)) {
+      Files.copy(in, jar, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    return jar;
+  }
+}
@@ -0,0 +1,21 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SignatureFilesTest {
+  @Test
+  public void isSignatureFileTest() {
+    assertTrue(SignatureFiles.isSignatureFile("META-INF/SIGNER.SF"));
+    assertTrue(SignatureFiles.isSignatureFile("META-INF/signer.rsa"));
+    assertTrue(SignatureFiles.isSignatureFile("META-INF/SIGNER.DSA"));
+    assertTrue(SignatureFiles.isSignatureFile("META-INF/SIGNER.EC"));
+
+    assertFalse(SignatureFiles.isSignatureFile("META-INF/MANIFEST.MF"));
+    assertFalse(SignatureFiles.isSignatureFile("META-INF/versions/9/SIGNER.SF"));
+    assertFalse(SignatureFiles.isSignatureFile("SIGNER.SF"));
+    assertFalse(SignatureFiles.isSignatureFile("com/example/Test.class"));
+  }
+}
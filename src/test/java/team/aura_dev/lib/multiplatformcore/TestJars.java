@@ -0,0 +1,70 @@
+package team.aura_dev.lib.multiplatformcore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import lombok.experimental.UtilityClass;
+import org.junit.rules.TemporaryFolder;
+
+@UtilityClass
+public class TestJars {
+  /**
+   * Creates a jar in the temporary folder containing the class files of the given classes.
+   *
+   * @param folder The folder to create the jar in
+   * @param classes The classes to put into the jar
+   * @return The created jar
+   * @throws IOException if creating the jar fails
+   */
+  public static Path createJar(TemporaryFolder folder, Class<?>... classes) throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (Class<?> clazz : classes) {
+        writeClass(out, clazz);
+      }
+    }
+
+    return jar;
+  }
+
+  /**
+   * Writes the class file of a class into a jar as a new entry.
+   *
+   * @param out The jar to write to
+   * @param clazz The class to write
+   * @throws IOException if writing fails
+   */
+  public static void writeClass(JarOutputStream out, Class<?> clazz) throws IOException {
+    final String path = clazz.getName().replace('.', '/') + ".class";
+
+    out.putNextEntry(new JarEntry(path));
+
+    try (InputStream in = clazz.getClassLoader().getResourceAsStream(path)) {
+      copy(in, out);
+    }
+
+    out.closeEntry();
+  }
+
+  public static byte[] readFully(InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    copy(in, out);
+
+    return out.toByteArray();
+  }
+
+  public static void copy(InputStream in, OutputStream out) throws IOException {
+    final byte[] buffer = new byte[4096];
+    int read;
+
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package team.aura_dev.lib.multiplatformcore.benchmark;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Test;
+import team.aura_dev.lib.multiplatformcore.ClassDataSharing;
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+
+/**
+ * Compares the cold start of a JVM that loads all classes of the JUnit jar through a {@link
+ * DependencyClassLoader} with and without a Class Data Sharing archive (see {@link
+ * ClassDataSharing}).<br>
+ * Every start is a fresh JVM. The first one records the class list, which then gets dumped into an
+ * archive. Needs Java 10 or newer. Meant to be run on Linux, where starting processes is cheap
+ * enough not to drown the difference.
+ *
+ * <p>Run it with {@code ./gradlew cdsBenchmark}.
+ */
+public class ClassDataSharingBenchmark {
+  private static final int WARMUP_STARTS = 2;
+  private static final int MEASURED_STARTS = 10;
+
+  public static void main(String[] args) throws Exception {
+    if (!ClassDataSharing.isSupported()) {
+      System.out.println("Class Data Sharing of custom ClassLoaders requires Java 10 or newer");
+
+      return;
+    }
+
+    final Path directory = Files.createTempDirectory("cds-benchmark");
+    final List<String> java = javaCommand();
+
+    run(java, directory);
+
+    if (!dumpArchive(java, directory)) {
+      System.out.println("Dumping the archive failed");
+
+      return;
+    }
+
+    final List<String> javaWithArchive = new ArrayList<>(java);
+    javaWithArchive.addAll(1, ClassDataSharing.getRuntimeOptions(directory));
+
+    measure("without", java, directory);
+    measure("with", javaWithArchive, directory);
+  }
+
+  /** The JVM that gets measured. Loads all classes and records the class list. */
+  public static class ColdStart {
+    public static void main(String[] args) throws Exception {
+      final URL jar = Test.class.getProtectionDomain().getCodeSource().getLocation();
+      final ClassLoaderOptions options =
+          ClassLoaderOptions.builder().classDataSharing(true).build();
+
+      try (DependencyClassLoader classLoader =
+          AccessController.doPrivileged(
+              (PrivilegedAction<DependencyClassLoader>)
+                  () ->
+                      DependencyClassLoader.createDependencyLayer(
+                          ClassLoader.getSystemClassLoader(), options))) {
+        classLoader.addURL(jar);
+        classLoader.startClassDataSharing(Paths.get(args[0]));
+
+        for (String name : ClassLoadingBenchmark.listClassNames(jar)) {
+          try {
+            Class.forName(name, false, classLoader);
+          } catch (ClassNotFoundException | LinkageError e) {
+            // Irrelevant for the benchmark
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The classpath of this JVM with the jars first, as the archive can only be dumped with the jars
+   * before the first directory.
+   */
+  private static List<String> javaCommand() {
+    final List<String> jars = new ArrayList<>();
+    final List<String> directories = new ArrayList<>();
+
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      (Files.isDirectory(Paths.get(entry)) ? directories : jars).add(entry);
+    }
+
+    jars.addAll(directories);
+
+    return new ArrayList<>(
+        Arrays.asList(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp",
+            String.join(File.pathSeparator, jars)));
+  }
+
+  private static boolean dumpArchive(List<String> java, Path directory) throws Exception {
+    final List<String> command = new ArrayList<>(java);
+    command.addAll(
+        Arrays.asList(ClassDataSharing.class.getName(), directory.toAbsolutePath().toString()));
+
+    return new ProcessBuilder(command).inheritIO().start().waitFor() == 0;
+  }
+
+  private static long run(List<String> java, Path directory) throws Exception {
+    final List<String> command = new ArrayList<>(java);
+    command.addAll(Arrays.asList(ColdStart.class.getName(), directory.toString()));
+
+    final long start = System.nanoTime();
+    final int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+    final long nanos = System.nanoTime() - start;
+
+    if (exitCode != 0) throw new IllegalStateException("The JVM exited with " + exitCode);
+
+    return nanos;
+  }
+
+  private static void measure(String label, List<String> java, Path directory) throws Exception {
+    long totalNanos = 0;
+
+    for (int i = 0; i < (WARMUP_STARTS + MEASURED_STARTS); ++i) {
+      final long nanos = run(java, directory);
+
+      if (i >= WARMUP_STARTS) {
+        totalNanos += nanos;
+      }
+    }
+
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%-7s archive  %8.2f ms/start",
+            label,
+            totalNanos / 1_000_000.0 / MEASURED_STARTS));
+  }
+}
@@ -0,0 +1,192 @@
+package team.aura_dev.lib.multiplatformcore.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.junit.Test;
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+
+/**
+ * Compares the class loading throughput of the {@link DependencyClassLoader} with the {@link
+ * LegacyDependencyClassLoader}.<br>
+ * Every round creates a fresh ClassLoader for the JUnit jar and lets all threads load all of its
+ * classes at the same time, each thread starting at a different offset.
+ *
+ * <p>Run it with {@code ./gradlew benchmark}.
+ */
+public class ClassLoadingBenchmark {
+  private static final int[] THREAD_COUNTS = {1, 4, 16};
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 20;
+
+  public static void main(String[] args) throws Exception {
+    final URL jar = Test.class.getProtectionDomain().getCodeSource().getLocation();
+    final List<String> classNames = listClassNames(jar);
+    final ClassLoader parent = ClassLoadingBenchmark.class.getClassLoader();
+
+    System.out.println("Loading " + classNames.size() + " classes from " + jar);
+
+    for (int threads : THREAD_COUNTS) {
+      run(
+          "legacy",
+          threads,
+          classNames,
+          () -> new LegacyDependencyClassLoader(new URL[] {jar}, parent));
+      run(
+          "current",
+          threads,
+          classNames,
+          () -> createLoader(parent, ClassLoaderOptions.DEFAULT, jar));
+      run(
+          "mapped",
+          threads,
+          classNames,
+          () -> createLoader(parent, ClassLoaderOptions.builder().memoryMapped(true).build(), jar));
+    }
+  }
+
+  private static DependencyClassLoader createLoader(
+      ClassLoader parent, ClassLoaderOptions options, URL jar) {
+    return AccessController.doPrivileged(
+        (PrivilegedAction<DependencyClassLoader>)
+            () -> {
+              final DependencyClassLoader classLoader =
+                  new DependencyClassLoader(parent, options, "benchmark.excluded");
+              classLoader.addURL(jar);
+
+              return classLoader;
+            });
+  }
+
+  /**
+   * Lists the names of all classes in a jar.
+   *
+   * @param jar the {@link URL} of the jar
+   * @return the binary names of all classes in the jar
+   * @throws Exception when reading the jar fails
+   */
+  public static List<String> listClassNames(URL jar) throws Exception {
+    final List<String> classNames = new ArrayList<>();
+
+    try (JarFile jarFile = new JarFile(Paths.get(jar.toURI()).toFile())) {
+      final Enumeration<JarEntry> entries = jarFile.entries();
+
+      while (entries.hasMoreElements()) {
+        final String name = entries.nextElement().getName();
+
+        if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+          classNames.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+        }
+      }
+    }
+
+    Collections.sort(classNames);
+
+    return classNames;
+  }
+
+  private static void run(
+      String label, int threads, List<String> classNames, LoaderFactory loaderFactory)
+      throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final AtomicInteger errors = new AtomicInteger();
+    long totalNanos = 0;
+
+    try {
+      for (int round = 0; round < (WARMUP_ROUNDS + MEASURED_ROUNDS); ++round) {
+        final long nanos = runRound(executor, threads, classNames, loaderFactory, errors);
+
+        if (round >= WARMUP_ROUNDS) {
+          totalNanos += nanos;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    final double millisPerRound = totalNanos / 1_000_000.0 / MEASURED_ROUNDS;
+
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%-8s threads=%2d  %8.2f ms/round  %10.0f loads/s  errors=%d",
+            label,
+            threads,
+            millisPerRound,
+            (classNames.size() * threads) / (millisPerRound / 1000.0),
+            errors.get()));
+  }
+
+  private static long runRound(
+      ExecutorService executor,
+      int threads,
+      List<String> classNames,
+      LoaderFactory loaderFactory,
+      AtomicInteger errors)
+      throws Exception {
+    final ClassLoader classLoader = loaderFactory.create();
+    final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+    final List<Future<?>> futures = new ArrayList<>();
+    final int size = classNames.size();
+
+    for (int thread = 0; thread < threads; ++thread) {
+      final int offset = (thread * size) / threads;
+
+      futures.add(
+          executor.submit(
+              () -> {
+                barrier.await();
+
+                for (int i = 0; i < size; ++i) {
+                  try {
+                    Class.forName(classNames.get((offset + i) % size), false, classLoader);
+                  } catch (ClassNotFoundException | LinkageError e) {
+                    errors.incrementAndGet();
+                  }
+                }
+
+                return null;
+              }));
+    }
+
+    barrier.await();
+    final long start = System.nanoTime();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    final long nanos = System.nanoTime() - start;
+
+    if (classLoader instanceof Closeable) {
+      try {
+        ((Closeable) classLoader).close();
+      } catch (IOException e) {
+        // Irrelevant for the benchmark
+      }
+    }
+
+    return nanos;
+  }
+
+  @FunctionalInterface
+  private interface LoaderFactory {
+    ClassLoader create() throws Exception;
+  }
+}
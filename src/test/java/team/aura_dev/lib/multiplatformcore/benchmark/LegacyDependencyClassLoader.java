@@ -0,0 +1,37 @@
+package team.aura_dev.lib.multiplatformcore.benchmark;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * The {@link team.aura_dev.lib.multiplatformcore.DependencyClassLoader} as it was before it got
+ * indexed and parallel capable. Only used as a baseline in the benchmarks.
+ */
+public class LegacyDependencyClassLoader extends URLClassLoader {
+  public LegacyDependencyClassLoader(URL[] urls, ClassLoader parent) {
+    super(urls, parent);
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    Class<?> loadedClass = findLoadedClass(name);
+
+    if (loadedClass == null) {
+      try {
+        loadedClass = findClass(name);
+      } catch (ClassNotFoundException e) {
+        // Ignore
+      }
+    }
+
+    if (loadedClass == null) {
+      loadedClass = super.loadClass(name, resolve);
+    }
+
+    if (resolve) {
+      resolveClass(loadedClass);
+    }
+
+    return loadedClass;
+  }
+}
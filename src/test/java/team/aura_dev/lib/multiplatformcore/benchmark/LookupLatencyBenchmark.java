@@ -0,0 +1,130 @@
+package team.aura_dev.lib.multiplatformcore.benchmark;
+
+import java.net.URL;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import org.hamcrest.Matcher;
+import org.junit.Test;
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+
+/**
+ * Measures how long a single lookup in the {@link DependencyClassLoader} takes before and after
+ * {@link DependencyClassLoader#seal()}.<br>
+ * The ClassLoader contains the JUnit jar. Looked up are Classes of the Hamcrest jar, which only the
+ * parent has, and resources that are or aren't in the JUnit jar.
+ *
+ * <p>Run it with {@code ./gradlew lookupBenchmark}.
+ */
+public class LookupLatencyBenchmark {
+  private static final int WARMUP_ROUNDS = 500;
+  private static final int MEASURED_ROUNDS = 2000;
+
+  public static void main(String[] args) throws Exception {
+    final URL jar = Test.class.getProtectionDomain().getCodeSource().getLocation();
+    final URL parentJar = Matcher.class.getProtectionDomain().getCodeSource().getLocation();
+    final List<String> parentClassNames = ClassLoadingBenchmark.listClassNames(parentJar);
+    final List<String> resourceHits = toPaths(ClassLoadingBenchmark.listClassNames(jar));
+    final List<String> resourceMisses = toPaths(parentClassNames);
+    final ClassLoader parent = LookupLatencyBenchmark.class.getClassLoader();
+
+    // Only the lookups should be measured, not loading the Classes in the parent
+    for (String name : parentClassNames) {
+      Class.forName(name, false, parent);
+    }
+
+    try (DependencyClassLoader classLoader = createLoader(parent, jar)) {
+      measure("unsealed", classLoader, parentClassNames, resourceHits, resourceMisses);
+
+      classLoader.seal();
+
+      measure("sealed", classLoader, parentClassNames, resourceHits, resourceMisses);
+    }
+  }
+
+  private static DependencyClassLoader createLoader(ClassLoader parent, URL jar) {
+    return AccessController.doPrivileged(
+        (PrivilegedAction<DependencyClassLoader>)
+            () -> {
+              final DependencyClassLoader classLoader =
+                  new DependencyClassLoader(
+                      parent, ClassLoaderOptions.DEFAULT, "benchmark.excluded");
+              classLoader.addURL(jar);
+
+              return classLoader;
+            });
+  }
+
+  private static List<String> toPaths(List<String> classNames) {
+    return classNames.stream()
+        .map(name -> name.replace('.', '/') + ".class")
+        .collect(Collectors.toList());
+  }
+
+  private static void measure(
+      String label,
+      DependencyClassLoader classLoader,
+      List<String> parentClassNames,
+      List<String> resourceHits,
+      List<String> resourceMisses)
+      throws Exception {
+    print(
+        label,
+        "parent class",
+        parentClassNames.size(),
+        () -> {
+          for (String name : parentClassNames) {
+            classLoader.loadClass(name);
+          }
+        });
+    print(
+        label,
+        "resource hit",
+        resourceHits.size(),
+        () -> {
+          for (String name : resourceHits) {
+            classLoader.findResource(name);
+          }
+        });
+    print(
+        label,
+        "resource miss",
+        resourceMisses.size(),
+        () -> {
+          for (String name : resourceMisses) {
+            classLoader.findResource(name);
+          }
+        });
+  }
+
+  private static void print(String label, String lookup, int lookups, Round round)
+      throws Exception {
+    long totalNanos = 0;
+
+    for (int i = 0; i < (WARMUP_ROUNDS + MEASURED_ROUNDS); ++i) {
+      final long start = System.nanoTime();
+      round.run();
+      final long nanos = System.nanoTime() - start;
+
+      if (i >= WARMUP_ROUNDS) {
+        totalNanos += nanos;
+      }
+    }
+
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%-8s %-13s  %8.1f ns/lookup",
+            label,
+            lookup,
+            totalNanos / (double) (MEASURED_ROUNDS * (long) lookups)));
+  }
+
+  @FunctionalInterface
+  private interface Round {
+    void run() throws Exception;
+  }
+}
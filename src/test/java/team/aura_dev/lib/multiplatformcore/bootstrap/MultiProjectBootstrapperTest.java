@@ -1,21 +1,46 @@
 package team.aura_dev.lib.multiplatformcore.bootstrap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assume;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+import team.aura_dev.lib.multiplatformcore.ModuleLayerIsolation;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.TestPlugin;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.api.TestPluginApi;
 import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestBadBootstrapper;
 import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestBootstrapper;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestModuleLayerBootstrapper;
 import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestPluginBootstrap;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestPrefetchBootstrapper;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestReloadableBootstrapper;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestReloadableModuleLayerBootstrapper;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap.TestSlowReloadableBootstrapper;
+import team.aura_dev.lib.multiplatformcore.testcode.simple.example.ExampleUtility;
 
 public class MultiProjectBootstrapperTest {
   @Rule public TemporaryFolder folder = new TemporaryFolder();
@@ -42,6 +67,181 @@ public class MultiProjectBootstrapperTest {
         direct.getDependencyClassLoader().excludedPackageNames);
   }
 
+  @Test
+  public void parentFirstPackagesTest() {
+    final MultiProjectBootstrapper<Object> base =
+        new MultiProjectBootstrapper<Object>(Object.class) {
+          @Override
+          protected Collection<String> getParentFirstPackages() {
+            return Collections.singleton("com.example.platform");
+          }
+        };
+
+    assertTrue(
+        base.getDependencyClassLoader()
+            .getParentFirstPackageNames()
+            .contains("com.example.platform."));
+    assertTrue(base.getDependencyClassLoader().getParentFirstPackageNames().contains("java."));
+  }
+
+  @Test
+  public void hotReloadTest() {
+    final TestBootstrapper bootstrapper = new TestReloadableBootstrapper();
+    final TestPluginBootstrap plugin = new TestPluginBootstrap(bootstrapper);
+    final DependencyClassLoader firstGeneration = bootstrapper.getDependencyClassLoader();
+    final TestPluginApi firstPlugin = plugin.getBootstrappedPlugin();
+
+    assertNotSame(bootstrapper.getDependencyLayer(), firstGeneration);
+    assertSame(bootstrapper.getDependencyLayer(), firstGeneration.getParent());
+    assertSame(bootstrapper.getDependencyLayer(), firstGeneration.getDependencyLayer());
+    assertSame(firstGeneration, firstPlugin.getClass().getClassLoader());
+
+    bootstrapper.prepareReload();
+
+    final TestPluginApi secondPlugin = bootstrapper.reload(plugin);
+    final DependencyClassLoader secondGeneration = bootstrapper.getDependencyClassLoader();
+
+    assertEquals(1, bootstrapper.getGeneration());
+    assertNotSame(firstGeneration, secondGeneration);
+    assertSame(bootstrapper.getDependencyLayer(), secondGeneration.getParent());
+    assertSame(secondGeneration, secondPlugin.getClass().getClassLoader());
+    assertNotSame(firstPlugin.getClass(), secondPlugin.getClass());
+    assertSame(secondPlugin, bootstrapper.getPlugin());
+
+    secondPlugin.testCall();
+  }
+
+  @Test
+  public void concurrentReloadTest() throws InterruptedException {
+    final TestBootstrapper bootstrapper = new TestSlowReloadableBootstrapper();
+    final TestPluginBootstrap plugin = new TestPluginBootstrap(bootstrapper);
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread[] threads = new Thread[2];
+
+    for (int i = 0; i < threads.length; ++i) {
+      threads[i] =
+          new Thread(
+              () -> {
+                try {
+                  barrier.await();
+                  bootstrapper.reload(plugin);
+                } catch (Throwable e) {
+                  failure.compareAndSet(null, e);
+                }
+              });
+      threads[i].start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertNull(failure.get());
+    assertEquals(2, bootstrapper.getGeneration());
+
+    final DependencyClassLoader current = bootstrapper.getDependencyClassLoader();
+
+    assertSame(current, bootstrapper.getPlugin().getClass().getClassLoader());
+    // The live layer must not have been closed by the other reload
+    assertNotNull(current.findResource(TestPlugin.class.getName().replace('.', '/') + ".class"));
+
+    bootstrapper.getPlugin().testCall();
+  }
+
+  @Test
+  public void startupRecordingTest() throws IOException, ClassNotFoundException {
+    final Path recordingFile = folder.getRoot().toPath().resolve("prefetch.lst");
+    final TestBootstrapper bootstrapper = new TestPrefetchBootstrapper();
+
+    bootstrapper.getDependencyClassLoader().startClassPrefetch(recordingFile);
+
+    new TestPluginBootstrap(bootstrapper);
+
+    // Saved as soon as the plugin has been constructed
+    assertTrue(
+        Files.readAllLines(recordingFile, StandardCharsets.UTF_8)
+            .contains(TestPlugin.class.getName()));
+
+    // Loaded after startup, so it doesn't belong into the recording
+    bootstrapper.getDependencyClassLoader().loadClass(ExampleUtility.class.getName());
+    bootstrapper.getDependencyClassLoader().close();
+
+    assertFalse(
+        Files.readAllLines(recordingFile, StandardCharsets.UTF_8)
+            .contains(ExampleUtility.class.getName()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void hotReloadDisabledTest() {
+    final TestPluginBootstrap plugin = new TestPluginBootstrap();
+
+    plugin.getBootstrapper().reload(plugin);
+  }
+
+  @Test
+  public void moduleLayerTest() {
+    Assume.assumeTrue(ModuleLayerIsolation.isSupported());
+
+    final TestBootstrapper bootstrapper = new TestModuleLayerBootstrapper();
+    final TestPluginBootstrap plugin = new TestPluginBootstrap(bootstrapper);
+    final ClassLoader moduleLayer = bootstrapper.getModuleLayerClassLoader();
+
+    assertNotNull(moduleLayer);
+    assertSame(moduleLayer, bootstrapper.getPluginClass().getClassLoader());
+    assertNotSame(bootstrapper.getDependencyClassLoader(), moduleLayer);
+    // The API stays in the parent
+    assertSame(TestPluginApi.class, bootstrapper.getPluginClass().getInterfaces()[0]);
+
+    plugin.testCall();
+    plugin.apiInteraction();
+
+    // The layer wouldn't see libraries added now
+    assertTrue(bootstrapper.getDependencyLayer().isSealed());
+
+    try {
+      bootstrapper.getDependencyLayer().addURL(folder.getRoot().toURI().toURL());
+
+      fail("Added a URL after creating the module layer");
+    } catch (IllegalStateException | MalformedURLException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void moduleLayerReloadTest() throws URISyntaxException {
+    Assume.assumeTrue(ModuleLayerIsolation.isSupported());
+
+    final TestBootstrapper bootstrapper = new TestReloadableModuleLayerBootstrapper();
+    final TestPluginBootstrap plugin = new TestPluginBootstrap(bootstrapper);
+    final Path firstWorkDir = getWorkDir(bootstrapper.getPluginClass());
+
+    assertTrue(Files.isDirectory(firstWorkDir));
+
+    final TestPluginApi secondPlugin = bootstrapper.reload(plugin);
+    final Path secondWorkDir = getWorkDir(bootstrapper.getPluginClass());
+
+    assertSame(bootstrapper.getModuleLayerClassLoader(), secondPlugin.getClass().getClassLoader());
+    assertNotEquals(firstWorkDir, secondWorkDir);
+    // Only the copies of the current layer are kept
+    assertFalse(Files.exists(firstWorkDir));
+    assertTrue(Files.isDirectory(secondWorkDir));
+
+    secondPlugin.testCall();
+  }
+
+  private static Path getWorkDir(Class<?> pluginClass) throws URISyntaxException {
+    return Paths.get(pluginClass.getProtectionDomain().getCodeSource().getLocation().toURI())
+        .getParent();
+  }
+
+  @Test
+  public void classLoaderIsolationTest() {
+    final TestPluginBootstrap plugin = new TestPluginBootstrap();
+
+    assertNull(plugin.getBootstrapper().getModuleLayerClassLoader());
+  }
+
   @Test
   public void correctClassLoaderTest() {
     final TestPluginBootstrap plugin = new TestPluginBootstrap();
@@ -0,0 +1,137 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static team.aura_dev.lib.multiplatformcore.TestJars.createJar;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+
+public class ArtifactLoaderGraphTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void transitiveDependenciesTest() throws IOException {
+    final ArtifactLoaderGraph.Artifact library = artifact();
+    final ArtifactLoaderGraph.Artifact first = artifact(library);
+    final ArtifactLoaderGraph.Artifact second = artifact(first);
+    final ArtifactLoaderGraph.Artifact root = artifact(second, library);
+
+    assertEquals(
+        Arrays.asList(second, library, first),
+        ArtifactLoaderGraph.getTransitiveDependencies(Collections.singletonList(root)));
+    assertEquals(
+        Collections.singletonList(library),
+        ArtifactLoaderGraph.getTransitiveDependencies(Arrays.asList(first, second)));
+  }
+
+  @Test
+  public void conflictingVersionsTest() throws IOException, ClassNotFoundException {
+    final ArtifactLoaderGraph.Artifact libraryV1 = artifact(createJar(folder, Library.class));
+    final ArtifactLoaderGraph.Artifact libraryV2 = artifact(createJar(folder, Library.class));
+    final ArtifactLoaderGraph.Artifact first = artifact(createJar(folder, First.class), libraryV1);
+    final ArtifactLoaderGraph.Artifact second =
+        artifact(createJar(folder, Second.class), libraryV2);
+
+    try (DependencyClassLoader template = createTemplate()) {
+      final ArtifactLoaderGraph graph = new ArtifactLoaderGraph(template);
+      final DependencyClassLoader firstLoader = graph.getLoader(first);
+      final DependencyClassLoader secondLoader = graph.getLoader(second);
+
+      try {
+        final Class<?> firstLibrary = firstLoader.loadClass(Library.class.getName());
+        final Class<?> secondLibrary = secondLoader.loadClass(Library.class.getName());
+
+        assertNotSame(firstLibrary, secondLibrary);
+        assertSame(graph.getLoader(libraryV1), firstLibrary.getClassLoader());
+        assertSame(graph.getLoader(libraryV2), secondLibrary.getClassLoader());
+        assertSame(firstLoader, firstLoader.loadClass(First.class.getName()).getClassLoader());
+        assertEquals(4, graph.getLoaders().size());
+
+        try {
+          // Not a dependency of the first artifact
+          firstLoader.loadClass(Second.class.getName());
+
+          fail("Loaded a Class of an artifact that isn't a dependency");
+        } catch (ClassNotFoundException e) {
+          // Expected
+        }
+      } finally {
+        for (DependencyClassLoader loader : graph.getLoaders()) {
+          loader.close();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void cycleTest() throws IOException, ClassNotFoundException {
+    final List<ArtifactLoaderGraph.Artifact> firstDependencies = new ArrayList<>();
+    final ArtifactLoaderGraph.Artifact first =
+        new ArtifactLoaderGraph.Artifact(createJar(folder, First.class), firstDependencies);
+    final ArtifactLoaderGraph.Artifact second = artifact(createJar(folder, Second.class), first);
+    firstDependencies.add(second);
+
+    try (DependencyClassLoader template = createTemplate()) {
+      final ArtifactLoaderGraph graph = new ArtifactLoaderGraph(template);
+      final DependencyClassLoader firstLoader = graph.getLoader(first);
+
+      try {
+        assertSame(
+            graph.getLoader(second),
+            firstLoader.loadClass(Second.class.getName()).getClassLoader());
+        assertSame(
+            firstLoader, graph.getLoader(second).loadClass(First.class.getName()).getClassLoader());
+
+        try {
+          // Must not bounce between the two loaders forever
+          firstLoader.loadClass(Library.class.getName());
+
+          fail("Loaded a Class that isn't part of any artifact");
+        } catch (ClassNotFoundException e) {
+          // Expected
+        }
+      } finally {
+        for (DependencyClassLoader loader : graph.getLoaders()) {
+          loader.close();
+        }
+      }
+    }
+  }
+
+  private ArtifactLoaderGraph.Artifact artifact(ArtifactLoaderGraph.Artifact... dependencies)
+      throws IOException {
+    return artifact(folder.newFile().toPath(), dependencies);
+  }
+
+  private static ArtifactLoaderGraph.Artifact artifact(
+      Path jar, ArtifactLoaderGraph.Artifact... dependencies) {
+    return new ArtifactLoaderGraph.Artifact(jar, Arrays.asList(dependencies));
+  }
+
+  private static DependencyClassLoader createTemplate() {
+    // No parent, so the test Classes can only come from the artifacts
+    return AccessController.doPrivileged(
+        (PrivilegedAction<DependencyClassLoader>)
+            () -> DependencyClassLoader.createDependencyLayer(null, ClassLoaderOptions.DEFAULT));
+  }
+
+  public static class Library {}
+
+  public static class First {}
+
+  public static class Second {}
+}
@@ -0,0 +1,106 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+public class DebugInfoStripperTest {
+  @Test
+  public void stripTest() throws IOException, ReflectiveOperationException {
+    final byte[] classFile = readClassFile(Thrower.class);
+    final DebugInfoStripper stripper = new DebugInfoStripper();
+    final byte[] stripped = stripper.strip(classFile);
+
+    assertTrue(stripped.length < classFile.length);
+
+    final DebugInfoSavings savings = stripper.getSavings();
+
+    assertEquals(1, savings.getClasses());
+    assertEquals(classFile.length, savings.getOriginalBytes());
+    assertEquals(stripped.length, savings.getStrippedBytes());
+    assertTrue(savings.getMetaspaceLowerBoundBytes() > 0);
+
+    // Still runs, just without line numbers
+    assertTrue(getLineNumber(new Thrower()) > 0);
+    assertEquals(-1, getLineNumber(defineClass(Thrower.class.getName(), stripped)));
+    // Already stripped
+    assertSame(stripped, new DebugInfoStripper().strip(stripped));
+  }
+
+  @Test
+  public void notAClassTest() throws IOException {
+    final byte[] notAClass = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    final DebugInfoStripper stripper = new DebugInfoStripper();
+
+    assertSame(notAClass, stripper.strip(notAClass));
+    assertEquals(0, stripper.getSavings().getClasses());
+  }
+
+  @Test(expected = IOException.class)
+  public void malformedClassTest() throws IOException {
+    final byte[] classFile = readClassFile(Thrower.class);
+    final byte[] truncated = new byte[classFile.length / 2];
+    System.arraycopy(classFile, 0, truncated, 0, truncated.length);
+
+    new DebugInfoStripper().strip(truncated);
+  }
+
+  private static int getLineNumber(Object thrower) {
+    try {
+      @SuppressWarnings("unchecked")
+      final Supplier<Object> supplier = (Supplier<Object>) thrower;
+      supplier.get();
+    } catch (IllegalStateException e) {
+      return e.getStackTrace()[0].getLineNumber();
+    }
+
+    throw new AssertionError("Didn't throw");
+  }
+
+  private static Object defineClass(String name, byte[] classFile)
+      throws ReflectiveOperationException {
+    final ClassLoader classLoader =
+        new ClassLoader(DebugInfoStripperTest.class.getClassLoader()) {
+          @Override
+          protected Class<?> loadClass(String className, boolean resolve)
+              throws ClassNotFoundException {
+            if (!className.equals(name)) return super.loadClass(className, resolve);
+
+            return defineClass(className, classFile, 0, classFile.length);
+          }
+        };
+
+    return classLoader.loadClass(name).getConstructor().newInstance();
+  }
+
+  static byte[] readClassFile(Class<?> clazz) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (InputStream in =
+        clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class")) {
+      final byte[] buffer = new byte[8192];
+      int read;
+
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+
+    return out.toByteArray();
+  }
+
+  public static class Thrower implements Supplier<Object> {
+    @Override
+    public Object get() {
+      final String message = "Expected";
+
+      throw new IllegalStateException(message);
+    }
+  }
+}
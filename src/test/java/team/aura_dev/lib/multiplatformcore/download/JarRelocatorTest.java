@@ -0,0 +1,222 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+import team.aura_dev.lib.multiplatformcore.TestJars;
+import team.aura_dev.lib.multiplatformcore.dependency.Relocation;
+import team.aura_dev.lib.multiplatformcore.testcode.relocation.RelocatingPlugin;
+import team.aura_dev.lib.multiplatformcore.testcode.relocation.library.RelocatableLibrary;
+
+public class JarRelocatorTest {
+  private static final String PACKAGE = JarRelocatorTest.class.getPackage().getName();
+  private static final String RELOCATED_PACKAGE = "relocated.download";
+
+  private final JarRelocator relocator =
+      new JarRelocator(Collections.singletonList(new Relocation(PACKAGE, RELOCATED_PACKAGE)));
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void relocateNameTest() {
+    assertEquals("relocated/download/Foo", relocator.relocateName(slashed(PACKAGE) + "/Foo", '/'));
+    assertEquals(RELOCATED_PACKAGE + ".Foo", relocator.relocateName(PACKAGE + ".Foo", '.'));
+    assertEquals("relocated/download", relocator.relocateName(slashed(PACKAGE), '/'));
+    // Only whole packages
+    assertEquals(
+        slashed(PACKAGE) + "er/Foo", relocator.relocateName(slashed(PACKAGE) + "er/Foo", '/'));
+    assertEquals("java/lang/Object", relocator.relocateName("java/lang/Object", '/'));
+  }
+
+  @Test
+  public void relocateSignatureTest() {
+    final String name = "L" + slashed(PACKAGE) + "/Foo";
+
+    assertEquals(
+        "(ILrelocated/download/Foo;[Lrelocated/download/Foo;)Ljava/lang/String;",
+        relocator.relocateSignature("(I" + name + ";[" + name + ";)Ljava/lang/String;"));
+    assertEquals(
+        "<T:Lrelocated/download/Foo;U::Ljava/util/List<-TT;>;>Ljava/lang/Object;",
+        relocator.relocateSignature(
+            "<T:" + name + ";U::Ljava/util/List<-TT;>;>Ljava/lang/Object;"));
+    assertEquals(
+        "Ljava/util/Map<Lrelocated/download/Foo<*>.Inner;+Lrelocated/download/Foo;>;",
+        relocator.relocateSignature("Ljava/util/Map<" + name + "<*>.Inner;+" + name + ";>;"));
+
+    // Not a signature
+    final String notSignature = "Code";
+    assertSame(notSignature, relocator.relocateSignature(notSignature));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void relocateJarTest() throws IOException, ReflectiveOperationException {
+    final Path jar = createJar(Target.class, Greeter.class);
+    final Path relocatedJar =
+        new JarTransformer(relocator, false).getTransformedJar(jar, folder.getRoot().toPath());
+
+    try (JarFile jarFile = new JarFile(relocatedJar.toFile())) {
+      assertNull(jarFile.getEntry(slashed(Greeter.class.getName()) + ".class"));
+      assertNotNull(jarFile.getEntry("relocated/download/JarRelocatorTest$Greeter.class"));
+      assertNotNull(jarFile.getEntry("relocated/download/test.txt"));
+      assertEquals(
+          "relocated.download.JarRelocatorTest$Target\n",
+          new String(readEntry(jarFile, "META-INF/services/java.util.function.Supplier")));
+    }
+
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {relocatedJar.toUri().toURL()}, null)) {
+      final Class<?> greeter =
+          Class.forName("relocated.download.JarRelocatorTest$Greeter", true, classLoader);
+      final Supplier<String> instance = (Supplier<String>) greeter.getConstructor().newInstance();
+
+      assertEquals(
+          Arrays.asList(
+              "relocated.download.JarRelocatorTest$Target",
+              "relocated.download.JarRelocatorTest$Target",
+              "relocated.download.JarRelocatorTest$Target"),
+          Arrays.asList(instance.get().split(",")));
+    }
+  }
+
+  @Test
+  public void pluginUsesRelocatedLibraryTest() throws IOException, ReflectiveOperationException {
+    final JarRelocator libraryRelocator =
+        new JarRelocator(
+            Collections.singletonList(
+                new Relocation(
+                    RelocatableLibrary.class.getPackage().getName(), "my.plugin.libs.library")));
+    // The downloaded library gets relocated when it's loaded
+    final Path libraryJar =
+        new JarTransformer(libraryRelocator, false)
+            .getTransformedJar(
+                TestJars.createJar(folder, RelocatableLibrary.class),
+                folder.getRoot().toPath().resolve("transformed"));
+    final Path pluginJar = TestJars.createJar(folder, RelocatingPlugin.class);
+    // Like the shadow plugin's relocate would at build time
+    final Path relocatedPluginJar =
+        new JarTransformer(libraryRelocator, false)
+            .getTransformedJar(pluginJar, folder.getRoot().toPath().resolve("build"));
+
+    assertEquals(
+        "my.plugin.libs.library.RelocatableLibrary", runPlugin(relocatedPluginJar, libraryJar));
+
+    try {
+      runPlugin(pluginJar, libraryJar);
+
+      fail("The plugin found the library under its original name");
+    } catch (NoClassDefFoundError e) {
+      // Expected, the plugin jar has to be relocated as well
+    }
+  }
+
+  /** Runs the plugin like the plugin layer would, without the test classes as parent. */
+  @SuppressWarnings("unchecked")
+  private static String runPlugin(Path pluginJar, Path libraryJar)
+      throws IOException, ReflectiveOperationException {
+    try (DependencyClassLoader classLoader =
+        AccessController.doPrivileged(
+            (PrivilegedAction<DependencyClassLoader>)
+                () ->
+                    new DependencyClassLoader(
+                        ClassLoader.getSystemClassLoader().getParent(),
+                        ClassLoaderOptions.DEFAULT))) {
+      classLoader.addURL(pluginJar.toUri().toURL());
+      classLoader.addURL(libraryJar.toUri().toURL());
+
+      return ((Supplier<String>)
+              classLoader
+                  .loadClass(RelocatingPlugin.class.getName())
+                  .getConstructor()
+                  .newInstance())
+          .get();
+    }
+  }
+
+  private Path createJar(Class<?>... classes) throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (Class<?> clazz : classes) {
+        TestJars.writeClass(out, clazz);
+      }
+
+      out.putNextEntry(new JarEntry(slashed(PACKAGE) + "/test.txt"));
+      out.write("test".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+
+      out.putNextEntry(new JarEntry("META-INF/services/java.util.function.Supplier"));
+      out.write((Target.class.getName() + '\n').getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+
+    return jar;
+  }
+
+  private static byte[] readEntry(JarFile jarFile, String name) throws IOException {
+    try (InputStream in = jarFile.getInputStream(jarFile.getEntry(name))) {
+      final byte[] buffer = new byte[(int) jarFile.getEntry(name).getSize()];
+      int offset = 0;
+
+      while (offset < buffer.length) {
+        offset += in.read(buffer, offset, buffer.length - offset);
+      }
+
+      return buffer;
+    }
+  }
+
+  private static String slashed(String name) {
+    return name.replace('.', '/');
+  }
+
+  public static class Target {
+    @Override
+    public String toString() {
+      return getClass().getName();
+    }
+  }
+
+  public static class Greeter implements Supplier<String> {
+    private final List<Target> targets = Collections.singletonList(new Target());
+
+    @Override
+    public String get() {
+      try {
+        // Through a field signature, a string constant and a class literal
+        return targets.get(0)
+            + ","
+            + Class.forName("team.aura_dev.lib.multiplatformcore.download.JarRelocatorTest$Target")
+                .getName()
+            + ","
+            + Target.class.getName();
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package team.aura_dev.lib.multiplatformcore.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import team.aura_dev.lib.multiplatformcore.dependency.Relocation;
+
+public class JarTransformerTest {
+  private static final String CLASS_PATH =
+      DebugInfoStripperTest.Thrower.class.getName().replace('.', '/') + ".class";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void cacheTest() throws IOException {
+    final Path jar = createJar();
+    final Path cacheDir = folder.getRoot().toPath().resolve("transformed");
+    final JarTransformer transformer = new JarTransformer(createRelocator("relocated"), false);
+    final Path transformedJar = transformer.getTransformedJar(jar, cacheDir);
+
+    // Marked, so a rewrite would be noticed
+    Files.write(transformedJar, new byte[] {1});
+
+    assertEquals(transformedJar, transformer.getTransformedJar(jar, cacheDir));
+    assertEquals(1, Files.size(transformedJar));
+
+    for (JarTransformer otherTransformer :
+        Arrays.asList(
+            new JarTransformer(createRelocator("other"), false),
+            new JarTransformer(createRelocator("relocated"), true),
+            new JarTransformer(null, true))) {
+      final Path otherJar = otherTransformer.getTransformedJar(jar, cacheDir);
+
+      assertEquals(cacheDir, otherJar.getParent());
+      assertNotEquals(transformedJar, otherJar);
+    }
+  }
+
+  @Test
+  public void stripTest() throws IOException {
+    final Path jar = createJar();
+    final Path cacheDir = folder.getRoot().toPath().resolve("transformed");
+    final JarTransformer transformer = new JarTransformer(null, true);
+    final Path strippedJar = transformer.getTransformedJar(jar, cacheDir);
+
+    try (JarFile jarFile = new JarFile(strippedJar.toFile())) {
+      final JarEntry entry = jarFile.getJarEntry(CLASS_PATH);
+
+      assertNotNull(entry);
+      assertTrue(
+          entry.getSize()
+              < DebugInfoStripperTest.readClassFile(DebugInfoStripperTest.Thrower.class).length);
+      assertNull(jarFile.getEntry("META-INF/TEST.SF"));
+      assertNotNull(jarFile.getEntry("test.txt"));
+    }
+
+    final DebugInfoSavings savings = JarTransformer.getSavings(strippedJar);
+
+    assertEquals(1, savings.getJars());
+    assertEquals(1, savings.getClasses());
+    assertTrue(savings.getSavedBytes() > 0);
+    // The original is untouched
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      assertEquals(
+          DebugInfoStripperTest.readClassFile(DebugInfoStripperTest.Thrower.class).length,
+          jarFile.getEntry(CLASS_PATH).getSize());
+    }
+
+    // Taken from the cache, savings included
+    assertEquals(strippedJar, transformer.getTransformedJar(jar, cacheDir));
+    assertEquals(savings, JarTransformer.getSavings(strippedJar));
+    assertEquals(
+        DebugInfoSavings.NONE,
+        JarTransformer.getSavings(
+            new JarTransformer(createRelocator("relocated"), false)
+                .getTransformedJar(jar, cacheDir)));
+  }
+
+  private static JarRelocator createRelocator(String relocatedPattern) {
+    return new JarRelocator(
+        Collections.singletonList(
+            new Relocation(JarTransformerTest.class.getPackage().getName(), relocatedPattern)));
+  }
+
+  private Path createJar() throws IOException {
+    final Path jar = folder.newFile().toPath();
+
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new JarEntry(CLASS_PATH));
+      out.write(DebugInfoStripperTest.readClassFile(DebugInfoStripperTest.Thrower.class));
+      out.closeEntry();
+
+      out.putNextEntry(new JarEntry("META-INF/TEST.SF"));
+      out.write(new byte[] {1, 2, 3});
+      out.closeEntry();
+
+      out.putNextEntry(new JarEntry("test.txt"));
+      out.write(new byte[] {1, 2, 3});
+      out.closeEntry();
+    }
+
+    return jar;
+  }
+}
@@ -0,0 +1,12 @@
+package team.aura_dev.lib.multiplatformcore.testcode.relocation;
+
+import java.util.function.Supplier;
+import team.aura_dev.lib.multiplatformcore.testcode.relocation.library.RelocatableLibrary;
+
+/** Plugin code using a library that gets relocated. */
+public class RelocatingPlugin implements Supplier<String> {
+  @Override
+  public String get() {
+    return RelocatableLibrary.getName();
+  }
+}
@@ -0,0 +1,7 @@
+package team.aura_dev.lib.multiplatformcore.testcode.relocation.library;
+
+public class RelocatableLibrary {
+  public static String getName() {
+    return RelocatableLibrary.class.getName();
+  }
+}
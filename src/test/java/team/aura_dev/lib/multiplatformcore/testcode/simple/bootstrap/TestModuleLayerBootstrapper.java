@@ -0,0 +1,10 @@
+package team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap;
+
+import team.aura_dev.lib.multiplatformcore.bootstrap.IsolationMode;
+
+public class TestModuleLayerBootstrapper extends TestBootstrapper {
+  @Override
+  protected IsolationMode getIsolationMode() {
+    return IsolationMode.MODULE_LAYER;
+  }
+}
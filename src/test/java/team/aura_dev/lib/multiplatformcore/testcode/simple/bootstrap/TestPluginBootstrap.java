@@ -18,6 +18,13 @@ public class TestPluginBootstrap {
     flag = new AtomicBoolean(false);
   }
 
+  public TestPluginBootstrap(TestBootstrapper bootstrapper) {
+    this.bootstrapper = bootstrapper;
+    bootstrappedPlugin = bootstrapper.initializePlugin(this);
+
+    flag = new AtomicBoolean(false);
+  }
+
   public TestPluginBootstrap(AtomicBoolean callFlag) {
     bootstrapper = new TestBootstrapper();
     bootstrappedPlugin = bootstrapper.initializePlugin(this, callFlag);
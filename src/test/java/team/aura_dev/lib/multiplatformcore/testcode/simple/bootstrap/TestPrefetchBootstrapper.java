@@ -0,0 +1,10 @@
+package team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap;
+
+import team.aura_dev.lib.multiplatformcore.ClassLoaderOptions;
+
+public class TestPrefetchBootstrapper extends TestBootstrapper {
+  @Override
+  protected ClassLoaderOptions getClassLoaderOptions() {
+    return ClassLoaderOptions.builder().prefetch(true).build();
+  }
+}
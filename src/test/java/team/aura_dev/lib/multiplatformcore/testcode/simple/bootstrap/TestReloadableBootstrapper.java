@@ -0,0 +1,8 @@
+package team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap;
+
+public class TestReloadableBootstrapper extends TestBootstrapper {
+  @Override
+  protected boolean isHotReloadEnabled() {
+    return true;
+  }
+}
@@ -0,0 +1,8 @@
+package team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap;
+
+public class TestReloadableModuleLayerBootstrapper extends TestModuleLayerBootstrapper {
+  @Override
+  protected boolean isHotReloadEnabled() {
+    return true;
+  }
+}
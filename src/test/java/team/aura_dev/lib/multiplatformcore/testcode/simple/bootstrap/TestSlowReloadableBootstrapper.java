@@ -0,0 +1,18 @@
+package team.aura_dev.lib.multiplatformcore.testcode.simple.bootstrap;
+
+import java.net.URL;
+import team.aura_dev.lib.multiplatformcore.DependencyClassLoader;
+
+/** Takes a while to prepare a generation, so concurrent reloads wait for the same preparation. */
+public class TestSlowReloadableBootstrapper extends TestReloadableBootstrapper {
+  @Override
+  protected DependencyClassLoader createPluginLayer(URL[] urls) {
+    try {
+      Thread.sleep(200);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    return super.createPluginLayer(urls);
+  }
+}